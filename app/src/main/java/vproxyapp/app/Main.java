@@ -2,6 +2,7 @@ package vproxyapp.app;
 
 import vfd.VFDConfig;
 import vmirror.Mirror;
+import vpacket.conntrack.tcp.CongestionControl;
 import vproxy.fstack.FStackUtil;
 import vproxyapp.app.args.*;
 import vproxyapp.controller.StdIOController;
@@ -11,6 +12,7 @@ import vproxyapp.vproxyx.Simple;
 import vproxybase.Config;
 import vproxybase.dns.Resolver;
 import vproxybase.util.*;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
 import vproxyx.HelloWorld;
 import vproxyx.KcpTun;
 import vproxyx.WebSocksProxyAgent;
@@ -78,6 +80,14 @@ public class Main {
             }
         }
 
+        try {
+            SSLHandshakeExecutor.checkConfig();
+            CongestionControl.checkConfig();
+        } catch (IllegalArgumentException e) {
+            Logger.fatal(LogType.IMPROPER_USE, e.getMessage());
+            Utils.exit(1);
+        }
+
         Resolver.getDefault();
     }
 
@@ -403,6 +403,7 @@ public class HelpCommand {
         protocol("protocol", null, "" +
             "for tcp-lb: the application layer protocol, " +
             "for security-group: the transport layer protocol: tcp or udp"),
+        accesslogsample("access-log-sample", null, "ratio of the connections and requests recorded by the access log, a number in [0, 1]"),
         annotations("annotations", "anno",
             "a string:string json representing metadata for the resource"),
         portrange("port-range", null, "an integer tuple $i,$j"),
@@ -418,6 +419,7 @@ public class HelpCommand {
         mactabletimeout("mac-table-timeout", null, "timeout of mac table in a switch"),
         arptabletimeout("arp-table-timeout", null, "timeout of arp table in a switch"),
         pass("password", "pass", "password"),
+        cipher("cipher", null, "the cipher of the encrypted link: aes-256-cfb or aes-256-gcm"),
         mac("mac", null, "mac address"),
         vni("vni", null, "vni number"),
         postscript("post-script", null, "the script to run after added"),
@@ -461,9 +463,10 @@ public class HelpCommand {
                     , new ResActParamMan(ParamMan.upstream, "used as the backend servers")
                     , new ResActParamMan(ParamMan.inbuffersize, "input buffer size", "16384 (bytes)")
                     , new ResActParamMan(ParamMan.outbuffersize, "output buffer size", "16384 (bytes)")
-                    , new ResActParamMan(ParamMan.protocol, "the protocol used by tcp-lb. available options: tcp, http, h2, http/1.x, dubbo, framed-int32, or your customized protocol. See doc for more info", "tcp")
+                    , new ResActParamMan(ParamMan.protocol, "the protocol used by tcp-lb. available options: tcp, http, h2, http/1.x, dubbo, framed-int32, redis, or your customized protocol. See doc for more info", "tcp")
                     , new ResActParamMan(ParamMan.certkey, "the certificates and keys used by tcp-lb. Multiple cert-key(s) are separated with `,`")
                     , new ResActParamMan(ParamMan.securitygroup, "specify a security group for the lb", "allow any")
+                    , new ResActParamMan(ParamMan.accesslogsample, "ratio of the connections and requests recorded by the access log, see -DaccessLogFile", "0")
                 ),
                 Collections.singletonList(
                     new Tuple<>(
@@ -492,6 +495,7 @@ public class HelpCommand {
                     new ResActParamMan(ParamMan.inbuffersize, "input buffer size", "not changed")
                     , new ResActParamMan(ParamMan.outbuffersize, "output buffer size", "not changed")
                     , new ResActParamMan(ParamMan.securitygroup, "the security group", "not changed")
+                    , new ResActParamMan(ParamMan.accesslogsample, "ratio of the connections and requests recorded by the access log", "not changed")
                 ),
                 Collections.singletonList(
                     new Tuple<>(
@@ -518,6 +522,7 @@ public class HelpCommand {
                     , new ResActParamMan(ParamMan.inbuffersize, "input buffer size", "16384 (bytes)")
                     , new ResActParamMan(ParamMan.outbuffersize, "output buffer size", "16384 (bytes)")
                     , new ResActParamMan(ParamMan.securitygroup, "specify a security group for the socks5 server", "allow any")
+                    , new ResActParamMan(ParamMan.accesslogsample, "ratio of the connections recorded by the access log, see -DaccessLogFile", "0")
                 ),
                 Arrays.asList(
                     new ResActFlagMan(FlagMan.allownonbackend, "allow to access non backend endpoints", false),
@@ -550,6 +555,7 @@ public class HelpCommand {
                     new ResActParamMan(ParamMan.inbuffersize, "input buffer size", "not changed")
                     , new ResActParamMan(ParamMan.outbuffersize, "output buffer size", "not changed")
                     , new ResActParamMan(ParamMan.securitygroup, "the security group", "not changed")
+                    , new ResActParamMan(ParamMan.accesslogsample, "ratio of the connections recorded by the access log", "not changed")
                 ),
                 Arrays.asList(
                     new ResActFlagMan(FlagMan.allownonbackend, "allow to access non backend endpoints", false),
@@ -692,7 +698,7 @@ public class HelpCommand {
                         new ResActParamMan(ParamMan.up, "set server status to UP after succeeded for `${up}` times"),
                         new ResActParamMan(ParamMan.down, "set server status to DOWN after failed for `${down}` times"),
                         new ResActParamMan(ParamMan.protocol, "the protocol used for checking the servers, you may choose `tcp`, `none`", "tcp"),
-                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`", "wrr"),
+                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`, `maglev`, `p2c-ewma`", "wrr"),
                         new ResActParamMan(ParamMan.annotations, "extra info for the server-group, such as host info, health check url. Must be a json and values must be strings", "{}"),
                         new ResActParamMan(ParamMan.eventloopgroup, "choose a event-loop-group for the server group. health check operations will be performed on the event loop group", Application.DEFAULT_CONTROL_EVENT_LOOP_GROUP_NAME)
                     ),
@@ -749,7 +755,7 @@ public class HelpCommand {
                         new ResActParamMan(ParamMan.down, "set server status to DOWN after failed for `${down}` times", "not changed"),
                         new ResActParamMan(ParamMan.protocol, "the protocol used for checking the servers, you may choose `tcp`, `none`. " +
                             "Note: this field will be set to `tcp` as default when updating other hc options", "not changed"),
-                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`", "not changed"),
+                        new ResActParamMan(ParamMan.method, "loadbalancing algorithm, you can choose `wrr`, `wlc`, `source`, `maglev`, `p2c-ewma`", "not changed"),
                         new ResActParamMan(ParamMan.weight, "the weight of group in the upstream resource (only available for server-group in upstream)", "not changed"),
                         new ResActParamMan(ParamMan.annotations, "annotation of the group itself, or the group in the upstream", "not changed")
                     ),
@@ -1357,7 +1363,8 @@ public class HelpCommand {
                 )),
                 new ResActMan(ActMan.add, "add a user to a switch", Arrays.asList(
                     new ResActParamMan(ParamMan.pass, "password of the user"),
-                    new ResActParamMan(ParamMan.vni, "vni assigned for the user")
+                    new ResActParamMan(ParamMan.vni, "vni assigned for the user"),
+                    new ResActParamMan(ParamMan.cipher, "cipher of the packets, the user-client must use the same one", "aes-256-cfb")
                 ), Collections.singletonList(
                     new Tuple<>(
                         "add user hello to switch sw0 vni 1314 password p@sSw0rD",
@@ -1395,7 +1402,8 @@ public class HelpCommand {
                 new ResActMan(ActMan.add, "add a user client to a switch", Arrays.asList(
                     new ResActParamMan(ParamMan.pass, "password of the user"),
                     new ResActParamMan(ParamMan.vni, "vni which the user is assigned to"),
-                    new ResActParamMan(ParamMan.address, "remote switch address to connect to")
+                    new ResActParamMan(ParamMan.address, "remote switch address to connect to"),
+                    new ResActParamMan(ParamMan.cipher, "cipher of the packets, the user on the remote switch must use the same one", "aes-256-cfb")
                 ), Collections.singletonList(
                     new Tuple<>(
                         "add user-client hello to switch sw0 password p@sSw0rD vni 1314 address 192.168.77.1:18472",
@@ -20,6 +20,7 @@ public enum Param {
     v4net("v4network"),
     v6net("v6network"),
     protocol("protocol"),
+    accesslogsample("access-log-sample"),
     portrange("port-range"),
     tl("tcp-lb"),
     sg("server-group"),
@@ -33,6 +34,7 @@ public enum Param {
     port("port"),
 
     pass("password"),
+    cipher("cipher"),
 
     cert("cert"),
     key("key"),
@@ -13,11 +13,13 @@ import vproxyapp.controller.RESPController;
 import vproxyapp.controller.StdIOController;
 import vproxyapp.process.Shutdown;
 import vproxybase.util.Callback;
+import vproxybase.util.LatencyHistogram;
 import vproxybase.util.Logger;
 import vproxybase.util.Utils;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.NotFoundException;
 import vproxybase.util.exception.XException;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -52,6 +54,7 @@ public class SystemCommand {
         "\n        System call: remove docker-network-plugin-controller      stop docker net plugin ctl" +
         "\n                               ${alias}" +
         "\n        System call: list-detail docker-network-plugin-controller show docker net plugin ctl list" +
+        "\n        System call: list-detail ssl-handshake     show ssl handshake executor stats" +
         "\n        System call: list config                   show current config";
 
     public static boolean allowNonStdIOController = false;
@@ -245,6 +248,12 @@ public class SystemCommand {
                                 break outswitch;
                             }
                             break;
+                        case "ssl-handshake":
+                            if (arr.length == 2) {
+                                handleListSSLHandshake(cb);
+                                break outswitch;
+                            }
+                            break;
                     }
                 }
                 cb.failed(new Exception("unknown or invalid system call `" + cmd + "`"));
@@ -257,6 +266,29 @@ public class SystemCommand {
         cb.succeeded(new CmdResult(config, lines, config));
     }
 
+    private static void handleListSSLHandshake(Callback<CmdResult, ? super XException> cb) {
+        SSLHandshakeExecutor executor = SSLHandshakeExecutor.get();
+        List<String> lines = new LinkedList<>();
+        lines.add("threads " + executor.getThreads());
+        lines.add("overflow " + executor.getOverflow().name());
+        lines.add("queued " + executor.getQueued());
+        lines.add("active " + executor.getActive());
+        lines.add("submitted " + executor.getSubmitted());
+        lines.add("inlined " + executor.getInlined());
+        lines.add("rejected " + executor.getRejected());
+        lines.add("task-latency " + formatLatency(executor.getTaskLatency()));
+        lines.add("handshake-latency " + formatLatency(executor.getHandshakeLatency()));
+        String str = String.join("\n", lines);
+        cb.succeeded(new CmdResult(str, lines, str));
+    }
+
+    private static String formatLatency(LatencyHistogram histogram) {
+        return "count " + histogram.count()
+            + " p50 " + histogram.percentileMicros(0.5) + "us"
+            + " p99 " + histogram.percentileMicros(0.99) + "us"
+            + " p999 " + histogram.percentileMicros(0.999) + "us";
+    }
+
     private static void handleAddController(String type, String[] arr, Callback<CmdResult, ? super Throwable> cb) {
         Command cmd;
         try {
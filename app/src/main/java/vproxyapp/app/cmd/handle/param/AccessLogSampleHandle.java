@@ -0,0 +1,26 @@
+package vproxyapp.app.cmd.handle.param;
+
+import vproxyapp.app.cmd.Command;
+import vproxyapp.app.cmd.Param;
+import vproxybase.util.exception.XException;
+
+public class AccessLogSampleHandle {
+    private AccessLogSampleHandle() {
+    }
+
+    public static void check(Command cmd) throws Exception {
+        get(cmd);
+    }
+
+    public static double get(Command cmd) throws XException {
+        double ratio;
+        try {
+            ratio = Double.parseDouble(cmd.args.get(Param.accesslogsample));
+        } catch (NumberFormatException e) {
+            throw new XException("invalid " + Param.accesslogsample.fullname);
+        }
+        if (!(ratio >= 0 && ratio <= 1)) // also rejects NaN
+            throw new XException("invalid " + Param.accesslogsample.fullname + ", should be in [0, 1]");
+        return ratio;
+    }
+}
@@ -0,0 +1,23 @@
+package vproxyapp.app.cmd.handle.param;
+
+import vproxyapp.app.cmd.Command;
+import vproxyapp.app.cmd.Param;
+import vproxybase.util.crypto.Aes256GcmKey;
+import vproxybase.util.crypto.Aes256Key;
+import vproxybase.util.exception.XException;
+
+public class CipherHandle {
+    private CipherHandle() {
+    }
+
+    public static void check(Command cmd) throws Exception {
+        String cipher = get(cmd);
+        if (!cipher.equals(Aes256Key.NAME) && !cipher.equals(Aes256GcmKey.NAME)) {
+            throw new XException("invalid " + Param.cipher.fullname + ", should be " + Aes256Key.NAME + " or " + Aes256GcmKey.NAME);
+        }
+    }
+
+    public static String get(Command cmd) {
+        return cmd.args.getOrDefault(Param.cipher, Aes256Key.NAME);
+    }
+}
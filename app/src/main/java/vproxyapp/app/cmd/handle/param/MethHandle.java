@@ -12,7 +12,7 @@ public class MethHandle {
     public static Method get(Command cmd) throws Exception {
         String meth = cmd.args.get(Param.meth);
         try {
-            return Method.valueOf(meth);
+            return Method.of(meth);
         } catch (IllegalArgumentException e) {
             throw new XException("invalid " + Param.meth.fullname);
         }
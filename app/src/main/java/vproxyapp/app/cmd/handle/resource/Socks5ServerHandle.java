@@ -9,6 +9,7 @@ import vproxyapp.app.cmd.Command;
 import vproxyapp.app.cmd.Flag;
 import vproxyapp.app.cmd.Param;
 import vproxyapp.app.cmd.Resource;
+import vproxyapp.app.cmd.handle.param.AccessLogSampleHandle;
 import vproxyapp.app.cmd.handle.param.AddrHandle;
 import vproxyapp.app.cmd.handle.param.InBufferSizeHandle;
 import vproxyapp.app.cmd.handle.param.OutBufferSizeHandle;
@@ -50,6 +51,9 @@ public class Socks5ServerHandle {
 
         if (cmd.args.containsKey(Param.timeout))
             TimeoutHandle.get(cmd);
+
+        if (cmd.args.containsKey(Param.accesslogsample))
+            AccessLogSampleHandle.check(cmd);
     }
 
     public static void checkUpdateSocks5Server(Command cmd) throws Exception {
@@ -58,6 +62,9 @@ public class Socks5ServerHandle {
 
         if (cmd.args.containsKey(Param.outbuffersize))
             OutBufferSizeHandle.check(cmd);
+
+        if (cmd.args.containsKey(Param.accesslogsample))
+            AccessLogSampleHandle.check(cmd);
     }
 
     public static Socks5Server get(Resource socks5) throws NotFoundException {
@@ -114,6 +121,9 @@ public class Socks5ServerHandle {
         } else if (cmd.flags.contains(Flag.denynonbackend)) {
             server.allowNonBackend = false;
         }
+        if (cmd.args.containsKey(Param.accesslogsample)) {
+            server.setAccessLogSampleRatio(AccessLogSampleHandle.get(cmd));
+        }
     }
 
     public static void forceRemove(Command cmd) throws Exception {
@@ -140,6 +150,9 @@ public class Socks5ServerHandle {
         if (cmd.args.containsKey(Param.secg)) {
             socks5.securityGroup = Application.get().securityGroupHolder.get(cmd.args.get(Param.secg));
         }
+        if (cmd.args.containsKey(Param.accesslogsample)) {
+            socks5.setAccessLogSampleRatio(AccessLogSampleHandle.get(cmd));
+        }
     }
 
     public static class Socks5ServerRef {
@@ -157,6 +170,7 @@ public class Socks5ServerHandle {
                 + " timeout " + socks5.getTimeout()
                 + " in-buffer-size " + socks5.getInBufferSize() + " out-buffer-size " + socks5.getOutBufferSize()
                 + " security-group " + socks5.securityGroup.alias
+                + (socks5.getAccessLogSampleRatio() == 0 ? "" : " access-log-sample " + socks5.getAccessLogSampleRatio())
                 + " " + (socks5.allowNonBackend ? "allow-non-backend" : "deny-non-backend");
         }
     }
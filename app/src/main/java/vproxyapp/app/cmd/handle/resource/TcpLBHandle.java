@@ -9,6 +9,7 @@ import vproxyapp.app.Application;
 import vproxyapp.app.cmd.Command;
 import vproxyapp.app.cmd.Param;
 import vproxyapp.app.cmd.Resource;
+import vproxyapp.app.cmd.handle.param.AccessLogSampleHandle;
 import vproxyapp.app.cmd.handle.param.AddrHandle;
 import vproxyapp.app.cmd.handle.param.InBufferSizeHandle;
 import vproxyapp.app.cmd.handle.param.OutBufferSizeHandle;
@@ -17,6 +18,7 @@ import vproxybase.Config;
 import vproxybase.component.elgroup.EventLoopGroup;
 import vproxybase.util.exception.NotFoundException;
 import vproxybase.util.exception.XException;
+import vproxybase.util.ringbuffer.ssl.SSLSessionStats;
 import vproxybase.util.ringbuffer.ssl.VSSLContext;
 
 import java.util.LinkedList;
@@ -52,6 +54,9 @@ public class TcpLBHandle {
 
         if (cmd.args.containsKey(Param.timeout))
             TimeoutHandle.get(cmd);
+
+        if (cmd.args.containsKey(Param.accesslogsample))
+            AccessLogSampleHandle.check(cmd);
     }
 
     public static void checkUpdateTcpLB(Command cmd) throws Exception {
@@ -60,6 +65,9 @@ public class TcpLBHandle {
 
         if (cmd.args.containsKey(Param.outbuffersize))
             OutBufferSizeHandle.check(cmd);
+
+        if (cmd.args.containsKey(Param.accesslogsample))
+            AccessLogSampleHandle.check(cmd);
     }
 
     public static TcpLB get(Resource tcplb) throws NotFoundException {
@@ -121,6 +129,9 @@ public class TcpLBHandle {
         Application.get().tcpLBHolder.add(
             alias, acceptor, worker, addr, backend, timeout, inBufferSize, outBufferSize, protocol, certKeys, secg
         );
+        if (cmd.args.containsKey(Param.accesslogsample)) {
+            Application.get().tcpLBHolder.get(alias).setAccessLogSampleRatio(AccessLogSampleHandle.get(cmd));
+        }
     }
 
     public static void forceRemove(Command cmd) throws Exception {
@@ -142,6 +153,9 @@ public class TcpLBHandle {
         if (cmd.args.containsKey(Param.secg)) {
             tcpLB.securityGroup = Application.get().securityGroupHolder.get(cmd.args.get(Param.secg));
         }
+        if (cmd.args.containsKey(Param.accesslogsample)) {
+            tcpLB.setAccessLogSampleRatio(AccessLogSampleHandle.get(cmd));
+        }
         if (cmd.args.containsKey(Param.ck)) {
             if (tcpLB.getCertKeys() == null || tcpLB.getCertKeys().length == 0) {
                 throw new XException("cannot configure the tcp-lb to use TLS when it's originally using plain TCP");
@@ -172,7 +186,27 @@ public class TcpLBHandle {
                 + " timeout " + tcpLB.getTimeout()
                 + " in-buffer-size " + tcpLB.getInBufferSize() + " out-buffer-size " + tcpLB.getOutBufferSize()
                 + " protocol " + tcpLB.protocol
-                + " security-group " + tcpLB.securityGroup.alias;
+                + " security-group " + tcpLB.securityGroup.alias
+                + accessLogSample()
+                + sslSessionStats();
+        }
+
+        private String accessLogSample() {
+            double ratio = tcpLB.getAccessLogSampleRatio();
+            if (ratio == 0) {
+                return "";
+            }
+            return " access-log-sample " + ratio;
+        }
+
+        private String sslSessionStats() {
+            SSLSessionStats stats = tcpLB.getSslSessionStats();
+            if (stats == null) {
+                return "";
+            }
+            return " ssl-session-resumed " + stats.getResumedHandshakes()
+                + " ssl-session-full " + stats.getFullHandshakes()
+                + " ssl-session-hit-ratio " + String.format("%.4f", stats.getHitRatio());
         }
     }
 }
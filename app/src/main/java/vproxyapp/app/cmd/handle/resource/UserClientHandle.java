@@ -7,6 +7,7 @@ import vproxyapp.app.cmd.Param;
 import vproxyapp.app.cmd.Resource;
 import vproxyapp.app.cmd.ResourceType;
 import vproxyapp.app.cmd.handle.param.AddrHandle;
+import vproxyapp.app.cmd.handle.param.CipherHandle;
 import vproxybase.util.Utils;
 import vswitch.Switch;
 
@@ -34,6 +35,7 @@ public class UserClientHandle {
         if (!Utils.isInteger(vni)) {
             throw new Exception("invalid " + Param.vni.fullname + ", not an integer");
         }
+        CipherHandle.check(cmd);
         AddrHandle.check(cmd);
     }
 
@@ -41,9 +43,10 @@ public class UserClientHandle {
         String user = cmd.resource.alias;
         String pass = cmd.args.get(Param.pass);
         int vni = Integer.parseInt(cmd.args.get(Param.vni));
+        String cipher = CipherHandle.get(cmd);
         IPPort addr = AddrHandle.get(cmd);
         Switch sw = Application.get().switchHolder.get(cmd.prepositionResource.alias);
-        sw.addUserClient(user, pass, vni, addr);
+        sw.addUserClient(user, pass, vni, cipher, addr);
     }
 
     public static void checkRemoveUserClient(Command cmd) throws Exception {
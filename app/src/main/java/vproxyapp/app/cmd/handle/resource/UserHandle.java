@@ -5,6 +5,7 @@ import vproxyapp.app.cmd.Command;
 import vproxyapp.app.cmd.Param;
 import vproxyapp.app.cmd.Resource;
 import vproxyapp.app.cmd.ResourceType;
+import vproxyapp.app.cmd.handle.param.CipherHandle;
 import vproxybase.util.Utils;
 import vswitch.Switch;
 
@@ -46,14 +47,16 @@ public class UserHandle {
         if (!Utils.isInteger(vni)) {
             throw new Exception("invalid " + Param.vni.fullname + ", not an integer");
         }
+        CipherHandle.check(cmd);
     }
 
     public static void add(Command cmd) throws Exception {
         String user = cmd.resource.alias;
         String pass = cmd.args.get(Param.pass);
         int vni = Integer.parseInt(cmd.args.get(Param.vni));
+        String cipher = CipherHandle.get(cmd);
         Switch sw = Application.get().switchHolder.get(cmd.prepositionResource.alias);
-        sw.addUser(user, pass, vni);
+        sw.addUser(user, pass, vni, cipher);
     }
 
     public static void forceRemove(Command cmd) throws Exception {
@@ -18,6 +18,7 @@ import vproxybase.dns.Resolver;
 import vproxybase.util.*;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.NotFoundException;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
 import vproxybase.util.exception.XException;
 import vserver.HttpServer;
 import vserver.RoutingContext;
@@ -308,6 +309,10 @@ public class HttpController {
         // accepted-conn-count
         server.get(statistics + "/tcp-lb/:tl/server-sock/:l4addr/accepted-conn", wrapAsync(this::getAcceptedConnFromL4AddrTl));
         server.get(statistics + "/socks5-server/:socks5/server-sock/:l4addr/accepted-conn", wrapAsync(this::getAcceptedConnFromL4AddrSocks5));
+        // buffer-pool
+        server.get(statistics + "/event-loop-group/:elg/event-loop/:el/buffer-pool", wrapAsync(this::getBufferPoolOfEl));
+        // ssl-handshake
+        server.get(statistics + "/ssl-handshake", wrapAsync(this::getSslHandshake));
 
         // watch
         server.get(watch + "/server-group/-/server/-/health-check", this::watchHealthCheck);
@@ -1245,6 +1250,15 @@ public class HttpController {
         utils.respondBytesInFromL4AddrTl(rctx.param("l4addr"), socks5, cb);
     }
 
+    private void getBufferPoolOfEl(RoutingContext rctx, Callback<JSON.Instance, Throwable> cb) throws NotFoundException {
+        var el = Application.get().eventLoopGroupHolder.get(rctx.param("elg")).get(rctx.param("el"));
+        cb.succeeded(utils.formatBufferPool(el.getSelectorEventLoop().bufferPool));
+    }
+
+    private void getSslHandshake(RoutingContext rctx, Callback<JSON.Instance, Throwable> cb) {
+        cb.succeeded(utils.formatSSLHandshakeExecutor(SSLHandshakeExecutor.get()));
+    }
+
     private void getBytesInFromConnectionOfEl(RoutingContext rctx, Callback<JSON.Instance, Throwable> cb) throws NotFoundException {
         var conn = utils.getConnectionFromEl(rctx);
         utils.respondWithTotal(conn.getFromRemoteBytes(), cb);
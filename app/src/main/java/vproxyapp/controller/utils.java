@@ -24,11 +24,15 @@ import vproxybase.component.svrgroup.ServerGroup;
 import vproxybase.connection.Connection;
 import vproxybase.connection.ServerSock;
 import vproxybase.util.Callback;
+import vproxybase.util.LatencyHistogram;
 import vproxybase.util.LogType;
 import vproxybase.util.Logger;
 import vproxybase.util.Utils;
 import vproxybase.util.exception.NotFoundException;
 import vproxybase.util.exception.XException;
+import vproxybase.util.ringbuffer.DirectBufferPool;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
+import vproxybase.util.ringbuffer.ssl.SSLSessionStats;
 import vserver.RoutingContext;
 
 import java.io.File;
@@ -409,6 +413,19 @@ class utils {
             .build();
     }
 
+    static JSON.Object formatBufferPool(DirectBufferPool pool) {
+        return new ObjectBuilder()
+            .putArray("sizeClasses", arr -> Arrays.stream(pool.getSizeClasses()).forEach(arr::add))
+            .put("capacity", pool.getCapacity())
+            .put("leased", pool.getLeased())
+            .put("misses", pool.getMisses())
+            .put("released", pool.getReleased())
+            .put("dropped", pool.getDropped())
+            .put("free", pool.getFree())
+            .put("freeBytes", pool.getFreeBytes())
+            .build();
+    }
+
     static JSON.Object formatSocks5Server(Socks5Server socks5) {
         return new ObjectBuilder()
             .put("name", socks5.alias)
@@ -506,6 +523,42 @@ class utils {
             .put("outBufferSize", tl.getOutBufferSize())
             .putInst("listOfCertKey", listOfCertKey)
             .putInst("securityGroup", formatSecurityGroupDetail(tl.securityGroup))
+            .putInst("sslSession", formatSSLSessionStats(tl.getSslSessionStats()))
+            .build();
+    }
+
+    static JSON.Instance formatSSLSessionStats(SSLSessionStats stats) {
+        if (stats == null) {
+            return new SimpleNull();
+        }
+        return new ObjectBuilder()
+            .put("resumed", stats.getResumedHandshakes())
+            .put("full", stats.getFullHandshakes())
+            .put("hitRatio", stats.getHitRatio())
+            .build();
+    }
+
+    static JSON.Object formatSSLHandshakeExecutor(SSLHandshakeExecutor executor) {
+        return new ObjectBuilder()
+            .put("threads", executor.getThreads())
+            .put("overflow", executor.getOverflow().name())
+            .put("queued", executor.getQueued())
+            .put("active", executor.getActive())
+            .put("submitted", executor.getSubmitted())
+            .put("inlined", executor.getInlined())
+            .put("rejected", executor.getRejected())
+            .putInst("taskLatency", formatLatencyHistogram(executor.getTaskLatency()))
+            .putInst("handshakeLatency", formatLatencyHistogram(executor.getHandshakeLatency()))
+            .build();
+    }
+
+    static JSON.Object formatLatencyHistogram(LatencyHistogram histogram) {
+        return new ObjectBuilder()
+            .put("count", histogram.count())
+            .put("p50Micros", histogram.percentileMicros(0.5))
+            .put("p99Micros", histogram.percentileMicros(0.99))
+            .put("p999Micros", histogram.percentileMicros(0.999))
+            .putArray("buckets", arr -> Arrays.stream(histogram.snapshot()).forEach(arr::add))
             .build();
     }
 
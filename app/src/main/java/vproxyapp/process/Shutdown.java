@@ -18,6 +18,7 @@ import vproxybase.component.elgroup.EventLoopGroup;
 import vproxybase.component.elgroup.EventLoopWrapper;
 import vproxybase.component.svrgroup.ServerGroup;
 import vproxybase.util.*;
+import vproxybase.util.crypto.Aes256Key;
 import vproxybase.util.exception.NotFoundException;
 import vswitch.RouteTable;
 import vswitch.Switch;
@@ -508,6 +509,9 @@ public class Shutdown {
                 if (!tl.securityGroup.alias.equals(SecurityGroup.defaultName)) {
                     cmd.append(" security-group ").append(tl.securityGroup.alias);
                 }
+                if (tl.getAccessLogSampleRatio() != 0) {
+                    cmd.append(" access-log-sample ").append(tl.getAccessLogSampleRatio());
+                }
                 if (tl.getCertKeys() != null) {
                     cmd.append(" cert-key ").append(tl.getCertKeys()[0].alias);
                     for (int i = 1; i < tl.getCertKeys().length; ++i) {
@@ -555,6 +559,9 @@ public class Shutdown {
                 if (!socks5.securityGroup.alias.equals(SecurityGroup.defaultName)) {
                     cmd += " security-group " + socks5.securityGroup.alias;
                 }
+                if (socks5.getAccessLogSampleRatio() != 0) {
+                    cmd += " access-log-sample " + socks5.getAccessLogSampleRatio();
+                }
                 commands.add(cmd);
             }
         }
@@ -695,6 +702,9 @@ public class Shutdown {
                 Map<String, UserInfo> users = sw.getUsers();
                 for (var entry : users.entrySet()) {
                     cmd = "add user " + entry.getKey() + " to switch " + sw.alias + " password " + entry.getValue().pass + " vni " + entry.getValue().vni;
+                    if (!entry.getValue().key.name().equals(Aes256Key.NAME)) {
+                        cmd += " cipher " + entry.getValue().key.name();
+                    }
                     commands.add(cmd);
                 }
                 // create remote sw
@@ -717,6 +727,9 @@ public class Shutdown {
                     var ucliIface = (UserClientIface) iface;
                     cmd = "add user-client " + ucliIface.user.user.replace(Consts.USER_PADDING, "") + " to switch " + sw.alias
                         + " password " + ucliIface.user.pass + " vni " + ucliIface.user.vni + " address " + ucliIface.remoteAddress.formatToIPPortString();
+                    if (!ucliIface.user.key.name().equals(Aes256Key.NAME)) {
+                        cmd += " cipher " + ucliIface.user.key.name();
+                    }
                     commands.add(cmd);
                 }
                 // create tap
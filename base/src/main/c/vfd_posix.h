@@ -76,6 +76,18 @@
         typedef struct sockaddr v_sockaddr;
     #endif
 
+    #if defined(__linux__) && !defined(FSTACK)
+        #define HAVE_MMSG 1
+        #define v_recvmmsg    recvmmsg
+        #define v_sendmmsg    sendmmsg
+        typedef struct mmsghdr v_mmsghdr;
+        typedef struct iovec   v_iovec;
+
+        #define HAVE_SPLICE 1
+        #define v_pipe2       pipe2
+        #define v_splice      splice
+    #endif
+
 
 
     #include <netinet/tcp.h>
@@ -1,3 +1,6 @@
+#ifdef __linux__
+    #define _GNU_SOURCE // for recvmmsg, sendmmsg, pipe2 and splice
+#endif
 #include "vfd_posix_GeneralPosix.h"
 #include "vfd_posix.h"
 #include "exception.h"
@@ -108,6 +111,30 @@ JNIEXPORT jobjectArray JNICALL Java_vfd_posix_GeneralPosix_aeApiPoll
     return ret;
 }
 
+// write fired (fd, mask) pairs into the direct buffer as native int32 values
+// return count of pairs written
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_aeApiPollInto
+  (JNIEnv* env, jobject self, jlong aex, jlong wait, jobject buffer) {
+    aeEventLoop* ae = (aeEventLoop*) aex;
+    v_timeval tv;
+    v_timeval* tvp = &tv;
+    tvp->tv_sec = wait/1000;
+    tvp->tv_usec = (wait % 1000)*1000;
+    int numevents = aePoll(ae, tvp);
+
+    jint* buf = (*env)->GetDirectBufferAddress(env, buffer);
+    int cap = (int) ((*env)->GetDirectBufferCapacity(env, buffer) / (2 * sizeof(jint)));
+    // the events not written are still ready and will be reported by the next poll
+    if (numevents > cap) {
+        numevents = cap;
+    }
+    for (int j = 0; j < numevents; j++) {
+      buf[j * 2] = ae->fired[j].fd;
+      buf[j * 2 + 1] = ae->fired[j].mask;
+    }
+    return numevents;
+}
+
 // return FDInfo[]
 JNIEXPORT jobjectArray JNICALL Java_vfd_posix_GeneralPosix_aeAllFDs
   (JNIEnv* env, jobject self, jlong aex) {
@@ -699,6 +726,194 @@ JNIEXPORT jobject JNICALL Java_vfd_posix_GeneralPosix_recvfromIPv6
     return ret;
 }
 
+// the layout of each packet in the meta buffer, 8 ints:
+// [0] off in the direct buffer, [1] len, [2] port, [3] ipv4 in host order, [4-7] ipv6 in network order
+#define MMSG_META_INTS 8
+#define MAX_MMSG 64
+
+void fillMetaAddrIPv4(jint* meta, v_sockaddr_in* name) {
+    meta[2] = v_ntohs(name->sin_port);
+    meta[3] = v_ntohl(name->sin_addr.s_addr);
+}
+
+void fillMetaAddrIPv6(jint* meta, v_sockaddr_in6* name) {
+    meta[2] = v_ntohs(name->sin6_port);
+    memcpy(&meta[4], &name->sin6_addr, 16);
+}
+
+void metaToSockAddr(jint* meta, jboolean ipv4, v_sockaddr_in6* name) {
+    if (ipv4) {
+        j2cSockAddrIPv4((v_sockaddr_in*) name, meta[3], meta[2]);
+    } else {
+        v_bzero(name, sizeof(v_sockaddr_in6));
+        name->sin6_family = V_AF_INET6;
+        name->sin6_port = v_htons(meta[2]);
+        memcpy(&name->sin6_addr, &meta[4], 16);
+    }
+}
+
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_recvmmsg
+  (JNIEnv* env, jobject self, jint fd, jboolean ipv4, jobject directBuffer, jobject metaBuffer, jint count) {
+    if (count > MAX_MMSG) {
+        count = MAX_MMSG;
+    }
+    if (count <= 0) {
+        return 0;
+    }
+    byte* buf = (*env)->GetDirectBufferAddress(env, directBuffer);
+    jint* meta = (*env)->GetDirectBufferAddress(env, metaBuffer);
+    // sockaddr_in6 is large enough for both ipv4 and ipv6
+    v_sockaddr_in6 names[MAX_MMSG];
+    unsigned int namelen = ipv4 ? sizeof(v_sockaddr_in) : sizeof(v_sockaddr_in6);
+#ifdef HAVE_MMSG
+    v_mmsghdr msgs[MAX_MMSG];
+    v_iovec iovs[MAX_MMSG];
+    memset(msgs, 0, sizeof(v_mmsghdr) * count);
+    for (int i = 0; i < count; ++i) {
+        jint* m = meta + i * MMSG_META_INTS;
+        iovs[i].iov_base = buf + m[0];
+        iovs[i].iov_len = m[1];
+        msgs[i].msg_hdr.msg_iov = &iovs[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+        msgs[i].msg_hdr.msg_name = &names[i];
+        msgs[i].msg_hdr.msg_namelen = namelen;
+    }
+    int res = v_recvmmsg(fd, msgs, count, 0, NULL);
+    if (res < 0) {
+        return handleReadIOOperationResult(env, res);
+    }
+    for (int i = 0; i < res; ++i) {
+        meta[i * MMSG_META_INTS + 1] = msgs[i].msg_len;
+    }
+#else
+    int res = 0;
+    for (; res < count; ++res) {
+        jint* m = meta + res * MMSG_META_INTS;
+        unsigned int foo = namelen;
+        int n = v_recvfrom(fd, buf + m[0], m[1], 0, (v_sockaddr*) &names[res], &foo);
+        if (n < 0) {
+            if (res == 0) {
+                return handleReadIOOperationResult(env, n);
+            }
+            break; // return the received packets, the error will be raised in the next call
+        }
+        m[1] = n;
+    }
+#endif
+    for (int i = 0; i < res; ++i) {
+        if (ipv4) {
+            fillMetaAddrIPv4(meta + i * MMSG_META_INTS, (v_sockaddr_in*) &names[i]);
+        } else {
+            fillMetaAddrIPv6(meta + i * MMSG_META_INTS, &names[i]);
+        }
+    }
+    return res;
+}
+
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_sendmmsg
+  (JNIEnv* env, jobject self, jint fd, jboolean ipv4, jobject directBuffer, jobject metaBuffer, jint count) {
+    if (count > MAX_MMSG) {
+        count = MAX_MMSG;
+    }
+    if (count <= 0) {
+        return 0;
+    }
+    byte* buf = (*env)->GetDirectBufferAddress(env, directBuffer);
+    jint* meta = (*env)->GetDirectBufferAddress(env, metaBuffer);
+    v_sockaddr_in6 names[MAX_MMSG];
+    unsigned int namelen = ipv4 ? sizeof(v_sockaddr_in) : sizeof(v_sockaddr_in6);
+    for (int i = 0; i < count; ++i) {
+        metaToSockAddr(meta + i * MMSG_META_INTS, ipv4, &names[i]);
+    }
+#ifdef HAVE_MMSG
+    v_mmsghdr msgs[MAX_MMSG];
+    v_iovec iovs[MAX_MMSG];
+    memset(msgs, 0, sizeof(v_mmsghdr) * count);
+    for (int i = 0; i < count; ++i) {
+        jint* m = meta + i * MMSG_META_INTS;
+        iovs[i].iov_base = buf + m[0];
+        iovs[i].iov_len = m[1];
+        msgs[i].msg_hdr.msg_iov = &iovs[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+        msgs[i].msg_hdr.msg_name = &names[i];
+        msgs[i].msg_hdr.msg_namelen = namelen;
+    }
+    int res = v_sendmmsg(fd, msgs, count, 0);
+    if (res < 0) {
+        return handleWriteIOOperationResult(env, res);
+    }
+#else
+    int res = 0;
+    for (; res < count; ++res) {
+        jint* m = meta + res * MMSG_META_INTS;
+        int n = v_sendto(fd, buf + m[0], m[1], 0, (v_sockaddr*) &names[res], namelen);
+        if (n < 0) {
+            if (res == 0) {
+                return handleWriteIOOperationResult(env, n);
+            }
+            break;
+        }
+    }
+#endif
+    return res;
+}
+
+JNIEXPORT jboolean JNICALL Java_vfd_posix_GeneralPosix_spliceSupported
+  (JNIEnv* env, jobject self) {
+    #ifdef HAVE_SPLICE
+        return JNI_TRUE;
+    #else
+        return JNI_FALSE;
+    #endif
+}
+
+JNIEXPORT jintArray JNICALL Java_vfd_posix_GeneralPosix_openSplicePipe
+  (JNIEnv* env, jobject self, jint size) {
+    #ifdef HAVE_SPLICE
+        int pipes[2];
+        int res = v_pipe2(pipes, O_NONBLOCK | O_CLOEXEC);
+        if (res < 0) {
+            throwIOExceptionBasedOnErrno(env);
+            return NULL;
+        }
+        int cap = fcntl(pipes[1], F_GETPIPE_SZ);
+        if (size > 0) {
+            // may fail when exceeding /proc/sys/fs/pipe-max-size, keep the default size in this case
+            res = fcntl(pipes[1], F_SETPIPE_SZ, size);
+            if (res > 0) {
+                cap = res;
+            }
+        }
+        if (cap < 0) {
+            throwIOExceptionBasedOnErrno(env);
+            v_close(pipes[0]);
+            v_close(pipes[1]);
+            return NULL;
+        }
+        jintArray ret = (*env)->NewIntArray(env, 3);
+        jint elems[] = { pipes[0], pipes[1], cap };
+        (*env)->SetIntArrayRegion(env, ret, 0, 3, elems);
+        return ret;
+    #else
+        throwIOException(env, "splice is not supported on current platform");
+        return NULL;
+    #endif
+}
+
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_splice
+  (JNIEnv* env, jobject self, jint fdIn, jint fdOut, jint len) {
+    #ifdef HAVE_SPLICE
+        if (len == 0) {
+            return 0;
+        }
+        int res = v_splice(fdIn, NULL, fdOut, NULL, len, SPLICE_F_MOVE | SPLICE_F_NONBLOCK);
+        return handleReadIOOperationResult(env, res);
+    #else
+        throwIOException(env, "splice is not supported on current platform");
+        return 0;
+    #endif
+}
+
 JNIEXPORT jlong JNICALL Java_vfd_posix_GeneralPosix_currentTimeMillis
   (JNIEnv* env, jobject self) {
     v_timeval tv;
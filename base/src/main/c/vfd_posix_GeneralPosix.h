@@ -63,6 +63,14 @@ JNIEXPORT jlong JNICALL Java_vfd_posix_GeneralPosix_aeCreateEventLoop
 JNIEXPORT jobjectArray JNICALL Java_vfd_posix_GeneralPosix_aeApiPoll
   (JNIEnv *, jobject, jlong, jlong);
 
+/*
+ * Class:     vfd_posix_GeneralPosix
+ * Method:    aeApiPollInto
+ * Signature: (JJLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_aeApiPollInto
+  (JNIEnv *, jobject, jlong, jlong, jobject);
+
 /*
  * Class:     vfd_posix_GeneralPosix
  * Method:    aeAllFDs
@@ -375,6 +383,46 @@ JNIEXPORT jobject JNICALL Java_vfd_posix_GeneralPosix_recvfromIPv4
 JNIEXPORT jobject JNICALL Java_vfd_posix_GeneralPosix_recvfromIPv6
   (JNIEnv *, jobject, jint, jobject, jint, jint);
 
+/*
+ * Class:     vfd_posix_GeneralPosix
+ * Method:    recvmmsg
+ * Signature: (IZLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_recvmmsg
+  (JNIEnv *, jobject, jint, jboolean, jobject, jobject, jint);
+
+/*
+ * Class:     vfd_posix_GeneralPosix
+ * Method:    sendmmsg
+ * Signature: (IZLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_sendmmsg
+  (JNIEnv *, jobject, jint, jboolean, jobject, jobject, jint);
+
+/*
+ * Class:     vfd_posix_GeneralPosix
+ * Method:    spliceSupported
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL Java_vfd_posix_GeneralPosix_spliceSupported
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     vfd_posix_GeneralPosix
+ * Method:    openSplicePipe
+ * Signature: (I)[I
+ */
+JNIEXPORT jintArray JNICALL Java_vfd_posix_GeneralPosix_openSplicePipe
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     vfd_posix_GeneralPosix
+ * Method:    splice
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_vfd_posix_GeneralPosix_splice
+  (JNIEnv *, jobject, jint, jint, jint);
+
 /*
  * Class:     vfd_posix_GeneralPosix
  * Method:    currentTimeMillis
@@ -1,4 +1,72 @@
 package vfd;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 public interface DatagramFD extends AbstractDatagramFD<IPPort> {
+    /**
+     * Receive at most <code>min(bufs.length, remotes.length)</code> packets, one packet for each buffer.<br>
+     * The position of each filled buffer is moved forward by the packet length,
+     * and the source address of the packet is stored into <code>remotes</code> with the same index.<br>
+     * The default implementation calls {@link #receive(ByteBuffer)} in a loop,
+     * implementations may override it to receive the packets with less syscalls.
+     *
+     * @param bufs    buffers to receive into
+     * @param remotes source addresses of the received packets
+     * @return count of received packets, 0 if no packet available
+     * @throws IOException if no packet received and got an error
+     */
+    default int receiveBatch(ByteBuffer[] bufs, IPPort[] remotes) throws IOException {
+        int count = Math.min(bufs.length, remotes.length);
+        int n = 0;
+        while (n < count) {
+            IPPort remote;
+            try {
+                remote = receive(bufs[n]);
+            } catch (IOException e) {
+                if (n == 0) {
+                    throw e;
+                }
+                break; // return the received packets first, the error will be raised again when calling next time
+            }
+            if (remote == null) {
+                break;
+            }
+            remotes[n++] = remote;
+        }
+        return n;
+    }
+
+    /**
+     * Send the first <code>count</code> buffers to the remotes with the same index, one packet for each buffer.<br>
+     * The position of each sent buffer is moved to its limit.<br>
+     * The default implementation calls {@link #send(ByteBuffer, SockAddr)} in a loop,
+     * implementations may override it to send the packets with less syscalls.
+     *
+     * @param bufs    packets to send
+     * @param remotes destinations of the packets
+     * @param count   count of packets to send
+     * @return count of sent packets, the packets after it are not sent because the sending buffer is full
+     * @throws IOException if no packet sent and got an error
+     */
+    default int sendBatch(ByteBuffer[] bufs, IPPort[] remotes, int count) throws IOException {
+        int n = 0;
+        while (n < count) {
+            int len = bufs[n].remaining();
+            int sent;
+            try {
+                sent = send(bufs[n], remotes[n]);
+            } catch (IOException e) {
+                if (n == 0) {
+                    throw e;
+                }
+                break;
+            }
+            if (sent < len) {
+                break;
+            }
+            ++n;
+        }
+        return n;
+    }
 }
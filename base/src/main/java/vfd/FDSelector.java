@@ -8,6 +8,8 @@ import java.util.Collection;
 public interface FDSelector extends Closeable {
     boolean isOpen();
 
+    // the returned collection may be reused by the implementation,
+    // it's only valid before the next select
     Collection<SelectedEntry> select() throws IOException;
 
     Collection<SelectedEntry> selectNow() throws IOException;
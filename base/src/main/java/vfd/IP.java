@@ -86,6 +86,11 @@ public abstract class IP {
         return ret;
     }
 
+    // the returned array must not be modified, used when the address is frequently read
+    public byte[] getRawIpBytes() {
+        return bytes;
+    }
+
     public InetAddress toInetAddress() {
         return l3addr(getAddress());
     }
@@ -6,11 +6,16 @@ import vproxybase.util.Utils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class AESelector implements FDSelector {
+    // max events retrieved in one poll, the others are kept by epoll and returned in the next poll
+    private static final int MAX_FIRED_EVENTS = 4096;
+
     private final Posix posix;
     private final long ae;
     private final int[] pipefd; // null, or pipefd[read][write], might be the same if using linux eventfd
@@ -21,6 +26,15 @@ public class AESelector implements FDSelector {
     private final int aeWritable;
     private final boolean onlySelectNow;
 
+    // the poll result is written into this buffer as (int fd, int mask) pairs
+    // so that no object is allocated when events fire
+    private final ByteBuffer firedBuffer;
+    // fd -> att, to avoid retrieving the client data via jni for every event
+    // register() may be called from other threads, so the array is volatile and modified with lock held
+    private volatile AtomicReferenceArray<Att> attachments = new AtomicReferenceArray<>(1024);
+    // the result list is reused, the returned collection is only valid before the next select
+    private final ArrayList<SelectedEntry> selected = new ArrayList<>();
+
     public AESelector(Posix posix, long ae, int[] pipefd) {
         this.posix = posix;
         this.ae = ae;
@@ -34,6 +48,7 @@ public class AESelector implements FDSelector {
             posix.aeCreateFileEvent(ae, pipefd[0], this.aeReadable, new Att(null, null));
         }
         onlySelectNow = posix.onlySelectNow();
+        firedBuffer = ByteBuffer.allocateDirect(MAX_FIRED_EVENTS * 8).order(ByteOrder.nativeOrder());
     }
 
     private static class Att {
@@ -41,11 +56,37 @@ public class AESelector implements FDSelector {
 
         final Object att;
 
+        // cached results, the same entry is returned every time the same events fire
+        private SelectedEntry read;
+        private SelectedEntry write;
+        private SelectedEntry readwrite;
+
         private Att(FD fd, Object att) {
             this.fd = fd;
             this.att = att;
         }
 
+        SelectedEntry entry(boolean readable, boolean writable) {
+            if (readable && writable) {
+                if (readwrite == null) {
+                    readwrite = new SelectedEntry(fd, EventSet.readwrite(), att);
+                }
+                return readwrite;
+            } else if (readable) {
+                if (read == null) {
+                    read = new SelectedEntry(fd, EventSet.read(), att);
+                }
+                return read;
+            } else if (writable) {
+                if (write == null) {
+                    write = new SelectedEntry(fd, EventSet.write(), att);
+                }
+                return write;
+            } else {
+                return null;
+            }
+        }
+
         @Override
         public String toString() {
             return "Att{" +
@@ -89,20 +130,48 @@ public class AESelector implements FDSelector {
         }
     }
 
-    private Collection<SelectedEntry> handleSelectResult(FDInfo[] results) {
+    private Collection<SelectedEntry> handleSelectResult(int count) {
         clearPipeFD();
-        if (results.length == 0) {
-            return Collections.emptyList();
+        selected.clear();
+        if (count == 0) {
+            return selected;
         }
-        List<SelectedEntry> ret = new ArrayList<>(results.length);
-        for (FDInfo res : results) {
-            Att att = (Att) res.attachment;
-            if (att.fd == null) // for the internal pipe fds
+        AtomicReferenceArray<Att> attachments = this.attachments;
+        for (int i = 0; i < count; ++i) {
+            int fd = firedBuffer.getInt(i * 8);
+            int mask = firedBuffer.getInt(i * 8 + 4);
+            Att att = fd < attachments.length() ? attachments.get(fd) : null;
+            if (att == null) {
+                // the fd might be registered in another thread and the array is not updated yet
+                att = (Att) posix.aeGetClientData(ae, fd);
+            }
+            if (att == null || att.fd == null) // for the internal pipe fds
                 continue;
-            int ev = res.events;
-            ret.add(new SelectedEntry(att.fd, getJavaEvents(ev), att.att));
+            SelectedEntry entry = att.entry((mask & aeReadable) == aeReadable, (mask & aeWritable) == aeWritable);
+            if (entry != null) {
+                selected.add(entry);
+            }
         }
-        return ret;
+        return selected;
+    }
+
+    private synchronized void putAtt(int fd, Att att) {
+        var attachments = this.attachments;
+        if (fd >= attachments.length()) {
+            if (att == null) {
+                return;
+            }
+            int len = attachments.length();
+            while (len <= fd) {
+                len *= 2;
+            }
+            var newArray = new AtomicReferenceArray<Att>(len);
+            for (int i = 0; i < attachments.length(); ++i) {
+                newArray.set(i, attachments.get(i));
+            }
+            this.attachments = attachments = newArray;
+        }
+        attachments.set(fd, att);
     }
 
     private void checkOpen() {
@@ -117,15 +186,15 @@ public class AESelector implements FDSelector {
             throw new UnsupportedOperationException("only selectNow supported");
         }
         checkOpen();
-        var res = posix.aeApiPoll(ae, 24 * 60 * 60 * 1000);
-        return handleSelectResult(res);
+        int n = posix.aeApiPollInto(ae, 24 * 60 * 60 * 1000, firedBuffer);
+        return handleSelectResult(n);
     }
 
     @Override
     public Collection<SelectedEntry> selectNow() throws IOException {
         checkOpen();
-        var res = posix.aeApiPoll(ae, 0);
-        return handleSelectResult(res);
+        int n = posix.aeApiPollInto(ae, 0, firedBuffer);
+        return handleSelectResult(n);
     }
 
     @Override
@@ -134,8 +203,8 @@ public class AESelector implements FDSelector {
             throw new UnsupportedOperationException("only selectNow supported");
         }
         checkOpen();
-        var res = posix.aeApiPoll(ae, millis);
-        return handleSelectResult(res);
+        int n = posix.aeApiPollInto(ae, millis, firedBuffer);
+        return handleSelectResult(n);
     }
 
     @Override
@@ -180,13 +249,18 @@ public class AESelector implements FDSelector {
         if (!fd.isOpen()) {
             throw new ClosedChannelException();
         }
-        posix.aeCreateFileEvent(ae, ((PosixFD) fd.real()).fd, getIntEvents(ops), new Att(fd, registerData));
+        int fdnum = ((PosixFD) fd.real()).fd;
+        Att att = new Att(fd, registerData);
+        posix.aeCreateFileEvent(ae, fdnum, getIntEvents(ops), att);
+        putAtt(fdnum, att);
     }
 
     @Override
     public void remove(FD fd) {
         checkOpen();
-        posix.aeDeleteFileEvent(ae, ((PosixFD) fd.real()).fd);
+        int fdnum = ((PosixFD) fd.real()).fd;
+        posix.aeDeleteFileEvent(ae, fdnum);
+        putAtt(fdnum, null);
     }
 
     @Override
@@ -228,6 +302,7 @@ public class AESelector implements FDSelector {
         }
         closed = true;
         posix.aeDeleteEventLoop(ae);
+        // the firedBuffer is not cleaned here, a select() might still be running on the loop thread
         if (bufferForPipeFD != null) {
             Utils.clean(bufferForPipeFD);
         }
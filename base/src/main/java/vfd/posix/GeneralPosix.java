@@ -27,6 +27,9 @@ public class GeneralPosix implements Posix {
     @Override
     native public FDInfo[] aeApiPoll(long ae, long wait) throws IOException;
 
+    @Override
+    native public int aeApiPollInto(long ae, long wait, ByteBuffer firedBuffer) throws IOException;
+
     @Override
     native public FDInfo[] aeAllFDs(long ae);
 
@@ -144,6 +147,21 @@ public class GeneralPosix implements Posix {
     @Override
     native public UDPRecvResult recvfromIPv6(int fd, ByteBuffer directBuffer, int off, int len) throws IOException;
 
+    @Override
+    native public int recvmmsg(int fd, boolean ipv4, ByteBuffer directBuffer, ByteBuffer metaBuffer, int count) throws IOException;
+
+    @Override
+    native public int sendmmsg(int fd, boolean ipv4, ByteBuffer directBuffer, ByteBuffer metaBuffer, int count) throws IOException;
+
+    @Override
+    native public boolean spliceSupported();
+
+    @Override
+    native public int[] openSplicePipe(int size) throws IOException;
+
+    @Override
+    native public int splice(int fdIn, int fdOut, int len) throws IOException;
+
     @Override
     native public long currentTimeMillis();
 
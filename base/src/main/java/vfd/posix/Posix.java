@@ -20,6 +20,9 @@ public interface Posix {
 
     FDInfo[] aeApiPoll(long ae, long wait) throws IOException;
 
+    // fill the direct buffer with (int fd, int mask) pairs, return count of pairs
+    int aeApiPollInto(long ae, long wait, ByteBuffer firedBuffer) throws IOException;
+
     FDInfo[] aeAllFDs(long ae);
 
     void aeCreateFileEvent(long ae, int fd, int mask, Object clientData);
@@ -98,6 +101,24 @@ public interface Posix {
 
     UDPRecvResult recvfromIPv6(int fd, ByteBuffer directBuffer, int off, int len) throws IOException;
 
+    // each packet is described by 32 bytes in the metaBuffer:
+    // int off, int len, int port, int ipv4 (host order), byte[16] ipv6
+    // off and len are the region in the directBuffer (len is the capacity when receiving),
+    // the len and address are filled when packets are received
+    // return count of packets received/sent, 0 if would block
+    int recvmmsg(int fd, boolean ipv4, ByteBuffer directBuffer, ByteBuffer metaBuffer, int count) throws IOException;
+
+    int sendmmsg(int fd, boolean ipv4, ByteBuffer directBuffer, ByteBuffer metaBuffer, int count) throws IOException;
+
+    boolean spliceSupported();
+
+    // return {read end, write end, capacity of the pipe}
+    // the size is only a hint, set to 0 to use the default size of the os
+    int[] openSplicePipe(int size) throws IOException;
+
+    // return bytes moved, 0 if would block, -1 if EOF
+    int splice(int fdIn, int fdOut, int len) throws IOException;
+
     long currentTimeMillis();
 
     boolean tapNonBlockingSupported() throws IOException;
@@ -1,11 +1,43 @@
 package vfd.posix;
 
 import vfd.*;
+import vproxybase.util.Utils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
+    // must be the same as the native code
+    private static final int MMSG_META_SIZE = 32;
+    private static final int MAX_MMSG = 64;
+    // the buffers are only used during one call, so they are shared by all fds handled by the same thread (event loop),
+    // otherwise each fd would keep buffers for a full batch of max size packets
+    private static final ThreadLocal<MmsgBuffers> mmsgBuffers = ThreadLocal.withInitial(MmsgBuffers::new);
+
+    private static class MmsgBuffers {
+        final ByteBuffer meta = ByteBuffer.allocateDirect(MAX_MMSG * MMSG_META_SIZE).order(ByteOrder.nativeOrder()); // describes the packets
+        ByteBuffer data = null; // the packets
+
+        ByteBuffer data(int len) {
+            if (data != null && data.capacity() < len) {
+                Utils.clean(data);
+                data = null;
+            }
+            if (data == null) {
+                data = ByteBuffer.allocateDirect(len);
+            }
+            return data;
+        }
+
+        void reset() {
+            meta.clear();
+            if (data != null) {
+                data.clear();
+            }
+        }
+    }
+
     private boolean bond = false;
 
     public PosixDatagramFD(Posix posix) {
@@ -162,4 +194,103 @@ public class PosixDatagramFD extends PosixInetNetworkFD implements DatagramFD {
         }
         return l4addr.toIPPort();
     }
+
+    @Override
+    public int receiveBatch(ByteBuffer[] bufs, IPPort[] remotes) throws IOException {
+        checkFD();
+        checkNotClosed();
+        if (!bond) {
+            throw new IOException("not bond");
+        }
+        int count = Math.min(Math.min(bufs.length, remotes.length), MAX_MMSG);
+        if (count == 0) {
+            return 0;
+        }
+        // the packets are received into slices of one direct buffer, then copied into the bufs
+        MmsgBuffers buffers = mmsgBuffers.get();
+        ByteBuffer meta = buffers.meta;
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            int len = bufs[i].limit() - bufs[i].position();
+            meta.putInt(i * MMSG_META_SIZE, total);
+            meta.putInt(i * MMSG_META_SIZE + 4, len);
+            total += len;
+        }
+        ByteBuffer directBuffer = buffers.data(total);
+        try {
+            int n = posix.recvmmsg(fd, ipv4, directBuffer, meta, count);
+            for (int i = 0; i < n; ++i) {
+                int base = i * MMSG_META_SIZE;
+                int off = meta.getInt(base);
+                int len = meta.getInt(base + 4);
+                int port = meta.getInt(base + 8);
+                IP ip;
+                if (ipv4) {
+                    ip = IP.from(IP.ipv4Int2Bytes(meta.getInt(base + 12)));
+                } else {
+                    byte[] addr = new byte[16];
+                    meta.position(base + 16);
+                    meta.get(addr);
+                    ip = IP.from(addr);
+                }
+                remotes[i] = new IPPort(ip, port);
+                directBuffer.limit(off + len).position(off);
+                bufs[i].put(directBuffer);
+            }
+            return n;
+        } finally {
+            buffers.reset();
+        }
+    }
+
+    @Override
+    public int sendBatch(ByteBuffer[] bufs, IPPort[] remotes, int count) throws IOException {
+        if (fd == -1 || connected) {
+            // let send() create the fd or raise the error
+            return DatagramFD.super.sendBatch(bufs, remotes, count);
+        }
+        checkNotClosed();
+        count = Math.min(count, MAX_MMSG);
+        if (count == 0) {
+            return 0;
+        }
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            if (ipv4 != (remotes[i].getAddress() instanceof IPv4)) {
+                throw new IOException("unsupported address for this fd: " + remotes[i]);
+            }
+            total += bufs[i].limit() - bufs[i].position();
+        }
+        // the packets are copied into one direct buffer
+        MmsgBuffers buffers = mmsgBuffers.get();
+        ByteBuffer meta = buffers.meta;
+        ByteBuffer directBuffer = buffers.data(total);
+        int n = 0;
+        try {
+            for (int i = 0; i < count; ++i) {
+                int base = i * MMSG_META_SIZE;
+                ByteBuffer buf = bufs[i];
+                int pos = buf.position();
+                meta.putInt(base, directBuffer.position());
+                meta.putInt(base + 4, buf.limit() - pos);
+                meta.putInt(base + 8, remotes[i].getPort());
+                byte[] addr = remotes[i].getAddress().getAddress();
+                if (ipv4) {
+                    meta.putInt(base + 12, IP.ipv4Bytes2Int(addr));
+                } else {
+                    meta.position(base + 16);
+                    meta.put(addr);
+                }
+                directBuffer.put(buf);
+                buf.position(pos); // moved after sent
+            }
+            n = posix.sendmmsg(fd, ipv4, directBuffer, meta, count);
+        } finally {
+            for (int i = 0; i < n; ++i) {
+                bufs[i].position(bufs[i].limit());
+            }
+            buffers.reset();
+        }
+        return n;
+    }
 }
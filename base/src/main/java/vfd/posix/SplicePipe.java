@@ -0,0 +1,122 @@
+package vfd.posix;
+
+import vfd.FD;
+import vfd.FDProvider;
+import vfd.FDs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A pipe for moving bytes between sockets with splice(2), the bytes never enter the jvm.<br>
+ * Bytes are spliced from one socket into the pipe, then from the pipe into another socket.<br>
+ * Only supported by the posix fds on linux.
+ */
+public class SplicePipe {
+    private static Boolean supported = null;
+
+    private final Posix posix;
+    private final int readFD;
+    private final int writeFD;
+    public final int capacity;
+    private boolean closed = false;
+
+    private SplicePipe(Posix posix, int[] fds) {
+        this.posix = posix;
+        this.readFD = fds[0];
+        this.writeFD = fds[1];
+        this.capacity = fds[2];
+    }
+
+    public static boolean supported() {
+        Boolean supported = SplicePipe.supported;
+        if (supported == null) {
+            FDs fds = FDProvider.get().getProvided();
+            supported = fds instanceof PosixFDs && ((PosixFDs) fds).posix.spliceSupported();
+            SplicePipe.supported = supported;
+        }
+        return supported;
+    }
+
+    public static boolean canSplice(FD fd) {
+        return fd instanceof PosixSocketFD;
+    }
+
+    /**
+     * @param size size of the pipe, it's only a hint, 0 to use the default size of the os
+     */
+    public static SplicePipe open(int size) throws IOException {
+        FDs fds = FDProvider.get().getProvided();
+        if (!(fds instanceof PosixFDs)) {
+            throw new IOException("splice requires the posix fds");
+        }
+        Posix posix = ((PosixFDs) fds).posix;
+        return new SplicePipe(posix, posix.openSplicePipe(size));
+    }
+
+    private int rawFD(FD fd) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        if (!canSplice(fd)) {
+            throw new IOException("cannot splice " + fd);
+        }
+        PosixFD pfd = (PosixFD) fd;
+        pfd.checkFD();
+        pfd.checkNotClosed();
+        return pfd.fd;
+    }
+
+    /**
+     * @return bytes moved into the pipe, 0 if nothing to read or the pipe is full, -1 if EOF
+     */
+    public int spliceFrom(FD fd, int len) throws IOException {
+        return posix.splice(rawFD(fd), writeFD, len);
+    }
+
+    /**
+     * @return bytes moved out of the pipe, 0 if the fd is not writable
+     */
+    public int spliceTo(FD fd, int len) throws IOException {
+        int n = posix.splice(readFD, rawFD(fd), len);
+        return Math.max(n, 0);
+    }
+
+    /**
+     * discard all bytes in the pipe
+     */
+    public void discard() throws IOException {
+        if (closed) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(4096);
+        while (posix.read(readFD, buf, 0, buf.capacity()) > 0) {
+            // nothing to do
+        }
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            posix.close(readFD);
+        } catch (IOException ignore) {
+        }
+        try {
+            posix.close(writeFD);
+        } catch (IOException ignore) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SplicePipe{" +
+            "readFD=" + readFD +
+            ", writeFD=" + writeFD +
+            ", capacity=" + capacity +
+            ", closed=" + closed +
+            '}';
+    }
+}
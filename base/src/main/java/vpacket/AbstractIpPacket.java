@@ -1,6 +1,8 @@
 package vpacket;
 
 import vfd.IP;
+import vproxybase.util.Consts;
+import vproxybase.util.Utils;
 
 public abstract class AbstractIpPacket extends AbstractPacket {
     public abstract IP getSrc();
@@ -16,4 +18,40 @@ public abstract class AbstractIpPacket extends AbstractPacket {
     public abstract int getProtocol();
 
     public abstract void setPacket(AbstractPacket packet);
+
+    /**
+     * the tcp/udp/icmpv6 checksums cover the pseudo header which contains the ip addresses,
+     * update the checksum in the raw bytes when the address changes
+     */
+    protected void updatePseudoHeaderChecksum(int transportOffset, int protocol, byte[] oldAddr, byte[] newAddr) {
+        int off;
+        if (protocol == Consts.IP_PROTOCOL_TCP) {
+            off = transportOffset + 16;
+        } else if (protocol == Consts.IP_PROTOCOL_UDP) {
+            off = transportOffset + 6;
+        } else if (protocol == Consts.IP_PROTOCOL_ICMPv6) {
+            off = transportOffset + 2;
+        } else {
+            return;
+        }
+        if (raw.length() < off + 2) {
+            return;
+        }
+        int checksum = raw.uint16(off);
+        if (protocol == Consts.IP_PROTOCOL_UDP && checksum == 0) {
+            return; // checksum not used
+        }
+        checksum = Utils.updateChecksum(checksum, oldAddr, newAddr);
+        if (protocol == Consts.IP_PROTOCOL_UDP && checksum == 0) {
+            checksum = 0xffff;
+        }
+        raw.int16(off, checksum);
+
+        AbstractPacket packet = getPacket();
+        if (packet instanceof TcpPacket) {
+            ((TcpPacket) packet).checksumUpdated(checksum);
+        } else if (packet instanceof IcmpPacket) {
+            ((IcmpPacket) packet).setChecksum(checksum);
+        }
+    }
 }
@@ -18,5 +18,17 @@ public abstract class AbstractPacket {
         raw = null;
     }
 
+    /**
+     * The raw bytes of a parsed packet are a view of the parent packet's bytes,
+     * and a built packet's bytes are concatenated into the parent's bytes,
+     * so the setters which rewrite the raw bytes in place keep the parent packets valid.
+     * Other setters clear the raw bytes, the parents must be cleared as well.
+     *
+     * @return true if the raw bytes are present and can be modified in place
+     */
+    public final boolean isRawPacketPresent() {
+        return raw != null;
+    }
+
     protected abstract ByteArray buildPacket();
 }
@@ -73,7 +73,9 @@ public class EthernetPacket extends AbstractEthernetPacket {
     }
 
     public void setSrc(MacAddress src) {
-        clearRawPacket();
+        if (raw != null) {
+            writeMacInPlace(6, src);
+        }
         this.src = src;
     }
 
@@ -83,10 +85,18 @@ public class EthernetPacket extends AbstractEthernetPacket {
     }
 
     public void setDst(MacAddress dst) {
-        clearRawPacket();
+        if (raw != null) {
+            writeMacInPlace(0, dst);
+        }
         this.dst = dst;
     }
 
+    private void writeMacInPlace(int offset, MacAddress mac) {
+        for (int i = 0; i < 6; ++i) {
+            raw.set(offset + i, mac.bytes.get(i));
+        }
+    }
+
     public int getType() {
         return type;
     }
@@ -151,6 +151,24 @@ public class Ipv4Packet extends AbstractIpPacket {
         return Utils.calculateChecksum(arr, 20);
     }
 
+    private void updateHeaderChecksum(int oldWord, int newWord) {
+        headerChecksum = Utils.updateChecksum(headerChecksum, oldWord, newWord);
+        raw.int16(10, headerChecksum);
+    }
+
+    private void updateAddressInPlace(int offset, IPv4 oldAddr, IPv4 newAddr) {
+        byte[] oldBytes = oldAddr.getRawIpBytes();
+        byte[] newBytes = newAddr.getRawIpBytes();
+        for (int i = 0; i < 4; ++i) {
+            raw.set(offset + i, newBytes[i]);
+        }
+        headerChecksum = Utils.updateChecksum(headerChecksum, oldBytes, newBytes);
+        raw.int16(10, headerChecksum);
+        if (fragmentOffset == 0) { // only the first fragment contains the transport header
+            updatePseudoHeaderChecksum(ihl * 4, protocol, oldBytes, newBytes);
+        }
+    }
+
     @Override
     public String toString() {
         return "Ipv4Packet{" +
@@ -249,7 +267,12 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public void setTtl(int ttl) {
-        clearRawPacket();
+        if (raw != null) {
+            // modify in place
+            int old = raw.uint16(8);
+            raw.set(8, (byte) ttl);
+            updateHeaderChecksum(old, raw.uint16(8));
+        }
         this.ttl = ttl;
     }
 
@@ -278,7 +301,9 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public void setSrc(IPv4 src) {
-        clearRawPacket();
+        if (raw != null) {
+            updateAddressInPlace(12, this.src, src);
+        }
         this.src = src;
     }
 
@@ -288,7 +313,9 @@ public class Ipv4Packet extends AbstractIpPacket {
     }
 
     public void setDst(IPv4 dst) {
-        clearRawPacket();
+        if (raw != null) {
+            updateAddressInPlace(16, this.dst, dst);
+        }
         this.dst = dst;
     }
 
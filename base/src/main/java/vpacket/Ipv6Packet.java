@@ -190,7 +190,10 @@ public class Ipv6Packet extends AbstractIpPacket {
 
     @Override
     public void setHopLimit(int hopLimit) {
-        clearRawPacket();
+        if (raw != null) {
+            // modify in place, ipv6 header has no checksum
+            raw.set(7, (byte) hopLimit);
+        }
         this.hopLimit = hopLimit;
     }
 
@@ -206,7 +209,9 @@ public class Ipv6Packet extends AbstractIpPacket {
     }
 
     public void setSrc(IPv6 src) {
-        clearRawPacket();
+        if (raw != null) {
+            updateAddressInPlace(8, this.src, src);
+        }
         this.src = src;
     }
 
@@ -216,10 +221,29 @@ public class Ipv6Packet extends AbstractIpPacket {
     }
 
     public void setDst(IPv6 dst) {
-        clearRawPacket();
+        if (raw != null) {
+            updateAddressInPlace(24, this.dst, dst);
+        }
         this.dst = dst;
     }
 
+    private void updateAddressInPlace(int offset, IPv6 oldAddr, IPv6 newAddr) {
+        byte[] oldBytes = oldAddr.getRawIpBytes();
+        byte[] newBytes = newAddr.getRawIpBytes();
+        for (int i = 0; i < 16; ++i) {
+            raw.set(offset + i, newBytes[i]);
+        }
+        int transportOffset = 40;
+        int protocol = nextHeader;
+        if (extHeaders != null) {
+            for (var h : extHeaders) {
+                transportOffset += h.getRawPacket().length();
+                protocol = h.nextHeader;
+            }
+        }
+        updatePseudoHeaderChecksum(transportOffset, protocol, oldBytes, newBytes);
+    }
+
     public List<ExtHeader> getExtHeaders() {
         return extHeaders;
     }
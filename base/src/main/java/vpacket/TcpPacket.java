@@ -27,7 +27,9 @@ public class TcpPacket extends AbstractPacket {
     }
 
     public void setSrcPort(int srcPort) {
-        clearRawPacket();
+        if (raw != null) {
+            updateWordInPlace(0, srcPort);
+        }
         this.srcPort = srcPort;
     }
 
@@ -36,7 +38,9 @@ public class TcpPacket extends AbstractPacket {
     }
 
     public void setDstPort(int dstPort) {
-        clearRawPacket();
+        if (raw != null) {
+            updateWordInPlace(2, dstPort);
+        }
         this.dstPort = dstPort;
     }
 
@@ -45,7 +49,10 @@ public class TcpPacket extends AbstractPacket {
     }
 
     public void setSeqNum(long seqNum) {
-        clearRawPacket();
+        if (raw != null) {
+            updateWordInPlace(4, (int) (seqNum >> 16));
+            updateWordInPlace(6, (int) seqNum);
+        }
         this.seqNum = seqNum;
     }
 
@@ -54,7 +61,10 @@ public class TcpPacket extends AbstractPacket {
     }
 
     public void setAckNum(long ackNum) {
-        clearRawPacket();
+        if (raw != null) {
+            updateWordInPlace(8, (int) (ackNum >> 16));
+            updateWordInPlace(10, (int) ackNum);
+        }
         this.ackNum = ackNum;
     }
 
@@ -81,7 +91,9 @@ public class TcpPacket extends AbstractPacket {
     }
 
     public void setWindow(int window) {
-        clearRawPacket();
+        if (raw != null) {
+            updateWordInPlace(14, window);
+        }
         this.window = window;
     }
 
@@ -116,6 +128,20 @@ public class TcpPacket extends AbstractPacket {
         return data;
     }
 
+    // modify the raw bytes and update the checksum incrementally
+    private void updateWordInPlace(int offset, int word) {
+        word &= 0xffff;
+        int old = raw.uint16(offset);
+        raw.int16(offset, word);
+        checksum = Utils.updateChecksum(checksum, old, word);
+        raw.int16(16, checksum);
+    }
+
+    // the checksum in the raw bytes is updated by the ip packet
+    void checksumUpdated(int checksum) {
+        this.checksum = checksum;
+    }
+
     public void setData(ByteArray data) {
         clearRawPacket();
         this.data = data;
@@ -281,20 +307,17 @@ public class TcpPacket extends AbstractPacket {
                 }
             }
         }
-        if (optBytes != null) {
-            base = base.concat(optBytes);
-        }
-
         // build data offset and padding
-        int padding = 0;
         int off = 20;
         if (optBytes != null) {
             int len = optBytes.length();
             int mod = len % 4;
             if (mod != 0) {
-                padding = mod;
+                // pad with zeros (END) to align the header to 4 bytes
+                optBytes = optBytes.concat(ByteArray.allocate(4 - mod));
             }
-            off += len + padding;
+            off += optBytes.length();
+            base = base.concat(optBytes);
         }
         dataOffset = off;
         int dataOffsetReservedFlags = ((dataOffset / 4) << 12) | flags;
@@ -429,6 +452,16 @@ public class TcpPacket extends AbstractPacket {
                         return "invalid tcp option length for kind=mss";
                     }
                     break;
+                case Consts.TCP_OPTION_SACK_PERMITTED:
+                    if (length != 2) {
+                        return "invalid tcp option length for kind=sack_permitted";
+                    }
+                    break;
+                case Consts.TCP_OPTION_SACK:
+                    if (length < 10 || (length - 2) % 8 != 0) {
+                        return "invalid tcp option length for kind=sack";
+                    }
+                    break;
             }
             return null;
         }
@@ -3,17 +3,27 @@ package vpacket;
 import vproxybase.util.ByteArray;
 import vproxybase.util.Consts;
 import vproxybase.util.Utils;
+import vproxybase.util.crypto.Aes256GcmKey;
 import vproxybase.util.crypto.Aes256Key;
-import vproxybase.util.crypto.StreamingCFBCipher;
 
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.Random;
 import java.util.function.Function;
 
 /*
+ * aes-256-cfb:
  * +----------+---------+-----------+----------+---------------+
  * | USER (6) | IV (16) | MAGIC (4) | TYPE (2) |     VXLAN     |
  * +----------+---------+-----------+----------+---------------+
+ * aes-256-gcm:
+ * +----------+---------+-----------+----------+---------------+----------+
+ * | USER (6) | IV (12) | MAGIC (4) | TYPE (2) |     VXLAN     | TAG (16) |
+ * +----------+---------+-----------+----------+---------------+----------+
+ * the format is decided by the key of the user, and USER is authenticated as additional data in gcm mode
  * encode user with base64 to get the string form user name
  * decode the user name string with base64 to get the binary form user name
  * the user string must be 8 chars, a-zA-Z0-9, however a default padding may be added
@@ -30,6 +40,13 @@ public class VProxyEncryptedPacket extends AbstractPacket {
         this.keyProvider = keyProvider;
     }
 
+    private static int tagLen(Aes256Key key) {
+        if (key instanceof Aes256GcmKey) {
+            return ((Aes256GcmKey) key).tagLen();
+        }
+        return 0;
+    }
+
     @Override
     public String from(ByteArray bytes) {
         if (bytes.length() < 28) {
@@ -41,22 +58,36 @@ public class VProxyEncryptedPacket extends AbstractPacket {
         if (key == null) {
             return "cannot get key for user " + user;
         }
+        int headerLen = 6 + key.ivLen();
+        int tagLen = tagLen(key);
+        if (bytes.length() < headerLen + 6 + tagLen) {
+            return "input packet length too short for a vproxy switch packet in " + key.name();
+        }
 
-        byte[] iv = bytes.sub(6, 16).toJavaArray();
-        byte[] rawBytes = bytes.toJavaArray();
-        StreamingCFBCipher cipher = new StreamingCFBCipher(key, false, iv);
-        magic = ByteArray.from(
-            cipher.update(rawBytes, 22, 4)
-        ).int32(0);
+        // the array is a copy of the input, so it's decrypted in place
+        byte[] rawBytes = bytes.toNewJavaArray();
+        byte[] iv = Arrays.copyOfRange(rawBytes, 6, headerLen);
+        int plainLen;
+        try {
+            Cipher cipher = key.packetCipher(false, iv);
+            if (tagLen != 0) {
+                cipher.updateAAD(rawBytes, 0, 6);
+            }
+            plainLen = cipher.doFinal(rawBytes, headerLen, rawBytes.length - headerLen, rawBytes, headerLen);
+        } catch (AEADBadTagException e) {
+            return "decryption failed: authentication failed";
+        } catch (GeneralSecurityException e) {
+            return "decryption failed: " + e;
+        }
+        ByteArray result = ByteArray.from(rawBytes).sub(headerLen, plainLen);
+
+        magic = result.int32(0);
         if (magic != Consts.VPROXY_SWITCH_MAGIC) {
             return "decryption failed: wrong magic: " + Utils.toHexString(magic);
         }
-        ByteArray result = ByteArray.from(
-            cipher.update(rawBytes, 26, rawBytes.length - 26)
-        );
-        type = result.uint16(0);
+        type = result.uint16(4);
         if (type == Consts.VPROXY_SWITCH_TYPE_VXLAN) {
-            ByteArray other = result.sub(2, result.length() - 2);
+            ByteArray other = result.sub(6, result.length() - 6);
             VXLanPacket packet = new VXLanPacket();
             String err = packet.from(other);
             if (err != null) {
@@ -64,8 +95,8 @@ public class VProxyEncryptedPacket extends AbstractPacket {
             }
             vxlan = packet;
         } else if (type == Consts.VPROXY_SWITCH_TYPE_PING) {
-            if (result.length() != 2) {
-                return "extra bytes for a vproxy switch ping packet: " + (result.length() - 2);
+            if (result.length() != 6) {
+                return "extra bytes for a vproxy switch ping packet: " + (result.length() - 6);
             }
         } else {
             return "invalid type for vproxy switch packet: " + type;
@@ -75,31 +106,62 @@ public class VProxyEncryptedPacket extends AbstractPacket {
 
     @Override
     protected ByteArray buildPacket() {
-        byte[] x = Base64.getDecoder().decode(user);
-        if (x.length != 6) {
-            throw new IllegalArgumentException("the user decoded binary length is not 6");
+        Aes256Key key = retrieveKey();
+        int len = 6 + key.ivLen() + 6 + (vxlan == null ? 0 : vxlan.getRawPacket().length()) + tagLen(key);
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        encrypt(key, buf);
+        return ByteArray.from(buf.array());
+    }
+
+    /**
+     * Write the packet into the buffer, the buffer position is moved to the end of the packet.
+     * The plain text is put into the buffer and then encrypted in place,
+     * so the result is the same as putting {@link #getRawPacket()} into the buffer but no intermediate array is created.
+     */
+    public void writeTo(ByteBuffer buf) {
+        if (raw != null) {
+            raw.byteBufferPut(buf, 0, raw.length());
+            return;
         }
+        encrypt(retrieveKey(), buf);
+    }
+
+    private Aes256Key retrieveKey() {
         Aes256Key key = keyProvider.apply(user);
         if (key == null) {
             throw new IllegalArgumentException("cannot retrieve key for user " + user);
         }
-        ByteArray userB = ByteArray.from(x);
+        return key;
+    }
 
-        byte[] ivBytes = new byte[16];
-        Random rand = new Random();
-        rand.nextBytes(ivBytes);
+    private void encrypt(Aes256Key key, ByteBuffer buf) {
+        byte[] userBytes = Base64.getDecoder().decode(user);
+        if (userBytes.length != 6) {
+            throw new IllegalArgumentException("the user decoded binary length is not 6");
+        }
+        byte[] iv = key.packetIv();
 
-        ByteArray iv = ByteArray.from(ivBytes).copy();
-        ByteArray other = ByteArray.allocate(6);
-        other.int32(0, magic);
-        other.int16(4, type);
+        buf.put(userBytes);
+        buf.put(iv);
+        int plainStart = buf.position();
+        buf.putInt(magic);
+        buf.putShort((short) type);
         if (vxlan != null) {
-            other = other.concat(vxlan.getRawPacket());
+            ByteArray bytes = vxlan.getRawPacket();
+            bytes.byteBufferPut(buf, 0, bytes.length());
+        }
+        ByteBuffer plain = buf.duplicate();
+        plain.limit(buf.position()).position(plainStart);
+        buf.position(plainStart);
+        try {
+            Cipher cipher = key.packetCipher(true, iv);
+            if (tagLen(key) != 0) {
+                cipher.updateAAD(userBytes);
+            }
+            cipher.doFinal(plain, buf);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("encrypting vproxy switch packet failed", e);
         }
-        byte[] otherBytes = other.toJavaArray();
-        StreamingCFBCipher cipher = new StreamingCFBCipher(key, true, ivBytes);
-        byte[] encrypted = cipher.update(otherBytes, 0, otherBytes.length);
-        return userB.concat(iv).concat(ByteArray.from(encrypted));
     }
 
     @Override
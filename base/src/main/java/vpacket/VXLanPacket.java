@@ -58,7 +58,9 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setFlags(int flags) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.set(0, (byte) flags);
+        }
         this.flags = flags;
     }
 
@@ -67,7 +69,9 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setReserved1(int reserved1) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.int24(1, reserved1);
+        }
         this.reserved1 = reserved1;
     }
 
@@ -76,7 +80,9 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setVni(int vni) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.int24(4, vni);
+        }
         this.vni = vni;
     }
 
@@ -85,7 +91,9 @@ public class VXLanPacket extends AbstractPacket {
     }
 
     public void setReserved2(int reserved2) {
-        clearRawPacket();
+        if (raw != null) {
+            raw.set(7, (byte) reserved2);
+        }
         this.reserved2 = reserved2;
     }
 
@@ -0,0 +1,65 @@
+package vpacket.conntrack.tcp;
+
+/**
+ * slow start (rfc 5681, with appropriate byte counting of rfc 3465) and the common window reduction,
+ * the subclasses implement the congestion avoidance
+ */
+public abstract class AbstractCongestionControl implements CongestionControl {
+    public static final int INITIAL_WINDOW_MSS_DUP = 10; // * mss, rfc 6928
+    public static final int SLOW_START_MAX_INCREASE_MSS_DUP = 2; // * mss, the L of rfc 3465
+
+    protected int mss;
+    protected int cwnd;
+    protected int ssthresh;
+
+    @Override
+    public void init(int mss) {
+        this.mss = mss;
+        this.cwnd = INITIAL_WINDOW_MSS_DUP * mss;
+        this.ssthresh = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getCwnd() {
+        return cwnd;
+    }
+
+    @Override
+    public int getSsthresh() {
+        return ssthresh;
+    }
+
+    @Override
+    public void onAck(int ackedBytes, int rtt) {
+        if (cwnd < ssthresh) {
+            cwnd += Math.min(ackedBytes, SLOW_START_MAX_INCREASE_MSS_DUP * mss);
+            return;
+        }
+        congestionAvoidance(ackedBytes, rtt);
+    }
+
+    protected abstract void congestionAvoidance(int ackedBytes, int rtt);
+
+    protected int minSsthresh() {
+        return 2 * mss;
+    }
+
+    @Override
+    public void onRecovered() {
+        cwnd = ssthresh;
+    }
+
+    @Override
+    public void onTimeout(int inFlight) {
+        onLoss(inFlight);
+        cwnd = mss; // the loss window
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "cwnd=" + cwnd +
+            ", ssthresh=" + ssthresh +
+            '}';
+    }
+}
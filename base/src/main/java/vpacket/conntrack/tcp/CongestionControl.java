@@ -0,0 +1,73 @@
+package vpacket.conntrack.tcp;
+
+import vproxybase.Config;
+
+/**
+ * The congestion control algorithm of one tcp connection, it maintains cwnd and ssthresh.<br>
+ * The loss detection and recovery are done by the {@link TcpEntry.SendingQueue},
+ * this object only decides how the window changes.<br>
+ * All sizes are in bytes.
+ */
+public interface CongestionControl {
+    static CongestionControl create() {
+        return create(Config.tcpCongestionControl);
+    }
+
+    /**
+     * @param name cubic or newreno
+     * @return a new congestion control object of the algorithm
+     * @throws IllegalArgumentException the algorithm is unknown
+     */
+    static CongestionControl create(String name) {
+        switch (name) {
+            case "cubic":
+                return new CubicCongestionControl();
+            case "newreno":
+                return new NewRenoCongestionControl();
+            default:
+                throw new IllegalArgumentException("invalid -DtcpCongestionControl=" + name + ", should be cubic or newreno");
+        }
+    }
+
+    /**
+     * check the config before any connection is made
+     *
+     * @throws IllegalArgumentException the config is invalid
+     */
+    static void checkConfig() {
+        create();
+    }
+
+    void init(int mss);
+
+    int getCwnd();
+
+    int getSsthresh();
+
+    /**
+     * new data is acked when it's not in loss recovery
+     *
+     * @param ackedBytes bytes newly acked
+     * @param rtt        smoothed rtt in millis, 0 if unknown
+     */
+    void onAck(int ackedBytes, int rtt);
+
+    /**
+     * a loss is detected by duplicated acks or sack, the loss recovery begins
+     *
+     * @param inFlight bytes sent but not acked
+     */
+    void onLoss(int inFlight);
+
+    /**
+     * all data sent before the loss recovery began is acked
+     */
+    void onRecovered();
+
+    /**
+     * the retransmission timer fires
+     *
+     * @param inFlight bytes sent but not acked
+     */
+    void onTimeout(int inFlight);
+}
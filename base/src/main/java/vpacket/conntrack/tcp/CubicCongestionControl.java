@@ -0,0 +1,76 @@
+package vpacket.conntrack.tcp;
+
+import vproxybase.Config;
+
+/**
+ * rfc 9438, the window grows along a cubic function of the time since the last loss,
+ * so it recovers quickly to the window before the loss, and probes slowly around it.
+ * The window never grows slower than the reno-friendly estimation.
+ */
+public class CubicCongestionControl extends AbstractCongestionControl {
+    public static final double C = 0.4;
+    public static final double BETA = 0.7;
+    private static final double ALPHA = 3 * (1 - BETA) / (1 + BETA);
+
+    private double wMax = 0; // bytes
+    private double wLastMax = 0; // bytes
+    private long epochStart = -1; // millis
+    private double k = 0; // seconds
+    private double origin = 0; // bytes
+    private double wEst = 0; // bytes
+    private double cwndFraction = 0;
+
+    @Override
+    protected void congestionAvoidance(int ackedBytes, int rtt) {
+        long now = Config.currentTimestamp;
+        if (epochStart < 0) {
+            epochStart = now;
+            if (cwnd < wMax) {
+                k = Math.cbrt((wMax - cwnd) / mss / C);
+                origin = wMax;
+            } else {
+                k = 0;
+                origin = cwnd;
+            }
+            wEst = cwnd;
+        }
+        // the window expected after one rtt
+        double t = (now - epochStart + rtt) / 1000d;
+        double target = origin + C * (t - k) * (t - k) * (t - k) * mss;
+
+        wEst += ALPHA * mss * ackedBytes / cwnd;
+        if (wEst > target) {
+            target = wEst;
+        }
+        if (target < cwnd) {
+            target = cwnd;
+        } else if (target > 1.5 * cwnd) {
+            target = 1.5 * cwnd;
+        }
+
+        cwndFraction += (target - cwnd) * ackedBytes / cwnd;
+        int inc = (int) cwndFraction;
+        cwnd += inc;
+        cwndFraction -= inc;
+    }
+
+    @Override
+    public void onLoss(int inFlight) {
+        if (cwnd < wLastMax) {
+            // fast convergence: release the bandwidth for new flows
+            wLastMax = cwnd;
+            wMax = cwnd * (1 + BETA) / 2;
+        } else {
+            wLastMax = cwnd;
+            wMax = cwnd;
+        }
+        ssthresh = Math.max((int) (cwnd * BETA), minSsthresh());
+        cwnd = ssthresh;
+        epochStart = -1;
+        cwndFraction = 0;
+    }
+
+    public double getWMax() {
+        return wMax;
+    }
+}
@@ -0,0 +1,24 @@
+package vpacket.conntrack.tcp;
+
+/**
+ * rfc 5681 and rfc 6582, the window is halved on loss and grows one mss per rtt
+ */
+public class NewRenoCongestionControl extends AbstractCongestionControl {
+    private int bytesAcked = 0;
+
+    @Override
+    protected void congestionAvoidance(int ackedBytes, int rtt) {
+        bytesAcked += ackedBytes;
+        if (bytesAcked >= cwnd) {
+            bytesAcked -= cwnd;
+            cwnd += mss;
+        }
+    }
+
+    @Override
+    public void onLoss(int inFlight) {
+        ssthresh = Math.max(inFlight / 2, minSsthresh());
+        cwnd = ssthresh;
+        bytesAcked = 0;
+    }
+}
@@ -0,0 +1,35 @@
+package vpacket.conntrack.tcp;
+
+import java.util.Objects;
+
+public class SackBlock {
+    public final long seqBeginInclusive;
+    public final long seqEndExclusive;
+
+    public SackBlock(long seqBeginInclusive, long seqEndExclusive) {
+        this.seqBeginInclusive = seqBeginInclusive;
+        this.seqEndExclusive = seqEndExclusive;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SackBlock sackBlock = (SackBlock) o;
+        return seqBeginInclusive == sackBlock.seqBeginInclusive &&
+            seqEndExclusive == sackBlock.seqEndExclusive;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(seqBeginInclusive, seqEndExclusive);
+    }
+
+    @Override
+    public String toString() {
+        return "SackBlock{" +
+            "seqBeginInclusive=" + seqBeginInclusive +
+            ", seqEndExclusive=" + seqEndExclusive +
+            '}';
+    }
+}
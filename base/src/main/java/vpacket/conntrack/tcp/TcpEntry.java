@@ -1,12 +1,14 @@
 package vpacket.conntrack.tcp;
 
 import vfd.IPPort;
+import vproxybase.Config;
 import vproxybase.selector.TimerEvent;
 import vproxybase.util.ByteArray;
 import vproxybase.util.LogType;
 import vproxybase.util.Logger;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -24,11 +26,14 @@ public class TcpEntry {
     public static final int DELAYED_ACK_TIMEOUT = 20;
     public static final int MAX_REMOTE_WINDOW_MSS_DUP = 45; // * mss
     public static final int MAX_RETRANSMISSION_AFTER_CLOSING = 7;
+    public static final int DUP_ACK_THRESHOLD = 3;
+    public static final int MAX_SACK_BLOCKS = 4; // 2 + 4 * 8 = 34 bytes, the tcp options are at most 40 bytes
 
     public final IPPort source;
     public final IPPort destination;
     private TcpState state;
     private boolean needClosing = false;
+    private boolean sackPermitted = false;
 
     public final SendingQueue sendingQueue;
     public final ReceivingQueue receivingQueue;
@@ -91,39 +96,85 @@ public class TcpEntry {
         this.needClosing = true;
     }
 
+    public boolean isSackPermitted() {
+        return sackPermitted;
+    }
+
+    public void setSackPermitted(boolean sackPermitted) {
+        this.sackPermitted = sackPermitted;
+    }
+
     public class SendingQueue {
         private final LinkedList<Segment> q = new LinkedList<>();
         private int currentSize = 0;
         private long latestSeq;
         private long ackSeq;
         private long fetchSeq;
+        private long highestSentSeq; // fetchSeq goes back to ackSeq when timeout, but this one doesn't
         private int window = 0;
         private int mss = 0;
         private int windowScale = 1;
         private boolean finAcked = false;
+        private boolean finOutstanding = false;
+
+        private CongestionControl congestionControl = CongestionControl.create();
+        private boolean cwndLimited = false; // the cwnd only grows when it limits the sending (rfc 7661)
+
+        // loss recovery, rfc 6582 (newreno) and rfc 6675 (sack)
+        // {
+        private int dupAcks = 0;
+        private boolean inRecovery = false;
+        private long recoverySeq = 0; // the recovery completes when data before this seq is acked
+        private long retransmitSeq = 0; // data before this seq is retransmitted in the current recovery
+        private boolean fastRetransmit = false; // the first retransmission of the recovery ignores cwnd
+        private final LinkedList<SackBlock> sacked = new LinkedList<>(); // ascending, above ackSeq
+        private int sackedBytes = 0;
+        // }
+
+        // rtt and rto, rfc 6298
+        // {
+        private long rttSeq = -1; // the end seq of the segment being timed, -1 for none
+        private long rttSendTime = 0;
+        private int srtt = -1;
+        private int rttvar = 0;
+        private int rto = RTO_MIN;
+        private int backoff = 0;
+        private boolean probe = false;
+        // }
 
         public SendingQueue(int seq) {
             this.latestSeq = seq;
             this.ackSeq = seq;
             this.fetchSeq = seq;
+            this.highestSentSeq = seq;
         }
 
         public void init(int window, int mss, int windowScale) {
             this.window = Math.min(MAX_REMOTE_WINDOW_MSS_DUP * mss, window);
             this.mss = mss;
             this.windowScale = windowScale;
+            this.congestionControl.init(mss);
+        }
+
+        public void setCongestionControl(CongestionControl congestionControl) {
+            this.congestionControl = congestionControl;
+            if (mss != 0) {
+                congestionControl.init(mss);
+            }
         }
 
         public void incAllSeq() {
             this.latestSeq += 1;
             this.ackSeq += 1;
             this.fetchSeq += 1;
+            this.highestSentSeq += 1;
         }
 
         public void decAllSeq() {
             this.latestSeq -= 1;
             this.ackSeq -= 1;
             this.fetchSeq -= 1;
+            this.highestSentSeq -= 1;
         }
 
         public boolean hasMoreSpace() {
@@ -172,36 +223,107 @@ public class TcpEntry {
             return len;
         }
 
+        /**
+         * @return segments allowed to be sent now: the lost segments when in loss recovery,
+         * then the new data, limited by the congestion window and the remote window
+         */
         public List<Segment> fetch() {
-            long endSeq = ackSeq + mss;
-            if (mss > window) {
-                endSeq = ackSeq + window;
-            }
-            Segment s = fetch0(ackSeq, endSeq);
-            if (s == null) {
-                return Collections.emptyList();
-            }
             List<Segment> ret = new LinkedList<>();
-            ret.add(s);
-            int total = s.data.length();
-            while (true) {
-                int len = mss;
-                if (total + len > window) {
-                    len = window - total;
+            int cwnd = congestionControl.getCwnd();
+            if (inRecovery) {
+                while (fastRetransmit || inFlight() < cwnd) {
+                    Segment s = fetchLost();
+                    if (s == null) {
+                        break;
+                    }
+                    fastRetransmit = false;
+                    ret.add(s);
                 }
+                fastRetransmit = false;
+            }
+            cwndLimited = false;
+            while (fetchSeq < latestSeq) {
+                long endSeq = Math.min(latestSeq, fetchSeq + mss);
+                if (endSeq > ackSeq + window) {
+                    if (probe && fetchSeq == ackSeq && window == 0) {
+                        endSeq = fetchSeq + 1; // zero window probe, only one byte
+                    } else {
+                        endSeq = ackSeq + window;
+                    }
+                }
+                int len = (int) (endSeq - fetchSeq);
                 if (len <= 0) {
                     break;
                 }
-                s = fetch0(ackSeq + total, ackSeq + total + len);
+                if (!probe && inFlight() + len > cwnd) {
+                    cwndLimited = true;
+                    break;
+                }
+                probe = false;
+                Segment s = fetch0(fetchSeq, endSeq);
                 if (s == null) {
                     break;
                 }
-                total += s.data.length();
+                if (rttSeq < 0 && fetchSeq >= highestSentSeq) {
+                    rttSeq = s.seqEndExclusive;
+                    rttSendTime = Config.currentTimestamp;
+                }
+                fetchSeq = s.seqEndExclusive;
+                if (fetchSeq > highestSentSeq) {
+                    highestSentSeq = fetchSeq;
+                }
                 ret.add(s);
             }
+            probe = false;
             return ret;
         }
 
+        /**
+         * @return true if FIN should be sent now
+         */
+        public boolean fetchFin() {
+            if (!needToSendFin() || finOutstanding || fetchSeq != latestSeq) {
+                return false;
+            }
+            finOutstanding = true;
+            return true;
+        }
+
+        // retrieve the next hole which is considered lost
+        private Segment fetchLost() {
+            long limit;
+            if (sacked.isEmpty()) {
+                // no sack info, only the first unacked segment is considered lost
+                limit = Math.min(ackSeq + mss, fetchSeq);
+            } else {
+                // all holes below the highest sacked seq are considered lost
+                limit = sacked.peekLast().seqEndExclusive;
+            }
+            long begin = Math.max(ackSeq, retransmitSeq);
+            long end = limit;
+            for (SackBlock b : sacked) {
+                if (b.seqEndExclusive <= begin) {
+                    continue;
+                }
+                if (b.seqBeginInclusive <= begin) {
+                    begin = b.seqEndExclusive;
+                    continue;
+                }
+                end = b.seqBeginInclusive;
+                break;
+            }
+            end = Math.min(end, begin + mss);
+            if (end <= begin) {
+                return null;
+            }
+            Segment s = fetch0(begin, end);
+            if (s == null) {
+                return null;
+            }
+            retransmitSeq = s.seqEndExclusive;
+            return s;
+        }
+
         private Segment fetch0(long begin, long endExclusive) {
             if (q.size() == 0) {
                 return null;
@@ -237,16 +359,58 @@ public class TcpEntry {
             if (arr == null) { // nothing found
                 return null;
             }
-            var seg = new Segment(begin, arr);
-            fetchSeq = seg.seqEndExclusive;
-            return seg;
+            return new Segment(begin, arr);
+        }
+
+        // the pipe of rfc 6675: bytes considered in the network
+        private int inFlight() {
+            int outstanding = (int) (fetchSeq - ackSeq);
+            // without sack, each duplicated ack means one segment left the network
+            int left = sacked.isEmpty() ? Math.min(dupAcks * mss, outstanding) : sackedBytes;
+            int lost = 0;
+            int retransmitted = 0;
+            if (inRecovery) {
+                if (sacked.isEmpty()) {
+                    lost = Math.min(mss, outstanding);
+                } else {
+                    lost = unsackedBytes(ackSeq, sacked.peekLast().seqEndExclusive);
+                }
+                retransmitted = unsackedBytes(ackSeq, retransmitSeq);
+            }
+            return Math.max(0, outstanding - left - lost + retransmitted);
+        }
+
+        private int unsackedBytes(long begin, long endExclusive) {
+            if (endExclusive <= begin) {
+                return 0;
+            }
+            long n = endExclusive - begin;
+            for (SackBlock b : sacked) {
+                long overlapBegin = Math.max(b.seqBeginInclusive, begin);
+                long overlapEnd = Math.min(b.seqEndExclusive, endExclusive);
+                if (overlapEnd > overlapBegin) {
+                    n -= overlapEnd - overlapBegin;
+                }
+            }
+            return (int) n;
         }
 
         public void ack(long seq, int window) {
+            ack(seq, window, Collections.emptyList(), true);
+        }
+
+        /**
+         * @param seq        the ack number
+         * @param window     the window field of the packet
+         * @param sackBlocks the sack blocks of the packet
+         * @param pureAck    true if the packet carries no data, only pure acks are considered duplicated
+         */
+        public void ack(long seq, int window, List<SackBlock> sackBlocks, boolean pureAck) {
             if (finAcked) { // nothing to do because the output is completely shutdown
                 return;
             }
 
+            int lastWindow = this.window;
             this.window = Math.min(MAX_REMOTE_WINDOW_MSS_DUP * mss, window * windowScale);
 
             if (state.finSent && seq == latestSeq + 1) {
@@ -254,6 +418,9 @@ public class TcpEntry {
                 fetchSeq = latestSeq + 1;
                 finAcked = true;
                 q.clear();
+                sacked.clear();
+                sackedBytes = 0;
+                inRecovery = false;
                 return;
             }
             if (latestSeq < seq) {
@@ -263,13 +430,64 @@ public class TcpEntry {
                 // is invalid, but we try our best to recover
                 seq = q.peekLast().seqEndExclusive;
             }
+            if (fetchSeq < seq) {
+                // acking data sent before the timeout
+                fetchSeq = seq;
+            }
             if (ackSeq < seq) {
-                ackSeq = seq;
+                newAck(seq);
+                addSackBlocks(sackBlocks);
+            } else if (ackSeq == seq) {
+                int newlySacked = addSackBlocks(sackBlocks);
+                if (pureAck && fetchSeq > ackSeq && (newlySacked > 0 || this.window == lastWindow)) {
+                    ++dupAcks;
+                }
             }
+            if (!inRecovery && fetchSeq > ackSeq
+                && (dupAcks >= DUP_ACK_THRESHOLD || sackedBytes > (DUP_ACK_THRESHOLD - 1) * mss)) {
+                enterRecovery();
+            }
+        }
+
+        private void newAck(long seq) {
+            int acked = (int) (seq - ackSeq);
+            ackSeq = seq;
+            backoff = 0;
+            if (rttSeq >= 0 && seq >= rttSeq) {
+                updateRtt((int) (Config.currentTimestamp - rttSendTime));
+                rttSeq = -1;
+            }
+            while (!sacked.isEmpty() && sacked.peekFirst().seqBeginInclusive < ackSeq) {
+                var b = sacked.pollFirst();
+                sackedBytes -= (int) (b.seqEndExclusive - b.seqBeginInclusive);
+                if (b.seqEndExclusive > ackSeq) {
+                    sacked.addFirst(new SackBlock(ackSeq, b.seqEndExclusive));
+                    sackedBytes += (int) (b.seqEndExclusive - ackSeq);
+                    break;
+                }
+            }
+            if (inRecovery) {
+                if (seq >= recoverySeq) {
+                    assert Logger.lowLevelDebug("loss recovery completes: " + congestionControl);
+                    inRecovery = false;
+                    dupAcks = 0;
+                    congestionControl.onRecovered();
+                } else if (dupAcks > 0) {
+                    // partial ack without sack, the segments (except the retransmitted one) were counted as duplicated acks
+                    int segments = (acked + mss - 1) / mss - 1;
+                    dupAcks = Math.max(0, dupAcks - segments);
+                }
+            } else {
+                dupAcks = 0;
+                if (cwndLimited) {
+                    congestionControl.onAck(acked, Math.max(srtt, 0));
+                }
+            }
+
             var ite = q.iterator();
             while (ite.hasNext()) {
                 var s = ite.next();
-                if (s.seqEndExclusive >= seq) {
+                if (s.seqEndExclusive > seq) {
                     break;
                 }
                 currentSize -= s.data.length();
@@ -280,6 +498,113 @@ public class TcpEntry {
             }
         }
 
+        // return bytes newly sacked
+        private int addSackBlocks(List<SackBlock> sackBlocks) {
+            int before = sackedBytes;
+            for (SackBlock b : sackBlocks) {
+                long begin = Math.max(b.seqBeginInclusive, ackSeq);
+                long end = Math.min(b.seqEndExclusive, fetchSeq);
+                if (end <= begin) {
+                    continue;
+                }
+                var ite = sacked.listIterator();
+                while (ite.hasNext()) {
+                    var x = ite.next();
+                    if (x.seqEndExclusive < begin) {
+                        continue;
+                    }
+                    if (x.seqBeginInclusive > end) {
+                        ite.previous();
+                        break;
+                    }
+                    // merge the overlapping or adjacent blocks
+                    begin = Math.min(begin, x.seqBeginInclusive);
+                    end = Math.max(end, x.seqEndExclusive);
+                    sackedBytes -= (int) (x.seqEndExclusive - x.seqBeginInclusive);
+                    ite.remove();
+                }
+                ite.add(new SackBlock(begin, end));
+                sackedBytes += (int) (end - begin);
+            }
+            return sackedBytes - before;
+        }
+
+        private void enterRecovery() {
+            assert Logger.lowLevelDebug("enter loss recovery: dupAcks=" + dupAcks + ", sacked=" + sackedBytes + ", " + congestionControl);
+            inRecovery = true;
+            recoverySeq = fetchSeq;
+            retransmitSeq = ackSeq;
+            fastRetransmit = true;
+            rttSeq = -1;
+            congestionControl.onLoss((int) (fetchSeq - ackSeq));
+        }
+
+        private void updateRtt(int rtt) {
+            if (srtt < 0) {
+                srtt = rtt;
+                rttvar = rtt / 2;
+            } else {
+                rttvar = (3 * rttvar + Math.abs(srtt - rtt)) / 4;
+                srtt = (7 * srtt + rtt) / 8;
+            }
+            rto = Math.max(RTO_MIN, Math.min(RTO_MAX, srtt + Math.max(1, 4 * rttvar)));
+        }
+
+        /**
+         * the retransmission timer fires, all outstanding data will be sent again in slow start.
+         * If nothing is outstanding, the next fetch sends one segment even if the remote window is closed.
+         */
+        public void timeout() {
+            ++backoff;
+            if (fetchSeq == ackSeq && !finOutstanding) {
+                probe = true;
+                return;
+            }
+            congestionControl.onTimeout((int) (fetchSeq - ackSeq));
+            inRecovery = false;
+            fastRetransmit = false;
+            dupAcks = 0;
+            sacked.clear();
+            sackedBytes = 0;
+            fetchSeq = ackSeq;
+            retransmitSeq = ackSeq;
+            finOutstanding = false;
+            rttSeq = -1;
+        }
+
+        /**
+         * @return millis to wait before the retransmission timer fires, with exponential backoff
+         */
+        public int getRto() {
+            if (backoff >= 20) {
+                return RTO_MAX;
+            }
+            return (int) Math.min((long) rto << backoff, RTO_MAX);
+        }
+
+        /**
+         * @return count of timeouts since the last time new data is acked
+         */
+        public int getBackoff() {
+            return backoff;
+        }
+
+        public int getSrtt() {
+            return srtt;
+        }
+
+        public CongestionControl getCongestionControl() {
+            return congestionControl;
+        }
+
+        public boolean isInRecovery() {
+            return inRecovery;
+        }
+
+        public int getSackedBytes() {
+            return sackedBytes;
+        }
+
         public int getCurrentSize() {
             return currentSize;
         }
@@ -325,6 +650,12 @@ public class TcpEntry {
         private int window = RMEM_MAX;
         private int windowScale = 64;
 
+        private final LinkedList<Segment> outOfOrder = new LinkedList<>(); // ascending, not overlapping
+        private int outOfOrderSize = 0;
+        private long lastOutOfOrderSeq = -1;
+        private int bytesNotAcked = 0;
+        private boolean ackNow = false;
+
         public ReceivingQueue(long seq) {
             this.expectingSeq = seq;
             this.ackedSeq = seq;
@@ -346,19 +677,45 @@ public class TcpEntry {
                 return;
             }
 
-            if (currentSize > RMEM_MAX) {
+            if (currentSize + outOfOrderSize > RMEM_MAX) {
                 // memory is full
                 return;
             }
             if (segment.seqBeginInclusive > expectingSeq) {
-                // missing packets
-                // we do not handle mis-ordered packets for now
+                // missing packets, keep it until the missing ones arrive
+                // rfc 5681: send a duplicated ack immediately
+                storeOutOfOrder(segment);
+                ackNow = true;
                 return;
             }
             if (segment.seqEndExclusive <= expectingSeq) {
                 // already fully received
+                ackNow = true;
                 return;
             }
+            append(segment);
+
+            // the missing packets arrive
+            boolean filled = false;
+            while (!outOfOrder.isEmpty() && outOfOrder.peekFirst().seqBeginInclusive <= expectingSeq) {
+                var s = outOfOrder.pollFirst();
+                outOfOrderSize -= s.data.length();
+                if (s.seqEndExclusive > expectingSeq) {
+                    append(s);
+                    filled = true;
+                }
+            }
+            if (filled) {
+                ackNow = true;
+            }
+
+            // run callback
+            if (connectionHandler != null) {
+                connectionHandler.readable(TcpEntry.this);
+            }
+        }
+
+        private void append(Segment segment) {
             var data = segment.data;
             if (segment.seqBeginInclusive < expectingSeq) {
                 int incr = (int) (expectingSeq - segment.seqBeginInclusive);
@@ -371,13 +728,99 @@ public class TcpEntry {
             if (window < 0) {
                 window = 0;
             }
+            // rfc 5681: ack at least every second full-sized segment
+            bytesNotAcked += data.length();
+            if (bytesNotAcked >= 2 * RCV_MSS) {
+                ackNow = true;
+            }
+        }
 
-            // run callback
-            if (connectionHandler != null) {
-                connectionHandler.readable(TcpEntry.this);
+        private void storeOutOfOrder(Segment segment) {
+            if (segment.seqBeginInclusive >= expectingSeq + RMEM_MAX - currentSize) {
+                // out of the window
+                return;
+            }
+            lastOutOfOrderSeq = segment.seqBeginInclusive;
+            // store the parts not received yet
+            long begin = segment.seqBeginInclusive;
+            long end = segment.seqEndExclusive;
+            var ite = outOfOrder.listIterator();
+            while (begin < end) {
+                Segment next = ite.hasNext() ? ite.next() : null;
+                if (next != null && next.seqEndExclusive <= begin) {
+                    continue;
+                }
+                long partEnd = next == null ? end : Math.min(end, next.seqBeginInclusive);
+                if (partEnd > begin) {
+                    var data = segment.data.sub((int) (begin - segment.seqBeginInclusive), (int) (partEnd - begin)).copy();
+                    if (next != null) {
+                        ite.previous();
+                    }
+                    ite.add(new Segment(begin, data));
+                    if (next != null) {
+                        ite.next();
+                    }
+                    outOfOrderSize += data.length();
+                }
+                if (next == null) {
+                    break;
+                }
+                begin = Math.max(begin, next.seqEndExclusive);
             }
         }
 
+        /**
+         * @return the ranges received but not continuous with the expecting seq,
+         * the range containing the most recently received segment is the first one (rfc 2018)
+         */
+        public List<SackBlock> getSackBlocks() {
+            if (outOfOrder.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<SackBlock> blocks = new ArrayList<>();
+            long begin = -1;
+            long end = -1;
+            for (Segment s : outOfOrder) {
+                if (begin != -1 && s.seqBeginInclusive == end) {
+                    end = s.seqEndExclusive;
+                    continue;
+                }
+                if (begin != -1) {
+                    blocks.add(new SackBlock(begin, end));
+                }
+                begin = s.seqBeginInclusive;
+                end = s.seqEndExclusive;
+            }
+            blocks.add(new SackBlock(begin, end));
+            for (int i = 0; i < blocks.size(); ++i) {
+                var b = blocks.get(i);
+                if (b.seqBeginInclusive <= lastOutOfOrderSeq && lastOutOfOrderSeq < b.seqEndExclusive) {
+                    blocks.remove(i);
+                    blocks.add(0, b);
+                    break;
+                }
+            }
+            if (blocks.size() > MAX_SACK_BLOCKS) {
+                blocks = blocks.subList(0, MAX_SACK_BLOCKS);
+            }
+            return blocks;
+        }
+
+        /**
+         * @return true if the ack should be sent without delay
+         */
+        public boolean needImmediateAck() {
+            return ackNow;
+        }
+
+        /**
+         * called when a packet carrying the ack is sent
+         */
+        public void ackSent() {
+            ackNow = false;
+            bytesNotAcked = 0;
+        }
+
         public ByteArray apiRead(int maxLen) {
             if (currentSize < maxLen) {
                 maxLen = currentSize;
@@ -430,7 +873,12 @@ public class TcpEntry {
         }
 
         public void resetWindow() {
-            this.window = RMEM_MAX - currentSize;
+            int newWindow = RMEM_MAX - currentSize;
+            if (window < RCV_MSS && newWindow >= RCV_MSS) {
+                // the window opens, let the remote know immediately
+                ackNow = true;
+            }
+            this.window = newWindow;
         }
 
         public int getWindowScale() {
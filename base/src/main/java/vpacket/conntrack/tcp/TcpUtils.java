@@ -9,7 +9,9 @@ import vpacket.TcpPacket;
 import vproxybase.util.ByteArray;
 import vproxybase.util.Consts;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 public class TcpUtils {
     private TcpUtils() {
@@ -20,12 +22,48 @@ public class TcpUtils {
         ret.setSrcPort(tcp.destination.getPort());
         ret.setDstPort(tcp.source.getPort());
         ret.setSeqNum(tcp.sendingQueue.getFetchSeq());
-        ret.setAckNum(tcp.receivingQueue.getAckedSeq());
+        ret.setAckNum(tcp.receivingQueue.getExpectingSeq());
         ret.setWindow(tcp.receivingQueue.getWindow() / tcp.receivingQueue.getWindowScale());
+        if (tcp.isSackPermitted()) {
+            var blocks = tcp.receivingQueue.getSackBlocks();
+            if (!blocks.isEmpty()) {
+                ret.getOptions().add(buildSackOption(blocks));
+            }
+        }
 
         return ret;
     }
 
+    public static TcpPacket.TcpOption buildSackOption(List<SackBlock> blocks) {
+        ByteArray data = ByteArray.allocate(blocks.size() * 8);
+        for (int i = 0; i < blocks.size(); ++i) {
+            var b = blocks.get(i);
+            data.int32(i * 8, (int) b.seqBeginInclusive);
+            data.int32(i * 8 + 4, (int) b.seqEndExclusive);
+        }
+        var opt = new TcpPacket.TcpOption();
+        opt.setKind(Consts.TCP_OPTION_SACK);
+        opt.setData(data);
+        return opt;
+    }
+
+    public static List<SackBlock> parseSackBlocks(TcpPacket tcpPkt) {
+        List<SackBlock> ret = null;
+        for (var opt : tcpPkt.getOptions()) {
+            if (opt.getKind() != Consts.TCP_OPTION_SACK) {
+                continue;
+            }
+            var data = opt.getData();
+            for (int i = 0; i + 8 <= data.length(); i += 8) {
+                if (ret == null) {
+                    ret = new ArrayList<>(TcpEntry.MAX_SACK_BLOCKS);
+                }
+                ret.add(new SackBlock(data.uint32(i), data.uint32(i + 4)));
+            }
+        }
+        return ret == null ? Collections.emptyList() : ret;
+    }
+
     public static AbstractIpPacket buildIpResponse(TcpEntry tcp, TcpPacket tcpPkt) {
         if (tcp.source.getAddress() instanceof IPv4) {
             var ipv4 = new Ipv4Packet();
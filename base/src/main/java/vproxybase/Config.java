@@ -107,6 +107,134 @@ public class Config {
     // -DmirrorConf=...
     public static final String mirrorConfigPath;
 
+    // the implementation of the timer queue used by event loops
+    // -DtimeQueue=wheel (default) or -DtimeQueue=heap
+    public static final String timeQueueImpl;
+
+    // size classes of the direct buffer pool
+    // -DbufferPoolSizeClasses=4096,8192,16384,24576,32768,65536
+    public static final int[] bufferPoolSizeClasses;
+
+    // max bytes of free buffers kept in the buffer pool of each event loop
+    // set to 0 to disable the pool
+    // -DbufferPoolLoopCapacity=33554432
+    public static final long bufferPoolLoopCapacity;
+
+    // entries of the decision cache of a security group in each event loop, must be a power of 2
+    // set to 0 to disable the cache
+    // -DsecurityGroupCacheSize=0
+    public static final int securityGroupCacheSize;
+
+    // threads running the delegated tasks of ssl engines (the expensive steps of handshakes)
+    // set to 0 to use the number of cpu cores
+    // -DsslHandshakeThreads=0
+    public static final int sslHandshakeThreads;
+
+    // max delegated tasks of ssl engines waiting for the handshake threads
+    // -DsslHandshakeQueueSize=1024
+    public static final int sslHandshakeQueueSize;
+
+    // what to do with a delegated task when the handshake queue is full
+    // inline: run the task on the event loop, reject: fail the handshake
+    // -DsslHandshakeOverflow=inline
+    public static final String sslHandshakeOverflow;
+
+    // max sessions cached by each ssl context of the servers (one context per cert-key of a tcp-lb)
+    // the cached sessions are used to resume the sessions of reconnecting clients
+    // set to 0 to remove the limit
+    // -DsslSessionCacheSize=20480
+    public static final int sslSessionCacheSize;
+
+    // seconds that a session (and the session ticket issued for it) can be resumed
+    // -DsslSessionTimeout=86400
+    public static final int sslSessionTimeout;
+
+    // max idle backend connections kept for each server in each event loop,
+    // the connections are reused by frontend connections of the processors which support it (e.g. http/1.x)
+    // set to 0 to disable the pool
+    // -DbackendPoolMaxIdle=16
+    public static final int backendPoolMaxIdle;
+
+    // milliseconds that an idle backend connection is kept in the pool
+    // -DbackendPoolIdleTimeout=30000
+    public static final int backendPoolIdleTimeout;
+
+    // milliseconds for the latency of a server to decay to 1/e of its value, used by the p2c-ewma method
+    // a slower sample is taken immediately, and faster samples (or no samples) make it decay
+    // -Dp2cEwmaDecayTime=10000
+    public static final int p2cEwmaDecayTime;
+
+    // max responses of recursive lookups cached by each dns server,
+    // also max pre-serialized responses of rrsets kept by each dns server
+    // set to 0 to disable the cache
+    // -DdnsServerCacheSize=65536
+    public static final int dnsServerCacheSize;
+
+    // max seconds to cache a response without answers (NXDOMAIN or NODATA),
+    // also used when the response does not carry an SOA record
+    // -DdnsServerNegativeTtl=300
+    public static final int dnsServerNegativeTtl;
+
+    // max seconds to cache a response of recursive lookups
+    // -DdnsServerCacheMaxTtl=86400
+    public static final int dnsServerCacheMaxTtl;
+
+    // whether to proxy the plain tcp connections (tcp-lb without processor and tls) with splice(2)
+    // the bytes are moved through a pipe of each direction and never enter the jvm
+    // only takes effect when using -Dvfd=posix on linux
+    // -DtcpSplice=false
+    public static final boolean tcpSplice;
+
+    // bytes of each pipe used by splice, which is only a hint, the os may use another size
+    // -DtcpSplicePipeSize=262144
+    public static final int tcpSplicePipeSize;
+
+    // the congestion control algorithm of the user-space tcp stack of the switch
+    // -DtcpCongestionControl=cubic (default) or -DtcpCongestionControl=newreno
+    public static final String tcpCongestionControl;
+
+    // whether to write the logs on a dedicated thread
+    // the logging threads only put the logs into their own lock-free buffers and never wait for the output
+    // -DlogAsync=true
+    public static final boolean logAsync;
+
+    // max logs kept in the buffer of each thread when logAsync is enabled
+    // the logs are dropped and counted when the buffer is full
+    // -DlogBufferSize=4096
+    public static final int logBufferSize;
+
+    // max logs per second of each log type on each thread when logAsync is enabled
+    // the exceeding logs are suppressed, and the count is reported every second
+    // set to 0 to disable
+    // -DlogRateLimit=100
+    public static final int logRateLimit;
+
+    // write the logs into this file instead of stdout when logAsync is enabled
+    // empty for stdout
+    // -DlogFile=
+    public static final String logFile;
+
+    // rotate the log file when it grows over this size,
+    // the file is renamed to $logFile.1, and the old $logFile.1 is renamed to $logFile.2, and so on
+    // -DlogFileMaxSize=104857600
+    public static final long logFileMaxSize;
+
+    // max rotated log files kept
+    // -DlogFileCount=5
+    public static final int logFileCount;
+
+    // write the access log records of tcp-lb and socks5-server into this file, one json object per line
+    // the records are only written for the lbs with access-log-sample greater than 0
+    // the file is rotated with logFileMaxSize and logFileCount
+    // empty for stdout
+    // -DaccessLogFile=
+    public static final String accessLogFile;
+
+    // max access log records kept in the buffer of each thread
+    // the records are dropped and counted when the buffer is full
+    // -DaccessLogBufferSize=8192
+    public static final int accessLogBufferSize;
+
     static {
         appClass = System.getProperty("eploy"); // -Deploy
         String probeConf = System.getProperty("probe", "");
@@ -117,6 +245,33 @@ public class Config {
         }
         domainWhichShouldResolve = System.getProperty("omainWhichShouldResolve", "www.qq.com");
         mirrorConfigPath = System.getProperty("mirrorConf", "");
+        timeQueueImpl = System.getProperty("timeQueue", "wheel");
+        bufferPoolSizeClasses = Arrays.stream(System.getProperty("bufferPoolSizeClasses", "4096,8192,16384,24576,32768,65536").split(","))
+            .map(String::trim).filter(s -> !s.isEmpty()).mapToInt(Integer::parseInt).sorted().toArray();
+        bufferPoolLoopCapacity = Long.parseLong(System.getProperty("bufferPoolLoopCapacity", "" + (32 * 1024 * 1024)));
+        securityGroupCacheSize = Integer.parseInt(System.getProperty("securityGroupCacheSize", "0"));
+        sslHandshakeThreads = Integer.parseInt(System.getProperty("sslHandshakeThreads", "0"));
+        sslHandshakeQueueSize = Integer.parseInt(System.getProperty("sslHandshakeQueueSize", "1024"));
+        sslHandshakeOverflow = System.getProperty("sslHandshakeOverflow", "inline");
+        sslSessionCacheSize = Integer.parseInt(System.getProperty("sslSessionCacheSize", "20480"));
+        sslSessionTimeout = Integer.parseInt(System.getProperty("sslSessionTimeout", "86400"));
+        backendPoolMaxIdle = Integer.parseInt(System.getProperty("backendPoolMaxIdle", "16"));
+        backendPoolIdleTimeout = Integer.parseInt(System.getProperty("backendPoolIdleTimeout", "30000"));
+        p2cEwmaDecayTime = Integer.parseInt(System.getProperty("p2cEwmaDecayTime", "10000"));
+        dnsServerCacheSize = Integer.parseInt(System.getProperty("dnsServerCacheSize", "65536"));
+        dnsServerNegativeTtl = Integer.parseInt(System.getProperty("dnsServerNegativeTtl", "300"));
+        dnsServerCacheMaxTtl = Integer.parseInt(System.getProperty("dnsServerCacheMaxTtl", "86400"));
+        tcpSplice = "true".equals(System.getProperty("tcpSplice", "false"));
+        tcpSplicePipeSize = Integer.parseInt(System.getProperty("tcpSplicePipeSize", "262144"));
+        tcpCongestionControl = System.getProperty("tcpCongestionControl", "cubic");
+        logAsync = !"false".equals(System.getProperty("logAsync", "true"));
+        logBufferSize = Integer.parseInt(System.getProperty("logBufferSize", "4096"));
+        logRateLimit = Integer.parseInt(System.getProperty("logRateLimit", "100"));
+        logFile = System.getProperty("logFile", "");
+        logFileMaxSize = Long.parseLong(System.getProperty("logFileMaxSize", "" + (100 * 1024 * 1024)));
+        logFileCount = Integer.parseInt(System.getProperty("logFileCount", "5"));
+        accessLogFile = System.getProperty("accessLogFile", "");
+        accessLogBufferSize = Integer.parseInt(System.getProperty("accessLogBufferSize", "8192"));
     }
 
     public static boolean supportReusePortLB() {
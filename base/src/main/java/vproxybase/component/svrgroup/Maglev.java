@@ -0,0 +1,108 @@
+package vproxybase.component.svrgroup;
+
+import java.util.Arrays;
+
+/**
+ * Maglev consistent hashing, see <a href="https://research.google/pubs/pub44824/">Maglev: A Fast and Reliable Software Network Load Balancer</a>.<br>
+ * <br>
+ * Every backend generates a permutation of the table slots from its name,
+ * and the backends take turns to fill their next preferred empty slot until the table is full.
+ * A backend with higher weight takes more turns.
+ * When a backend is added or removed, only a small portion of the slots are changed.<br>
+ * The table is built when servers/weights/health change, looking up is a single array access.
+ */
+public class Maglev {
+    // primes, the table size should be much bigger than the backend count
+    private static final int[] SIZES = {
+        251, 509, 1021, 2039, 4093, 8191, 16381, 32749, 65521, 131071, 262139, 524287, 1048573,
+    };
+    private static final int SLOTS_PER_BACKEND = 100;
+
+    private Maglev() {
+    }
+
+    /**
+     * @return a prime which is at least 100 times bigger than the backend count (if possible)
+     */
+    public static int tableSize(int backends) {
+        long expected = (long) backends * SLOTS_PER_BACKEND;
+        for (int size : SIZES) {
+            if (size >= expected) {
+                return size;
+            }
+        }
+        return SIZES[SIZES.length - 1];
+    }
+
+    /**
+     * @param names   names of the backends, which decide the permutations
+     * @param weights weights of the backends, must be positive
+     * @param size    table size, must be a prime
+     * @return the lookup table, each element is an index of the backends, or an empty array if no backends
+     */
+    public static int[] build(String[] names, int[] weights, int size) {
+        int n = names.length;
+        if (n == 0) {
+            return new int[0];
+        }
+        int[] offset = new int[n];
+        int[] skip = new int[n];
+        int[] next = new int[n];
+        int[] placed = new int[n];
+        int maxWeight = 0;
+        for (int i = 0; i < n; ++i) {
+            long h = hash(names[i]);
+            offset[i] = (int) Long.remainderUnsigned(h, size);
+            skip[i] = (int) Long.remainderUnsigned(mix(h ^ 0x9e3779b97f4a7c15L), size - 1) + 1;
+            if (weights[i] > maxWeight) {
+                maxWeight = weights[i];
+            }
+        }
+
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        int filled = 0;
+        for (long round = 1; ; ++round) {
+            for (int i = 0; i < n; ++i) {
+                // the backend with max weight fills one slot every round, others fill proportionally
+                if ((long) placed[i] * maxWeight >= round * weights[i]) {
+                    continue;
+                }
+                int c;
+                do {
+                    c = (int) ((offset[i] + (long) next[i] * skip[i]) % size);
+                    ++next[i];
+                } while (table[c] != -1);
+                table[c] = i;
+                ++placed[i];
+                if (++filled == size) {
+                    return table;
+                }
+            }
+        }
+    }
+
+    // murmur3 fmix64
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // fnv-1a over the chars, then mixed, no allocation
+    public static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); ++i) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    public static int slot(long hash, int size) {
+        return (int) Long.remainderUnsigned(hash, size);
+    }
+}
@@ -3,5 +3,36 @@ package vproxybase.component.svrgroup;
 public enum Method {
     wrr,
     wlc,
-    source, // consistent hashing with source ip address
+    source, // hashing with source ip address
+    maglev, // consistent hashing with maglev lookup table, hash key is source ip, or specified by annotation vproxy/hash-key
+    p2cEwma("p2c-ewma"), // power of two choices, the server with lower (in-flight + 1) * ewma latency / weight is chosen
+    ;
+
+    private final String str;
+
+    Method() {
+        this.str = name();
+    }
+
+    Method(String str) {
+        this.str = str;
+    }
+
+    /**
+     * @param str the name of the method used in commands and apis, e.g. p2c-ewma
+     * @throws IllegalArgumentException the method does not exist
+     */
+    public static Method of(String str) {
+        for (Method m : values()) {
+            if (m.str.equals(str)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("unknown method " + str);
+    }
+
+    @Override
+    public String toString() {
+        return str;
+    }
 }
@@ -10,6 +10,8 @@ import vproxybase.component.elgroup.EventLoopWrapper;
 import vproxybase.connection.ConnCloseHandler;
 import vproxybase.connection.Connection;
 import vproxybase.connection.NetFlowRecorder;
+import vproxybase.processor.Hint;
+import vproxybase.util.AnnotationKeys;
 import vproxybase.util.ConcurrentHashSet;
 import vproxybase.util.LogType;
 import vproxybase.util.Logger;
@@ -19,6 +21,7 @@ import vproxybase.util.exception.NotFoundException;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
@@ -42,6 +45,8 @@ public class ServerGroup {
                     toLogicDelete = null;
                 }
 
+                healthChanged();
+
                 // alert event
                 alertListeners(lsn -> lsn.up(ServerHandle.this));
                 // alert global event
@@ -55,6 +60,8 @@ public class ServerGroup {
                 Logger.info(LogType.HEALTH_CHECK_CHANGE,
                     "server " + ServerHandle.this.alias + "(" + server + ") status changed to DOWN, reason: " + reason);
 
+                healthChanged();
+
                 // alert event
                 alertListeners(lsn -> lsn.down(ServerHandle.this));
                 // alert global event
@@ -126,6 +133,7 @@ public class ServerGroup {
         private final LongAdder toRemoteBytes = new LongAdder();
 
         private ConcurrentHashSet<Connection> connMap = new ConcurrentHashSet<>();
+        private final ServerLoad load = new ServerLoad();
 
         public Object data; // the data field, not used by this lib
 
@@ -160,15 +168,36 @@ public class ServerGroup {
         public long getFromRemoteBytes() {
             return fromRemoteBytes.longValue();
         }
+
+        @Override
+        public void connectCost(long nanos) {
+            load.recordConnectCost(nanos);
+        }
+
+        @Override
+        public void firstByteCost(long nanos) {
+            load.recordFirstByteCost(nanos);
+        }
+
+        /**
+         * @return the expected milliseconds to get the first byte on a new connection, used by p2c-ewma
+         */
+        public double getEwmaLatency() {
+            return load.latency(System.nanoTime()) / 1_000_000;
+        }
         // --- END statistics ---
 
         @Override
         public void onConnClose(Connection conn) {
-            connMap.remove(conn);
+            if (connMap.remove(conn)) {
+                load.decInflight();
+            }
         }
 
         void attachConnection(Connection conn) {
-            connMap.add(conn);
+            if (connMap.add(conn)) {
+                load.incInflight();
+            }
         }
 
         public int connectionCount() {
@@ -401,6 +430,46 @@ public class ServerGroup {
     private SOURCE _sourceIPv6;
     // END fields for SOURCE
 
+    // START fields for MAGLEV
+    static class MAGLEV {
+        final ServerHandle[] table; // only contains healthy servers when the table is built
+
+        MAGLEV(ServerHandle[] table) {
+            this.table = table;
+        }
+    }
+
+    private static final MAGLEV EMPTY_MAGLEV = new MAGLEV(new ServerHandle[0]);
+    private final Object maglevLock = new Object();
+    private MAGLEV _maglev = EMPTY_MAGLEV;
+    private MAGLEV _maglevIPv4 = EMPTY_MAGLEV;
+    private MAGLEV _maglevIPv6 = EMPTY_MAGLEV;
+    private HashKey hashKey = HashKey.source;
+
+    enum HashKey {
+        source, // source ip
+        host, // host of the hint, e.g. http host header, h2 :authority, socks5 domain, dns question
+        uri, // uri of the hint
+        key, // key of the hint, e.g. the slot of a redis key
+    }
+    // END fields for MAGLEV
+
+    // START fields for P2C_EWMA
+    static class P2C {
+        final ServerHandle[] servers; // only contains healthy servers when the array is built
+
+        P2C(ServerHandle[] servers) {
+            this.servers = servers;
+        }
+    }
+
+    private static final P2C EMPTY_P2C = new P2C(new ServerHandle[0]);
+    private final Object p2cLock = new Object();
+    private P2C _p2c = EMPTY_P2C;
+    private P2C _p2cIPv4 = EMPTY_P2C;
+    private P2C _p2cIPv6 = EMPTY_P2C;
+    // END fields for P2C_EWMA
+
     public ServerGroup(String alias,
                        EventLoopGroup eventLoopGroup,
                        HealthCheckConfig healthCheckConfig,
@@ -419,12 +488,24 @@ public class ServerGroup {
      * @return null if not found any healthy
      */
     public SvrHandleConnector next(IPPort source) {
-        if (method == Method.wrr) {
+        return next(source, null);
+    }
+
+    /**
+     * @param hint the hint may provide the hash key, may be null
+     * @return null if not found any healthy
+     */
+    public SvrHandleConnector next(IPPort source, Hint hint) {
+        if (method == Method.maglev) {
+            return maglevGet(_maglev, maglevHash(source, hint));
+        } else if (method == Method.wrr) {
             return wrrNext();
         } else if (method == Method.wlc) {
             return wlcNext();
         } else if (method == Method.source) {
             return sourceHashGet(source.getAddress());
+        } else if (method == Method.p2cEwma) {
+            return p2cNext(_p2c);
         } else {
             Logger.shouldNotHappen("unsupported method " + method);
             // use wrr instead
@@ -433,12 +514,24 @@ public class ServerGroup {
     }
 
     public SvrHandleConnector nextIPv4(IPPort source) {
+        return nextIPv4(source, null);
+    }
+
+    /**
+     * @param hint the hint may provide the hash key, may be null
+     * @return null if not found any healthy IPv4 server
+     */
+    public SvrHandleConnector nextIPv4(IPPort source, Hint hint) {
         if (method == Method.wrr) {
             return wrrNextIPv4();
         } else if (method == Method.wlc) {
             return wlcNextIPv4();
         } else if (method == Method.source) {
             return sourceHashGetIPv4(source.getAddress());
+        } else if (method == Method.maglev) {
+            return maglevGet(_maglevIPv4, maglevHash(source, hint));
+        } else if (method == Method.p2cEwma) {
+            return p2cNext(_p2cIPv4);
         } else {
             Logger.shouldNotHappen("unsupported method " + method);
             // use wrr instead
@@ -447,12 +540,24 @@ public class ServerGroup {
     }
 
     public SvrHandleConnector nextIPv6(IPPort source) {
+        return nextIPv6(source, null);
+    }
+
+    /**
+     * @param hint the hint may provide the hash key, may be null
+     * @return null if not found any healthy IPv6 server
+     */
+    public SvrHandleConnector nextIPv6(IPPort source, Hint hint) {
         if (method == Method.wrr) {
             return wrrNextIPv6();
         } else if (method == Method.wlc) {
             return wlcNextIPv6();
         } else if (method == Method.source) {
             return sourceHashGetIPv6(source.getAddress());
+        } else if (method == Method.maglev) {
+            return maglevGet(_maglevIPv6, maglevHash(source, hint));
+        } else if (method == Method.p2cEwma) {
+            return p2cNext(_p2cIPv6);
         } else {
             Logger.shouldNotHappen("unsupported method " + method);
             // use wrr instead
@@ -460,6 +565,91 @@ public class ServerGroup {
         }
     }
 
+    private long maglevHash(IPPort source, Hint hint) {
+        if (hint != null) {
+            String key = null;
+            if (hashKey == HashKey.host) {
+                key = hint.getHost();
+            } else if (hashKey == HashKey.uri) {
+                key = hint.getUri();
+            } else if (hashKey == HashKey.key) {
+                key = hint.getKey();
+            }
+            if (key != null) {
+                return Maglev.hash(key);
+            }
+        }
+        return Maglev.mix(source.getAddress().hashCode());
+    }
+
+    private SvrHandleConnector maglevGet(MAGLEV maglev, long hash) {
+        ServerHandle[] table = maglev.table;
+        if (table.length == 0) {
+            return null;
+        }
+        int idx = Maglev.slot(hash, table.length);
+        ServerHandle h = table[idx];
+        if (h.healthy) {
+            return h.makeConnector();
+        }
+        // the table is not rebuilt yet, use the next healthy server in the table
+        for (int i = 1; i < table.length; ++i) {
+            h = table[(idx + i) % table.length];
+            if (h.healthy) {
+                return h.makeConnector();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * P2C-EWMA algorithm:
+     * pick two different servers randomly, and use the one with lower cost
+     *   cost = (in-flight + 1) * (latency + 1) / weight
+     * where latency is the peak-ewma of connect cost plus first byte cost, see ServerLoad.
+     * A slow server is only chosen when the other sampled server is even more loaded,
+     * and the choice takes O(1) time regardless of the number of servers.
+     * To avoid division, costA / WA < costB / WB is calculated as costA * WB < costB * WA
+     */
+    private SvrHandleConnector p2cNext(P2C p2c) {
+        ServerHandle[] servers = p2c.servers;
+        int n = servers.length;
+        if (n == 0) {
+            return null;
+        }
+        if (n == 1) {
+            ServerHandle h = servers[0];
+            return h.healthy ? h.makeConnector() : null;
+        }
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int a = rand.nextInt(n);
+        int b = rand.nextInt(n - 1);
+        if (b >= a) {
+            ++b;
+        }
+        ServerHandle ha = servers[a];
+        ServerHandle hb = servers[b];
+        if (!ha.healthy || !hb.healthy) {
+            if (ha.healthy) {
+                return ha.makeConnector();
+            }
+            if (hb.healthy) {
+                return hb.makeConnector();
+            }
+            // the array is not rebuilt yet, use any healthy server
+            for (ServerHandle h : servers) {
+                if (h.healthy) {
+                    return h.makeConnector();
+                }
+            }
+            return null;
+        }
+        long now = System.nanoTime();
+        double costA = ha.load.cost(now) * hb.weight;
+        double costB = hb.load.cost(now) * ha.weight;
+        return (costA <= costB ? ha : hb).makeConnector();
+    }
+
     private SvrHandleConnector sourceHashGet(IP source) {
         byte[] bytes = source.getAddress();
         return sourceHashGet(_source, _source.hash(bytes), 0);
@@ -608,6 +798,68 @@ public class ServerGroup {
         wrrReset();
         wlcReset();
         sourceReset();
+        maglevReset();
+        p2cReset();
+    }
+
+    private void healthChanged() {
+        if (method == Method.maglev) {
+            maglevReset();
+        } else if (method == Method.p2cEwma) {
+            p2cReset();
+        }
+    }
+
+    private void p2cReset() {
+        if (method != Method.p2cEwma) {
+            _p2c = EMPTY_P2C;
+            _p2cIPv4 = EMPTY_P2C;
+            _p2cIPv6 = EMPTY_P2C;
+            return;
+        }
+        // same as maglev, make sure the last built array uses the latest health states
+        synchronized (p2cLock) {
+            List<ServerHandle> svrs = servers.stream().filter(s -> s.weight > 0 && s.healthy).collect(Collectors.toList());
+            _p2c = new P2C(svrs.toArray(new ServerHandle[0]));
+            _p2cIPv4 = new P2C(svrs.stream().filter(s -> s.server.getAddress() instanceof IPv4).toArray(ServerHandle[]::new));
+            _p2cIPv6 = new P2C(svrs.stream().filter(s -> s.server.getAddress() instanceof IPv6).toArray(ServerHandle[]::new));
+        }
+    }
+
+    private void maglevReset() {
+        if (method != Method.maglev) {
+            // the table is big, only build it when it's used
+            _maglev = EMPTY_MAGLEV;
+            _maglevIPv4 = EMPTY_MAGLEV;
+            _maglevIPv6 = EMPTY_MAGLEV;
+            return;
+        }
+        // the health check callbacks may run on different threads
+        // lock to make sure the last built table uses the latest states
+        synchronized (maglevLock) {
+            List<ServerHandle> svrs = servers.stream().filter(s -> s.weight > 0 && s.healthy).collect(Collectors.toList());
+            _maglev = maglevReset(svrs);
+            _maglevIPv4 = maglevReset(svrs.stream().filter(s -> s.server.getAddress() instanceof IPv4).collect(Collectors.toList()));
+            _maglevIPv6 = maglevReset(svrs.stream().filter(s -> s.server.getAddress() instanceof IPv6).collect(Collectors.toList()));
+        }
+    }
+
+    private MAGLEV maglevReset(List<ServerHandle> servers) {
+        if (servers.isEmpty()) {
+            return EMPTY_MAGLEV;
+        }
+        String[] names = new String[servers.size()];
+        int[] weights = new int[servers.size()];
+        for (int i = 0; i < servers.size(); ++i) {
+            names[i] = servers.get(i).alias;
+            weights[i] = servers.get(i).weight;
+        }
+        int[] idxTable = Maglev.build(names, weights, Maglev.tableSize(servers.size()));
+        ServerHandle[] table = new ServerHandle[idxTable.length];
+        for (int i = 0; i < idxTable.length; ++i) {
+            table[i] = servers.get(idxTable[i]);
+        }
+        return new MAGLEV(table);
     }
 
     private int gcd(int a, int b) {
@@ -803,12 +1055,27 @@ public class ServerGroup {
         }
         this.annotations = annotations;
 
+        String key = annotations.get(AnnotationKeys.ServerGroup_HashKey);
+        HashKey hashKey = HashKey.source;
+        if (key != null) {
+            try {
+                hashKey = HashKey.valueOf(key);
+            } catch (IllegalArgumentException e) {
+                Logger.warn(LogType.IMPROPER_USE, "invalid " + AnnotationKeys.ServerGroup_HashKey + " in server-group " + alias + ": " + key + ", use source instead");
+            }
+        }
+        this.hashKey = hashKey;
+
         // set hc client annotations
         if (annotations.isEmpty()) {
             annotatedHcConfig.clear();
         } else {
             annotatedHcConfig.set(annotations);
         }
+
+        for (ServerListener lsn : serverListeners) {
+            lsn.annotationsChanged(this);
+        }
     }
 
     public synchronized ServerHandle add(String alias, IPPort server, int weight) throws AlreadyExistException {
@@ -8,4 +8,7 @@ public interface ServerListener {
     void start(ServerGroup.ServerHandle server);
 
     void stop(ServerGroup.ServerHandle server);
+
+    default void annotationsChanged(ServerGroup group) {
+    }
 }
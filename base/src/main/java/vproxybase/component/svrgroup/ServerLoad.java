@@ -0,0 +1,105 @@
+package vproxybase.component.svrgroup;
+
+import vproxybase.Config;
+import vproxybase.selector.SelectorEventLoop;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load of a server, used by the p2c-ewma method.<br>
+ * The in-flight connections are counted on stripes chosen by the event loop, so loops do not
+ * contend on one counter. A connection may be closed on another stripe than it's counted,
+ * only the sum of all stripes is meaningful.<br>
+ * The latencies are peak-ewma: a slower sample is taken immediately, and faster samples
+ * (or no samples) make the value decay with time constant {@link Config#p2cEwmaDecayTime}.
+ * The decay lets a server which became fast again receive traffic again.
+ */
+class ServerLoad {
+    private static final int STRIPES = stripes();
+    private static final int PAD = 8; // 8 longs, so that each stripe takes a cache line
+    private static final double TAU = Config.p2cEwmaDecayTime * 1_000_000d;
+
+    private final AtomicLongArray inflight = new AtomicLongArray(STRIPES * PAD);
+    private final PeakEWMA connectCost = new PeakEWMA();
+    private final PeakEWMA firstByteCost = new PeakEWMA();
+
+    private static int stripes() {
+        int n = Runtime.getRuntime().availableProcessors();
+        int s = 1;
+        while (s < n) {
+            s <<= 1;
+        }
+        return s;
+    }
+
+    private static int stripe() {
+        SelectorEventLoop loop = SelectorEventLoop.current();
+        int i = loop == null ? (int) Thread.currentThread().getId() : loop.index;
+        return (i & (STRIPES - 1)) * PAD;
+    }
+
+    void incInflight() {
+        inflight.incrementAndGet(stripe());
+    }
+
+    void decInflight() {
+        inflight.decrementAndGet(stripe());
+    }
+
+    long inflight() {
+        long n = 0;
+        for (int i = 0; i < STRIPES; ++i) {
+            n += inflight.get(i * PAD);
+        }
+        return Math.max(n, 0);
+    }
+
+    void recordConnectCost(long nanos) {
+        connectCost.update(nanos, System.nanoTime());
+    }
+
+    void recordFirstByteCost(long nanos) {
+        firstByteCost.update(nanos, System.nanoTime());
+    }
+
+    /**
+     * @return the expected nanoseconds to get the first byte on a new connection
+     */
+    double latency(long now) {
+        return connectCost.get(now) + firstByteCost.get(now);
+    }
+
+    /**
+     * @return (in-flight + 1) * latency, both are added by 1 so that idle or unmeasured servers are still comparable
+     */
+    double cost(long now) {
+        return (inflight() + 1) * (latency(now) + 1);
+    }
+
+    private static class PeakEWMA {
+        // the two fields are not updated atomically,
+        // updates racing from different loops may lose a sample, which is acceptable for balancing
+        private volatile double value = 0;
+        private volatile long stamp = 0;
+
+        void update(long sample, long now) {
+            double v = value;
+            if (sample > v) {
+                v = sample;
+            } else {
+                double w = Math.exp(-Math.max(now - stamp, 0) / TAU);
+                v = v * w + sample * (1 - w);
+            }
+            value = v;
+            stamp = now;
+        }
+
+        double get(long now) {
+            double v = value;
+            if (v == 0) {
+                return 0;
+            }
+            return v * Math.exp(-Math.max(now - stamp, 0) / TAU);
+        }
+    }
+}
@@ -50,4 +50,8 @@ public class SvrHandleConnector extends Connector {
     public Object getData() {
         return serverHandle.data;
     }
+
+    public ServerGroup.ServerHandle getServerHandle() {
+        return serverHandle;
+    }
 }
@@ -16,6 +16,11 @@ import java.net.StandardSocketOptions;
 public class ConnectableConnection extends Connection {
     Connector connector; // maybe null, only for recording purpose, will not be used by the connection lib
 
+    // the connection is handled in a single thread, so no need to synchronize
+    private final long connectStartNanos = System.nanoTime();
+    private long firstToRemoteNanos = 0; // 0 means nothing sent yet
+    private boolean firstByteRecorded = false;
+
     public Connector getConnector() {
         return connector;
     }
@@ -81,6 +86,37 @@ public class ConnectableConnection extends Connection {
         _id = genId();
     }
 
+    // called when the connection is established
+    void recordConnectCost() {
+        long cost = System.nanoTime() - connectStartNanos;
+        for (NetFlowRecorder nfr : netFlowRecorders) {
+            nfr.connectCost(cost);
+        }
+    }
+
+    @Override
+    public void incToRemoteBytes(long bytes) {
+        if (firstToRemoteNanos == 0) {
+            firstToRemoteNanos = System.nanoTime();
+        }
+        super.incToRemoteBytes(bytes);
+    }
+
+    @Override
+    public void incFromRemoteBytes(long bytes) {
+        if (!firstByteRecorded) {
+            firstByteRecorded = true;
+            // the remote speaks first, the cost is meaningless
+            if (firstToRemoteNanos != 0) {
+                long cost = System.nanoTime() - firstToRemoteNanos;
+                for (NetFlowRecorder nfr : netFlowRecorders) {
+                    nfr.firstByteCost(cost);
+                }
+            }
+        }
+        super.incFromRemoteBytes(bytes);
+    }
+
     @Override
     protected String genId() {
         return (local == null ? "[unbound]" :
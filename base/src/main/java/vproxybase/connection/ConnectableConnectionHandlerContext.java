@@ -9,4 +9,9 @@ public class ConnectableConnectionHandlerContext extends ConnectionHandlerContex
         this.connection = connection;
         this.handler = handler;
     }
+
+    void setHandler(ConnectableConnectionHandler handler) {
+        super.handler = handler;
+        this.handler = handler;
+    }
 }
@@ -154,7 +154,7 @@ public class Connection implements NetFlowRecorder {
     private long toRemoteBytes = 0; // out bytes
     private long fromRemoteBytes = 0; // in bytes
     // since it seldom (in most cases: never) changes, so let's just use a copy on write list
-    private final List<NetFlowRecorder> netFlowRecorders = new CopyOnWriteArrayList<>();
+    /*private let ConnectableConnection have access*/ final List<NetFlowRecorder> netFlowRecorders = new CopyOnWriteArrayList<>();
     private final List<ConnCloseHandler> connCloseHandlers = new CopyOnWriteArrayList<>();
 
     private /*only modified in UNSAFE methods*/ RingBuffer inBuffer;
@@ -4,7 +4,7 @@ public class ConnectionHandlerContext {
     public final NetEventLoop eventLoop;
     public final Connection connection;
     public final Object attachment;
-    final ConnectionHandler handler;
+    ConnectionHandler handler;
 
     ConnectionHandlerContext(NetEventLoop eventLoop, Connection connection, Object attachment, ConnectionHandler handler) {
         this.eventLoop = eventLoop;
@@ -103,6 +103,20 @@ public class NetEventLoop {
         }
     }
 
+    /**
+     * replace the handler of a connectable connection registered in this event loop,
+     * events after calling this method will be fired on the new handler,
+     * and the old handler will not be notified.<br>
+     * it's used to transfer a connection between handlers,
+     * removing and registering the channel again does not work before the next select
+     */
+    public void replaceHandler(ConnectableConnection connection, ConnectableConnectionHandler handler) throws IOException {
+        if (connection.getEventLoop() != this)
+            throw new IOException("connection " + connection + " is not registered to this event loop");
+        ConnectableConnectionHandlerContext cctx = (ConnectableConnectionHandlerContext) selectorEventLoop.getAtt(connection.channel);
+        cctx.setHandler(handler);
+    }
+
     @ThreadSafe
     public void addConnectableConnection(ConnectableConnection connection, Object attachment, ConnectableConnectionHandler handler) throws IOException {
         boolean fireConnected = false; // whether to fire `connected` event after registering
@@ -330,6 +344,12 @@ class HandlerForConnection implements Handler<SocketFD> {
             return;
         }
         if (read == 0) {
+            if (cctx.connection.getInBuffer().free() == 0) {
+                // the buffer found itself full when storing, e.g. a pipe with all pages occupied
+                // wait for the writableET of the buffer to add READ back
+                ctx.rmOps(EventSet.read());
+                return;
+            }
             Logger.shouldNotHappen("read nothing, the event should not be fired");
             return;
         }
@@ -451,6 +471,7 @@ class HandlerForConnectableConnection extends HandlerForConnection {
         if (!connected) {
             Logger.shouldNotHappen("the connection is not connected, should not fire the event");
         }
+        cctx.connection.recordConnectCost();
 
         EventSet ops = EventSet.read();
         if (cctx.connection.getOutBuffer().used() > 0) {
@@ -4,4 +4,21 @@ public interface NetFlowRecorder {
     void incToRemoteBytes(long bytes);
 
     void incFromRemoteBytes(long bytes);
+
+    /**
+     * only fired by tcp connectable connections
+     *
+     * @param nanos time cost from starting to connect to the connection being established
+     */
+    default void connectCost(long nanos) {
+    }
+
+    /**
+     * only fired by connectable connections, and only once for each connection.
+     * not fired if the remote sends data before anything is sent to it
+     *
+     * @param nanos time cost from the first bytes sent to the remote to the first bytes received from it
+     */
+    default void firstByteCost(long nanos) {
+    }
 }
@@ -5,6 +5,7 @@ import vproxybase.processor.dubbo.DubboProcessor;
 import vproxybase.processor.http.GeneralHttpProcessor;
 import vproxybase.processor.http1.HttpProcessor;
 import vproxybase.processor.http2.Http2Processor;
+import vproxybase.processor.redis.RedisProcessor;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -20,6 +21,7 @@ public class DefaultProcessorRegistry implements ProcessorRegistry {
         register(new DubboProcessor());
         register(new HttpProcessor());
         register(new GeneralHttpProcessor());
+        register(new RedisProcessor());
     }
 
     public static DefaultProcessorRegistry getInstance() {
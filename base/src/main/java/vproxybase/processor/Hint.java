@@ -9,6 +9,7 @@ public class Hint {
     private final String host;
     private final String port;
     private final String uri;
+    private final String key; // a key for hashing retrieved by the processor, e.g. the slot of a redis key
 
     private String formatHost(String s) {
         if (s == null) {
@@ -32,12 +33,14 @@ public class Hint {
         this.host = formatHost(host);
         this.port = null;
         this.uri = null;
+        this.key = null;
     }
 
     public Hint(String host, int port) {
         this.host = formatHost(host);
         this.port = "" + port;
         this.uri = null;
+        this.key = null;
     }
 
     private String formatUri(String s) {
@@ -61,21 +64,38 @@ public class Hint {
         this.host = formatHost(host);
         this.port = null;
         this.uri = formatUri(uri);
+        this.key = null;
     }
 
     public Hint(String host, int port, String uri) {
         this.host = formatHost(host);
         this.port = "" + port;
         this.uri = formatUri(uri);
+        this.key = null;
     }
 
-    private static final int HOST_SHIFT = 10;
-    private static final int HOST_EXACT_MATCH = 3;
-    private static final int HOST_SUFFIX_MATCH = 2;
-    private static final int HOST_WILDCARD_MATCH = 1;
-    private static final int URI_SHIFT = 0;
-    private static final int URI_MAX_MATCH = 1023;
-    private static final int URI_WILDCARD_MATCH = 1;
+    private Hint(String host, String port, String uri, String key) {
+        this.host = host;
+        this.port = port;
+        this.uri = uri;
+        this.key = key;
+    }
+
+    /**
+     * a hint without host and uri, only carrying a key for hashing,
+     * which can be used by server-groups with method maglev and annotation vproxy/hash-key=key
+     */
+    public static Hint ofKey(String key) {
+        return new Hint(null, null, null, key);
+    }
+
+    static final int HOST_SHIFT = 10;
+    static final int HOST_EXACT_MATCH = 3;
+    static final int HOST_SUFFIX_MATCH = 2;
+    static final int HOST_WILDCARD_MATCH = 1;
+    static final int URI_SHIFT = 0;
+    static final int URI_MAX_MATCH = 1023;
+    static final int URI_WILDCARD_MATCH = 1;
 
     @SuppressWarnings("unchecked")
     public int matchLevel(Map<String, String>... annotations) {
@@ -143,12 +163,29 @@ public class Hint {
         return level;
     }
 
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
     @Override
     public String toString() {
         return "Hint{" +
             "host=" + host +
             ", port=" + port +
             ", uri=" + uri +
+            ", key=" + key +
             '}';
     }
 }
@@ -0,0 +1,290 @@
+package vproxybase.processor;
+
+import vproxybase.util.AnnotationKeys;
+
+import java.util.*;
+
+/**
+ * An immutable index compiled from the hint annotations of a list of values,
+ * {@link #search(Hint)} returns the same value as calling {@link Hint#matchLevel(Map[])}
+ * on every value and choosing the first one with the max level, but without scanning all of them.<br>
+ * <br>
+ * Values are grouped by the host annotation:
+ * exact hosts are stored in a hash map, and the same groups are linked into a trie of
+ * reversed domain labels, so all suffix matches are found by walking the labels of the input host once.
+ * Each group holds a char trie of the uri annotations, the longest prefix match is found by
+ * walking the input uri once.<br>
+ * Use {@link Builder} to create the index, and re-build it when the values or annotations change.
+ */
+public class HintIndex<T> {
+    private static final HintIndex<?> EMPTY = new Builder<>().build();
+
+    private final Map<String, Bucket<T>> exactHosts;
+    private final LabelNode<T> suffixRoot;
+    private final Bucket<T> wildcardHost; // host = *
+    private final Bucket<T> anyHost; // all values with uri annotation, used when no host matches
+
+    private HintIndex(Builder<T> builder) {
+        this.exactHosts = builder.exactHosts;
+        this.suffixRoot = builder.suffixRoot;
+        this.wildcardHost = builder.exactHosts.get("*");
+        this.anyHost = builder.anyHost;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> HintIndex<T> empty() {
+        return (HintIndex<T>) EMPTY;
+    }
+
+    /**
+     * @return the best matched value, or null if nothing matches
+     */
+    public T search(Hint hint) {
+        Result<T> res = new Result<>();
+        String host = hint.getHost();
+        if (host != null) {
+            Bucket<T> exact = exactHosts.get(host);
+            if (exact != null) {
+                exact.search(hint, Hint.HOST_EXACT_MATCH, res);
+                if (res.value != null) {
+                    return res.value;
+                }
+            }
+
+            // walk the labels from right to left, every node before the last label is a suffix
+            LabelNode<T> node = suffixRoot;
+            int end = host.length();
+            while (true) {
+                int dot = host.lastIndexOf('.', end - 1);
+                if (dot == -1) {
+                    break; // the full host, which is the exact match
+                }
+                node = node.children.get(host.substring(dot + 1, end));
+                if (node == null) {
+                    break;
+                }
+                if (node.bucket != null) {
+                    node.bucket.search(hint, Hint.HOST_SUFFIX_MATCH, res);
+                }
+                end = dot;
+            }
+            if (res.value != null) {
+                return res.value;
+            }
+
+            if (wildcardHost != null) {
+                wildcardHost.search(hint, Hint.HOST_WILDCARD_MATCH, res);
+                if (res.value != null) {
+                    return res.value;
+                }
+            }
+        }
+        // host not matched, only uri can match
+        anyHost.search(hint, 0, res);
+        return res.value;
+    }
+
+    private static class Entry<T> {
+        final T value;
+        final int order;
+        final String port;
+
+        Entry(T value, int order, String port) {
+            this.value = value;
+            this.order = order;
+            this.port = port;
+        }
+
+        boolean portMatches(Hint hint) {
+            String p = hint.getPort();
+            return p == null || port == null || p.equals(port);
+        }
+    }
+
+    private static class Result<T> {
+        T value;
+        int level;
+        int order;
+
+        void offer(Entry<T> e, int level) {
+            if (level <= 0) {
+                return;
+            }
+            if (value == null || level > this.level || (level == this.level && e.order < this.order)) {
+                this.value = e.value;
+                this.level = level;
+                this.order = e.order;
+            }
+        }
+    }
+
+    private static class LabelNode<T> {
+        final Map<String, LabelNode<T>> children = new HashMap<>();
+        Bucket<T> bucket;
+    }
+
+    private static class UriNode<T> {
+        char[] keys = new char[0];
+        UriNode<T>[] children = newNodes(0);
+        List<Entry<T>> entries; // values which uri annotation ends at this node
+
+        @SuppressWarnings("unchecked")
+        private static <T> UriNode<T>[] newNodes(int n) {
+            return new UriNode[n];
+        }
+
+        UriNode<T> child(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            if (idx < 0) {
+                return null;
+            }
+            return children[idx];
+        }
+
+        UriNode<T> getOrCreateChild(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            idx = -idx - 1;
+            char[] newKeys = new char[keys.length + 1];
+            UriNode<T>[] newChildren = newNodes(children.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, idx);
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(keys, idx, newKeys, idx + 1, keys.length - idx);
+            System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+            UriNode<T> n = new UriNode<>();
+            newKeys[idx] = c;
+            newChildren[idx] = n;
+            keys = newKeys;
+            children = newChildren;
+            return n;
+        }
+    }
+
+    // values with the same host annotation
+    private static class Bucket<T> {
+        final List<Entry<T>> all = new ArrayList<>(); // in order
+        final UriNode<T> uriRoot = new UriNode<>();
+        final List<Entry<T>> uriWildcard = new ArrayList<>(); // uri = *
+
+        void add(Entry<T> e, String uri) {
+            all.add(e);
+            if (uri == null) {
+                return;
+            }
+            UriNode<T> node = uriRoot;
+            for (int i = 0; i < uri.length(); ++i) {
+                node = node.getOrCreateChild(uri.charAt(i));
+            }
+            if (node.entries == null) {
+                node.entries = new ArrayList<>(1);
+            }
+            node.entries.add(e);
+            if (uri.equals("*")) {
+                uriWildcard.add(e);
+            }
+        }
+
+        void search(Hint hint, int hostLevel, Result<T> res) {
+            int base = hostLevel << Hint.HOST_SHIFT;
+            String uri = hint.getUri();
+            if (uri != null) {
+                // every node on the path is a prefix of the input uri
+                UriNode<T> node = uriRoot;
+                for (int i = 0; node != null; ++i) {
+                    if (node.entries != null) {
+                        int uriLevel = Math.min(i + Hint.URI_WILDCARD_MATCH, Hint.URI_MAX_MATCH);
+                        for (Entry<T> e : node.entries) {
+                            if (e.portMatches(hint)) {
+                                res.offer(e, base + (uriLevel << Hint.URI_SHIFT));
+                            }
+                        }
+                    }
+                    if (i == uri.length()) {
+                        break;
+                    }
+                    node = node.child(uri.charAt(i));
+                }
+                for (Entry<T> e : uriWildcard) {
+                    if (e.portMatches(hint)) {
+                        res.offer(e, base + (Hint.URI_WILDCARD_MATCH << Hint.URI_SHIFT));
+                    }
+                }
+            }
+            if (hostLevel == 0) {
+                return;
+            }
+            // uri not matched, the first value which port matches
+            for (Entry<T> e : all) {
+                if (e.portMatches(hint)) {
+                    res.offer(e, base);
+                    break;
+                }
+            }
+        }
+    }
+
+    public static class Builder<T> {
+        private final Map<String, Bucket<T>> exactHosts = new HashMap<>();
+        private final LabelNode<T> suffixRoot = new LabelNode<>();
+        private final Bucket<T> anyHost = new Bucket<>();
+        private int order = 0;
+
+        /**
+         * @param annotations annotations of the value, the former ones take precedence, same as {@link Hint#matchLevel(Map[])}
+         */
+        @SafeVarargs
+        public final Builder<T> add(T value, Map<String, String>... annotations) {
+            String annoHost = null;
+            String annoPort = null;
+            String annoUri = null;
+            for (Map<String, String> a : annotations) {
+                if (a.isEmpty()) {
+                    continue;
+                }
+                if (annoHost == null) {
+                    annoHost = a.get(AnnotationKeys.ServerGroup_HintHost);
+                }
+                if (annoPort == null) {
+                    annoPort = a.get(AnnotationKeys.ServerGroup_HintPort);
+                }
+                if (annoUri == null) {
+                    annoUri = a.get(AnnotationKeys.ServerGroup_HintUri);
+                }
+            }
+            int order = this.order++;
+            if (annoHost == null && annoUri == null) {
+                return this; // the match level is always 0
+            }
+            Entry<T> e = new Entry<>(value, order, annoPort);
+            if (annoHost != null) {
+                Bucket<T> bucket = exactHosts.get(annoHost);
+                if (bucket == null) {
+                    bucket = new Bucket<>();
+                    exactHosts.put(annoHost, bucket);
+                    LabelNode<T> node = suffixRoot;
+                    int end = annoHost.length();
+                    while (true) {
+                        int dot = annoHost.lastIndexOf('.', end - 1);
+                        node = node.children.computeIfAbsent(annoHost.substring(dot + 1, end), k -> new LabelNode<>());
+                        if (dot == -1) {
+                            break;
+                        }
+                        end = dot;
+                    }
+                    node.bucket = bucket;
+                }
+                bucket.add(e, annoUri);
+            }
+            if (annoUri != null) {
+                anyHost.add(e, annoUri);
+            }
+            return this;
+        }
+
+        public HintIndex<T> build() {
+            return new HintIndex<>(this);
+        }
+    }
+}
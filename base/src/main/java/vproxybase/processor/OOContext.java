@@ -1,5 +1,7 @@
 package vproxybase.processor;
 
+import vproxybase.util.ByteArray;
+
 public abstract class OOContext<SUB extends OOSubContext> extends Processor.Context {
     public OOContext() {
     }
@@ -9,4 +11,8 @@ public abstract class OOContext<SUB extends OOSubContext> extends Processor.Cont
     public abstract Hint connectionHint(SUB front);
 
     public abstract void chosen(SUB front, SUB subCtx);
+
+    public ByteArray beforeSending(SUB front, SUB subCtx, ByteArray data) throws Exception {
+        return data;
+    }
 }
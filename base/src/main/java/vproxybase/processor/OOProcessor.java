@@ -48,6 +48,26 @@ public abstract class OOProcessor<CTX extends OOContext<SUB>, SUB extends OOSubC
         ctx.chosen(front, sub);
     }
 
+    @Override
+    public ByteArray beforeSending(CTX ctx, SUB front, SUB sub, ByteArray data) throws Exception {
+        return ctx.beforeSending(front, sub, data);
+    }
+
+    @Override
+    public boolean hasBufferedFrames(CTX ctx, SUB front) {
+        return front.hasBufferedFrames();
+    }
+
+    @Override
+    public boolean reusable(CTX ctx, SUB back) {
+        return back.reusable();
+    }
+
+    @Override
+    public boolean closeFrontend(CTX ctx, SUB front) {
+        return front.closeFrontend();
+    }
+
     @Override
     public ByteArray connected(CTX ctx, SUB sub) {
         return sub.connected();
@@ -25,4 +25,16 @@ public abstract class OOSubContext<CTX extends OOContext> extends Processor.SubC
     public abstract void proxyDone();
 
     public abstract ByteArray connected();
+
+    public boolean hasBufferedFrames() {
+        return false;
+    }
+
+    public boolean reusable() {
+        return false;
+    }
+
+    public boolean closeFrontend() {
+        return false;
+    }
 }
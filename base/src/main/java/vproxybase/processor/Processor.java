@@ -2,10 +2,16 @@ package vproxybase.processor;
 
 import vfd.IPPort;
 import vproxybase.Config;
+import vproxybase.util.AccessLog;
 import vproxybase.util.ByteArray;
 
+import java.util.Collection;
+import java.util.Collections;
+
 public interface Processor<CTX extends Processor.Context, SUB extends Processor.SubContext> {
     class Context {
+        // set by the lib when the access log of the lb is enabled, the processor may record its requests with it
+        public AccessLog accessLog;
     }
 
     class SubContext {
@@ -156,6 +162,104 @@ public interface Processor<CTX extends Processor.Context, SUB extends Processor.
      */
     ByteArray connected(CTX ctx, SUB sub);
 
+    /**
+     * the data returned by `feed` of the frontend sub context is about to be written into a backend connection<br>
+     * the user code may re-encode the data with states bound to the backend connection, e.g. a compression table
+     *
+     * @param ctx   context
+     * @param front frontend sub context
+     * @param sub   the sub context of the backend connection which the data will be written to
+     * @param data  the data returned by `feed`
+     * @return data to write
+     * @throws Exception raise exception if handling failed
+     */
+    default ByteArray beforeSending(CTX ctx, SUB front, SUB sub, ByteArray data) throws Exception {
+        return data;
+    }
+
+    /**
+     * check whether the frontend sub context holds complete frames which are not returned by `feed` yet,
+     * e.g. pipelined requests to be sent to different backends, one `feed` for each backend<br>
+     * if true, the lib will call `feed` with empty data even when nothing more is received from the frontend
+     *
+     * @param ctx   context
+     * @param front frontend sub context
+     * @return true if there are frames buffered in the sub context
+     */
+    default boolean hasBufferedFrames(CTX ctx, SUB front) {
+        return false;
+    }
+
+    /**
+     * check whether the backend connection can be used by other frontend connections from now on,
+     * the lib only asks when all data of the connection is flushed and the frontend connection is closing<br>
+     * if true, the connection is kept in the idle pool of the event loop instead of being closed,
+     * and it will be given a new sub context (with `initSub`) when it's reused
+     *
+     * @param ctx  context
+     * @param back backend sub context
+     * @return true if no response is expected and the connection is kept alive by the backend
+     */
+    default boolean reusable(CTX ctx, SUB back) {
+        return false;
+    }
+
+    /**
+     * the protocol spoken on the backend connections of the frontend,
+     * idle connections are pooled by the protocol, and only reused by frontends with the same protocol<br>
+     * it's asked after the frontend starts retrieving backend connections,
+     * which may differ between frontends when the protocol is negotiated
+     *
+     * @param ctx context
+     * @return the protocol name, the name of the processor by default
+     */
+    default String backendProtocol(CTX ctx) {
+        return name();
+    }
+
+    /**
+     * check whether the backend connections are shared by frontend connections at the same time.<br>
+     * if true, the lib keeps one connection to each backend in each event loop, and all frontend connections
+     * of the processor handled by the loop write into it, in the order of calling `chosen`.<br>
+     * the backend sub context is created with a context of `init(null)`, it must be in handle mode accepting any length of data,
+     * and it must tell which frontend each response belongs to, see {@link #ready(Context, SubContext)}.
+     * `feed` of the backend sub context should return null, the responses are retrieved with `produce` of the frontend sub contexts.<br>
+     * the frontend sub context should only `expectNewFrame` when all of its responses are written
+     *
+     * @return true if backend connections are multiplexed
+     */
+    default boolean multiplexed() {
+        return false;
+    }
+
+    /**
+     * only used when {@link #multiplexed()} is true.<br>
+     * retrieve contexts of the frontend connections which got responses in the last `feed` of the backend sub context,
+     * the lib will call `produce` of their frontend sub contexts and write the data to the frontend connections
+     *
+     * @param ctx  context of the backend connection
+     * @param back backend sub context
+     * @return contexts of frontend connections which have data to write
+     */
+    default Collection<CTX> ready(CTX ctx, SUB back) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * only used when {@link #multiplexed()} is true.<br>
+     * check whether the frontend connection should be closed, e.g. the client asked to close the connection,
+     * which cannot be done by the backend because the connections are shared.<br>
+     * the lib closes the frontend connection when it returns true and the frontend sub context `expectNewFrame`,
+     * after all responses are written
+     *
+     * @param ctx   context
+     * @param front frontend sub context
+     * @return true if the frontend connection should be closed
+     */
+    default boolean closeFrontend(CTX ctx, SUB front) {
+        return false;
+    }
+
     /**
      * zero copy is not free.
      * e.g. when processing http2 frames, the frame header is 9 bytes, and with uint24 payload length,
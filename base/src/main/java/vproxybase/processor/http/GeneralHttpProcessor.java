@@ -143,4 +143,27 @@ public class GeneralHttpProcessor implements Processor<GeneralHttpContext, Gener
         // if (ctx.willUseHttp2)
         return null;
     }
+
+    @Override
+    public boolean reusable(GeneralHttpContext ctx, GeneralHttpSubContext back) {
+        // the stream ids and hpack tables of h2 connections belong to the frontend
+        if (ctx.useHttp) return httpProcessor.reusable(ctx.httpContext, back.httpSubContext);
+        return false;
+    }
+
+    @Override
+    public String backendProtocol(GeneralHttpContext ctx) {
+        // connections are shared with the h1 processor, and never given to an h2 frontend
+        if (ctx.useHttp) return httpProcessor.name();
+        if (ctx.useHttp2) return http2Processor.name();
+        return name();
+    }
+
+    @Override
+    public ByteArray beforeSending(GeneralHttpContext ctx, GeneralHttpSubContext front, GeneralHttpSubContext subCtx, ByteArray data) throws Exception {
+        if (ctx.useHttp) return httpProcessor.beforeSending(ctx.httpContext, front.httpSubContext, subCtx.httpSubContext, data);
+        if (ctx.useHttp2) return http2Processor.beforeSending(ctx.http2Context, front.http2SubContext, subCtx.http2SubContext, data);
+        // if (ctx.willUseHttp2)
+        return data;
+    }
 }
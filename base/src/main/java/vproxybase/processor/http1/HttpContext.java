@@ -5,14 +5,26 @@ import vproxybase.processor.Hint;
 import vproxybase.processor.OOContext;
 
 public class HttpContext extends OOContext<HttpSubContext> {
+    final IPPort client;
     final String clientAddress;
     final String clientPort;
+    // the headers to be added into requests, created only once for the connection
+    final byte[] forwardedForHeader;
+    final byte[] clientPortHeader;
+    final byte[] forwardedForAndClientPortHeaders;
 
     int currentBackend = -1;
 
     public HttpContext(IPPort clientSock) {
+        client = clientSock;
         clientAddress = clientSock == null ? null : clientSock.getAddress().formatToIPString();
         clientPort = clientSock == null ? null : "" + clientSock.getPort();
+        forwardedForHeader = ("x-forwarded-for: " + clientAddress + "\r\n").getBytes();
+        clientPortHeader = ("x-client-port: " + clientPort + "\r\n").getBytes();
+        forwardedForAndClientPortHeaders = ("" +
+            "x-forwarded-for: " + clientAddress + "\r\n" +
+            "x-client-port: " + clientPort + "\r\n" +
+            "").getBytes();
     }
 
     @Override
@@ -34,7 +46,7 @@ public class HttpContext extends OOContext<HttpSubContext> {
 
     @Override
     public Hint connectionHint(HttpSubContext front) {
-        String uri = front.theUri;
+        String uri = front.theUri();
         String host = front.theHostHeader;
 
         if (host == null && uri == null) {
@@ -54,5 +66,9 @@ public class HttpContext extends OOContext<HttpSubContext> {
     @Override
     public void chosen(HttpSubContext front, HttpSubContext subCtx) {
         currentBackend = subCtx.connId;
+        ++subCtx.pendingResponses; // called once for each request
+        if (accessLog != null) {
+            subCtx.requestDispatched(front.accessLogRequest(subCtx.remote));
+        }
     }
 }
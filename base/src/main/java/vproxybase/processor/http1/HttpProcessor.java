@@ -21,6 +21,6 @@ public class HttpProcessor extends OOProcessor<HttpContext, HttpSubContext> {
 
     @Override
     public HttpSubContext initSub(HttpContext httpContext, int id, IPPort associatedAddress) {
-        return new HttpSubContext(httpContext, id);
+        return new HttpSubContext(httpContext, id, associatedAddress);
     }
 }
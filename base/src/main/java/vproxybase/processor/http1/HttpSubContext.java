@@ -1,5 +1,6 @@
 package vproxybase.processor.http1;
 
+import vfd.IPPort;
 import vproxybase.processor.OOSubContext;
 import vproxybase.processor.Processor;
 import vproxybase.processor.http1.builder.ChunkBuilder;
@@ -8,15 +9,23 @@ import vproxybase.processor.http1.builder.RequestBuilder;
 import vproxybase.processor.http1.builder.ResponseBuilder;
 import vproxybase.processor.http1.entity.Request;
 import vproxybase.processor.http1.entity.Response;
+import vproxybase.util.AccessLog;
 import vproxybase.util.ByteArray;
 import vproxybase.util.Logger;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 @SuppressWarnings("StatementWithEmptyBody")
 public class HttpSubContext extends OOSubContext<HttpContext> {
+    // placeholder of the requests not recorded by the access log
+    private static final AccessLog.Request NOT_SAMPLED = new AccessLog.Request(null, null, null, null);
+
     private final boolean frontend;
+    // the client address for frontend, the backend address for backend, might be null
+    final IPPort remote;
     private int state = 0;
     /*
      * 0 => idle ~> 1 (if request) or -> 22 (if response)
@@ -58,12 +67,12 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         HttpSubContext.this::state7,
         HttpSubContext.this::state8,
         HttpSubContext.this::state9,
-        HttpSubContext.this::state10,
+        b -> state10(ByteArray.from((byte) b)),
         HttpSubContext.this::state11,
         HttpSubContext.this::state12,
         HttpSubContext.this::state13,
         HttpSubContext.this::state14,
-        HttpSubContext.this::state15,
+        b -> state15(ByteArray.from((byte) b)),
         HttpSubContext.this::state16,
         HttpSubContext.this::state17,
         HttpSubContext.this::state18,
@@ -76,9 +85,28 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
     };
 
     interface Handler {
-        void handle(ByteArray b) throws Exception;
+        void handle(int b) throws Exception;
     }
 
+    // names of the headers which affect the parsing, in lower case
+    private static final byte[] HOST = "host".getBytes();
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes();
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes();
+    private static final byte[] CONNECTION = "connection".getBytes();
+    private static final byte[] X_FORWARDED_FOR = "x-forwarded-for".getBytes();
+    private static final byte[] X_CLIENT_PORT = "x-client-port".getBytes();
+    private static final byte[] CHUNKED = "chunked".getBytes();
+    private static final byte[] CLOSE = "close".getBytes();
+    private static final byte[] HTTP_1_1 = "http/1.1".getBytes();
+
+    private static final int H_OTHER = 0;
+    private static final int H_HOST = 1;
+    private static final int H_CONTENT_LENGTH = 2;
+    private static final int H_TRANSFER_ENCODING = 3;
+    private static final int H_CONNECTION = 4;
+    private static final int H_X_FORWARDED_FOR = 5;
+    private static final int H_X_CLIENT_PORT = 6;
+
     private byte[] buf;
     private int bufOffset = 0;
     private RequestBuilder req;
@@ -91,9 +119,32 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
     private HeaderBuilder trailer;
     private int proxyLen = -1;
 
-    // value of the uri
-    // would be used as the hint
-    String theUri = null;
+    // the following fields are used in both modes
+    // the builders above are only used in parser mode,
+    // otherwise only the bytes of the uri and the headers listed above are recorded into reusable buffers,
+    // and Strings are created only when required
+    private byte[] token = new byte[64]; // bytes of the uri, a header key, or a value of the headers listed above
+    private int tokenLen = 0;
+    private int headerKind = H_OTHER;
+    private boolean state8HeaderPending = false; // a header line is completed and not handled yet
+    private int contentLength = -1;
+    private boolean transferEncodingFound = false; // whether transfer-encoding appears before content-length
+    private boolean chunked = false;
+    private boolean connectionClose = false;
+    private boolean forwardedForFound = false;
+    private boolean clientPortFound = false;
+    private int chunkSize = -1; // -1 means no chunk size is being parsed
+    private boolean chunkSizeHasDigit = false;
+    private byte[] hostBytes = null; // bytes of theHostHeader
+    private boolean http11 = false; // the response version is HTTP/1.1
+    private boolean informational = false; // the response status is 1xx, another response will follow
+    // for backend, requests sent to the connection but not completely responded yet, see HttpContext#chosen
+    int pendingResponses = 0;
+
+    // bytes of the uri, would be used as the hint
+    private byte[] uriBytes = new byte[64];
+    private int uriLen = -1; // -1 means no uri retrieved
+    private String theUri = null; // created from the bytes when required
     // value of the Host: header
     // would be used as the hint
     // only accessed when it's a frontend sub context
@@ -108,17 +159,49 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
     boolean hostHeaderRetrieved;
     boolean parserMode;
 
+    // the following fields are only used when the access log is enabled
+    // for frontend, whether the request being parsed is recorded, and its method
+    private boolean sampled = false;
+    private byte[] methodBytes = null;
+    private int methodLen = 0;
+    // for backend, the requests dispatched to the connection and not responded yet, in order
+    private ArrayDeque<AccessLog.Request> dispatchedRequests = null;
+
     public HttpSubContext(HttpContext httpContext, int connId) {
+        this(httpContext, connId, null);
+    }
+
+    public HttpSubContext(HttpContext httpContext, int connId, IPPort associatedAddress) {
         super(httpContext, connId);
         frontend = connId == 0;
+        remote = associatedAddress;
         hostHeaderRetrieved = !frontend;
     }
 
+    /**
+     * The request/response entities are built only in parser mode,
+     * otherwise the sub context only records what the processor requires.
+     */
     public void setParserMode() {
         this.parserMode = true;
         this.hostHeaderRetrieved = true; // set this field to true to let feed() respond bytes
     }
 
+    // value of the uri of the last request which has its first line completed
+    String theUri() {
+        if (theUri == null && uriLen != -1) {
+            theUri = new String(uriBytes, 0, uriLen);
+        }
+        return theUri;
+    }
+
+    /**
+     * @return true if the last parsed message has header `Connection: close`
+     */
+    public boolean isConnectionClose() {
+        return connectionClose;
+    }
+
     public RequestBuilder getParsingReq() {
         return this.req;
     }
@@ -139,6 +222,13 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         return state == 10 || state == 11;
     }
 
+    @Override
+    public boolean reusable() {
+        // the length of the last response must be known, otherwise the response ends when the connection closes
+        return !frontend && state == 0 && pendingResponses == 0
+            && http11 && !connectionClose && (contentLength != -1 || chunked);
+    }
+
     @Override
     public Processor.Mode mode() {
         switch (state) {
@@ -201,41 +291,31 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
     private ByteArray feed1(ByteArray data) throws Exception {
         int consumedBytes = 0;
         while (consumedBytes < data.length()) {
+            if (proxyLen > 0) {
+                // the body or chunk content, feed the bytes in one call
+                int len = Math.min(proxyLen, data.length() - consumedBytes);
+                ByteArray content = data.sub(consumedBytes, len);
+                consumedBytes += len;
+                if (state == 10) {
+                    state10(content);
+                } else {
+                    state15(content);
+                }
+                continue;
+            }
             feed(data.get(consumedBytes++));
 
             if (passParam_TryFillAdditionalHeaders) {
-                boolean noForwardedFor = true;
-                boolean noClientPort = true;
-
-                for (HeaderBuilder h : headers) {
-                    String hv = h.key.toString().trim();
-                    if (hv.equalsIgnoreCase("x-forwarded-for")) {
-                        noForwardedFor = false;
-                    } else if (hv.equalsIgnoreCase("x-client-port")) {
-                        noClientPort = false;
-                    }
-                    if (!noForwardedFor && !noClientPort) {
-                        break;
-                    }
-                }
                 ByteArray appendData = null;
-                if (noForwardedFor) {
-                    ByteArray b = ByteArray.from(("" +
-                        "x-forwarded-for: " + ctx.clientAddress + "\r\n" +
-                        "").getBytes());
+                if (!forwardedForFound && !clientPortFound) {
+                    assert Logger.lowLevelDebug("add header x-forwarded-for: " + ctx.clientAddress + " and x-client-port: " + ctx.clientPort);
+                    appendData = ByteArray.from(ctx.forwardedForAndClientPortHeaders);
+                } else if (!forwardedForFound) {
                     assert Logger.lowLevelDebug("add header x-forwarded-for: " + ctx.clientAddress);
-                    appendData = b;
-                }
-                if (noClientPort) {
-                    ByteArray b = ByteArray.from(("" +
-                        "x-client-port: " + ctx.clientPort + "\r\n" +
-                        "").getBytes());
+                    appendData = ByteArray.from(ctx.forwardedForHeader);
+                } else if (!clientPortFound) {
                     assert Logger.lowLevelDebug("add header x-client-port: " + ctx.clientPort);
-                    if (appendData == null) {
-                        appendData = b;
-                    } else {
-                        appendData = appendData.concat(b);
-                    }
+                    appendData = ByteArray.from(ctx.clientPortHeader);
                 }
                 if (appendData != null) {
                     // insert the appendData into data
@@ -246,19 +326,6 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
                 }
                 passParam_TryFillAdditionalHeaders = false;
             }
-            if (proxyLen > 0) {
-                // need to do proxy
-                int originalCursor = consumedBytes;
-                consumedBytes += proxyLen;
-                if (consumedBytes > data.length()) {
-                    // input data has fewer bytes than required
-                    // so still need to do proxy later
-                    consumedBytes = data.length();
-                }
-                for (int i = originalCursor; i < consumedBytes; ++i) {
-                    feed(data.get(i));
-                }
-            }
         }
         if (hostHeaderRetrieved) {
             if (storedBytes == null) {
@@ -282,7 +349,7 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         if (state < 0 || state >= handlers.length) {
             throw new IllegalStateException("BUG: unexpected state " + state);
         }
-        handlers[state].handle(ByteArray.from(b));
+        handlers[state].handle(b & 0xff);
     }
 
     @Override
@@ -309,51 +376,161 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
 
     private void end() {
         state = 0;
+        if (!frontend && !informational && pendingResponses > 0) {
+            --pendingResponses;
+        }
+    }
+
+    private void appendToken(int b) {
+        if (tokenLen == token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        token[tokenLen++] = (byte) b;
+    }
+
+    // compare the token with the lower case name, ignore case and leading/trailing spaces
+    private boolean tokenEqualsIgnoreCase(byte[] lowerName) {
+        int start = 0;
+        int end = tokenLen;
+        while (start < end && token[start] <= ' ') {
+            ++start;
+        }
+        while (end > start && token[end - 1] <= ' ') {
+            --end;
+        }
+        if (end - start != lowerName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerName.length; ++i) {
+            int c = token[start + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += ('a' - 'A');
+            }
+            if (c != lowerName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String tokenToString() {
+        return new String(token, 0, tokenLen).trim();
     }
 
-    private void state0(ByteArray data) {
+    private void state0(int b) {
+        tokenLen = 0;
+        headerKind = H_OTHER;
+        contentLength = -1;
+        transferEncodingFound = false;
+        chunked = false;
+        connectionClose = false;
+        forwardedForFound = false;
+        clientPortFound = false;
+        chunkSize = -1;
+        headers = null;
         if (frontend) {
-            req = new RequestBuilder();
+            if (parserMode) {
+                req = new RequestBuilder();
+            }
+            sampled = ctx.accessLog != null && ctx.accessLog.sample();
+            methodLen = 0;
             state = 1;
-            state1(data);
+            state1(b);
         } else {
-            resp = new ResponseBuilder();
+            if (parserMode) {
+                resp = new ResponseBuilder();
+            }
             state = 22;
-            state22(data);
+            state22(b);
         }
     }
 
-    private void state1(ByteArray data) {
-        int b = data.uint8(0);
+    private void state1(int b) {
         if (b == ' ') {
             state = 2;
         } else {
-            req.method.append((char) b);
+            if (sampled) {
+                appendMethod(b);
+            }
+            if (parserMode) {
+                req.method.append((char) b);
+            }
+        }
+    }
+
+    private void appendMethod(int b) {
+        if (methodBytes == null) {
+            methodBytes = new byte[16];
+        }
+        if (methodLen < methodBytes.length) { // the longer part is ignored
+            methodBytes[methodLen++] = (byte) b;
         }
     }
 
-    private void state2(ByteArray data) {
-        int b = data.uint8(0);
+    // the request being parsed is dispatched to a backend
+    AccessLog.Request accessLogRequest(IPPort backend) {
+        if (!sampled) {
+            return NOT_SAMPLED;
+        }
+        return new AccessLog.Request(new String(methodBytes, 0, methodLen), theHostHeader, theUri(), backend);
+    }
+
+    void requestDispatched(AccessLog.Request req) {
+        if (dispatchedRequests == null) {
+            dispatchedRequests = new ArrayDeque<>();
+        }
+        dispatchedRequests.add(req);
+    }
+
+    // the status of a final response is parsed into the token
+    private void responseReceived() {
+        if (dispatchedRequests == null) {
+            return;
+        }
+        AccessLog.Request req = dispatchedRequests.poll();
+        if (req == null || req == NOT_SAMPLED) {
+            return;
+        }
+        int status = 0;
+        for (int i = 0; i < tokenLen && i < 9; ++i) {
+            status = status * 10 + (token[i] - '0');
+        }
+        ctx.accessLog.request(ctx.client, req, status);
+    }
+
+    private void uriDone() {
+        if (uriBytes.length < tokenLen) {
+            uriBytes = new byte[token.length];
+        }
+        System.arraycopy(token, 0, uriBytes, 0, tokenLen);
+        uriLen = tokenLen;
+        theUri = null;
+        tokenLen = 0;
+    }
+
+    private void state2(int b) {
         if (b == ' ') {
-            theUri = req.uri.toString();
+            uriDone();
             state = 3;
         } else if (b == '\r') {
             // do nothing
         } else if (b == '\n') {
-            theUri = req.uri.toString();
+            uriDone();
             state = 4;
         } else {
-            req.uri.append((char) b);
+            appendToken(b);
+            if (parserMode) {
+                req.uri.append((char) b);
+            }
         }
     }
 
-    private void state3(ByteArray data) {
-        int b = data.uint8(0);
+    private void state3(int b) {
         if (b == '\r') {
             // do nothing
         } else if (b == '\n') {
             state = 4;
-        } else {
+        } else if (parserMode) {
             if (req.version == null) {
                 req.version = new StringBuilder();
             }
@@ -361,118 +538,195 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         }
     }
 
-    private void state4(ByteArray data) throws Exception {
-        int b = data.uint8(0);
+    private void state4(int b) throws Exception {
         if (b == '\r') {
             // do nothing
         } else if (b == '\n') {
             state = 9;
-            state9(null);
+            state9(-1);
         } else {
             state = 5;
-            state5(data);
+            state5(b);
         }
     }
 
-    private void state5(ByteArray data) throws Exception {
-        if (header == null) {
+    private void state5(int b) throws Exception {
+        if (header == null && parserMode) {
             header = new HeaderBuilder();
         }
 
-        int b = data.uint8(0);
         if (b == ':') {
             state = 6;
-            state6(data);
+            state6(b);
         } else {
-            header.key.append((char) b);
+            appendToken(b);
+            if (parserMode) {
+                header.key.append((char) b);
+            }
         }
     }
 
-    private void state6(ByteArray data) throws Exception {
-        int b = data.uint8(0);
+    private void state6(int b) throws Exception {
         if (b == ':') {
+            if (tokenEqualsIgnoreCase(HOST)) {
+                headerKind = H_HOST;
+            } else if (tokenEqualsIgnoreCase(CONTENT_LENGTH)) {
+                headerKind = H_CONTENT_LENGTH;
+            } else if (tokenEqualsIgnoreCase(TRANSFER_ENCODING)) {
+                headerKind = H_TRANSFER_ENCODING;
+            } else if (tokenEqualsIgnoreCase(CONNECTION)) {
+                headerKind = H_CONNECTION;
+            } else if (tokenEqualsIgnoreCase(X_FORWARDED_FOR)) {
+                headerKind = H_X_FORWARDED_FOR;
+            } else if (tokenEqualsIgnoreCase(X_CLIENT_PORT)) {
+                headerKind = H_X_CLIENT_PORT;
+            } else {
+                headerKind = H_OTHER;
+            }
+            tokenLen = 0;
             state = 7;
         } else {
-            throw new Exception("invalid header: " + header + ", invalid splitter " + (char) b);
+            throw new Exception("invalid header: " + (parserMode ? header : tokenToString()) + ", invalid splitter " + (char) b);
         }
     }
 
-    private void state7(ByteArray data) {
-        int b = data.uint8(0);
+    private void state7(int b) {
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
+            state8HeaderPending = true;
             state = 8;
         } else {
-            if (b != ' ' || header.value.length() != 0) { // leading spaces of the value are ignored
+            if (headerKind != H_OTHER && (b != ' ' || tokenLen != 0)) {
+                appendToken(b);
+            }
+            if (parserMode && (b != ' ' || header.value.length() != 0)) { // leading spaces of the value are ignored
                 header.value.append((char) b);
             }
         }
     }
 
-    private void state8(ByteArray data) throws Exception {
-        if (headers == null) {
-            headers = new LinkedList<>();
-            if (frontend) {
-                req.headers = headers;
-            } else {
-                resp.headers = headers;
+    // handle the value of the headers which affect the parsing
+    private void headerDone() throws Exception {
+        switch (headerKind) {
+            case H_HOST:
+                if (frontend) {
+                    setHostHeader();
+                }
+                hostHeaderRetrieved = true;
+                break;
+            case H_CONTENT_LENGTH:
+                if (contentLength == -1 && !transferEncodingFound) {
+                    contentLength = parseContentLength();
+                    assert Logger.lowLevelDebug("found Content-Length: " + contentLength);
+                }
+                break;
+            case H_TRANSFER_ENCODING:
+                if (contentLength == -1 && !transferEncodingFound) {
+                    transferEncodingFound = true;
+                    chunked = tokenEqualsIgnoreCase(CHUNKED);
+                    assert Logger.lowLevelDebug("found Transfer-Encoding: " + tokenToString());
+                }
+                break;
+            case H_CONNECTION:
+                connectionClose = tokenEqualsIgnoreCase(CLOSE);
+                break;
+            case H_X_FORWARDED_FOR:
+                forwardedForFound = true;
+                break;
+            case H_X_CLIENT_PORT:
+                clientPortFound = true;
+                break;
+        }
+        headerKind = H_OTHER;
+        tokenLen = 0;
+    }
+
+    private void setHostHeader() {
+        int end = tokenLen;
+        while (end > 0 && token[end - 1] <= ' ') {
+            --end;
+        }
+        // normally a client will not request different hosts in the same connection
+        // so the string is created only when the host changes
+        if (hostBytes == null || !Arrays.equals(hostBytes, 0, hostBytes.length, token, 0, end)) {
+            hostBytes = Arrays.copyOf(token, end);
+            theHostHeader = new String(hostBytes);
+        }
+    }
+
+    private int parseContentLength() throws Exception {
+        int start = 0;
+        int end = tokenLen;
+        while (end > start && token[end - 1] <= ' ') {
+            --end;
+        }
+        if (start == end) {
+            throw new Exception("invalid Content-Length: empty");
+        }
+        long len = 0;
+        for (int i = start; i < end; ++i) {
+            int c = token[i];
+            if (c < '0' || c > '9') {
+                throw new Exception("invalid Content-Length: " + tokenToString());
+            }
+            len = len * 10 + (c - '0');
+            if (len > Integer.MAX_VALUE) {
+                throw new Exception("invalid Content-Length: " + tokenToString());
             }
         }
-        if (header != null) {
-            headers.add(header);
-            assert Logger.lowLevelDebug("received header " + header);
-            String k = header.key.toString();
-            if (k.trim().equalsIgnoreCase("host")) {
-                theHostHeader = header.value.toString().trim();
-                hostHeaderRetrieved = true;
+        return (int) len;
+    }
+
+    private void state8(int b) throws Exception {
+        if (state8HeaderPending) {
+            headerDone();
+            if (parserMode) {
+                if (headers == null) {
+                    headers = new LinkedList<>();
+                    if (frontend) {
+                        req.headers = headers;
+                    } else {
+                        resp.headers = headers;
+                    }
+                }
+                headers.add(header);
+                assert Logger.lowLevelDebug("received header " + header);
+                header = null;
             }
-            header = null;
+            state8HeaderPending = false;
         }
 
-        int b = data.uint8(0);
         if (b == '\r') {
             // ignore
             passParam_TryFillAdditionalHeaders = frontend; // only add header if it's from frontend
         } else if (b == '\n') {
             state = 9;
-            state9(null);
+            state9(-1);
         } else {
             state = 5;
-            state5(data);
+            state5(b);
         }
     }
 
     // this method should be called before entering state 9
     // it's for state transferring
-    private void state9(@SuppressWarnings("unused") ByteArray data) {
+    private void state9(@SuppressWarnings("unused") int b) {
         // ignore the data
         hostHeaderRetrieved = true;
-        if (headers == null) {
-            end();
+        if (contentLength != -1) {
+            if (contentLength == 0) {
+                end();
+            } else {
+                state = 10;
+                proxyLen = contentLength;
+            }
             return;
-        }
-        for (var h : headers) {
-            String hdr = h.key.toString().trim().toLowerCase();
-            if (hdr.equals("content-length")) {
-                String len = h.value.toString().trim();
-                assert Logger.lowLevelDebug("found Content-Length: " + len);
-                int intLen = Integer.parseInt(len);
-                if (intLen == 0) {
-                    end();
-                } else {
-                    state = 10;
-                    proxyLen = intLen;
-                }
-                return;
-            } else if (hdr.equals("transfer-encoding")) {
-                String encoding = h.value.toString().trim().toLowerCase();
-                assert Logger.lowLevelDebug("found Transfer-Encoding: " + encoding);
-                if (encoding.equals("chunked")) {
-                    state = 11;
-                }
-                return;
+        } else if (transferEncodingFound) {
+            if (chunked) {
+                state = 11;
             }
+            return;
         }
         assert Logger.lowLevelDebug("Content-Length and Transfer-Encoding both not found");
         end();
@@ -482,39 +736,22 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         assert data.length() <= proxyLen;
         int contentLength = proxyLen;
         proxyLen -= data.length();
-        if (frontend) {
-            if (parserMode) { // use a byte array buffer to hold the data
+        if (parserMode) { // use a byte array buffer to hold the data
+            if (frontend) {
                 if (req.body == null) {
                     buf = new byte[contentLength];
                     bufOffset = 0;
                     req.body = ByteArray.from(buf);
                 }
-                for (int i = 0; i < data.length(); ++i) {
-                    buf[bufOffset++] = data.get(i);
-                }
             } else {
-                if (req.body == null) {
-                    req.body = data;
-                } else {
-                    req.body = req.body.concat(data);
-                }
-            }
-        } else {
-            if (parserMode) {
                 if (resp.body == null) {
                     buf = new byte[contentLength];
                     bufOffset = 0;
                     resp.body = ByteArray.from(buf);
                 }
-                for (int i = 0; i < data.length(); ++i) {
-                    buf[bufOffset++] = data.get(i);
-                }
-            } else {
-                if (resp.body == null) {
-                    resp.body = data;
-                } else {
-                    resp.body = resp.body.concat(data);
-                }
+            }
+            for (int i = 0; i < data.length(); ++i) {
+                buf[bufOffset++] = data.get(i);
             }
         }
         if (proxyLen == 0) {
@@ -525,82 +762,121 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         }
     }
 
-    private void state11(ByteArray data) throws Exception {
-        if (chunk == null) {
+    private void appendChunkSize(int b) throws Exception {
+        if (chunkSize == -1) {
+            chunkSize = 0;
+            chunkSizeHasDigit = false;
+        }
+        int n;
+        if (b >= '0' && b <= '9') {
+            n = b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            n = b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            n = b - 'A' + 10;
+        } else if (b == ' ' || b == '\t') {
+            return;
+        } else {
+            throw new Exception("invalid character in chunk size: " + ((char) b));
+        }
+        if (chunkSize > (Integer.MAX_VALUE >> 4)) {
+            throw new Exception("chunk size too large");
+        }
+        chunkSize = (chunkSize << 4) | n;
+        chunkSizeHasDigit = true;
+    }
+
+    private void state11(int b) throws Exception {
+        if (chunk == null && parserMode) {
             chunk = new ChunkBuilder();
         }
-        int b = data.uint8(0);
+        if (chunkSize == -1) {
+            chunkSize = 0;
+            chunkSizeHasDigit = false;
+        }
         if (b == ';') {
             state = 12;
         } else if (b == '\r') {
             // ignore
         } else if (b == '\n') {
             state = 14;
-            state14(null);
+            state14(-1);
         } else {
-            chunk.size.append((char) b);
+            appendChunkSize(b);
+            if (parserMode) {
+                chunk.size.append((char) b);
+            }
         }
     }
 
-    private void state12(ByteArray data) throws Exception {
-        int b = data.uint8(0);
+    private void state12(int b) throws Exception {
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
             state = 14;
-            state14(null);
+            state14(-1);
         } else {
             state = 13;
-            if (chunk.extension == null) {
-                chunk.extension = new StringBuilder();
+            if (parserMode) {
+                if (chunk.extension == null) {
+                    chunk.extension = new StringBuilder();
+                }
+                chunk.extension.append((char) b);
             }
-            chunk.extension.append((char) b);
         }
     }
 
-    private void state13(ByteArray data) throws Exception {
-        int b = data.uint8(0);
+    private void state13(int b) throws Exception {
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
             state = 14;
-            state14(null);
-        } else {
+            state14(-1);
+        } else if (parserMode) {
             chunk.extension.append((char) b);
         }
     }
 
     // this method may be called before entering state 9
     // it's for state transferring
-    private void state14(ByteArray data) throws Exception {
-        int size = chunk == null ? 0 : Integer.parseInt(chunk.size.toString().trim(), 16);
+    // b is -1 when called from other states
+    private void state14(int b) throws Exception {
+        int size = 0;
+        if (chunkSize != -1) {
+            if (!chunkSizeHasDigit) {
+                throw new Exception("invalid chunk size: empty");
+            }
+            size = chunkSize;
+            chunkSize = -1;
+        }
         if (size != 0) {
             state = 15;
             proxyLen = size;
         } else {
-            if (data == null) { // called from other states
+            if (b == -1) { // called from other states
                 // end chunk
-                if (chunks == null) {
-                    chunks = new LinkedList<>();
-                }
-                chunks.add(chunk);
-                chunk = null;
-                if (frontend) {
-                    req.chunks = chunks;
-                } else {
-                    resp.chunks = chunks;
+                if (parserMode) {
+                    if (chunks == null) {
+                        chunks = new LinkedList<>();
+                    }
+                    chunks.add(chunk);
+                    chunk = null;
+                    if (frontend) {
+                        req.chunks = chunks;
+                    } else {
+                        resp.chunks = chunks;
+                    }
+                    chunks = null;
                 }
-                chunks = null;
             } else {
-                int b = data.uint8(0);
                 if (b == '\r') {
                     // ignore
                 } else if (b == '\n') {
                     state = 21;
-                    state21(null);
+                    state21(-1);
                 } else {
                     state = 17;
-                    state17(data);
+                    state17(b);
                 }
             }
         }
@@ -609,10 +885,12 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
     private void state15(ByteArray data) {
         assert data.length() <= proxyLen;
         proxyLen -= data.length();
-        if (chunk.content == null) {
-            chunk.content = data;
-        } else {
-            chunk.content = chunk.content.concat(data);
+        if (parserMode) {
+            if (chunk.content == null) {
+                chunk.content = data;
+            } else {
+                chunk.content = chunk.content.concat(data);
+            }
         }
         if (proxyLen == 0) {
             // this method will not be called if using the Proxy lib
@@ -622,16 +900,17 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         }
     }
 
-    private void state16(ByteArray data) throws Exception {
-        if (chunks == null) {
-            chunks = new LinkedList<>();
-        }
-        if (chunk != null) {
-            chunks.add(chunk);
-            chunk = null;
+    private void state16(int b) throws Exception {
+        if (parserMode) {
+            if (chunks == null) {
+                chunks = new LinkedList<>();
+            }
+            if (chunk != null) {
+                chunks.add(chunk);
+                chunk = null;
+            }
         }
 
-        int b = data.uint8(0);
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
@@ -641,104 +920,124 @@ public class HttpSubContext extends OOSubContext<HttpContext> {
         }
     }
 
-    private void state17(ByteArray data) throws Exception {
+    private void state17(int b) throws Exception {
+        if (!parserMode) {
+            // trailers are only recorded in parser mode
+            if (b == ':') {
+                state = 18;
+                state18(b);
+            }
+            return;
+        }
         if (trailer == null) {
             trailer = new HeaderBuilder();
         }
 
-        int b = data.uint8(0);
         if (b == ':') {
             state = 18;
-            state18(data);
+            state18(b);
         } else {
             trailer.key.append((char) b);
         }
     }
 
-    private void state18(ByteArray data) throws Exception {
-        int b = data.uint8(0);
+    private void state18(int b) throws Exception {
         if (b == ':') {
             state = 19;
         } else {
-            throw new Exception("invalid trailer: " + header + ", invalid splitter " + (char) b);
+            throw new Exception("invalid trailer: " + trailer + ", invalid splitter " + (char) b);
         }
     }
 
-    private void state19(ByteArray data) {
-        int b = data.uint8(0);
+    private void state19(int b) {
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
             state = 20;
-        } else {
+        } else if (parserMode) {
             if (b != ' ' || trailer.value.length() > 0) { // leading spaces are ignored
                 trailer.value.append((char) b);
             }
         }
     }
 
-    private void state20(ByteArray data) throws Exception {
-        if (trailers == null) {
-            trailers = new LinkedList<>();
-        }
-        if (trailer != null) {
-            assert Logger.lowLevelDebug("received trailer " + trailer);
-            trailers.add(trailer);
-            trailer = null;
+    private void state20(int b) throws Exception {
+        if (parserMode) {
+            if (trailers == null) {
+                trailers = new LinkedList<>();
+            }
+            if (trailer != null) {
+                assert Logger.lowLevelDebug("received trailer " + trailer);
+                trailers.add(trailer);
+                trailer = null;
+            }
         }
 
-        int b = data.uint8(0);
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
             state = 21;
-            if (frontend) {
-                req.trailers = trailers;
-            } else {
-                resp.trailers = trailers;
+            if (parserMode) {
+                if (frontend) {
+                    req.trailers = trailers;
+                } else {
+                    resp.trailers = trailers;
+                }
+                trailers = null;
             }
-            trailers = null;
-            state21(null);
+            state21(-1);
         } else {
             state = 17;
-            state17(data);
+            state17(b);
         }
     }
 
     // this method should be called before entering state 9
     // it's for state transferring
-    private void state21(@SuppressWarnings("unused") ByteArray data) {
+    private void state21(@SuppressWarnings("unused") int b) {
         end();
     }
 
-    private void state22(ByteArray data) {
-        int b = data.uint8(0);
+    private void state22(int b) {
         if (b == ' ') {
+            http11 = tokenEqualsIgnoreCase(HTTP_1_1);
+            tokenLen = 0;
             state = 23;
         } else {
-            resp.version.append((char) b);
+            appendToken(b);
+            if (parserMode) {
+                resp.version.append((char) b);
+            }
         }
     }
 
-    private void state23(ByteArray data) throws Exception {
-        int b = data.uint8(0);
+    private void state23(int b) throws Exception {
         if (b == ' ') {
+            if (!informational) {
+                responseReceived();
+            }
+            tokenLen = 0;
             state = 24;
         } else {
             if (b < '0' || b > '9') {
                 throw new Exception("invalid character in http response status code: " + ((char) b));
             }
-            resp.statusCode.append((char) b);
+            if (tokenLen == 0) {
+                informational = b == '1';
+            }
+            appendToken(b);
+            if (parserMode) {
+                resp.statusCode.append((char) b);
+            }
         }
     }
 
-    private void state24(ByteArray data) {
-        int b = data.uint8(0);
+    private void state24(int b) {
         if (b == '\r') {
             // ignore
         } else if (b == '\n') {
             state = 4;
-        } else {
+        } else if (parserMode) {
             resp.reason.append((char) b);
         }
     }
@@ -2,39 +2,177 @@ package vproxybase.processor.http2;
 
 import com.twitter.hpack.Decoder;
 import com.twitter.hpack.Encoder;
+import com.twitter.hpack.HeaderListener;
 import vproxybase.util.ByteArray;
+import vproxybase.util.Logger;
 import vproxybase.util.io.ArrayInputStream;
 import vproxybase.util.io.ArrayOutputStream;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.function.Consumer;
 
-class HPackTransformer {
+/**
+ * decode header blocks from the frontend, and encode them for the backend<br>
+ * the decoded block is kept until the backend connection is chosen,
+ * then it's encoded with the encoder of that connection, see {@link #encode(Encoder, int)}
+ */
+class HPackTransformer implements HeaderListener {
     private final int BUFFER_SIZE = 65536; // make the buffer big enough for almost all cases
+    private static final int MAX_FRAME_PAYLOAD = 16384; // the default SETTINGS_MAX_FRAME_SIZE
 
     private final Decoder decoder;
-    private final SyncOutputListener lsn;
+    private final Header[] headers;
+    private final boolean[] added; // whether it's already added into the header list
+    private final Consumer<String> uriListener;
+    private final Consumer<String> hostHeaderListener;
+    private final Consumer<String> methodListener;
+    private final Consumer<String> authorityListener;
     private final ArrayOutputStream outBuffer = ArrayOutputStream.to(ByteArray.from(new byte[BUFFER_SIZE]));
 
+    private static class Field {
+        final byte[] name;
+        final byte[] value;
+        final boolean sensitive;
+
+        Field(byte[] name, byte[] value, boolean sensitive) {
+            this.name = name;
+            this.value = value;
+            this.sensitive = sensitive;
+        }
+    }
+
+    private final ArrayList<Field> fields = new ArrayList<>();
+    private boolean pending = false; // a whole block is decoded but not encoded yet
+    private int pendingStreamId;
+    private boolean pendingEndStream;
+
     HPackTransformer(int maxHeaderTableSize,
                      Header[] additionalHeaders,
                      Consumer<String> uriListener,
-                     Consumer<String> hostHeaderListener) {
+                     Consumer<String> hostHeaderListener,
+                     Consumer<String> methodListener,
+                     Consumer<String> authorityListener) {
         this.decoder = new Decoder(BUFFER_SIZE, maxHeaderTableSize);
-        Encoder encoder = new Encoder(0);
-        this.lsn = new SyncOutputListener(encoder, outBuffer, additionalHeaders, uriListener, hostHeaderListener);
+        this.headers = additionalHeaders;
+        this.added = new boolean[additionalHeaders == null ? 0 : additionalHeaders.length];
+        this.uriListener = uriListener;
+        this.hostHeaderListener = hostHeaderListener;
+        this.methodListener = methodListener;
+        this.authorityListener = authorityListener;
     }
 
-    ByteArray transform(ByteArray array, boolean addHeaders) throws IOException {
-        decoder.decode(ArrayInputStream.from(array), lsn);
-        if (addHeaders) {
-            lsn.addHeaders();
+    void decode(ByteArray array) throws IOException {
+        decoder.decode(ArrayInputStream.from(array), this);
+    }
+
+    @Override
+    public void addHeader(byte[] name, byte[] value, boolean sensitive) {
+        // we need to search for the header `uri` and `host` can call the callback
+        String nameStr = new String(name);
+        if (nameStr.equalsIgnoreCase("host")) { // h2 headers must be lower-case strings
+            hostHeaderListener.accept(new String(value));
+        } else if (nameStr.equalsIgnoreCase(":path")) {
+            uriListener.accept(new String(value));
+        } else if (nameStr.equals(":method")) {
+            methodListener.accept(new String(value));
+        } else if (nameStr.equals(":authority")) {
+            authorityListener.accept(new String(value));
+        }
+        checkAdded(name, value);
+        fields.add(new Field(name, value, sensitive));
+    }
+
+    private void checkAdded(byte[] key, byte[] value) {
+        if (headers == null || headers.length == 0) {
+            return;
+        }
+        for (int i = 0; i < headers.length; i++) {
+            Header h = headers[i];
+            if (h.key.length != key.length) {
+                continue;
+            }
+            if (h.keyStr.equals(new String(key).toLowerCase())) {
+                // header keys are the same
+                assert Logger.lowLevelDebug("see target header " +
+                    "old header: " + new String(key) + ": " + new String(value));
+                added[i] = true; // do not replace
+                return;
+            }
         }
-        return outBuffer.get();
     }
 
-    public void endHeaders() {
-        lsn.endHeaders();
+    /**
+     * the whole block is decoded
+     *
+     * @param addHeaders whether to add the additional headers which do not exist in the block
+     */
+    void endHeaders(int streamId, boolean endStream, boolean addHeaders) {
         decoder.endHeaderBlock();
+        if (addHeaders && headers != null) {
+            for (int i = 0; i < headers.length; i++) {
+                if (added[i])
+                    continue;
+                Header h = headers[i];
+                assert Logger.lowLevelDebug("adding header " +
+                    "new header: " + h.keyStr + ": " + new String(h.value));
+                fields.add(new Field(h.key, h.value, false));
+            }
+        }
+        // set everything to not added (added[n]=false)
+        for (int i = 0; i < added.length; ++i) {
+            added[i] = false;
+        }
+        pending = true;
+        pendingStreamId = streamId;
+        pendingEndStream = endStream;
+    }
+
+    boolean hasPendingHeaders() {
+        return pending;
+    }
+
+    /**
+     * encode the pending block into a HEADERS frame (and CONTINUATION frames if it's too large)
+     *
+     * @param encoder         the encoder of the connection which the frames will be written to
+     * @param tableSizeUpdate the table size to signal at the beginning of the block, or -1
+     * @return the frames
+     */
+    ByteArray encode(Encoder encoder, int tableSizeUpdate) throws IOException {
+        assert pending;
+        pending = false;
+
+        if (tableSizeUpdate >= 0) {
+            encoder.setMaxHeaderTableSize(outBuffer, tableSizeUpdate);
+        }
+        for (Field f : fields) {
+            encoder.encodeHeader(outBuffer, f.name, f.value, f.sensitive);
+        }
+        fields.clear();
+        ByteArray block = outBuffer.get();
+
+        ByteArray result = null;
+        int offset = 0;
+        do {
+            int len = Math.min(block.length() - offset, MAX_FRAME_PAYLOAD);
+            boolean first = offset == 0;
+            boolean last = offset + len == block.length();
+            byte flags = 0;
+            if (last) flags |= 0x4; // end headers
+            if (first && pendingEndStream) flags |= 0x1; // end stream
+            ByteArray frame = ByteArray.from(new byte[]{
+                0, 0, 0, // length, will be set later
+                (byte) (first ? 1 : 9), // type = headers or continuation
+                flags,
+                0, 0, 0, 0 // stream id, will be set later
+            });
+            frame.int24(0, len);
+            frame.int32(5, pendingStreamId);
+            frame = frame.concat(block.sub(offset, len));
+            result = result == null ? frame : result.concat(frame);
+            offset += len;
+        } while (offset < block.length());
+        return result;
     }
 }
@@ -3,12 +3,12 @@ package vproxybase.processor.http2;
 import vfd.IPPort;
 import vproxybase.processor.Hint;
 import vproxybase.processor.OOContext;
+import vproxybase.util.AccessLog;
 import vproxybase.util.ByteArray;
+import vproxybase.util.IntIntMap;
+import vproxybase.util.IntObjectMap;
 import vproxybase.util.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class Http2Context extends OOContext<Http2SubContext> {
     boolean frontendHandshaking = true;
     boolean backendHandshaking = true;
@@ -17,11 +17,11 @@ public class Http2Context extends OOContext<Http2SubContext> {
     boolean frontendSettingsSent = false;
 
     // the streamMap keys are the ids seen by the frontend
-    final Map<Integer, Http2SubContext> streamMap = new HashMap<>(); // streamId => subCtx
+    final IntObjectMap<Http2SubContext> streamMap = new IntObjectMap<>(); // streamId => subCtx
 
     private int backendStreamId = 0;
     // the streamIdBack2Front is recorded in subCtx of the backend connection sub context
-    final Map<Integer, Integer> streamIdFront2Back = new HashMap<>();
+    final IntIntMap streamIdFront2Back = new IntIntMap(-1); // stream ids are never negative
 
     final HPackTransformer hPackTransformer;
 
@@ -30,7 +30,17 @@ public class Http2Context extends OOContext<Http2SubContext> {
     private String theUri;
     private String theHostHeader;
 
+    // the following fields are only used when the access log is enabled
+    final IPPort client;
+    private String theMethod;
+    private String theAuthority;
+    // the frontend stream whose request headers are just decoded, -1 for none
+    private int headersEndedStreamId = -1;
+    // frontend stream id => the request waiting for the response headers, created when required
+    IntObjectMap<AccessLog.Request> dispatchedRequests = null;
+
     public Http2Context(IPPort clientAddress) {
+        client = clientAddress;
         String clientIpStr = clientAddress.getAddress().formatToIPString();
         hPackTransformer = new HPackTransformer(Http2SubContext.SIZE_DEFAULT_HEADER_TABLE_SIZE,
             new Header[]{
@@ -38,12 +48,14 @@ public class Http2Context extends OOContext<Http2SubContext> {
                 new Header("x-client-port", "" + clientAddress.getPort())
             },
             uri -> this.theUri = uri,
-            host -> this.theHostHeader = host);
+            host -> this.theHostHeader = host,
+            method -> this.theMethod = method,
+            authority -> this.theAuthority = authority);
     }
 
     @Override
     public int connection(Http2SubContext front) {
-        Integer streamId = front.currentStreamId();
+        int streamId = front.currentStreamId();
         Http2SubContext sub = streamMap.get(streamId);
         if (sub == null) {
             if (!frontendSettingsSent) { // the first settings frame should pass freely
@@ -79,20 +91,52 @@ public class Http2Context extends OOContext<Http2SubContext> {
 
     @Override
     public void chosen(Http2SubContext front, Http2SubContext subCtx) {
-        Integer streamId = front.currentStreamId();
+        int streamId = front.currentStreamId();
         assert Logger.lowLevelDebug("recording a stream " + streamId + " => " + subCtx.connId);
         streamMap.put(streamId, subCtx);
+
+        if (accessLog != null && streamId == headersEndedStreamId) {
+            headersEndedStreamId = -1;
+            if (accessLog.sample()) {
+                if (dispatchedRequests == null) {
+                    dispatchedRequests = new IntObjectMap<>();
+                }
+                String host = theHostHeader == null ? theAuthority : theHostHeader;
+                dispatchedRequests.put(streamId, new AccessLog.Request(theMethod, host, theUri, subCtx.remote));
+            }
+        }
+    }
+
+    void requestHeadersEnded(int streamId) {
+        headersEndedStreamId = streamId;
+    }
+
+    boolean isWaitingForResponse(int streamId) {
+        return dispatchedRequests != null && dispatchedRequests.containsKey(streamId);
+    }
+
+    @Override
+    public ByteArray beforeSending(Http2SubContext front, Http2SubContext subCtx, ByteArray data) throws Exception {
+        if (!hPackTransformer.hasPendingHeaders()) {
+            return data;
+        }
+        // the data ends with the HEADERS frame head returned when the header block ends
+        ByteArray headers = subCtx.encodeHeaders();
+        if (data.length() == Http2SubContext.LEN_FRAME_HEAD) {
+            return headers;
+        }
+        return data.sub(0, data.length() - Http2SubContext.LEN_FRAME_HEAD).concat(headers);
     }
 
     void tryRecordStream(Http2SubContext subCtx) {
-        Integer streamId = subCtx.currentStreamId();
+        int streamId = subCtx.currentStreamId();
         if (subCtx.connId != 0 /* not the frontend connection */ && !streamMap.containsKey(streamId)) {
             assert Logger.lowLevelDebug("recording a new stream from sub context (backend)" + streamId + " => " + subCtx.connId);
             streamMap.put(streamId, subCtx);
         }
     }
 
-    Integer nextServerStreamId() {
+    int nextServerStreamId() {
         backendStreamId += 2;
         return backendStreamId;
     }
@@ -38,7 +38,7 @@ public class Http2Processor extends OOProcessor<Http2Context, Http2SubContext> {
 
     @Override
     public Http2SubContext initSub(Http2Context ctx, int id, IPPort associatedAddress) {
-        return new Http2SubContext(ctx, id);
+        return new Http2SubContext(ctx, id, associatedAddress);
     }
 
     @Override
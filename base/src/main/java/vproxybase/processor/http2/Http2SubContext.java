@@ -1,12 +1,17 @@
 package vproxybase.processor.http2;
 
+import com.twitter.hpack.Decoder;
+import com.twitter.hpack.Encoder;
+import vfd.IPPort;
 import vproxybase.processor.OOSubContext;
 import vproxybase.processor.Processor;
+import vproxybase.util.AccessLog;
 import vproxybase.util.ByteArray;
+import vproxybase.util.IntIntMap;
 import vproxybase.util.Logger;
+import vproxybase.util.io.ArrayInputStream;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 
 // the impl corresponds to rfc7540
 /*
@@ -22,7 +27,8 @@ import java.util.Map;
  *
  * Cannot do (limitations):
  * 1. stream dependency and priority
- * 2. header dynamic table for backend (however, dynamic table for frontend is supported)
+ * 2. header dynamic table for responses from backend (however, dynamic table for frontend is supported,
+ * -- and the request headers sent to backend are compressed with a dynamic table of each backend connection)
  * 3. exchange settings (except the first exchange, which is forced according to rfc)
  * 4. http clear text upgrade
  * These limitations will not affect how user uses http/2.
@@ -38,13 +44,16 @@ import java.util.Map;
  * the PRIORITY frames will be dropped. In this way, both client and server
  * can use implementation with stream dependency and priority.
  *
- * 2. header dynamic table for backend
+ * 2. header dynamic table for responses from backend
  * We only support to decompress headers from frontend connection, and
- * the header (de)compression for backend connection is not supported.
+ * the header decompression for backend connection is not supported.
  * So vproxy will attach a setting to the first SETTINGS frame
  * which must be sent by both client and server.
  * SETTINGS_HEADER_TABLE_SIZE would be set to 0 for backend connections.
  * In this way, the backend will not compress the headers, and can work well with vproxy.
+ * The request headers are decompressed, and after the backend connection is chosen,
+ * they are compressed with the encoder of that connection (see Http2Context#beforeSending),
+ * so the dynamic table of each backend connection only sees the blocks sent on the connection, in order.
  *
  * 3. exchange settings
  * The first exchange is forced according to rfc, so it's supported.
@@ -181,6 +190,9 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
     // and, we do not update the stream window size because 2^30-1 would be enough
 
     static final int SIZE_DEFAULT_HEADER_TABLE_SIZE;
+    // max dynamic table size used when encoding headers for backend connections, 0 means not to use the dynamic table
+    private static final int SIZE_BACKEND_HEADER_TABLE_SIZE;
+    private static final int SIZE_INITIAL_HEADER_TABLE_SIZE = 4096; // defined in rfc
 
     private static final byte VALUE_SETTINGS_HEADER_TABLE_SIZE = 0x1; // will be set to 0
     private static final byte VALUE_SETTINGS_INITIAL_WINDOW_SIZE = 0x4; // will be set to SIZE_STREAM_WINDOW
@@ -198,6 +210,17 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
                 throw new RuntimeException("-DHTTP2_DEFAULT_HEADER_TABLE_SIZE value < 0");
             SIZE_DEFAULT_HEADER_TABLE_SIZE = headerTableSize;
         }
+        {
+            int headerTableSize = 4096;
+            String tableSizeStr = System.getProperty("HTTP2_BACKEND_HEADER_TABLE_SIZE");
+            if (tableSizeStr != null) {
+                headerTableSize = Integer.parseInt(tableSizeStr);
+                Logger.alert("HTTP2_BACKEND_HEADER_TABLE_SIZE is set to " + headerTableSize);
+            }
+            if (headerTableSize < 0)
+                throw new RuntimeException("-DHTTP2_BACKEND_HEADER_TABLE_SIZE value < 0");
+            SIZE_BACKEND_HEADER_TABLE_SIZE = headerTableSize;
+        }
     }
 
     private Http2Frame frame;
@@ -223,10 +246,13 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
      * 6 -> (push-promise) the first few bits of a push-promise frame -> 7
      * 7 -> (push-promise) proxy the bits after first few bits -> 1
      * 8 -> (hpack) content of headers or continuation for hpack to process -> 1
+     * 9 -> (access log) content of response headers, read the status and send as is -> 1
+ * when the headers end, a HEADERS frame head without payload is returned,
+ * and it's replaced with the encoded frames in Http2Context#beforeSending
      */
 
-    private final Map<Integer, Integer> streamIdBack2Front = new HashMap<>();
-    private Integer backendIdForStreamToRemove = null;
+    private final IntIntMap streamIdBack2Front = new IntIntMap(-1); // stream ids are never negative
+    private int backendIdForStreamToRemove = -1;
 
     // the ack of settings frame
     private ByteArray syntheticAck = null;
@@ -249,8 +275,25 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
     // if it's a backend sub context, the field will be set but never used
     boolean headersRetrieved;
 
+    // the hpack encoder for headers sent to the backend connection
+    // only used when it's a backend sub context
+    private Encoder encoder;
+    private int headerTableSizeUpdate = -1; // the size to signal in the next header block, -1 means no update
+    private boolean backendSettingsRecorded = false;
+
+    // the client address for frontend, the backend address for backend, might be null
+    final IPPort remote;
+    // decode the status of responses for the access log, created when required
+    // the backend does not use dynamic table, see the limitations above
+    private Decoder statusDecoder;
+
     public Http2SubContext(Http2Context ctx, int connId) {
+        this(ctx, connId, null);
+    }
+
+    public Http2SubContext(Http2Context ctx, int connId, IPPort associatedAddress) {
         super(ctx, connId);
+        this.remote = associatedAddress;
 
         if (connId == 0) {
             state = 0;
@@ -284,6 +327,7 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
             case 4:
             case 6:
             case 8:
+            case 9:
             case -1:
                 return Processor.Mode.handle;
             case 2:
@@ -336,6 +380,7 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
             case 7:
                 return frame.length - (frame.padded ? LEN_PADDING : 0) - LEN_R_PROMISED_STREAM_ID;
             case 8:
+            case 9:
                 //noinspection DuplicateBranchesInSwitch
                 return frame.length;
             case -1:
@@ -348,6 +393,7 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
     }
 
     private ByteArray storedBytes = null;
+    private boolean headersEndStream; // whether the HEADERS frame being decoded has END_STREAM set
 
     @Override
     public ByteArray feed(ByteArray data) throws Exception {
@@ -418,12 +464,22 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
                 state = 7;
                 return data;
             case -1:
+                if (frame.type == Http2Frame.Type.SETTINGS && !frame.ack && connId != 0) {
+                    recordBackendSettings(data);
+                }
                 lastFrame = frame;
                 frame = null;
                 state = 1;
                 return null; // ignore
             case 8:
                 return handleHeaderHPack(data);
+            case 9:
+                recordResponse(data);
+                if (frame.priority) {
+                    data = removePriority(data);
+                }
+                proxyDone(); // the frame ends
+                return data;
             case 2:
             case 5:
             case 7:
@@ -516,14 +572,14 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
                 assert Logger.lowLevelDebug("modify streamIdentifier of the frame. " +
                     "streamId=" + frame.streamIdentifier + ", connId=" + connId);
 
-                Integer translatedStreamId;
+                int translatedStreamId;
                 if (connId == 0) {
                     translatedStreamId = ctx.streamIdFront2Back.get(frame.streamIdentifier);
                 } else {
                     translatedStreamId = this.streamIdBack2Front.get(frame.streamIdentifier);
                 }
-                if (translatedStreamId == null) {
-                    assert Logger.lowLevelDebug("the translatedStreamId is null, which is invalid." +
+                if (translatedStreamId == -1) {
+                    assert Logger.lowLevelDebug("the translatedStreamId is missing, which is invalid." +
                         "The HTTP/2 protocol does not allow a server start new streams before push-promise, " +
                         "and the streamId should already been recorded when parsing the push-promise frame. " +
                         "But we allow this condition for possible 'HTTP/2-like' protocols.");
@@ -537,7 +593,7 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
                 }
 
                 assert Logger.lowLevelDebug("the translatedStreamId is " + translatedStreamId);
-                if (!translatedStreamId.equals(frame.streamIdentifier)) {
+                if (translatedStreamId != frame.streamIdentifier) {
                     utilModifyStreamId(frameBytes, 5, translatedStreamId);
                     frame.streamIdentifier = translatedStreamId;
                 }
@@ -554,6 +610,15 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
             headersRetrieved = false;
             state = 8;
             return null; // send nothing for now
+        } else if (connId != 0 && frame.type == Http2Frame.Type.HEADERS && ctx.isWaitingForResponse(frame.streamIdentifier)) {
+            assert Logger.lowLevelDebug("got response HEADERS frame of a request recorded by the access log");
+            state = 9;
+            if (frame.priority) {
+                // the payload is handled as a whole, so the priority is removed when the payload is fed
+                utilModifyFrameLength(frameBytes, frame.length - LEN_E_STREAMDEPENDENCY_WEIGHT);
+                frameBytes.set(4, (byte) (frameBytes.get(4) & 0b1101_1111));
+            }
+            return frameBytes;
         } else if (frame.type == Http2Frame.Type.HEADERS && frame.priority) {
             assert Logger.lowLevelDebug("got HEADERS frame with priority, we should remove the priority");
             state = 3;
@@ -639,6 +704,9 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
     // concat a setting SETTINGS_HEADER_TABLE_SIZE = 0 to the frame, or change the value if it already exists
     // concat a setting SETTINGS_INITIAL_WINDOW_SIZE to the frame, or change the value if it already exists
     private ByteArray handleSettings(ByteArray payload) {
+        if (connId != 0) {
+            recordBackendSettings(payload);
+        }
         int extraLength = 0;
 
         // try to find the SETTINGS_HEADER_TABLE_SIZE and change the value
@@ -707,21 +775,18 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
     }
 
     private void translatePromisedStreamId(ByteArray data, int offset) {
-        Integer promisedStreamId = data.int32(offset);
-        Integer translatedStreamId = ctx.nextServerStreamId();
+        int promisedStreamId = data.int32(offset);
+        int translatedStreamId = ctx.nextServerStreamId();
         assert Logger.lowLevelDebug("push-promise frame > promised stream id is " + promisedStreamId +
             " translated stream id is " + translatedStreamId);
         recordStreamMapping(translatedStreamId, promisedStreamId);
-        if (!promisedStreamId.equals(translatedStreamId)) {
+        if (promisedStreamId != translatedStreamId) {
             utilModifyStreamId(data, offset, translatedStreamId);
         }
     }
 
     private ByteArray handleHeaderHPack(ByteArray data) throws Exception {
-        byte frameType;
-        ByteArray transformed;
         if (frame.type == Http2Frame.Type.HEADERS) {
-            frameType = 1;
             // get the actual data part
             if (frame.padded && frame.priority) {
                 data = data.sub(1 + 5, data.length() - (1 + 5) - data.get(0));
@@ -730,31 +795,121 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
             } else if (frame.priority) {
                 data = data.sub(5, data.length() - 5);
             }
-            transformed = ctx.hPackTransformer.transform(data, frame.endHeaders && connId == 0);
+            headersEndStream = frame.endStream;
         } else {
             assert frame.type == Http2Frame.Type.CONTINUATION;
-            frameType = 9; // type = continuation
             // data is simple and can be directly transformed for continuation frames
-            transformed = ctx.hPackTransformer.transform(data, frame.endHeaders && connId == 0);
         }
+        ctx.hPackTransformer.decode(data);
+        // set state to idle
+        state = 1;
+
+        if (!frame.endHeaders) {
+            return null; // wait for the continuation frames
+        }
+        ctx.hPackTransformer.endHeaders(frame.streamIdentifier, headersEndStream, true);
+        ctx.requestHeadersEnded(frame.streamIdentifier);
+        headersRetrieved = true; // headers frame ends, connection related headers must have been retrieved, so send data
+
+        // the frame head is replaced when the backend connection is chosen
         ByteArray result = ByteArray.from(new byte[]{
-            0, 0, 0, // length, will be set later
-            frameType,
-            (byte) (frame.endHeaders ? 4 : 0), // flags
+            0, 0, 0, // length
+            1, // type = headers
+            4, // flags = end headers
             0, 0, 0, 0 // stream id, will be set later
-        }).concat(transformed);
-        result.int24(0, transformed.length());
+        });
         result.int32(5, frame.streamIdentifier);
+        return result;
+    }
 
-        // set header end before return the result
-        if (frame.endHeaders) {
-            ctx.hPackTransformer.endHeaders();
-            headersRetrieved = true; // headers frame ends, connection related headers must have been retrieved, so send data
+    // record the request when the final response headers are received
+    private void recordResponse(ByteArray payload) {
+        int status = decodeStatus(payload);
+        if (status >= 100 && status < 200) {
+            return; // informational, wait for the final response
         }
-        // set state to idle
-        state = 1;
+        AccessLog.Request req = ctx.dispatchedRequests.remove(frame.streamIdentifier);
+        if (req != null) {
+            ctx.accessLog.request(ctx.client, req, status);
+        }
+    }
 
-        return result;
+    // keep the pad length and the header block, and remove the stream dependency and weight
+    private ByteArray removePriority(ByteArray payload) {
+        int off = frame.padded ? LEN_PADDING : 0;
+        ByteArray rest = payload.sub(off + LEN_E_STREAMDEPENDENCY_WEIGHT, payload.length() - off - LEN_E_STREAMDEPENDENCY_WEIGHT);
+        return off == 0 ? rest : payload.sub(0, off).concat(rest);
+    }
+
+    // the :status is always the first field of the response headers
+    // return 0 if it's not found
+    private int decodeStatus(ByteArray payload) {
+        int off = 0;
+        int end = payload.length();
+        if (frame.padded) {
+            off += LEN_PADDING;
+            end -= payload.uint8(0);
+        }
+        if (frame.priority) {
+            off += LEN_E_STREAMDEPENDENCY_WEIGHT;
+        }
+        if (off > end) {
+            return 0;
+        }
+        payload = payload.sub(off, end - off);
+        if (statusDecoder == null) {
+            statusDecoder = new Decoder(4096 /*only the first field is used*/, 0);
+        }
+        int[] status = {0};
+        try {
+            statusDecoder.decode(ArrayInputStream.from(payload), (name, value, sensitive) -> {
+                if (status[0] == 0 && new String(name).equals(":status")) {
+                    status[0] = Integer.parseInt(new String(value));
+                }
+            });
+        } catch (IOException | NumberFormatException e) {
+            assert Logger.lowLevelDebug("decoding the status of the response failed: " + e);
+        } finally {
+            statusDecoder.endHeaderBlock();
+        }
+        return status[0];
+    }
+
+    // record the header table size of the backend decoder
+    // only the first SETTINGS frame is acknowledged, so the following ones are not recorded
+    private void recordBackendSettings(ByteArray payload) {
+        if (backendSettingsRecorded) {
+            return;
+        }
+        backendSettingsRecorded = true;
+        for (int i = 0; i + LEN_SETTING <= payload.length(); i += LEN_SETTING) {
+            if (payload.uint16(i) == VALUE_SETTINGS_HEADER_TABLE_SIZE) {
+                long size = payload.int32(i + 2) & 0xffffffffL;
+                int limit = (int) Math.min(size, SIZE_BACKEND_HEADER_TABLE_SIZE);
+                assert Logger.lowLevelDebug("backend " + connId + " header table size is " + size + ", use " + limit);
+                if (encoder == null) {
+                    // nothing sent yet, simply create the encoder with the size when it's used
+                    headerTableSizeUpdate = limit;
+                } else if (encoder.getMaxHeaderTableSize() != limit) {
+                    headerTableSizeUpdate = limit;
+                }
+            }
+        }
+    }
+
+    // encode the decoded request headers for this backend connection
+    // the returned frames must be written to this connection before encoding the next block
+    ByteArray encodeHeaders() throws IOException {
+        assert connId != 0;
+        int update = headerTableSizeUpdate;
+        headerTableSizeUpdate = -1;
+        if (encoder == null) {
+            encoder = new Encoder(Math.min(SIZE_INITIAL_HEADER_TABLE_SIZE, SIZE_BACKEND_HEADER_TABLE_SIZE));
+            if (update == encoder.getMaxHeaderTableSize()) {
+                update = -1;
+            }
+        }
+        return ctx.hPackTransformer.encode(encoder, update);
     }
 
     private static void utilModifyStreamId(ByteArray data, int offset, int streamId) {
@@ -765,7 +920,7 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
         data.int24(0, length);
     }
 
-    Integer currentStreamId() {
+    int currentStreamId() {
         if (frame == null && lastFrame == null) {
             // check whether this is a bug
             boolean isBug = true;
@@ -797,16 +952,17 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
         return f.streamIdentifier;
     }
 
-    void recordStreamMapping(Integer front, Integer back) {
+    void recordStreamMapping(int front, int back) {
         this.streamIdBack2Front.put(back, front);
         ctx.streamIdFront2Back.put(front, back);
     }
 
-    void removeStreamMappingByBackendId(Integer back) {
-        Integer front = this.streamIdBack2Front.remove(back);
-        ctx.streamIdFront2Back.remove(front); // it's ok to remove a non-exist element
-        if (front == null) {
+    void removeStreamMappingByBackendId(int back) {
+        int front = this.streamIdBack2Front.remove(back);
+        if (front == -1) {
             front = back;
+        } else {
+            ctx.streamIdFront2Back.remove(front);
         }
         ctx.streamMap.remove(front);
     }
@@ -816,9 +972,9 @@ public class Http2SubContext extends OOSubContext<Http2Context> {
         // check whether the stream can be removed
         // NOTE: the removal is placed before resetting state and frame
         // is because that it's easier when debugging to see the old status
-        if (backendIdForStreamToRemove != null) {
+        if (backendIdForStreamToRemove != -1) {
             removeStreamMappingByBackendId(backendIdForStreamToRemove);
-            backendIdForStreamToRemove = null;
+            backendIdForStreamToRemove = -1;
         }
         // all proxy states goes to state 1
         // so simply set the frame to null and state 1 here
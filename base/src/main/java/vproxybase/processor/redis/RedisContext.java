@@ -0,0 +1,88 @@
+package vproxybase.processor.redis;
+
+import vproxybase.processor.Hint;
+import vproxybase.processor.OOContext;
+import vproxybase.util.ByteArray;
+import vproxybase.util.Logger;
+
+import java.util.ArrayDeque;
+
+/**
+ * The frontend commands are grouped by the slot of their keys,
+ * each group is returned by one `feed` call and sent to the backend chosen with hint {@link Hint#ofKey(String)}.<br>
+ * The backend connections are shared by all frontends in the event loop.
+ * Replies are matched with commands in the order of sending on each backend connection,
+ * and written back to the frontend in the order of the commands.<br>
+ * Commands which cannot be proxied (e.g. keys in different slots) are replied by the proxy with an error.
+ */
+public class RedisContext extends OOContext<RedisSubContext> {
+    static class Pending {
+        final RedisContext ctx;
+        ByteArray reply;
+
+        Pending(RedisContext ctx) {
+            this.ctx = ctx;
+        }
+    }
+
+    // commands sent to backends and not written back to the frontend yet, in the order of receiving
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    // the commands group returned by the last `feed` of the frontend
+    int groupCommands = 0;
+    int groupSlot = -1;
+
+    boolean ready = false; // whether the context is recorded as ready in a backend sub context
+
+    @Override
+    public int connection(RedisSubContext front) {
+        if (groupCommands == 0) {
+            return 0;
+        }
+        return -1; // always let the lib choose with hint
+    }
+
+    @Override
+    public Hint connectionHint(RedisSubContext front) {
+        if (groupSlot == -1) {
+            return null;
+        }
+        return Hint.ofKey(Integer.toString(groupSlot));
+    }
+
+    @Override
+    public void chosen(RedisSubContext front, RedisSubContext subCtx) {
+        assert Logger.lowLevelDebug("redis commands group of " + groupCommands + " with slot " + groupSlot + " is sent to " + subCtx.connId);
+        for (int i = 0; i < groupCommands; ++i) {
+            Pending p = new Pending(this);
+            pending.add(p);
+            subCtx.inflight.add(p);
+        }
+        groupCommands = 0;
+        groupSlot = -1;
+    }
+
+    // a reply made by the proxy, it's written after replies of the former commands
+    void reply(ByteArray reply) {
+        Pending p = new Pending(this);
+        p.reply = reply;
+        pending.add(p);
+    }
+
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return replies which can be written to the frontend now, or null if nothing to write
+     */
+    ByteArray replied() {
+        ByteArray ret = null;
+        Pending p;
+        while ((p = pending.peek()) != null && p.reply != null) {
+            pending.poll();
+            ret = ret == null ? p.reply : ret.concat(p.reply);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,33 @@
+package vproxybase.processor.redis;
+
+import vfd.IPPort;
+import vproxybase.processor.OOProcessor;
+
+import java.util.Collection;
+
+public class RedisProcessor extends OOProcessor<RedisContext, RedisSubContext> {
+    @Override
+    public String name() {
+        return "redis";
+    }
+
+    @Override
+    public RedisContext init(IPPort clientAddress) {
+        return new RedisContext();
+    }
+
+    @Override
+    public RedisSubContext initSub(RedisContext ctx, int id, IPPort associatedAddress) {
+        return new RedisSubContext(ctx, id);
+    }
+
+    @Override
+    public boolean multiplexed() {
+        return true;
+    }
+
+    @Override
+    public Collection<RedisContext> ready(RedisContext ctx, RedisSubContext back) {
+        return back.takeReady();
+    }
+}
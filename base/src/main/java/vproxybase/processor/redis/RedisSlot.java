@@ -0,0 +1,62 @@
+package vproxybase.processor.redis;
+
+import vproxybase.util.ByteArray;
+
+/**
+ * Calculate the slot of a key in the same way as redis cluster:
+ * crc16(key) mod 16384, and only the content of the hash tag {...} is hashed if present.
+ */
+public class RedisSlot {
+    public static final int SLOTS = 16384;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        // crc16-ccitt (xmodem), polynomial 0x1021
+        for (int i = 0; i < 256; ++i) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; ++j) {
+                if ((crc & 0x8000) != 0) {
+                    crc = (crc << 1) ^ 0x1021;
+                } else {
+                    crc = crc << 1;
+                }
+            }
+            TABLE[i] = crc & 0xffff;
+        }
+    }
+
+    private RedisSlot() {
+    }
+
+    public static int crc16(ByteArray data, int off, int len) {
+        int crc = 0;
+        for (int i = off, end = off + len; i < end; ++i) {
+            crc = ((crc << 8) ^ TABLE[((crc >>> 8) ^ data.get(i)) & 0xff]) & 0xffff;
+        }
+        return crc;
+    }
+
+    public static int slot(ByteArray key) {
+        return slot(key, 0, key.length());
+    }
+
+    public static int slot(ByteArray data, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; ++i) {
+            if (data.get(i) != '{') {
+                continue;
+            }
+            for (int j = i + 1; j < end; ++j) {
+                if (data.get(j) == '}') {
+                    if (j > i + 1) { // only hash the tag when it's not empty
+                        return crc16(data, i + 1, j - i - 1) & (SLOTS - 1);
+                    }
+                    break;
+                }
+            }
+            break;
+        }
+        return crc16(data, off, len) & (SLOTS - 1);
+    }
+}
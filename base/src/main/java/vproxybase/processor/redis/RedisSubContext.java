@@ -0,0 +1,570 @@
+package vproxybase.processor.redis;
+
+import vproxybase.processor.OOSubContext;
+import vproxybase.processor.Processor;
+import vproxybase.util.ByteArray;
+import vproxybase.util.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * Only the boundaries of RESP messages are parsed, the messages are never decoded into entities.
+ *
+ * frontend: a message is a command, an array of bulk strings, or an inline command
+ * backend: a message is a reply, which may be a nested array
+ *
+ * state machine of a value:
+ * 0 --> type byte
+ * ----->(*,%,~,>,|)--> 2, aggregate
+ * ----->($,=,!)------> 2, bulk
+ * ----->(+,-,:,_,,,#,()--> 1
+ * ----->(otherwise, at the beginning of a frontend message)--> 4, inline
+ * 1 --> simple line, until \n --> value done
+ * 2 --> length digits, until \r --> 3
+ * 3 --> \n, aggregate: add elements, bulk: --> 5 or value done if length is -1
+ * 4 --> inline command, until \n --> message done
+ * 5 --> bulk body and \r\n --> value done
+ *
+ * a message is done when all values it contains are done
+ *
+ * the keys of a command are located with a spec similar to the key specs of redis:
+ * (first, last, step) or a numkeys argument followed by the keys,
+ * the keys of XREAD and XREADGROUP are located after the STREAMS option.
+ * a command is replied by the proxy instead of being sent, if:
+ * its keys are in different slots (CROSSSLOT, same as redis cluster),
+ * or it changes the state of the connection, which is shared by all frontends (e.g. SELECT, MULTI, SUBSCRIBE, blocking commands),
+ * or it operates on all keys of a node, which would only run on one of the backends (e.g. KEYS, SCAN, FLUSHALL).
+ * empty commands are dropped, redis does not reply them either.
+ * after QUIT is replied, the frontend connection is closed and the data after it is ignored.
+ */
+public class RedisSubContext extends OOSubContext<RedisContext> {
+    private static final Set<String> NO_KEY_COMMANDS = Set.of(
+        "ping", "echo", "info", "time", "command", "config", "lastsave", "role", "slowlog", "script", "publish", "pubsub"
+    );
+    private static final Set<String> ALL_NODES_COMMANDS = Set.of(
+        "keys", "scan", "dbsize", "randomkey", "flushdb", "flushall", "save", "bgsave", "bgrewriteaof"
+    );
+    private static final Set<String> UNSUPPORTED_COMMANDS = Set.of(
+        "auth", "hello", "select", "client", "readonly", "readwrite", "reset", "wait", "monitor", "sync", "psync",
+        "multi", "exec", "discard", "watch", "unwatch",
+        "subscribe", "unsubscribe", "psubscribe", "punsubscribe", "ssubscribe", "sunsubscribe",
+        "blpop", "brpop", "brpoplpush", "blmove", "blmpop", "bzpopmin", "bzpopmax", "bzmpop"
+    );
+    private static final ByteArray OK = ByteArray.from("+OK\r\n".getBytes());
+    private static final ByteArray CROSSSLOT = ByteArray.from("-CROSSSLOT Keys in request don't hash to the same slot\r\n".getBytes());
+
+    private static class KeySpec {
+        static final KeySpec FIRST = new KeySpec(1, 1, 1, 0);
+        static final KeySpec STREAMS = new KeySpec(0, 0, 1, 0); // the keys are located when parsing the options
+
+        final int first; // index of the first key, or the key before numkeys, 0 if none
+        final int last; // index of the last key, negative values count from the end: -1 is the last argument
+        final int step;
+        final int numkeys; // index of the numkeys argument, 0 if none, the keys follow the argument
+
+        KeySpec(int first, int last, int step, int numkeys) {
+            this.first = first;
+            this.last = last;
+            this.step = step;
+            this.numkeys = numkeys;
+        }
+
+        boolean isKey(int index, int elements, int keys) {
+            if (numkeys != 0) {
+                return index == first || (index > numkeys && index <= numkeys + keys);
+            }
+            int lastIndex = last < 0 ? elements + last : last;
+            return index >= first && index <= lastIndex && (index - first) % step == 0;
+        }
+    }
+
+    private static final Map<String, KeySpec> KEY_SPECS = new HashMap<>();
+
+    static {
+        for (String cmd : Arrays.asList("mget", "del", "exists", "unlink", "touch", "sdiff", "sdiffstore",
+            "sinter", "sinterstore", "sunion", "sunionstore", "pfcount", "pfmerge")) {
+            KEY_SPECS.put(cmd, new KeySpec(1, -1, 1, 0));
+        }
+        for (String cmd : Arrays.asList("mset", "msetnx")) {
+            KEY_SPECS.put(cmd, new KeySpec(1, -1, 2, 0));
+        }
+        for (String cmd : Arrays.asList("rename", "renamenx", "rpoplpush", "smove", "lmove", "copy",
+            "geosearchstore", "zrangestore")) {
+            KEY_SPECS.put(cmd, new KeySpec(1, 2, 1, 0));
+        }
+        for (String cmd : Arrays.asList("eval", "evalsha", "eval_ro", "evalsha_ro", "fcall", "fcall_ro")) {
+            KEY_SPECS.put(cmd, new KeySpec(0, 0, 1, 2)); // eval script numkeys key...
+        }
+        for (String cmd : Arrays.asList("zunionstore", "zinterstore", "zdiffstore")) {
+            KEY_SPECS.put(cmd, new KeySpec(1, 0, 1, 2)); // zunionstore dest numkeys key...
+        }
+        for (String cmd : Arrays.asList("zunion", "zinter", "zdiff", "sintercard", "zintercard", "lmpop", "zmpop")) {
+            KEY_SPECS.put(cmd, new KeySpec(0, 0, 1, 1)); // zunion numkeys key...
+        }
+        for (String cmd : Arrays.asList("xgroup", "xinfo", "object", "memory")) {
+            KEY_SPECS.put(cmd, new KeySpec(2, 2, 1, 0)); // object encoding key
+        }
+        for (String cmd : Arrays.asList("xread", "xreadgroup")) {
+            KEY_SPECS.put(cmd, KeySpec.STREAMS);
+        }
+    }
+
+    // for backend, the commands sent and not replied yet, in the order of sending,
+    // the connection is shared, so the commands may come from different frontends
+    final ArrayDeque<RedisContext.Pending> inflight = new ArrayDeque<>();
+    // for backend, the frontends which got replies in the last feed
+    private List<RedisContext> ready = new ArrayList<>();
+
+    private static class Command {
+        final ByteArray bytes;
+        final int slot; // -1 when the command has no key
+        final ByteArray reply; // not null when the command is replied by the proxy
+
+        Command(ByteArray bytes, int slot, ByteArray reply) {
+            this.bytes = bytes;
+            this.slot = slot;
+            this.reply = reply;
+        }
+    }
+
+    // for frontend, the parsed commands not returned by feed() yet
+    private final ArrayDeque<Command> commands = new ArrayDeque<>();
+
+    private ByteArray buf = null; // received data
+    private int start = 0; // start offset of the current message in buf
+    private int off = 0; // parsed offset in buf
+    private int state = 0;
+    private boolean aggregate;
+    private int aggregateFactor; // map and attribute contains 2n values
+    private long len;
+    private boolean negative;
+    private int valuesLeft = 1; // values left to finish the current message
+    private long bulkLeft;
+
+    // for frontend
+    private int elements = 0; // number of elements in the command
+    private int element = 0; // index of the current element in the command
+    private KeySpec keySpec = null; // null when the command has no key
+    private int numkeys = 0;
+    private int slot = -1;
+    private ByteArray reply = null;
+    private String name = null; // the lower case command name
+    private int optionArgs = 0; // arguments left for the current option of XREAD
+    private int firstKey = 0; // index of the first key after the STREAMS option of XREAD
+    private boolean quit = false; // QUIT is received
+
+    public RedisSubContext(RedisContext ctx, int connId) {
+        super(ctx, connId);
+    }
+
+    @Override
+    public Processor.Mode mode() {
+        return Processor.Mode.handle;
+    }
+
+    @Override
+    public boolean expectNewFrame() {
+        if (isFrontend()) {
+            // nothing is being parsed or waiting for replies
+            return start == off && commands.isEmpty() && !ctx.hasPending();
+        }
+        return true;
+    }
+
+    @Override
+    public int len() {
+        return -1;
+    }
+
+    @Override
+    public boolean hasBufferedFrames() {
+        return !commands.isEmpty();
+    }
+
+    @Override
+    public boolean closeFrontend() {
+        return quit;
+    }
+
+    @Override
+    public ByteArray feed(ByteArray data) throws Exception {
+        if (quit) {
+            data = ByteArray.allocate(0); // the connection will be closed, the data after QUIT is ignored
+        }
+        if (data.length() != 0) {
+            if (buf == null || start == buf.length()) {
+                buf = data;
+            } else if (start == 0) {
+                buf = buf.concat(data);
+            } else {
+                buf = buf.sub(start, buf.length() - start).concat(data);
+            }
+            off -= start;
+            start = 0;
+            parse();
+        }
+        if (isFrontend()) {
+            return nextGroup();
+        } else {
+            return null; // the replies are retrieved with produce() of the frontends
+        }
+    }
+
+    Collection<RedisContext> takeReady() {
+        if (ready.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<RedisContext> ret = ready;
+        ready = new ArrayList<>();
+        for (RedisContext c : ret) {
+            c.ready = false;
+        }
+        return ret;
+    }
+
+    private ByteArray nextGroup() {
+        ByteArray ret = null;
+        int n = 0;
+        int groupSlot = -1;
+        Command cmd;
+        while ((cmd = commands.peek()) != null) {
+            if (cmd.reply != null) {
+                if (n != 0) {
+                    break; // reply after the replies of the group
+                }
+                commands.poll();
+                ctx.reply(cmd.reply);
+                continue;
+            }
+            int s = cmd.slot;
+            if (s != -1) {
+                if (groupSlot == -1) {
+                    groupSlot = s;
+                } else if (groupSlot != s) {
+                    break;
+                }
+            }
+            commands.poll();
+            ret = ret == null ? cmd.bytes : ret.concat(cmd.bytes);
+            ++n;
+        }
+        ctx.groupCommands = n;
+        ctx.groupSlot = groupSlot;
+        return ret;
+    }
+
+    private void parse() throws Exception {
+        final int length = buf.length();
+        while (off < length && !quit) {
+            byte b;
+            switch (state) {
+                case 0:
+                    b = buf.get(off++);
+                    if (isFrontend()) {
+                        if (off - 1 == start) {
+                            if (b != '*') {
+                                state = 4; // inline
+                                break;
+                            }
+                        } else if (b != '$') {
+                            throw new Exception("unexpected RESP type " + (char) b + " in command");
+                        }
+                    }
+                    if (b == '*' || b == '%' || b == '~' || b == '>' || b == '|') {
+                        aggregate = true;
+                        aggregateFactor = (b == '%' || b == '|') ? 2 : 1;
+                        if (b == '|') {
+                            ++valuesLeft; // the attribute is followed by the actual value
+                        }
+                        len = 0;
+                        negative = false;
+                        state = 2;
+                    } else if (b == '$' || b == '=' || b == '!') {
+                        aggregate = false;
+                        len = 0;
+                        negative = false;
+                        state = 2;
+                    } else if (b == '+' || b == '-' || b == ':' || b == '_' || b == ',' || b == '#' || b == '(') {
+                        state = 1;
+                    } else {
+                        throw new Exception("unexpected RESP type " + (char) b);
+                    }
+                    break;
+                case 1:
+                    if (buf.get(off++) == '\n') {
+                        valueDone();
+                    }
+                    break;
+                case 2:
+                    b = buf.get(off++);
+                    if (b == '\r') {
+                        state = 3;
+                    } else if (b == '-' && len == 0 && !negative) {
+                        negative = true;
+                    } else if (b >= '0' && b <= '9') {
+                        len = len * 10 + (b - '0');
+                        if (len > Integer.MAX_VALUE) {
+                            throw new Exception("RESP length too large");
+                        }
+                    } else {
+                        throw new Exception("invalid RESP length, unexpected char " + (char) b);
+                    }
+                    break;
+                case 3:
+                    if (buf.get(off++) != '\n') {
+                        throw new Exception("invalid RESP length, expecting \\n");
+                    }
+                    if (negative) {
+                        len = -len;
+                    }
+                    if (aggregate) {
+                        if (isFrontend()) { // only the command itself is an array
+                            elements = (int) len;
+                        }
+                        state = 0;
+                        if (len <= 0) { // empty or null
+                            valueDone();
+                        } else {
+                            valuesLeft += len * aggregateFactor - 1;
+                        }
+                    } else if (len < 0) { // null bulk string
+                        valueDone();
+                    } else {
+                        bulkLeft = len + 2;
+                        state = 5;
+                    }
+                    break;
+                case 4:
+                    if (buf.get(off++) == '\n') {
+                        inlineDone();
+                    }
+                    break;
+                case 5:
+                    long n = Math.min(bulkLeft, length - off);
+                    off += (int) n;
+                    bulkLeft -= n;
+                    if (bulkLeft == 0) {
+                        if (buf.get(off - 2) != '\r' || buf.get(off - 1) != '\n') {
+                            throw new Exception("invalid RESP bulk string, expecting \\r\\n");
+                        }
+                        if (isFrontend()) {
+                            bulkDone((int) len);
+                        }
+                        valueDone();
+                    }
+                    break;
+            }
+        }
+    }
+
+    // the bulk string of the command is in [off - 2 - len, off - 2)
+    private void bulkDone(int len) {
+        argument(off - 2 - len, len);
+    }
+
+    private void argument(int start, int len) {
+        int index = element++;
+        if (index == 0) {
+            name = commandName(buf, start, len);
+            keySpec = null;
+            if (name.equals("quit")) {
+                reply = OK; // the shared backend connection must not be closed
+            } else if (UNSUPPORTED_COMMANDS.contains(name)) {
+                reply = error("command '" + name + "' is not supported by the proxy");
+            } else if (ALL_NODES_COMMANDS.contains(name)) {
+                reply = error("command '" + name + "' operates on all nodes and is not supported by the proxy");
+            } else if (!NO_KEY_COMMANDS.contains(name)) {
+                keySpec = KEY_SPECS.getOrDefault(name, KeySpec.FIRST);
+            }
+            return;
+        }
+        if (keySpec == null || reply != null) {
+            return;
+        }
+        if (keySpec == KeySpec.STREAMS) {
+            streamsArgument(index, start, len);
+            return;
+        }
+        if (index == keySpec.numkeys) {
+            numkeys = parseNumkeys(start, len);
+            return;
+        }
+        if (keySpec.isKey(index, elements, numkeys)) {
+            key(start, len);
+        }
+    }
+
+    // xread [COUNT count] [BLOCK ms] STREAMS key... id...
+    // xreadgroup GROUP group consumer [COUNT count] [BLOCK ms] [NOACK] STREAMS key... id...
+    private void streamsArgument(int index, int start, int len) {
+        if (firstKey != 0) {
+            if (index < firstKey + numkeys) {
+                key(start, len);
+            }
+            return;
+        }
+        if (optionArgs > 0) {
+            --optionArgs;
+            return;
+        }
+        String option = commandName(buf, start, len);
+        switch (option) {
+            case "count":
+                optionArgs = 1;
+                break;
+            case "group":
+                optionArgs = 2;
+                break;
+            case "block":
+                reply = error("command '" + name + "' with BLOCK is not supported by the proxy");
+                break;
+            case "streams":
+                firstKey = index + 1;
+                numkeys = (elements - firstKey) / 2; // the keys are followed by the same number of ids
+                break;
+        }
+    }
+
+    private void key(int start, int len) {
+        int s = RedisSlot.slot(buf, start, len);
+        if (slot == -1) {
+            slot = s;
+        } else if (slot != s) {
+            reply = CROSSSLOT;
+        }
+    }
+
+    private static ByteArray error(String msg) {
+        return ByteArray.from(("-ERR " + msg + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // an invalid value is considered as no keys, and the backend will reply an error
+    private int parseNumkeys(int start, int len) {
+        int n = 0;
+        for (int i = start, end = start + len; i < end; ++i) {
+            byte b = buf.get(i);
+            if (b < '0' || b > '9') {
+                return 0;
+            }
+            n = n * 10 + (b - '0');
+            if (n > elements) {
+                return elements;
+            }
+        }
+        return n;
+    }
+
+    private static String commandName(ByteArray buf, int start, int len) {
+        if (len > 32) {
+            return "";
+        }
+        char[] chars = new char[len];
+        for (int i = 0; i < len; ++i) {
+            chars[i] = Character.toLowerCase((char) buf.get(start + i));
+        }
+        return new String(chars);
+    }
+
+    private void valueDone() throws Exception {
+        state = 0;
+        if (--valuesLeft == 0) {
+            messageDone();
+        }
+    }
+
+    private void inlineDone() throws Exception {
+        // inline command: name key args...\r\n
+        int end = off;
+        elements = 0;
+        for (int i = skipSpaces(start, end); i < end; i = skipSpaces(skipNonSpaces(i, end), end)) {
+            ++elements;
+        }
+        for (int i = skipSpaces(start, end); i < end; ) {
+            int argEnd = skipNonSpaces(i, end);
+            argument(i, argEnd - i);
+            i = skipSpaces(argEnd, end);
+        }
+        messageDone();
+    }
+
+    private int skipSpaces(int i, int end) {
+        while (i < end) {
+            byte b = buf.get(i);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            ++i;
+        }
+        return i;
+    }
+
+    private int skipNonSpaces(int i, int end) {
+        while (i < end) {
+            byte b = buf.get(i);
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                break;
+            }
+            ++i;
+        }
+        return i;
+    }
+
+    private void messageDone() throws Exception {
+        int length = off - start;
+        ByteArray msg = (start == 0 && off == buf.length()) ? buf : buf.sub(start, length);
+        start = off;
+        state = 0;
+        valuesLeft = 1;
+
+        if (isFrontend()) {
+            if (elements <= 0) {
+                // empty or null array, or a blank inline command, redis ignores it without a reply
+                assert Logger.lowLevelDebug("drop empty redis command of " + length + " bytes");
+            } else {
+                assert Logger.lowLevelDebug("got redis command of " + length + " bytes, slot=" + slot);
+                commands.add(new Command(msg, slot, reply));
+                if ("quit".equals(name)) {
+                    quit = true;
+                }
+            }
+            elements = 0;
+            element = 0;
+            keySpec = null;
+            numkeys = 0;
+            slot = -1;
+            reply = null;
+            name = null;
+            optionArgs = 0;
+            firstKey = 0;
+        } else {
+            RedisContext.Pending p = inflight.poll();
+            if (p == null) {
+                throw new Exception("got redis reply of " + length + " bytes from backend " + connId + " but no command is waiting for it");
+            }
+            p.reply = msg;
+            if (!p.ctx.ready) {
+                p.ctx.ready = true;
+                ready.add(p.ctx);
+            }
+        }
+    }
+
+    @Override
+    public ByteArray produce() {
+        if (isFrontend()) {
+            return ctx.replied();
+        }
+        return null;
+    }
+
+    @Override
+    public void proxyDone() {
+        // will not proxy
+    }
+
+    @Override
+    public ByteArray connected() {
+        return null;
+    }
+}
@@ -4,6 +4,7 @@ import vfd.*;
 import vproxybase.Config;
 import vproxybase.selector.wrap.WrappedSelector;
 import vproxybase.util.*;
+import vproxybase.util.ringbuffer.DirectBufferPool;
 
 import java.io.IOException;
 import java.nio.channels.CancelledKeyException;
@@ -11,6 +12,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 public class SelectorEventLoop {
@@ -26,6 +28,7 @@ public class SelectorEventLoop {
     }
 
     private static final ThreadLocal<SelectorEventLoop> loopThreadLocal = new ThreadLocal<>();
+    private static final AtomicInteger loopIndex = new AtomicInteger(0);
 
     public static SelectorEventLoop current() {
         return loopThreadLocal.get();
@@ -33,11 +36,14 @@ public class SelectorEventLoop {
 
     public final WrappedSelector selector;
     public final FDs fds;
-    private final TimeQueue<Runnable> timeQueue = new TimeQueue<>();
+    private final TimeQueue<Runnable> timeQueue = TimeQueue.create();
+    // should only be accessed on the loop thread, use DirectBufferPool.current()
+    public final DirectBufferPool bufferPool = new DirectBufferPool();
     private final ConcurrentLinkedQueue<Runnable> runOnLoopEvents = new ConcurrentLinkedQueue<>();
     private final HandlerContext ctxReuse0 = new HandlerContext(this); // always reuse the ctx object
     private final HandlerContext ctxReuse1 = new HandlerContext(this);
     public volatile Thread runningThread;
+    public final int index = loopIndex.getAndIncrement(); // used to spread per loop states, e.g. stripes of counters
 
     // these locks are a little tricky
     // see comments in loop() and close()
@@ -115,12 +121,13 @@ public class SelectorEventLoop {
     }
 
     private void handleTimeEvents() {
-        List<Runnable> toRun = new LinkedList<>();
-        while (timeQueue.nextTime() == 0) {
-            Runnable r = timeQueue.pop();
-            toRun.add(r);
-        }
-        for (Runnable r : toRun) {
+        // the timeQueue is not thread safe, it's only modified on the loop thread:
+        // push() is called in a nextTick() event of delay(),
+        // and removeSelf() is called by TimerEvent in a nextTick() event or on the loop thread.
+        // poll() does not keep any state between calls,
+        // so the callbacks may push or remove elements (even the expired ones) while polling
+        Runnable r;
+        while ((r = timeQueue.poll()) != null) {
             tryRunnable(r);
         }
     }
@@ -308,6 +315,7 @@ public class SelectorEventLoop {
         loopThreadLocal.remove(); // remove from thread local
         // do the final release
         release();
+        bufferPool.clear();
     }
 
     private boolean needWake() {
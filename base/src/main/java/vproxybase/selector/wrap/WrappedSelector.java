@@ -50,8 +50,13 @@ public class WrappedSelector implements FDSelector {
         return selector.isOpen();
     }
 
+    // return null if no virtual fd fires
     private Set<SelectedEntry> calcVirtual() {
-        Set<SelectedEntry> ret = new HashSet<>();
+        if (virtualSocketFDs.isEmpty()) {
+            // most selectors do not hold virtual fds, avoid allocating for every select
+            return null;
+        }
+        Set<SelectedEntry> ret = null;
         //noinspection unused
         try (var unused = VIRTUAL_LOCK.lock()) {
             for (Map.Entry<VirtualFD, REntry> e : virtualSocketFDs.entrySet()) {
@@ -83,6 +88,9 @@ public class WrappedSelector implements FDSelector {
                     eventSet = null;
                 }
                 if (eventSet != null) {
+                    if (ret == null) {
+                        ret = new HashSet<>();
+                    }
                     ret.add(new SelectedEntry(fd, eventSet, entry.attachment));
                 }
             }
@@ -104,7 +112,7 @@ public class WrappedSelector implements FDSelector {
     @Override
     public Collection<SelectedEntry> select() throws IOException {
         var set = calcVirtual();
-        if (set.isEmpty()) {
+        if (set == null) {
             return handleRealSelect(selector.select());
         } else {
             set.addAll(handleRealSelect(selector.selectNow()));
@@ -115,6 +123,9 @@ public class WrappedSelector implements FDSelector {
     @Override
     public Collection<SelectedEntry> selectNow() throws IOException {
         var set = calcVirtual();
+        if (set == null) {
+            return handleRealSelect(selector.selectNow());
+        }
         set.addAll(handleRealSelect(selector.selectNow()));
         return set;
     }
@@ -122,7 +133,7 @@ public class WrappedSelector implements FDSelector {
     @Override
     public Collection<SelectedEntry> select(long millis) throws IOException {
         var set = calcVirtual();
-        if (set.isEmpty()) {
+        if (set == null) {
             return handleRealSelect(selector.select(millis));
         } else {
             set.addAll(handleRealSelect(selector.selectNow()));
@@ -13,16 +13,16 @@ import vproxybase.selector.TimerEvent;
 import vproxybase.selector.wrap.arqudp.ArqUDPSocketFD;
 import vproxybase.util.ByteArray;
 import vproxybase.util.Consts;
+import vproxybase.util.IntObjectMap;
 import vproxybase.util.LogType;
 import vproxybase.util.Logger;
+import vproxybase.util.LongObjectMap;
 import vproxybase.util.nio.ByteArrayChannel;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -90,7 +90,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             return;
         }
         isFailed = true;
-        fdMap.values().forEach(fd -> fd.setState(StreamedFD.State.dead));
+        fdMap.forEachValue(fd -> fd.setState(StreamedFD.State.dead));
         Logger.error(LogType.CONN_ERROR, "the stream thrown exception", t);
         if (sendRst) {
             ByteArray err = errorMessage(t);
@@ -417,7 +417,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     private void checkAndCancelWritable() {
         if (writableLen() <= 0) {
-            fdMap.values().forEach(StreamedFD::cancelWritable);
+            fdMap.forEachValue(StreamedFD::cancelWritable);
             // also we should watch when we can write
             watchWritable("checkAndCancelWritable");
         }
@@ -425,7 +425,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     private void checkAndSetWritableForEstablished() {
         if (writableLen() > 0) {
-            fdMap.values().forEach(fd -> {
+            fdMap.forEachValue(fd -> {
                 if (fd.getState() == StreamedFD.State.established) {
                     fd.setWritable();
                 }
@@ -485,7 +485,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         fail(new IOException("arq udp socket removed from loop: " + fd));
     }
 
-    private final Map<Integer, StreamedFD> fdMap = new HashMap<>();
+    private final IntObjectMap<StreamedFD> fdMap = new IntObjectMap<>();
 
     @MethodForImplementation
     protected final boolean hasStream(int streamId) {
@@ -545,7 +545,17 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
     }
 
     final void removeStreamedFD(StreamedFD fd) {
-        fdMap.values().remove(fd);
+        removeFromFdMap(fd);
+    }
+
+    private void removeFromFdMap(StreamedFD fd) {
+        if (fdMap.get(fd.streamId) == fd) {
+            fdMap.remove(fd.streamId);
+        }
+    }
+
+    private boolean fdMapContains(StreamedFD fd) {
+        return fdMap.get(fd.streamId) == fd;
     }
 
     @MethodForImplementation
@@ -706,7 +716,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     @MethodForStreamedFD
     public final int send(StreamedFD fd, ByteBuffer src) throws IOException {
-        if (!fdMap.containsValue(fd)) {
+        if (!fdMapContains(fd)) {
             throw new IOException("fdMap does not contain fd " + fd);
         }
         if (fd.getState() != StreamedFD.State.syn_sent
@@ -738,7 +748,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     @MethodForStreamedFD
     public final void sendFIN(StreamedFD fd) throws IOException {
-        if (!fdMap.containsValue(fd)) {
+        if (!fdMapContains(fd)) {
             throw new IOException("fdMap does not contain fd " + fd);
         }
         if (fd.getState() == StreamedFD.State.dead) {
@@ -768,7 +778,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         }
     }
 
-    private final Map<Long, TimerEvent> keepaliveTimeouts = new HashMap<>();
+    private final LongObjectMap<TimerEvent> keepaliveTimeouts = new LongObjectMap<>();
     private long nextKeepaliveId = 0L;
 
     abstract protected ByteArray keepaliveMessage(long keepaliveId, boolean isAck);
@@ -777,7 +787,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
     protected final void keepaliveReceived(long kId, boolean isAck) {
         if (isAck) {
             // cancel the timer
-            TimerEvent te = keepaliveTimeouts.get(kId);
+            TimerEvent te = keepaliveTimeouts.remove(kId);
             if (te == null) {
                 Logger.warn(LogType.ALERT, "the timer is already canceled or missing 0x" + Long.toHexString(kId) + " in " + fd);
                 return;
@@ -811,6 +821,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
             long kId = ++nextKeepaliveId;
             // record with a timeout
             keepaliveTimeouts.put(kId, loop.delay(5_000, () -> {
+                keepaliveTimeouts.remove(kId);
                 if (keepaliveSuccessCount <= 0) {
                     fail(new IOException("keepalive response timeout"));
                 }
@@ -829,9 +840,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
                 Logger.probe("isClient=" + client + ", state=" + state);
                 IPPort arqSockLocal = fd.getLocalAddress();
                 String arqSockLocalStr = arqSockLocal.formatToIPPortString();
-                for (Map.Entry<Integer, StreamedFD> entry : fdMap.entrySet()) {
-                    int streamId = entry.getKey();
-                    StreamedFD sfd = entry.getValue();
+                fdMap.forEach((streamId, sfd) -> {
                     String local = sfd.getLocalAddress().formatToIPPortString();
                     String remote = sfd.getRemoteAddress().formatToIPPortString();
 
@@ -842,7 +851,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
                             + " -> " + remote
                             + " [" + sfd.getState().probeColor + sfd.getState().toString().toUpperCase() + Logger.RESET_COLOR + "]"
                     );
-                }
+                });
             } catch (Throwable t) {
                 Logger.shouldNotHappen("got exception when probing", t);
             }
@@ -871,7 +880,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     @MethodForStreamedFD
     public final void sendSYN(StreamedFD fd) throws IOException {
-        if (!fdMap.containsValue(fd)) {
+        if (!fdMapContains(fd)) {
             throw new IOException("fdMap does not contain fd " + fd);
         }
         if (fd.getState() != StreamedFD.State.none) {
@@ -890,7 +899,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     @MethodForStreamedFD
     public final void sendRST(StreamedFD fd) throws IOException {
-        if (!fdMap.containsValue(fd)) {
+        if (!fdMapContains(fd)) {
             throw new IOException("fdMap does not contain fd " + fd);
         }
         if (fd.getState() == StreamedFD.State.dead) {
@@ -901,7 +910,7 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
         if (fd.getState() != StreamedFD.State.real_closed) {
             fd.setState(StreamedFD.State.dead);
         }
-        fdMap.values().remove(fd);
+        removeFromFdMap(fd);
 
         if (fd.writingMirrorDataFactory.isEnabled()) {
             mirror(fd, true, Consts.TCP_FLAGS_RST, ByteArray.allocate(0));
@@ -928,12 +937,8 @@ public abstract class StreamedFDHandler implements Handler<SocketFD> {
 
     @MethodForFDs
     final void clear() {
-        for (StreamedFD streamedFD : fdMap.values()) {
-            streamedFD.setState(StreamedFD.State.dead);
-        }
-        for (TimerEvent e : keepaliveTimeouts.values()) {
-            e.cancel();
-        }
+        fdMap.forEachValue(streamedFD -> streamedFD.setState(StreamedFD.State.dead));
+        keepaliveTimeouts.forEachValue(TimerEvent::cancel);
         cachedMessageToWrite = null;
         cachedReceivedMessage = null;
         messagesToWrite.clear();
@@ -22,7 +22,21 @@ public final class ServerDatagramFD implements FD, ServerSocketFD, WritableAware
     private final SelectorEventLoop loop;
     private final WrappedSelector selector;
 
-    private final ByteBuffer buf = ByteBuffer.allocate(Config.udpMtu); // enough for any udp packet
+    private static final int RCV_BATCH = 8; // max packets to receive with one call
+    // the packets are copied out when dispatching, so the buffers are shared by the fds handled by the same event loop
+    private static final ThreadLocal<RcvBatch> rcvBatch = ThreadLocal.withInitial(RcvBatch::new);
+
+    private static class RcvBatch {
+        final ByteBuffer[] bufs = new ByteBuffer[RCV_BATCH];
+        final IPPort[] remotes = new IPPort[RCV_BATCH];
+
+        RcvBatch() {
+            for (int i = 0; i < RCV_BATCH; ++i) {
+                bufs[i] = ByteBuffer.allocate(Config.udpMtu); // enough for any udp packet
+            }
+        }
+    }
+
     private final Deque<VirtualDatagramFD> acceptQ = new LinkedList<>();
     private final Map<IPPort, VirtualDatagramFD> acceptMap = new HashMap<>();
     private final Map<IPPort, VirtualDatagramFD> conns = new HashMap<>();
@@ -43,48 +57,31 @@ public final class ServerDatagramFD implements FD, ServerSocketFD, WritableAware
         return server.getLocalAddress();
     }
 
-    @SuppressWarnings("Java8MapApi")
     @Override
     public VirtualDatagramFD accept() throws IOException {
+        ByteBuffer[] bufs = rcvBatch.get().bufs;
+        IPPort[] remotes = rcvBatch.get().remotes;
         while (true) {
-            try {
-                IPPort addr = server.receive(buf);
-                if (addr == null) {
-                    // no data for now
-                    break;
-                }
-
-                buf.flip();
-
-                boolean fireReadable = false;
-                VirtualDatagramFD fd;
-                if (conns.containsKey(addr)) {
-                    fd = conns.get(addr);
-                    fireReadable = true;
-                } else if (acceptMap.containsKey(addr)) {
-                    fd = acceptMap.get(addr);
-                } else {
-                    fd = null;
-                }
-                if (fd == null) {
-                    // new fd
-                    fd = new VirtualDatagramFD(addr);
-                    acceptMap.put(addr, fd);
-                    acceptQ.add(fd);
-                }
-                // append to fd
-                ByteBuffer b = ByteBuffer.allocate(buf.limit() - buf.position());
-                b.put(buf);
-                b.flip();
-                fd.bufs.add(b);
-
-                if (fireReadable) {
-                    fd.setReadable();
+            int n = server.receiveBatch(bufs, remotes);
+            if (n == 0) {
+                // no data for now
+                break;
+            }
+            for (int i = 0; i < n; ++i) {
+                ByteBuffer buf = bufs[i];
+                IPPort addr = remotes[i];
+                remotes[i] = null;
+                try {
+                    buf.flip();
+                    dispatch(addr, buf);
+                } finally {
+                    // reset buf
+                    buf.limit(buf.capacity());
+                    buf.position(0);
                 }
-            } finally {
-                // reset buf
-                buf.limit(buf.capacity());
-                buf.position(0);
+            }
+            if (n < RCV_BATCH) {
+                break;
             }
         }
 
@@ -100,6 +97,35 @@ public final class ServerDatagramFD implements FD, ServerSocketFD, WritableAware
         return fd;
     }
 
+    @SuppressWarnings("Java8MapApi")
+    private void dispatch(IPPort addr, ByteBuffer buf) {
+        boolean fireReadable = false;
+        VirtualDatagramFD fd;
+        if (conns.containsKey(addr)) {
+            fd = conns.get(addr);
+            fireReadable = true;
+        } else if (acceptMap.containsKey(addr)) {
+            fd = acceptMap.get(addr);
+        } else {
+            fd = null;
+        }
+        if (fd == null) {
+            // new fd
+            fd = new VirtualDatagramFD(addr);
+            acceptMap.put(addr, fd);
+            acceptQ.add(fd);
+        }
+        // append to fd
+        ByteBuffer b = ByteBuffer.allocate(buf.limit() - buf.position());
+        b.put(buf);
+        b.flip();
+        fd.bufs.add(b);
+
+        if (fireReadable) {
+            fd.setReadable();
+        }
+    }
+
     @Override
     public void configureBlocking(boolean b) throws IOException {
         server.configureBlocking(b);
@@ -0,0 +1,98 @@
+package vproxybase.util;
+
+import vfd.IPPort;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Access log of one tcp-lb or socks5-server.<br>
+ * Connections and requests are sampled with the ratio, which can be modified at runtime,
+ * and the records of the sampled ones are written with an {@link AccessLogWriter}.
+ */
+public class AccessLog {
+    // reasons of closing a connection
+    public static final String CLOSE_CLIENT = "client-closed";
+    public static final String CLOSE_BACKEND = "backend-closed";
+    public static final String CLOSE_CLIENT_ERROR = "client-error";
+    public static final String CLOSE_BACKEND_ERROR = "backend-error";
+    public static final String CLOSE_CONNECT_FAILED = "connect-failed";
+    public static final String CLOSE_NO_BACKEND = "no-backend";
+    // the connection is closed by the lb, e.g. timeout
+    public static final String CLOSE_LOCAL = "closed";
+
+    /**
+     * a request which is dispatched to a backend and waiting for the response
+     */
+    public static class Request {
+        public final String method;
+        public final String host;
+        public final String uri;
+        public final IPPort backend;
+        public final long beginNanos;
+
+        public Request(String method, String host, String uri, IPPort backend) {
+            this.method = method;
+            this.host = host;
+            this.uri = uri;
+            this.backend = backend;
+            this.beginNanos = System.nanoTime();
+        }
+    }
+
+    public final String name;
+    private volatile double sampleRatio = 0;
+    private AccessLogWriter writer;
+
+    public AccessLog(String name) {
+        this.name = name;
+    }
+
+    public AccessLog(String name, AccessLogWriter writer) {
+        this.name = name;
+        this.writer = writer;
+    }
+
+    public double getSampleRatio() {
+        return sampleRatio;
+    }
+
+    /**
+     * @param sampleRatio 0 to disable the access log, 1 to record all connections and requests
+     */
+    public void setSampleRatio(double sampleRatio) {
+        if (sampleRatio < 0 || sampleRatio > 1) {
+            throw new IllegalArgumentException("invalid sample ratio " + sampleRatio);
+        }
+        if (sampleRatio > 0 && writer == null) {
+            writer = AccessLogWriter.getDefault();
+        }
+        this.sampleRatio = sampleRatio;
+    }
+
+    public boolean isEnabled() {
+        return sampleRatio > 0;
+    }
+
+    /**
+     * @return true if the connection or request should be recorded
+     */
+    public boolean sample() {
+        double ratio = sampleRatio;
+        if (ratio <= 0) {
+            return false;
+        }
+        return ratio >= 1 || ThreadLocalRandom.current().nextDouble() < ratio;
+    }
+
+    public void connection(IPPort client, IPPort backend, long bytesIn, long bytesOut, long durationMillis, String reason) {
+        writer.connection(name, client, backend, bytesIn, bytesOut, durationMillis, reason);
+    }
+
+    /**
+     * record the request when its response headers are received
+     */
+    public void request(IPPort client, Request req, int status) {
+        long latency = (System.nanoTime() - req.beginNanos) / 1000;
+        writer.request(name, client, req.backend, req.method, req.host, req.uri, status, latency);
+    }
+}
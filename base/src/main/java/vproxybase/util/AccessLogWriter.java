@@ -0,0 +1,217 @@
+package vproxybase.util;
+
+import vfd.FDProvider;
+import vfd.IPPort;
+import vproxybase.Config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write access log records as json lines on a dedicated thread.<br>
+ * Each producing thread puts the records into its own lock-free ring of preallocated entries, see {@link ThreadRingWriter},
+ * a record is dropped and counted when the ring is full, so the event loops never wait for the output.<br>
+ * The records are formatted and written in batches by the writer thread, or by {@link #flush()},
+ * and the dropped count is reported every second.
+ */
+public class AccessLogWriter extends ThreadRingWriter<AccessLogWriter.Entry, ThreadRingWriter.Ring<AccessLogWriter.Entry>> {
+    private static final int KIND_CONNECTION = 0;
+    private static final int KIND_REQUEST = 1;
+
+    private static AccessLogWriter defaultWriter;
+
+    private final OutputStream output;
+
+    /**
+     * @param output     where to write the records
+     * @param bufferSize max records in the buffer of each thread, will be rounded up to the power of 2
+     */
+    public AccessLogWriter(OutputStream output, int bufferSize) {
+        super("access-log-writer", bufferSize);
+        this.output = output;
+    }
+
+    /**
+     * @return the writer of {@link Config#accessLogFile}, which is created and started when it's first retrieved
+     */
+    public static synchronized AccessLogWriter getDefault() {
+        if (defaultWriter != null) {
+            return defaultWriter;
+        }
+        OutputStream output = System.out;
+        if (!Config.accessLogFile.isEmpty()) {
+            try {
+                output = new RotatingFileOutputStream(Config.accessLogFile, Config.logFileMaxSize, Config.logFileCount);
+            } catch (IOException e) {
+                Logger.error(LogType.FILE_ERROR, "opening access log file " + Config.accessLogFile + " failed, the records are written to stdout", e);
+            }
+        }
+        AccessLogWriter writer = new AccessLogWriter(output, Config.accessLogBufferSize);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::flush, "access-log-flush"));
+        defaultWriter = writer;
+        return writer;
+    }
+
+    @Override
+    protected Ring<Entry> newRing(Thread thread) {
+        return new Ring<>(thread, bufferSize, Entry::new);
+    }
+
+    /**
+     * @param backend null if no backend is chosen
+     * @param reason  why the connection is closed
+     * @return true if the record is accepted
+     */
+    public boolean connection(String name, IPPort client, IPPort backend,
+                              long bytesIn, long bytesOut, long durationMillis, String reason) {
+        Ring<Entry> s = ring();
+        Entry e = s.claim();
+        if (e == null) {
+            s.dropped.incrementAndGet();
+            return false;
+        }
+        e.kind = KIND_CONNECTION;
+        e.time = FDProvider.get().currentTimeMillis();
+        e.name = name;
+        e.client = client;
+        e.backend = backend;
+        e.bytesIn = bytesIn;
+        e.bytesOut = bytesOut;
+        e.duration = durationMillis;
+        e.reason = reason;
+        publish(s);
+        return true;
+    }
+
+    /**
+     * @param status        0 if the response status is unknown
+     * @param latencyMicros from the request being dispatched to the response headers being received
+     * @return true if the record is accepted
+     */
+    public boolean request(String name, IPPort client, IPPort backend,
+                           String method, String host, String uri, int status, long latencyMicros) {
+        Ring<Entry> s = ring();
+        Entry e = s.claim();
+        if (e == null) {
+            s.dropped.incrementAndGet();
+            return false;
+        }
+        e.kind = KIND_REQUEST;
+        e.time = FDProvider.get().currentTimeMillis();
+        e.name = name;
+        e.client = client;
+        e.backend = backend;
+        e.method = method;
+        e.host = host;
+        e.uri = uri;
+        e.status = status;
+        e.duration = latencyMicros;
+        publish(s);
+        return true;
+    }
+
+    @Override
+    protected void writerFailed(Throwable t) {
+        Logger.error(LogType.UNEXPECTED, "writing access log failed", t);
+    }
+
+    @Override
+    protected void report(Ring<Entry> r) {
+        long n = r.dropped.getAndSet(0);
+        if (n > 0) {
+            Logger.warn(LogType.BUFFER_INSUFFICIENT, n + " access log record(s) dropped because the buffer is full on thread " + r.thread.getName());
+        }
+    }
+
+    @Override
+    protected void append(Entry e) {
+        sb.append("{\"type\":").append(e.kind == KIND_CONNECTION ? "\"conn\"" : "\"http\"");
+        sb.append(",\"time\":").append(e.time);
+        sb.append(",\"lb\":");
+        appendString(e.name);
+        sb.append(",\"client\":");
+        appendAddress(e.client);
+        sb.append(",\"backend\":");
+        appendAddress(e.backend);
+        if (e.kind == KIND_CONNECTION) {
+            sb.append(",\"bytes_in\":").append(e.bytesIn);
+            sb.append(",\"bytes_out\":").append(e.bytesOut);
+            sb.append(",\"duration_ms\":").append(e.duration);
+            sb.append(",\"close\":");
+            appendString(e.reason);
+        } else {
+            sb.append(",\"method\":");
+            appendString(e.method);
+            sb.append(",\"host\":");
+            appendString(e.host);
+            sb.append(",\"uri\":");
+            appendString(e.uri);
+            sb.append(",\"status\":").append(e.status);
+            sb.append(",\"latency_us\":").append(e.duration);
+        }
+        sb.append("}\n");
+        e.name = null;
+        e.client = null;
+        e.backend = null;
+        e.reason = null;
+        e.method = null;
+        e.host = null;
+        e.uri = null;
+    }
+
+    private void appendAddress(IPPort address) {
+        if (address == null) {
+            sb.append("null");
+        } else {
+            sb.append('"').append(address.formatToIPPortString()).append('"');
+        }
+    }
+
+    private void appendString(String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    protected void output(StringBuilder sb) {
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            output.write(bytes);
+            output.flush();
+        } catch (IOException e) {
+            Logger.error(LogType.FILE_ERROR, "writing access log failed", e);
+        }
+    }
+
+    static class Entry {
+        int kind;
+        long time;
+        String name;
+        IPPort client;
+        IPPort backend;
+        long bytesIn;
+        long bytesOut;
+        long duration; // millis for connections, micros for requests
+        String reason;
+        String method;
+        String host;
+        String uri;
+        int status;
+    }
+}
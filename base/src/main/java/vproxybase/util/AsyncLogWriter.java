@@ -0,0 +1,158 @@
+package vproxybase.util;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Write logs on a dedicated thread.<br>
+ * Each logging thread puts its logs into its own lock-free ring buffer, and never waits for the output,
+ * see {@link ThreadRingWriter}.
+ * The logs are formatted and written by the writer thread, or by {@link #flush()}.<br>
+ * Logs with a {@link LogType} are limited by a token bucket of each type on each thread,
+ * the suppressed logs and the logs dropped because of a full buffer are counted and reported every second.<br>
+ * Logs from different threads may be written out of order.
+ */
+public class AsyncLogWriter extends ThreadRingWriter<AsyncLogWriter.Entry, AsyncLogWriter.ThreadState> {
+    private final Supplier<PrintStream> output;
+    private final boolean color;
+    private final int rateLimit;
+
+    // the following fields are only accessed by the consumer, which holds the lock of this object
+    private long lastSecond = -1;
+    private String lastSecondStr;
+
+    /**
+     * @param output     where to write the logs, retrieved every time before writing
+     * @param color      whether to write the color codes
+     * @param bufferSize max logs in the buffer of each thread, will be rounded up to the power of 2
+     * @param rateLimit  max logs per second of each type on each thread, 0 for unlimited
+     */
+    public AsyncLogWriter(Supplier<PrintStream> output, boolean color, int bufferSize, int rateLimit) {
+        super("log-writer", bufferSize);
+        this.output = output;
+        this.color = color;
+        this.rateLimit = rateLimit;
+    }
+
+    @Override
+    protected ThreadState newRing(Thread thread) {
+        return new ThreadState(thread);
+    }
+
+    /**
+     * @param color  the color of the log
+     * @param type   type of the log, null for the debug logs, which are not limited and not dropped
+     * @param caller retrieves the caller of the logger only if the log is accepted, may return null
+     * @return true if the log is accepted
+     */
+    public boolean log(String color, LogType type, Supplier<StackWalker.StackFrame> caller, String msg, Throwable t) {
+        ThreadState s = ring();
+        if (type != null && rateLimit > 0 && !s.buckets[type.ordinal()].tryAcquire()) {
+            s.suppressed.incrementAndGet(type.ordinal());
+            return false;
+        }
+        long time = Logger.currentTimeMillis();
+        StackWalker.StackFrame frame = caller.get();
+        Entry e;
+        while ((e = s.claim()) == null) {
+            if (type != null) {
+                s.dropped.incrementAndGet();
+                return false;
+            }
+            // debug logs are not dropped, write them right now
+            flush();
+        }
+        e.time = time;
+        e.color = color;
+        e.type = type;
+        e.threadName = s.thread.getName();
+        e.caller = frame;
+        e.msg = msg;
+        e.t = t;
+        publish(s);
+        return true;
+    }
+
+    @Override
+    protected void writerFailed(Throwable t) {
+        // cannot log with the logger here
+        t.printStackTrace();
+    }
+
+    @Override
+    protected void append(Entry e) {
+        append(e.time, e.color, e.threadName, e.caller, e.type, e.msg, e.t);
+        e.color = null;
+        e.type = null;
+        e.threadName = null;
+        e.caller = null;
+        e.msg = null;
+        e.t = null;
+    }
+
+    @Override
+    protected void report(ThreadState s) {
+        long time = Logger.currentTimeMillis();
+        String threadName = s.thread.getName();
+        for (LogType type : LogType.values()) {
+            int n = s.suppressed.getAndSet(type.ordinal(), 0);
+            if (n > 0) {
+                append(time, Logger.WARN_COLOR, null, null, type, n + " log(s) suppressed by the rate limit on thread " + threadName, null);
+            }
+        }
+        long n = s.dropped.getAndSet(0);
+        if (n > 0) {
+            append(time, Logger.WARN_COLOR, null, null, LogType.BUFFER_INSUFFICIENT, n + " log(s) dropped because the log buffer is full on thread " + threadName, null);
+        }
+    }
+
+    private void append(long time, String color, String threadName, StackWalker.StackFrame caller, LogType type, String msg, Throwable t) {
+        long second = time / 1000;
+        if (second != lastSecond) {
+            lastSecond = second;
+            lastSecondStr = Logger.formatSeconds(time);
+        }
+        Logger.formatLine(sb, this.color ? color : null, lastSecondStr, time, threadName, caller, type, msg);
+        sb.append('\n');
+        if (t != null) {
+            Logger.formatStackTrace(sb, t);
+        }
+    }
+
+    @Override
+    protected void output(StringBuilder sb) {
+        PrintStream out = output.get();
+        out.print(sb);
+        out.flush();
+        if (out.checkError()) {
+            System.err.println("writing logs failed");
+        }
+    }
+
+    static class Entry {
+        long time;
+        String color;
+        LogType type;
+        String threadName;
+        StackWalker.StackFrame caller;
+        String msg;
+        Throwable t;
+    }
+
+    class ThreadState extends Ring<Entry> {
+        // only used by the producer thread
+        final TokenBucket[] buckets;
+        final AtomicIntegerArray suppressed = new AtomicIntegerArray(LogType.values().length);
+
+        ThreadState(Thread thread) {
+            super(thread, bufferSize, Entry::new);
+            this.buckets = new TokenBucket[LogType.values().length];
+            if (rateLimit > 0) {
+                for (int i = 0; i < buckets.length; ++i) {
+                    buckets[i] = new TokenBucket(rateLimit, rateLimit);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package vproxybase.util;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from int to int.<br>
+ * Neither keys nor values are boxed, and no node is created for entries.
+ * Key 0 marks a free slot in the table, so the entry of key 0 is stored separately.<br>
+ * Not thread safe, and the map must not be modified while iterating.
+ */
+public class IntIntMap {
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size; // not including the zero key
+    private int threshold;
+    private boolean hasZeroKey;
+    private int zeroKeyValue;
+
+    /**
+     * @param missingValue the value returned by get/put/remove when the key does not exist
+     */
+    public IntIntMap(int missingValue) {
+        this(missingValue, 16);
+    }
+
+    public IntIntMap(int missingValue, int expectedSize) {
+        this.missingValue = missingValue;
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    // keep the load factor at most 0.5
+    static int tableSizeFor(int expectedSize) {
+        if (expectedSize < 4) {
+            expectedSize = 4;
+        }
+        if (expectedSize > (1 << 29)) {
+            throw new IllegalArgumentException("expectedSize too large: " + expectedSize);
+        }
+        return Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+    }
+
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = capacity >> 1;
+    }
+
+    private int slot(int key) {
+        return hash(key) & mask;
+    }
+
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int get(int key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroKeyValue : missingValue;
+        }
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return the previous value, or the missingValue if the key does not exist
+     */
+    public int put(int key, int value) {
+        if (key == 0) {
+            int old = hasZeroKey ? zeroKeyValue : missingValue;
+            hasZeroKey = true;
+            zeroKeyValue = value;
+            return old;
+        }
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return the removed value, or the missingValue if the key does not exist
+     */
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            return zeroKeyValue;
+        }
+        int i = slot(key);
+        int k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                int old = values[i];
+                shiftBack(i);
+                --size;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    // move the following entries of the probe sequence backward, so that no tombstone is needed
+    private void shiftBack(int free) {
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            int k = keys[i];
+            if (k == 0) {
+                break;
+            }
+            int expected = slot(k);
+            if (((i - expected) & mask) >= ((i - free) & mask)) {
+                keys[free] = k;
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        keys[free] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; ++j) {
+            int k = oldKeys[j];
+            if (k == 0) {
+                continue;
+            }
+            int i = slot(k);
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = k;
+            values[i] = oldValues[j];
+        }
+    }
+
+    public void clear() {
+        if (size != 0) {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+        hasZeroKey = false;
+    }
+
+    public void forEach(EntryConsumer f) {
+        if (hasZeroKey) {
+            f.accept(0, zeroKeyValue);
+        }
+        for (int i = 0; i < keys.length; ++i) {
+            int k = keys[i];
+            if (k != 0) {
+                f.accept(k, values[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(k).append("=").append(v);
+        });
+        return sb.append("}").toString();
+    }
+}
@@ -0,0 +1,75 @@
+package vproxybase.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies, can be recorded from any thread.<br>
+ * Bucket 0 counts latencies less than 1us, and bucket i (i &gt; 0) counts latencies in [2^(i-1), 2^i) us.
+ */
+public class LatencyHistogram {
+    public static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int idx = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        if (idx >= BUCKETS) {
+            idx = BUCKETS - 1;
+        }
+        counts.incrementAndGet(idx);
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    public long[] snapshot() {
+        long[] ret = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            ret[i] = counts.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * @param p 0 to 1
+     * @return upper bound (exclusive) in microseconds of the bucket where the percentile falls in, or 0 if nothing recorded
+     */
+    public long percentileMicros(double p) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * p);
+        if (target < 1) {
+            target = 1;
+        }
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            n += snapshot[i];
+            if (n >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+            "count=" + count() +
+            ", p50<" + percentileMicros(0.5) + "us" +
+            ", p99<" + percentileMicros(0.99) + "us" +
+            ", p999<" + percentileMicros(0.999) + "us" +
+            '}';
+    }
+}
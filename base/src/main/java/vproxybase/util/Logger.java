@@ -4,10 +4,18 @@ import vfd.DatagramFD;
 import vfd.FDProvider;
 import vfd.IP;
 import vfd.IPPort;
+import vproxybase.Config;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class Logger {
     private static final boolean stackTraceOn;
@@ -20,6 +28,14 @@ public class Logger {
     public static final String ERROR_COLOR = "\033[0;31m";
     public static final String RESET_COLOR = "\033[0m";
 
+    private static final Set<String> loggerClasses = Set.of(Logger.class.getName(), AsyncLogWriter.class.getName());
+    private static final StackWalker stackWalker = StackWalker.getInstance();
+    private static final Supplier<StackWalker.StackFrame> withCaller = Logger::getFirstFrameOutOfLoggerLib;
+    private static final Supplier<StackWalker.StackFrame> withoutCaller = () -> null;
+
+    // null if logAsync is disabled
+    private static final AsyncLogWriter writer;
+
     private static DatagramFD logChannel;
 
     static {
@@ -41,11 +57,40 @@ public class Logger {
                 stackTraceOn = !"off".equals(stackTrace);
             }
         }
+
+        writer = Config.logAsync ? createWriter() : null;
     }
 
     private Logger() {
     }
 
+    private static AsyncLogWriter createWriter() {
+        Supplier<PrintStream> output = () -> System.out;
+        boolean color = true;
+        if (!Config.logFile.isEmpty()) {
+            try {
+                PrintStream file = new PrintStream(new RotatingFileOutputStream(Config.logFile, Config.logFileMaxSize, Config.logFileCount));
+                output = () -> file;
+                color = false;
+            } catch (IOException e) {
+                System.out.println("opening log file " + Config.logFile + " failed, the logs are written to stdout: " + e);
+            }
+        }
+        AsyncLogWriter writer = new AsyncLogWriter(output, color, Config.logBufferSize, Config.logRateLimit);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::flush, "log-flush"));
+        return writer;
+    }
+
+    /**
+     * write all pending logs if logAsync is enabled
+     */
+    public static void flush() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
     private static String fillToTen(int n) {
         return (n < 10 ? "0" : "") + n;
     }
@@ -54,36 +99,87 @@ public class Logger {
         return (n < 10 ? "00" : (n < 100 ? "0" : "")) + n;
     }
 
-    @SuppressWarnings("deprecation")
+    static long currentTimeMillis() {
+        return FDProvider.get().currentTimeMillis();
+    }
+
     private static String current() {
-        long cur = FDProvider.get().currentTimeMillis();
-        Date d = new Date(cur);
+        long cur = currentTimeMillis();
+        return formatSeconds(cur) + "." + fillToHundred((int) (cur % 1000)) + "] ";
+    }
+
+    // [yyyy-MM-dd HH:mm:ss
+    static String formatSeconds(long millis) {
+        LocalDateTime d = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
         return "[" +
-            (d.getYear() + 1900) + "-" +
-            fillToTen(d.getMonth() + 1) + "-" +
-            fillToTen(d.getDate()) + " " +
-            fillToTen(d.getHours()) + ":" +
-            fillToTen(d.getMinutes()) + ":" +
-            fillToTen(d.getSeconds()) + "." +
-            fillToHundred((int) (cur % 1000)) +
-            "] ";
-    }
-
-    private static StackTraceElement getFirstElementOutOfLoggerLib() {
-        var arr = Thread.currentThread().getStackTrace();
-        boolean intoLoggerLib = false;
-        for (StackTraceElement e : arr) {
-            if (e.getClassName().matches("\\.Logger\\b")) {
-                intoLoggerLib = true;
-            } else {
-                if (intoLoggerLib) {
-                    // out of logger lib now
-                    return e;
-                }
+            d.getYear() + "-" +
+            fillToTen(d.getMonthValue()) + "-" +
+            fillToTen(d.getDayOfMonth()) + " " +
+            fillToTen(d.getHour()) + ":" +
+            fillToTen(d.getMinute()) + ":" +
+            fillToTen(d.getSecond());
+    }
+
+    /**
+     * @param color   null for no color
+     * @param seconds result of {@link #formatSeconds(long)} of the time
+     * @param caller  the thread name and caller are written only when the caller is not null
+     */
+    static void formatLine(StringBuilder sb, String color, String seconds, long millis,
+                           String threadName, StackWalker.StackFrame caller, LogType logType, String msg) {
+        if (color != null) {
+            sb.append(color);
+        }
+        sb.append(seconds).append(".").append(fillToHundred((int) (millis % 1000))).append("] ");
+        if (caller != null) {
+            sb.append(threadName).append(" - ")
+                .append(caller.getClassName()).append("#").append(caller.getMethodName())
+                .append("(").append(caller.getLineNumber()).append(") - ");
+            if (color != null) {
+                sb.append(RESET_COLOR);
+            }
+            if (logType != null) {
+                sb.append(logType).append(" - ");
+            }
+        } else {
+            if (logType != null) {
+                sb.append(logType).append(" - ");
             }
+            if (color != null) {
+                sb.append(RESET_COLOR);
+            }
+        }
+        sb.append(msg);
+    }
+
+    static void formatStackTrace(StringBuilder sb, Throwable t) {
+        if (stackTraceOn || !(t instanceof Exception) || (t instanceof RuntimeException)) { // always print runtime exceptions and errors
+            StringWriter sw = new StringWriter();
+            t.printStackTrace(new PrintWriter(sw));
+            sb.append(sw.getBuffer());
+        } else {
+            formatExceptionStackTrace(t, sb);
+            sb.append('\n');
+        }
+    }
+
+    private static StackWalker.StackFrame getFirstFrameOutOfLoggerLib() {
+        return stackWalker.walk(s -> s.filter(f -> !loggerClasses.contains(f.getClassName())).findFirst()).orElse(null);
+    }
+
+    private static void log(String color, LogType logType, boolean caller, String msg, Throwable t) {
+        if (writer != null) {
+            writer.log(color, logType, caller ? withCaller : withoutCaller, msg, t);
+            return;
         }
-        // should not reach here, however return the last element if it really happens
-        return arr[arr.length - 1];
+        long cur = currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        formatLine(sb, color, formatSeconds(cur), cur, Thread.currentThread().getName(), caller ? getFirstFrameOutOfLoggerLib() : null, logType, msg);
+        sb.append('\n');
+        if (t != null) {
+            formatStackTrace(sb, t);
+        }
+        System.out.print(sb);
     }
 
     // some message for debugging this project
@@ -92,37 +188,17 @@ public class Logger {
     public static boolean lowLevelDebug(String msg) {
         if (!lowLevelDebugOn)
             return true;
-        String threadName = Thread.currentThread().getName();
-        StackTraceElement elem = getFirstElementOutOfLoggerLib();
-        System.out.println(DEBUG_COLOR + current() + threadName + " - " + elem.getClassName() + "#" + elem.getMethodName() + "(" + elem.getLineNumber() + ") - " + RESET_COLOR + msg);
+        log(DEBUG_COLOR, null, true, msg, null);
         return true;
     }
 
     public static boolean lowLevelNetDebug(String msg) {
         if (!lowLevelNetDebugOn || !lowLevelDebugOn)
             return true;
-        String threadName = Thread.currentThread().getName();
-        StackTraceElement elem = getFirstElementOutOfLoggerLib();
-        System.out.println(DEBUG_COLOR + current() + threadName + " - " + elem.getClassName() + "#" + elem.getMethodName() + "(" + elem.getLineNumber() + ") - " + RESET_COLOR + msg);
+        log(DEBUG_COLOR, null, true, msg, null);
         return true;
     }
 
-    private static void privateErr(String err) {
-        String threadName = Thread.currentThread().getName();
-        StackTraceElement elem = getFirstElementOutOfLoggerLib();
-        System.out.println(ERROR_COLOR + current() + threadName + " - " + elem.getClassName() + "#" + elem.getMethodName() + "(" + elem.getLineNumber() + ") - " + RESET_COLOR + err);
-    }
-
-    private static void privatePrintStackTrace(Throwable t) {
-        if (stackTraceOn || !(t instanceof Exception) || (t instanceof RuntimeException)) { // always print runtime exceptions and errors
-            t.printStackTrace(System.out);
-        } else {
-            StringBuilder sb = new StringBuilder();
-            formatExceptionStackTrace(t, sb);
-            System.out.println(sb.toString());
-        }
-    }
-
     private static void formatExceptionStackTrace(Throwable t, StringBuilder sb) {
         String msg = t.getMessage();
         if (msg == null || msg.isBlank()) {
@@ -138,41 +214,38 @@ public class Logger {
 
     // unexpected errors, or situation should happen
     public static void fatal(LogType logType, String err) {
-        privateErr(logType + " - " + err);
+        log(ERROR_COLOR, logType, true, err, null);
     }
 
     public static void fatal(LogType logType, String err, Throwable ex) {
-        privateErr(logType + " - " + err);
-        privatePrintStackTrace(ex);
+        log(ERROR_COLOR, logType, true, err, ex);
     }
 
     // expected errors, but not normal condition
     public static void error(LogType logType, String err) {
-        privateErr(logType + " - " + err);
+        log(ERROR_COLOR, logType, true, err, null);
     }
 
     public static void error(LogType logType, String err, Throwable ex) {
-        privateErr(logType + " - " + err);
-        privatePrintStackTrace(ex);
+        log(ERROR_COLOR, logType, true, err, ex);
     }
 
     // expected errors, maybe user misuse, and we can recover
     public static void warn(LogType logType, String err) {
-        System.out.println(WARN_COLOR + current() + logType + " - " + RESET_COLOR + err);
+        log(WARN_COLOR, logType, false, err, null);
     }
 
     public static void warn(LogType logType, String err, Throwable t) {
-        System.out.println(WARN_COLOR + current() + logType + " - " + RESET_COLOR + err);
-        privatePrintStackTrace(t);
+        log(WARN_COLOR, logType, false, err, t);
     }
 
     // expected condition
     public static void info(LogType logType, String msg) {
-        System.out.println(INFO_COLOR + current() + logType + " - " + RESET_COLOR + msg);
+        log(INFO_COLOR, logType, false, msg, null);
     }
 
     public static void trace(LogType logType, String msg) {
-        System.out.println(DEBUG_COLOR + current() + logType + " - " + RESET_COLOR + msg);
+        log(DEBUG_COLOR, logType, false, msg, null);
     }
 
     public static void shouldNotHappen(String msg) {
@@ -231,7 +304,7 @@ public class Logger {
     }
 
     public static boolean printStackTrace(Throwable t) {
-        t.printStackTrace(System.out); // do not use privatePrintStackTrace, always print here
+        t.printStackTrace(System.out); // do not use formatStackTrace, always print here
         return true;
     }
 
@@ -0,0 +1,205 @@
+package vproxybase.util;
+
+import vfd.IP;
+
+/**
+ * An immutable multi-bit trie of networks, used for longest prefix match.<br>
+ * <br>
+ * Every node consumes 4 bits of the address. A network whose prefix ends inside a node
+ * is expanded into all slots it covers, so looking up an address only walks the nodes
+ * along the address bits (8 nodes at most for ipv4, 32 for ipv6), and no object is allocated.<br>
+ * Every slot holds a chain of all networks containing the addresses of the slot, the longest first,
+ * so the chain returned by {@link #match(byte[], int)} is both the longest match and all matches.<br>
+ * The trie cannot be modified, use {@link Builder} to build a new one and replace the old one when networks change.
+ */
+public class NetworkTrie<V> {
+    private static final int STRIDE = 4;
+    private static final int FANOUT = 1 << STRIDE;
+
+    private final int addressLength;
+    private final Entry<V> defaultEntry; // networks with prefix 0
+    private final Node<V> root;
+
+    private NetworkTrie(Builder<V> builder) {
+        this.addressLength = builder.addressLength;
+        this.defaultEntry = builder.defaultEntry;
+        this.root = builder.root;
+    }
+
+    /**
+     * @return the value of the longest matched network, or null if not found or the address type does not match
+     */
+    public V lookup(IP ip) {
+        byte[] addr = ip.getRawIpBytes();
+        if (addr.length != addressLength) {
+            return null;
+        }
+        return lookup(addr, 0);
+    }
+
+    /**
+     * @param addr   the array containing the address, e.g. the raw bytes of a packet
+     * @param offset where the address begins
+     * @return the value of the longest matched network, or null if not found
+     */
+    public V lookup(byte[] addr, int offset) {
+        Entry<V> e = match(addr, offset);
+        return e == null ? null : e.value;
+    }
+
+    /**
+     * @return the longest matched network, use {@link Entry#next()} to iterate all matched networks,
+     * or null if not found
+     */
+    public Entry<V> match(byte[] addr, int offset) {
+        Entry<V> best = defaultEntry;
+        Node<V> node = root;
+        int bits = addressLength * 8;
+        for (int pos = 0; node != null && pos < bits; pos += STRIDE) {
+            int idx = nibble(addr, offset, pos);
+            Entry<V> e = node.slots[idx];
+            if (e != null) {
+                best = e;
+            }
+            node = node.children[idx];
+        }
+        return best;
+    }
+
+    public boolean isEmpty() {
+        return defaultEntry == null && root.isEmpty();
+    }
+
+    private static int nibble(byte[] addr, int offset, int pos) {
+        int b = addr[offset + (pos >>> 3)] & 0xff;
+        return (pos & 4) == 0 ? (b >>> 4) : (b & 0x0f);
+    }
+
+    public static final class Entry<V> {
+        public final int prefix;
+        public final V value;
+        private Entry<V> next;
+
+        private Entry(int prefix, V value) {
+            this.prefix = prefix;
+            this.value = value;
+        }
+
+        /**
+         * @return the next matched network, which prefix is shorter or equal, or null if it's the last one
+         */
+        public Entry<V> next() {
+            return next;
+        }
+    }
+
+    private static final class Node<V> {
+        @SuppressWarnings("unchecked")
+        final Entry<V>[] slots = new Entry[FANOUT];
+        @SuppressWarnings("unchecked")
+        final Node<V>[] children = new Node[FANOUT];
+
+        boolean isEmpty() {
+            for (int i = 0; i < FANOUT; ++i) {
+                if (slots[i] != null || children[i] != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static class Builder<V> {
+        private final int addressLength;
+        private final Node<V> root = new Node<>();
+        private Entry<V> defaultEntry = null;
+        private boolean built = false;
+
+        /**
+         * @param addressLength 4 for ipv4, 16 for ipv6
+         */
+        public Builder(int addressLength) {
+            if (addressLength != 4 && addressLength != 16) {
+                throw new IllegalArgumentException("invalid address length " + addressLength);
+            }
+            this.addressLength = addressLength;
+        }
+
+        /**
+         * when networks are the same, the former added one comes first in the matching chain
+         */
+        public Builder<V> add(Network network, V value) {
+            if (built) {
+                throw new IllegalStateException("the trie is already built");
+            }
+            byte[] ip = network.getRawIpBytes();
+            if (ip.length != addressLength) {
+                throw new IllegalArgumentException("the address length of " + network + " does not match " + addressLength);
+            }
+            int prefix = network.getMask();
+            if (prefix == 0) {
+                defaultEntry = insert(defaultEntry, new Entry<>(0, value));
+                return this;
+            }
+            int depth = (prefix - 1) / STRIDE;
+            Node<V> node = root;
+            for (int d = 0; d < depth; ++d) {
+                int idx = nibble(ip, 0, d * STRIDE);
+                if (node.children[idx] == null) {
+                    node.children[idx] = new Node<>();
+                }
+                node = node.children[idx];
+            }
+            int bits = prefix - depth * STRIDE; // 1 to STRIDE
+            int span = 1 << (STRIDE - bits);
+            int base = nibble(ip, 0, depth * STRIDE) & ~(span - 1);
+            for (int i = base; i < base + span; ++i) {
+                node.slots[i] = insert(node.slots[i], new Entry<>(prefix, value));
+            }
+            return this;
+        }
+
+        // keep the chain sorted by prefix desc
+        private static <V> Entry<V> insert(Entry<V> head, Entry<V> e) {
+            if (head == null || head.prefix < e.prefix) {
+                e.next = head;
+                return e;
+            }
+            Entry<V> cur = head;
+            while (cur.next != null && cur.next.prefix >= e.prefix) {
+                cur = cur.next;
+            }
+            e.next = cur.next;
+            cur.next = e;
+            return head;
+        }
+
+        // link every slot chain to the chain of networks containing the slot from upper levels
+        private static <V> void pushDown(Node<V> node, Entry<V> inherited) {
+            for (int i = 0; i < FANOUT; ++i) {
+                Entry<V> e = node.slots[i];
+                if (e == null) {
+                    e = inherited;
+                } else if (inherited != null) {
+                    Entry<V> last = e;
+                    while (last.next != null) {
+                        last = last.next;
+                    }
+                    last.next = inherited;
+                }
+                // keep null slots null, the lookup uses the chain of upper levels in that case
+                if (node.children[i] != null) {
+                    pushDown(node.children[i], e);
+                }
+            }
+        }
+
+        public NetworkTrie<V> build() {
+            if (!built) {
+                built = true;
+                pushDown(root, defaultEntry);
+            }
+            return new NetworkTrie<>(this);
+        }
+    }
+}
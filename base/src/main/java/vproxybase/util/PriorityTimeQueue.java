@@ -0,0 +1,66 @@
+package vproxybase.util;
+
+import vproxybase.Config;
+
+import java.util.PriorityQueue;
+
+/**
+ * the time queue implemented with a binary heap<br>
+ * insertion is O(log n), removal is O(n) because PriorityQueue.remove(obj) scans the whole array<br>
+ * use -DtimeQueue=heap to enable this implementation
+ */
+public class PriorityTimeQueue<T> implements TimeQueue<T> {
+    private final PriorityQueue<Elem<T>> queue = new PriorityQueue<>((a, b) -> Long.compare(a.triggerTime, b.triggerTime));
+
+    @Override
+    public TimeElem<T> push(int timeout, T elem) {
+        Elem<T> event = new Elem<>(Config.currentTimestamp + timeout, elem, this);
+        queue.add(event);
+        return event;
+    }
+
+    @Override
+    public T poll() {
+        Elem<T> elem = queue.peek();
+        if (elem == null || elem.triggerTime > Config.currentTimestamp)
+            return null;
+        queue.poll();
+        return elem.elem;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public int nextTime() {
+        Elem<T> elem = queue.peek();
+        if (elem == null)
+            return Integer.MAX_VALUE;
+        long triggerTime = elem.triggerTime;
+        return Math.max((int) (triggerTime - Config.currentTimestamp), 0);
+    }
+
+    private static class Elem<T> implements TimeElem<T> {
+        final long triggerTime;
+        final T elem;
+        private final PriorityTimeQueue<T> queue;
+
+        Elem(long triggerTime, T elem, PriorityTimeQueue<T> queue) {
+            this.triggerTime = triggerTime;
+            this.elem = elem;
+            this.queue = queue;
+        }
+
+        @Override
+        public T get() {
+            return elem;
+        }
+
+        @Override
+        public void removeSelf() {
+            queue.queue.remove(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package vproxybase.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Append to a file, and rotate the file when it grows over <code>maxSize</code>:
+ * the file is renamed to $path.1, the old $path.1 is renamed to $path.2, and so on,
+ * at most <code>maxFiles</code> rotated files are kept.<br>
+ * The file is only rotated in {@link #flush()}, so the caller decides where a file may end.
+ */
+public class RotatingFileOutputStream extends OutputStream {
+    private final String path;
+    private final long maxSize;
+    private final int maxFiles;
+    private FileOutputStream out;
+    private long size;
+
+    public RotatingFileOutputStream(String path, long maxSize, int maxFiles) throws IOException {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+        open();
+    }
+
+    private void open() throws IOException {
+        File f = new File(path);
+        out = new FileOutputStream(f, true);
+        size = f.length();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        ++size;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        if (size >= maxSize) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        File last = new File(path + "." + maxFiles);
+        if (last.exists() && !last.delete()) {
+            throw new IOException("deleting " + last + " failed");
+        }
+        for (int i = maxFiles - 1; i >= 1; --i) {
+            File f = new File(path + "." + i);
+            if (f.exists() && !f.renameTo(new File(path + "." + (i + 1)))) {
+                throw new IOException("renaming " + f + " failed");
+            }
+        }
+        File f = new File(path);
+        if (maxFiles == 0) {
+            if (!f.delete()) {
+                throw new IOException("deleting " + f + " failed");
+            }
+        } else if (!f.renameTo(new File(path + ".1"))) {
+            throw new IOException("renaming " + f + " failed");
+        }
+        open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,228 @@
+package vproxybase.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Base of the writers which move records off the producing threads, e.g. the event loops.<br>
+ * Each producing thread puts the records into its own lock-free single-producer single-consumer ring of preallocated entries,
+ * and never waits for the output.
+ * The records are formatted and written in batches by a dedicated writer thread, or by {@link #flush()},
+ * both of which hold the lock of this object, and the counters of each ring are reported every second.<br>
+ * Records from different threads may be written out of order.
+ *
+ * @param <E> type of the entries
+ * @param <R> type of the rings, which may hold more per-thread states
+ */
+abstract class ThreadRingWriter<E, R extends ThreadRingWriter.Ring<E>> {
+    private static final long REPORT_INTERVAL = 1_000_000_000L; // nanos
+    private static final long IDLE_PARK = 100_000_000L; // nanos
+    private static final int MAX_BATCH_CHARS = 65536;
+
+    private final String threadName;
+    protected final int bufferSize;
+
+    private final List<R> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<R> ring = ThreadLocal.withInitial(this::register);
+    private volatile Thread writerThread;
+    private volatile boolean sleeping = false;
+
+    // the following fields are only accessed by the consumer, which holds the lock of this object
+    protected final StringBuilder sb = new StringBuilder();
+    private long lastReport = System.nanoTime();
+
+    /**
+     * @param threadName name of the writer thread
+     * @param bufferSize max records in the ring of each thread, will be rounded up to the power of 2
+     */
+    protected ThreadRingWriter(String threadName, int bufferSize) {
+        this.threadName = threadName;
+        this.bufferSize = bufferSize <= 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+    }
+
+    public void start() {
+        Thread t = new Thread(this::run, threadName);
+        t.setDaemon(true);
+        writerThread = t;
+        t.start();
+    }
+
+    private R register() {
+        R r = newRing(Thread.currentThread());
+        rings.add(r);
+        return r;
+    }
+
+    /**
+     * @return the ring of the current thread
+     */
+    protected final R ring() {
+        return ring.get();
+    }
+
+    /**
+     * make the claimed entry visible to the consumer, and wake up the writer thread if it's sleeping
+     */
+    protected final void publish(R r) {
+        r.tail.set(r.tail.get() + 1);
+        if (sleeping) {
+            sleeping = false;
+            Thread w = writerThread;
+            if (w != null) {
+                LockSupport.unpark(w);
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            boolean written;
+            try {
+                written = drain(false);
+            } catch (Throwable t) {
+                writerFailed(t);
+                written = false;
+            }
+            if (written) {
+                continue;
+            }
+            sleeping = true;
+            if (!hasPendingRecords()) {
+                LockSupport.parkNanos(this, IDLE_PARK);
+            }
+            sleeping = false;
+        }
+    }
+
+    private boolean hasPendingRecords() {
+        for (R r : rings) {
+            if (!r.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * write all records in the rings and report the counters
+     */
+    public void flush() {
+        drain(true);
+    }
+
+    private synchronized boolean drain(boolean forceReport) {
+        boolean written = false;
+        for (R r : rings) {
+            E e;
+            while ((e = r.peek()) != null) {
+                append(e);
+                r.release();
+                written = true;
+                if (sb.length() >= MAX_BATCH_CHARS) {
+                    write();
+                }
+            }
+        }
+        long now = System.nanoTime();
+        if (forceReport || now - lastReport >= REPORT_INTERVAL) {
+            lastReport = now;
+            for (R r : rings) {
+                report(r);
+                if (!r.thread.isAlive() && r.isEmpty()) {
+                    rings.remove(r);
+                }
+            }
+        }
+        if (sb.length() > 0) {
+            write();
+            written = true;
+        }
+        return written;
+    }
+
+    private void write() {
+        output(sb);
+        sb.setLength(0);
+    }
+
+    /**
+     * called on the producing thread when it records for the first time
+     */
+    protected abstract R newRing(Thread thread);
+
+    /**
+     * format the entry into {@link #sb}, and clear the references held by the entry
+     */
+    protected abstract void append(E e);
+
+    /**
+     * report and reset the counters of the ring, the report may be appended to {@link #sb}
+     */
+    protected abstract void report(R r);
+
+    /**
+     * write the formatted records
+     */
+    protected abstract void output(StringBuilder sb);
+
+    /**
+     * the writer thread got an unexpected error
+     */
+    protected abstract void writerFailed(Throwable t);
+
+    static class Ring<E> {
+        final Thread thread;
+        private final E[] entries;
+        private final int mask;
+        // written by the producer thread, read by the consumer
+        final AtomicLong tail = new AtomicLong();
+        // written by the consumer, read by the producer thread
+        final AtomicLong head = new AtomicLong();
+        // records dropped because the ring is full
+        final AtomicLong dropped = new AtomicLong();
+
+        @SuppressWarnings("unchecked")
+        Ring(Thread thread, int size, Supplier<E> entry) {
+            this.thread = thread;
+            this.entries = (E[]) new Object[size];
+            for (int i = 0; i < size; ++i) {
+                entries[i] = entry.get();
+            }
+            this.mask = size - 1;
+        }
+
+        boolean isEmpty() {
+            return head.get() == tail.get();
+        }
+
+        /**
+         * only called by the producer thread, the returned entry must be published with {@link ThreadRingWriter#publish(Ring)}
+         *
+         * @return the entry to fill in, or null if the ring is full
+         */
+        E claim() {
+            long tail = this.tail.get();
+            if (tail - head.get() >= entries.length) {
+                return null;
+            }
+            return entries[(int) tail & mask];
+        }
+
+        // only called by the consumer
+        E peek() {
+            long head = this.head.get();
+            if (head == tail.get()) {
+                return null;
+            }
+            return entries[(int) head & mask];
+        }
+
+        // only called by the consumer
+        void release() {
+            head.set(head.get() + 1);
+        }
+    }
+}
@@ -2,36 +2,36 @@ package vproxybase.util;
 
 import vproxybase.Config;
 
-import java.util.PriorityQueue;
-
-public class TimeQueue<T> {
-    PriorityQueue<TimeElem<T>> queue = new PriorityQueue<>((a, b) -> (int) (a.triggerTime - b.triggerTime));
-
-    public TimeElem<T> push(int timeout, T elem) {
-        TimeElem<T> event = new TimeElem<>(Config.currentTimestamp + timeout, elem, this);
-        queue.add(event);
-        return event;
+public interface TimeQueue<T> {
+    static <T> TimeQueue<T> create() {
+        if (Config.timeQueueImpl.equals("heap")) {
+            return new PriorityTimeQueue<>();
+        }
+        return new TimingWheelTimeQueue<>();
     }
 
-    public T pop() {
-        TimeElem<T> elem = queue.poll();
-        if (elem == null)
-            return null;
-        return elem.elem;
-    }
+    /**
+     * add an element which will be expired after <code>timeout</code> millis
+     *
+     * @param timeout timeout in millis, relative to Config.currentTimestamp
+     * @param elem    the element
+     * @return a handle which can be used to remove the element
+     */
+    TimeElem<T> push(int timeout, T elem);
 
-    public boolean isEmpty() {
-        return queue.isEmpty();
-    }
+    /**
+     * retrieve and remove one expired element
+     *
+     * @return an expired element, or null if no element is expired
+     */
+    T poll();
+
+    boolean isEmpty();
 
     /**
-     * @return time left to the nearest timeout, Integer.MAX_VALUE means no timer event
+     * @return time left to the nearest timeout, Integer.MAX_VALUE means no timer event.
+     * the value might be smaller than the actual time left (but never bigger),
+     * the caller should always check the queue again when time comes
      */
-    public int nextTime() {
-        TimeElem<T> elem = queue.peek();
-        if (elem == null)
-            return Integer.MAX_VALUE;
-        long triggerTime = elem.triggerTime;
-        return Math.max((int) (triggerTime - Config.currentTimestamp), 0);
-    }
+    int nextTime();
 }
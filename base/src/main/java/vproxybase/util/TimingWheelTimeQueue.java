@@ -0,0 +1,335 @@
+package vproxybase.util;
+
+import vproxybase.Config;
+
+/**
+ * A hierarchical timing wheel, insertion and removal are both O(1).<br>
+ * <br>
+ * The wheel ticks every millisecond. Level 0 has 256 slots of 1ms,
+ * level 1 to 4 have 64 slots each, every slot covers the whole range of the lower level.
+ * An element is stored in the lowest level which can hold its trigger time,
+ * and is moved (cascaded) to lower levels when the lower level wheel turns a full round.
+ * The elements are linked into intrusive doubly linked lists, so removing an element
+ * does not need to search for it.<br>
+ * <br>
+ * This is the default implementation, use -DtimeQueue=heap to use the PriorityQueue based one.
+ */
+public class TimingWheelTimeQueue<T> implements TimeQueue<T> {
+    private static final int LEVELS = 5;
+    private static final int LEVEL0_BITS = 8;
+    private static final int LEVELN_BITS = 6;
+    private static final int LEVEL0_SIZE = 1 << LEVEL0_BITS;
+    private static final int LEVELN_SIZE = 1 << LEVELN_BITS;
+    private static final int LEVEL0_MASK = LEVEL0_SIZE - 1;
+    private static final int LEVELN_MASK = LEVELN_SIZE - 1;
+    private static final int[] SHIFT = {0, 8, 14, 20, 26};
+    private static final long MAX_DELTA = (1L << (LEVEL0_BITS + LEVELN_BITS * (LEVELS - 1))) - 1;
+
+    private final Bucket<T>[][] wheels;
+    private final int[] levelCount = new int[LEVELS];
+    // bitmap of non-empty level 0 slots
+    private final long[] level0Bitmap = new long[LEVEL0_SIZE / 64];
+    private final Bucket<T> expired = new Bucket<>(-1, -1);
+    private int wheelCount = 0;
+    // the next tick to be processed
+    private long currentTick;
+    // the wheel uses its own timeline which never goes backwards
+    // it follows Config.currentTimestamp, but ignores the wall clock being turned back
+    private long now;
+    private long lastTimestamp;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheelTimeQueue() {
+        wheels = new Bucket[LEVELS][];
+        for (int level = 0; level < LEVELS; ++level) {
+            int size = level == 0 ? LEVEL0_SIZE : LEVELN_SIZE;
+            wheels[level] = new Bucket[size];
+            for (int i = 0; i < size; ++i) {
+                wheels[level][i] = new Bucket<>(level, i);
+            }
+        }
+        lastTimestamp = Config.currentTimestamp;
+        now = lastTimestamp;
+        currentTick = now;
+    }
+
+    private void syncTime() {
+        long ts = Config.currentTimestamp;
+        if (ts > lastTimestamp) {
+            now += ts - lastTimestamp;
+        }
+        lastTimestamp = ts;
+    }
+
+    @Override
+    public TimeElem<T> push(int timeout, T elem) {
+        syncTime();
+        Elem<T> e = new Elem<>(now + timeout, elem, this);
+        if (wheelCount == 0 && currentTick < now) {
+            // nothing in the wheel, simply move forward
+            currentTick = now;
+        }
+        insert(e);
+        return e;
+    }
+
+    @Override
+    public T poll() {
+        syncTime();
+        advance(now);
+        Elem<T> e = expired.head;
+        if (e == null) {
+            return null;
+        }
+        e.removeSelf();
+        return e.elem;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return wheelCount == 0 && expired.head == null;
+    }
+
+    @Override
+    public int nextTime() {
+        syncTime();
+        advance(now);
+        if (expired.head != null) {
+            return 0;
+        }
+        if (wheelCount == 0) {
+            return Integer.MAX_VALUE;
+        }
+        long next = nextEventTick();
+        // after advancing, currentTick is always bigger than now
+        long delta = next - now;
+        if (delta <= 0) {
+            return 0;
+        }
+        if (delta > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) delta;
+    }
+
+    // the nearest tick when some elements may expire or need to be cascaded
+    private long nextEventTick() {
+        long next = Long.MAX_VALUE;
+        if (levelCount[0] > 0) {
+            next = currentTick + nextLevel0Offset((int) (currentTick & LEVEL0_MASK));
+        }
+        for (int level = 1; level < LEVELS; ++level) {
+            if (levelCount[level] > 0) {
+                // nothing can happen before the next cascading of this level
+                long span = 1L << SHIFT[level];
+                long boundary = (currentTick + span - 1) & -span;
+                if (boundary < next) {
+                    next = boundary;
+                }
+                break;
+            }
+        }
+        return next;
+    }
+
+    // find the nearest non-empty level 0 slot starting from idx (inclusive)
+    private int nextLevel0Offset(int idx) {
+        int word = idx >>> 6;
+        long bits = level0Bitmap[word] & (-1L << (idx & 63));
+        for (int n = 0; n <= level0Bitmap.length; ++n) {
+            if (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return (slot - idx) & LEVEL0_MASK;
+            }
+            word = (word + 1) % level0Bitmap.length;
+            bits = level0Bitmap[word];
+        }
+        // should not happen, levelCount[0] > 0 is checked before calling this method
+        return LEVEL0_SIZE;
+    }
+
+    private void advance(long until) {
+        while (currentTick <= until) {
+            if (wheelCount == 0) {
+                currentTick = until + 1;
+                return;
+            }
+            long next = nextEventTick();
+            if (next > until) {
+                currentTick = until + 1;
+                return;
+            }
+            if (next > currentTick) {
+                currentTick = next;
+            }
+            tick();
+        }
+    }
+
+    private void tick() {
+        long t = currentTick;
+        int idx = (int) (t & LEVEL0_MASK);
+        if (idx == 0) {
+            for (int level = 1; level < LEVELS; ++level) {
+                int i = (int) ((t >>> SHIFT[level]) & LEVELN_MASK);
+                cascade(wheels[level][i]);
+                if (i != 0) {
+                    break;
+                }
+            }
+        }
+        Bucket<T> slot = wheels[0][idx];
+        Elem<T> e = slot.head;
+        if (e != null) {
+            for (Elem<T> x = e; x != null; x = x.next) {
+                x.bucket = expired;
+            }
+            if (expired.tail == null) {
+                expired.head = e;
+            } else {
+                expired.tail.next = e;
+                e.prev = expired.tail;
+            }
+            expired.tail = slot.tail;
+            levelCount[0] -= slot.size;
+            wheelCount -= slot.size;
+            expired.size += slot.size;
+            slot.head = null;
+            slot.tail = null;
+            slot.size = 0;
+            level0Bitmap[idx >>> 6] &= ~(1L << (idx & 63));
+        }
+        currentTick = t + 1;
+    }
+
+    private void cascade(Bucket<T> bucket) {
+        Elem<T> e = bucket.head;
+        if (e == null) {
+            return;
+        }
+        levelCount[bucket.level] -= bucket.size;
+        wheelCount -= bucket.size;
+        bucket.head = null;
+        bucket.tail = null;
+        bucket.size = 0;
+        while (e != null) {
+            Elem<T> next = e.next;
+            e.prev = null;
+            e.next = null;
+            insert(e);
+            e = next;
+        }
+    }
+
+    private void insert(Elem<T> e) {
+        long delta = e.triggerTime - currentTick;
+        if (delta < 0) {
+            // the tick is already processed
+            expired.add(e);
+            return;
+        }
+        Bucket<T> bucket;
+        if (delta < LEVEL0_SIZE) {
+            int idx = (int) (e.triggerTime & LEVEL0_MASK);
+            bucket = wheels[0][idx];
+            level0Bitmap[idx >>> 6] |= 1L << (idx & 63);
+        } else {
+            long t = e.triggerTime;
+            if (delta > MAX_DELTA) {
+                // will be re-calculated when cascading
+                t = currentTick + MAX_DELTA;
+                delta = MAX_DELTA;
+            }
+            int level = 1;
+            while (level < LEVELS - 1 && delta >= (1L << SHIFT[level + 1])) {
+                ++level;
+            }
+            bucket = wheels[level][(int) ((t >>> SHIFT[level]) & LEVELN_MASK)];
+        }
+        bucket.add(e);
+        levelCount[bucket.level] += 1;
+        wheelCount += 1;
+    }
+
+    private void remove(Elem<T> e) {
+        Bucket<T> bucket = e.bucket;
+        if (bucket == null) {
+            return; // already removed
+        }
+        bucket.remove(e);
+        if (bucket.level >= 0) {
+            levelCount[bucket.level] -= 1;
+            wheelCount -= 1;
+            if (bucket.level == 0 && bucket.size == 0) {
+                level0Bitmap[bucket.index >>> 6] &= ~(1L << (bucket.index & 63));
+            }
+        }
+    }
+
+    private static class Bucket<T> {
+        final int level; // -1 for the expired list
+        final int index;
+        Elem<T> head;
+        Elem<T> tail;
+        int size;
+
+        Bucket(int level, int index) {
+            this.level = level;
+            this.index = index;
+        }
+
+        void add(Elem<T> e) {
+            e.bucket = this;
+            if (tail == null) {
+                head = e;
+            } else {
+                tail.next = e;
+                e.prev = tail;
+            }
+            tail = e;
+            ++size;
+        }
+
+        void remove(Elem<T> e) {
+            if (e.prev == null) {
+                head = e.next;
+            } else {
+                e.prev.next = e.next;
+            }
+            if (e.next == null) {
+                tail = e.prev;
+            } else {
+                e.next.prev = e.prev;
+            }
+            e.prev = null;
+            e.next = null;
+            e.bucket = null;
+            --size;
+        }
+    }
+
+    private static class Elem<T> implements TimeElem<T> {
+        final long triggerTime;
+        final T elem;
+        private final TimingWheelTimeQueue<T> queue;
+        Bucket<T> bucket;
+        Elem<T> prev;
+        Elem<T> next;
+
+        Elem(long triggerTime, T elem, TimingWheelTimeQueue<T> queue) {
+            this.triggerTime = triggerTime;
+            this.elem = elem;
+            this.queue = queue;
+        }
+
+        @Override
+        public T get() {
+            return elem;
+        }
+
+        @Override
+        public void removeSelf() {
+            queue.remove(this);
+        }
+    }
+}
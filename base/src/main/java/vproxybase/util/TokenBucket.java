@@ -0,0 +1,40 @@
+package vproxybase.util;
+
+/**
+ * A token bucket which refills <code>permitsPerSecond</code> tokens every second
+ * and holds at most <code>burst</code> tokens.<br>
+ * Not thread safe, it's expected to be used by only one thread.
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastNanos;
+
+    public TokenBucket(int permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System.nanoTime());
+    }
+
+    public TokenBucket(int permitsPerSecond, int burst, long nanos) {
+        this.tokensPerNano = permitsPerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastNanos = nanos;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long nanos) {
+        if (nanos > lastNanos) {
+            tokens = Math.min(burst, tokens + (nanos - lastNanos) * tokensPerNano);
+            lastNanos = nanos;
+        }
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
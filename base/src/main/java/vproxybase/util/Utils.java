@@ -527,6 +527,29 @@ public class Utils {
         return 0xffff - sum;
     }
 
+    /**
+     * rfc 1624: HC' = ~(~HC + ~m + m'),
+     * update the checksum when a 16-bit word covered by it changes from m to m'
+     */
+    public static int updateChecksum(int checksum, int oldWord, int newWord) {
+        int sum = (~checksum & 0xffff) + (~oldWord & 0xffff) + (newWord & 0xffff);
+        sum = (sum & 0xffff) + (sum >>> 16);
+        sum = (sum & 0xffff) + (sum >>> 16);
+        return ~sum & 0xffff;
+    }
+
+    /**
+     * update the checksum when the bytes covered by it change, the arrays must have the same even length
+     */
+    public static int updateChecksum(int checksum, byte[] oldBytes, byte[] newBytes) {
+        for (int i = 0; i < oldBytes.length; i += 2) {
+            int oldWord = ((oldBytes[i] & 0xff) << 8) | (oldBytes[i + 1] & 0xff);
+            int newWord = ((newBytes[i] & 0xff) << 8) | (newBytes[i + 1] & 0xff);
+            checksum = updateChecksum(checksum, oldWord, newWord);
+        }
+        return checksum;
+    }
+
     public static byte[] sha1(byte[] input) {
         MessageDigest md;
         try {
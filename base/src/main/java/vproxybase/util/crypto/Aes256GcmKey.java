@@ -0,0 +1,63 @@
+package vproxybase.util.crypto;
+
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * The same key as {@link Aes256Key}, but used with the GCM mode,
+ * which authenticates the data in the same pass as encrypting it.
+ */
+public class Aes256GcmKey extends Aes256Key {
+    public static final String NAME = "aes-256-gcm";
+    // the nonce must never repeat under the same key, and random 96-bit nonces are likely to collide after 2^32 packets,
+    // so each thread (event loop) uses a random 32-bit prefix and a 64-bit counter starting at a random value
+    private static final ThreadLocal<NonceSequence> nonces = ThreadLocal.withInitial(NonceSequence::new);
+
+    private static class NonceSequence {
+        final int prefix;
+        long counter;
+
+        NonceSequence() {
+            prefix = random.get().nextInt();
+            counter = random.get().nextLong();
+        }
+    }
+
+    public Aes256GcmKey(String stringKey) {
+        super(stringKey);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    /**
+     * Generate the nonce for encrypting a packet, which is unique for each packet sent by this process.
+     */
+    @Override
+    public byte[] packetIv() {
+        NonceSequence seq = nonces.get();
+        return ByteBuffer.allocate(ivLen()).putInt(seq.prefix).putLong(seq.counter++).array();
+    }
+
+    @Override
+    protected AlgorithmParameterSpec parameterSpec(byte[] iv) {
+        return new GCMParameterSpec(tagLen() * 8, iv);
+    }
+
+    @Override
+    public String cipherName() {
+        return "AES/GCM/NoPadding";
+    }
+
+    @Override
+    public int ivLen() {
+        return 12;
+    }
+
+    public int tagLen() {
+        return 16;
+    }
+}
@@ -1,17 +1,87 @@
 package vproxybase.util.crypto;
 
+import vproxybase.util.LogType;
+import vproxybase.util.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
 
 public class Aes256Key implements BlockCipherKey {
+    public static final String NAME = "aes-256-cfb";
+    // a shared SecureRandom is synchronized, so each thread (event loop) keeps its own one
+    protected static final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
+
     private final byte[] byteKey;
+    private final SecretKeySpec secretKeySpec;
+    // a cipher instance cannot be used concurrently, so each thread (event loop) keeps its own one
+    private final ThreadLocal<Cipher> packetCipher = ThreadLocal.withInitial(this::newPacketCipher);
 
     public Aes256Key(String stringKey) {
         this.byteKey = CryptoUtils.getKey(stringKey, keyLen(), ivLen());
+        this.secretKeySpec = new SecretKeySpec(byteKey, "AES");
+    }
+
+    /**
+     * @param name the cipher name, {@link Aes256Key#NAME} or {@link Aes256GcmKey#NAME}
+     * @return the key, or null if the cipher is not supported
+     */
+    public static Aes256Key create(String name, String stringKey) {
+        switch (name) {
+            case NAME:
+                return new Aes256Key(stringKey);
+            case Aes256GcmKey.NAME:
+                return new Aes256GcmKey(stringKey);
+            default:
+                return null;
+        }
+    }
+
+    public String name() {
+        return NAME;
+    }
+
+    private Cipher newPacketCipher() {
+        try {
+            return Cipher.getInstance(cipherName());
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            Logger.error(LogType.IMPROPER_USE, "creating cipher thrown exception", e);
+            throw new RuntimeException("unrecoverable error, creating cipher failed");
+        }
+    }
+
+    protected AlgorithmParameterSpec parameterSpec(byte[] iv) {
+        return new IvParameterSpec(iv);
+    }
+
+    /**
+     * Generate the iv for encrypting a packet, which is a random value for the cfb mode.
+     */
+    public byte[] packetIv() {
+        byte[] iv = new byte[ivLen()];
+        random.get().nextBytes(iv);
+        return iv;
+    }
+
+    /**
+     * Get the cipher of current thread and initialize it with the iv.
+     * The cipher is only re-initialized, so it's not created and the key is not expanded again for every packet.
+     * The returned cipher must be used before this method is called again on the same thread.
+     */
+    public Cipher packetCipher(boolean encrypting, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = packetCipher.get();
+        cipher.init(encrypting ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKeySpec, parameterSpec(iv));
+        return cipher;
     }
 
     @Override
     public SecretKeySpec getSecretKeySpec() {
-        return new SecretKeySpec(byteKey, "AES");
+        return secretKeySpec;
     }
 
     @Override
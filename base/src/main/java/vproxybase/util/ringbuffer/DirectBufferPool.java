@@ -0,0 +1,201 @@
+package vproxybase.util.ringbuffer;
+
+import vproxybase.Config;
+import vproxybase.selector.SelectorEventLoop;
+import vproxybase.util.Utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of fixed size direct buffers, each event loop holds one pool.<br>
+ * The pool is not thread safe, it should only be accessed from the event loop thread,
+ * use {@link #current()} to retrieve the pool of the current thread.<br>
+ * <br>
+ * Buffers are grouped by size classes (-DbufferPoolSizeClasses=4096,16384,...),
+ * a request is served with the smallest size class which is big enough.
+ * The total bytes of free buffers kept by one pool is limited (-DbufferPoolLoopCapacity=...),
+ * buffers released when the pool is full are freed immediately.
+ */
+public class DirectBufferPool {
+    private final int[] sizeClasses;
+    private final ByteBuffer[][] free;
+    private final int[] freeCount;
+    private final long capacity;
+    private long freeBytes = 0;
+
+    // statistics
+    // they are only modified on the event loop thread, reading them from other threads may get a stale value
+    private long leased = 0;
+    private long misses = 0;
+    private long released = 0;
+    private long dropped = 0;
+
+    public DirectBufferPool() {
+        this(Config.bufferPoolSizeClasses, Config.bufferPoolLoopCapacity);
+    }
+
+    public DirectBufferPool(int[] sizeClasses, long capacity) {
+        this.sizeClasses = sizeClasses;
+        this.capacity = capacity;
+        this.free = new ByteBuffer[sizeClasses.length][];
+        this.freeCount = new int[sizeClasses.length];
+        for (int i = 0; i < sizeClasses.length; ++i) {
+            // the maximum count of buffers which may be kept in this size class
+            long n = capacity / sizeClasses[i];
+            free[i] = new ByteBuffer[(int) Math.min(n, 65536)];
+        }
+    }
+
+    /**
+     * @return the pool of current event loop, or null if not running on an event loop
+     */
+    public static DirectBufferPool current() {
+        SelectorEventLoop loop = SelectorEventLoop.current();
+        if (loop == null) {
+            return null;
+        }
+        return loop.bufferPool;
+    }
+
+    /**
+     * @return the size of the slab which would be used to hold <code>cap</code> bytes,
+     * or -1 if no size class is big enough
+     */
+    public static int slabSize(int[] sizeClasses, int cap) {
+        for (int size : sizeClasses) {
+            if (size >= cap) {
+                return size;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * allocate a slab which can be pooled, and use the pool of current thread if possible
+     *
+     * @param cap the expected capacity
+     * @return a direct buffer which capacity is one of the size classes, or exactly cap if no size class fits
+     */
+    public static ByteBuffer leaseSlab(int cap) {
+        DirectBufferPool pool = current();
+        if (pool != null) {
+            return pool.lease(cap);
+        }
+        int size = slabSize(Config.bufferPoolSizeClasses, cap);
+        return ByteBuffer.allocateDirect(size == -1 ? cap : size);
+    }
+
+    /**
+     * return the slab to the pool of current thread, or free the memory if it cannot be pooled
+     *
+     * @param slab the buffer retrieved from {@link #leaseSlab(int)}
+     */
+    public static void releaseSlab(ByteBuffer slab) {
+        DirectBufferPool pool = current();
+        if (pool != null && pool.release(slab)) {
+            return;
+        }
+        Utils.clean(slab);
+    }
+
+    private int sizeClassIndex(int cap) {
+        for (int i = 0; i < sizeClasses.length; ++i) {
+            if (sizeClasses[i] >= cap) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public ByteBuffer lease(int cap) {
+        ++leased;
+        int idx = sizeClassIndex(cap);
+        if (idx == -1) {
+            ++misses;
+            return ByteBuffer.allocateDirect(cap);
+        }
+        int n = freeCount[idx];
+        if (n == 0) {
+            ++misses;
+            return ByteBuffer.allocateDirect(sizeClasses[idx]);
+        }
+        --n;
+        ByteBuffer b = free[idx][n];
+        free[idx][n] = null;
+        freeCount[idx] = n;
+        freeBytes -= b.capacity();
+        b.limit(b.capacity()).position(0);
+        return b;
+    }
+
+    /**
+     * @return true if the buffer is kept by the pool, false if the caller should free the buffer
+     */
+    public boolean release(ByteBuffer slab) {
+        int cap = slab.capacity();
+        int idx = sizeClassIndex(cap);
+        if (idx == -1 || sizeClasses[idx] != cap) {
+            return false;
+        }
+        int n = freeCount[idx];
+        if (n == free[idx].length || freeBytes + cap > capacity) {
+            ++dropped;
+            return false;
+        }
+        free[idx][n] = slab;
+        freeCount[idx] = n + 1;
+        freeBytes += cap;
+        ++released;
+        return true;
+    }
+
+    /**
+     * free all direct memory held by the pool
+     */
+    public void clear() {
+        for (int i = 0; i < sizeClasses.length; ++i) {
+            for (int j = 0; j < freeCount[i]; ++j) {
+                Utils.clean(free[i][j]);
+                free[i][j] = null;
+            }
+            freeCount[i] = 0;
+        }
+        freeBytes = 0;
+    }
+
+    public int[] getSizeClasses() {
+        return sizeClasses.clone();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getLeased() {
+        return leased;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getReleased() {
+        return released;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public int getFree() {
+        int n = 0;
+        for (int c : freeCount) {
+            n += c;
+        }
+        return n;
+    }
+
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+}
@@ -60,6 +60,10 @@ public class ProxyOutputRingBuffer extends AbstractRingBuffer {
         return new ProxyOutputRingBuffer(SimpleRingBuffer.allocateDirect(cap));
     }
 
+    public static ProxyOutputRingBuffer allocateDirectPooled(int cap) {
+        return new ProxyOutputRingBuffer(SimpleRingBuffer.allocateDirectPooled(cap));
+    }
+
     public void proxy(RingBuffer proxied, int proxyLen, ProxyDoneCallback cb) {
         if (this.proxied != null)
             throw new IllegalStateException("has a proxied buffer, with proxyLen = " + proxyLen);
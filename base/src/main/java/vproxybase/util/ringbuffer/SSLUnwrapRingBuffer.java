@@ -11,6 +11,7 @@ import vproxybase.util.RingBuffer;
 import vproxybase.util.Utils;
 import vproxybase.util.nio.ByteArrayChannel;
 import vproxybase.util.ringbuffer.ssl.SSL;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
 
 import javax.net.ssl.*;
 import java.io.IOException;
@@ -139,6 +140,7 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
         this.ssl = ssl;
         this.resumer = resumer;
         this.pair = pair;
+        pair.sessionStats = ssl.sslContextHolder.sessionStats;
 
         // mirror
         plainMirrorDataFactory = new MirrorDataFactory("ssl",
@@ -332,16 +334,18 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
         if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
             assert result.getStatus() == SSLEngineResult.Status.OK;
         } else {
-            unwrapHandshake(result);
+            pair.handshakeProgress();
+            unwrapHandshake(result, errored, ex);
         }
     }
 
-    private void unwrapHandshake(SSLEngineResult result) {
+    private void unwrapHandshake(SSLEngineResult result, boolean[] errored, IOException[] ex) {
         assert Logger.lowLevelDebug("unwrapHandshake: " + result);
 
         SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
         if (status == SSLEngineResult.HandshakeStatus.FINISHED) {
             assert Logger.lowLevelDebug("handshake finished");
+            pair.handshakeFinished();
             // should call the wrapper to send data (if any present)
             resumeGeneralWrap();
             return;
@@ -352,7 +356,7 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
                 lastLoop = SelectorEventLoop.current();
                 assert Logger.lowLevelDebug("resumer not specified, so we use the current event loop: " + lastLoop);
             }
-            new Thread(() -> {
+            boolean accepted = SSLHandshakeExecutor.get().execute(() -> {
                 assert Logger.lowLevelDebug("TASK begins");
                 Runnable r;
                 while ((r = engine.getDelegatedTask()) != null) {
@@ -368,7 +372,11 @@ public class SSLUnwrapRingBuffer extends AbstractUnwrapByteBufferRingBuffer impl
                 } else {
                     resumeGeneralUnwrap();
                 }
-            }).start();
+            });
+            if (!accepted) {
+                errored[0] = true;
+                ex[0] = new IOException("ssl handshake rejected: too many handshakes");
+            }
             return;
         }
         if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
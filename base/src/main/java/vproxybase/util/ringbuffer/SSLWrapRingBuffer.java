@@ -7,6 +7,8 @@ import vproxybase.util.LogType;
 import vproxybase.util.Logger;
 import vproxybase.util.RingBuffer;
 import vproxybase.util.Utils;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
+import vproxybase.util.ringbuffer.ssl.SSLSessionStats;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
@@ -25,6 +27,12 @@ import java.util.function.Supplier;
  */
 public class SSLWrapRingBuffer extends AbstractWrapByteBufferRingBuffer implements RingBuffer {
     SSLEngine engine; // will be set when first bytes reaches if it's null
+    // used to record the handshake latency, also updated by the unwrap buffer
+    // 0 means handshake not started, -1 means handshake finished
+    private long handshakeBeginNanos = 0;
+    private long handshakeBeginMillis = 0;
+    // set by the unwrap buffer when it's a server, used to count the resumed sessions
+    SSLSessionStats sessionStats;
 
     private final MirrorDataFactory plainMirrorDataFactory;
     private final MirrorDataFactory encryptedMirrorDataFactory;
@@ -242,16 +250,36 @@ public class SSLWrapRingBuffer extends AbstractWrapByteBufferRingBuffer implemen
             transferring = true; // not handshaking, so we can transfer data
             assert result.getStatus() == SSLEngineResult.Status.OK;
         } else {
+            handshakeProgress();
             wrapHandshake(result);
         }
     }
 
+    void handshakeProgress() {
+        if (handshakeBeginNanos == 0) {
+            handshakeBeginNanos = System.nanoTime();
+            handshakeBeginMillis = System.currentTimeMillis();
+        }
+    }
+
+    void handshakeFinished() {
+        if (handshakeBeginNanos > 0) {
+            SSLHandshakeExecutor.get().recordHandshake(System.nanoTime() - handshakeBeginNanos);
+            if (sessionStats != null) {
+                // a resumed session keeps the creation time of the handshake which created it
+                sessionStats.record(engine.getSession().getCreationTime() < handshakeBeginMillis);
+            }
+        }
+        handshakeBeginNanos = -1;
+    }
+
     private void wrapHandshake(SSLEngineResult result) {
         assert Logger.lowLevelDebug("wrapHandshake: " + result);
 
         SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
         if (status == SSLEngineResult.HandshakeStatus.FINISHED) {
             assert Logger.lowLevelDebug("handshake finished");
+            handshakeFinished();
             return;
         }
         if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
@@ -34,6 +34,10 @@ import java.util.Set;
 public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
     private final boolean isDirect;
     private /*may change after defragment*/ ByteBuffer buffer;
+    // when pooled, the buffer is leased from the DirectBufferPool only when it's about to be used,
+    // and returned when all data is consumed
+    private final boolean pooled;
+    private /*the pooled memory backing the `buffer`, null when not leased*/ ByteBuffer slab;
     private int ePos; // end pos
     private int sPos; // start pos
     private final int cap;
@@ -50,6 +54,14 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         return new SimpleRingBuffer(true, ByteBuffer.allocateDirect(cap), 0, 0);
     }
 
+    /**
+     * the memory is leased from the {@link DirectBufferPool} of the event loop,
+     * it's only held when the buffer is being used
+     */
+    public static SimpleRingBuffer allocateDirectPooled(int cap) {
+        return new SimpleRingBuffer(cap);
+    }
+
     public static SimpleRingBuffer allocate(int cap) {
         return new SimpleRingBuffer(false, ByteBuffer.allocate(cap), 0, 0);
     }
@@ -58,8 +70,17 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         return new SimpleRingBuffer(false, b, b.position(), b.limit());
     }
 
+    private SimpleRingBuffer(int cap) {
+        this.isDirect = true;
+        this.pooled = true;
+        this.cap = cap;
+        this.sPos = 0;
+        this.ePos = 0;
+    }
+
     private SimpleRingBuffer(boolean isDirect, ByteBuffer buffer, int sPos, int ePos) {
         this.isDirect = isDirect;
+        this.pooled = false;
         this.buffer = buffer;
         this.cap = buffer.capacity();
         this.sPos = sPos;
@@ -195,7 +216,14 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         if (cleaned)
             return;
         cleaned = true;
-        if (isDirect) {
+        if (pooled) {
+            ByteBuffer slab = this.slab;
+            this.slab = null;
+            this.buffer = null;
+            if (slab != null) {
+                DirectBufferPool.releaseSlab(slab);
+            }
+        } else if (isDirect) {
             Utils.clean(buffer);
         }
     }
@@ -206,6 +234,39 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         }
     }
 
+    private ByteBuffer leaseSlabAndSlice() {
+        ByteBuffer slab = DirectBufferPool.leaseSlab(cap);
+        this.slab = slab;
+        if (slab.capacity() == cap) {
+            return slab;
+        }
+        return slab.duplicate().position(0).limit(cap).slice();
+    }
+
+    private void ensureBufferLeased() {
+        ensureBufferAvailable();
+        if (buffer == null) {
+            assert Logger.lowLevelNetDebug("lease buffer from pool");
+            buffer = leaseSlabAndSlice();
+        }
+    }
+
+    private void releaseIfDrained() {
+        if (!pooled || operating || buffer == null || used() != 0 || cleaned) {
+            return;
+        }
+        DirectBufferPool pool = DirectBufferPool.current();
+        if (pool == null) {
+            return; // keep the buffer if not running on event loop
+        }
+        if (pool.release(slab)) {
+            assert Logger.lowLevelNetDebug("buffer drained, returned to pool");
+            slab = null;
+            buffer = null;
+            resetCursors();
+        }
+    }
+
     // clear the buffer
     @Override
     public void clear() {
@@ -247,7 +308,7 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         if (operatingBuffer) {
             throw new IllegalStateException("this buffer is operating");
         }
-        ensureBufferAvailable();
+        ensureBufferLeased();
 
         boolean firstOperator = isFirstOperate();
         operatingBuffer = true;
@@ -333,6 +394,7 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
                 }
             }
             resetFirst(firstOperator);
+            releaseIfDrained();
         }
     }
 
@@ -341,7 +403,7 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         if (operatingBuffer) {
             throw new IllegalStateException("this buffer is operating");
         }
-        ensureBufferAvailable();
+        ensureBufferLeased();
 
         boolean firstOperator = isFirstOperate();
         operatingBuffer = true;
@@ -439,8 +501,11 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
         // and store data into the new buffer
         //
         // then we make a swap
+        ByteBuffer oldSlab = slab;
         ByteBuffer newBuffer;
-        if (isDirect) {
+        if (pooled) {
+            newBuffer = leaseSlabAndSlice();
+        } else if (isDirect) {
             newBuffer = ByteBuffer.allocateDirect(cap);
         } else {
             newBuffer = ByteBuffer.allocate(cap);
@@ -458,7 +523,9 @@ public class SimpleRingBuffer implements RingBuffer, ByteBufferRingBuffer {
             newBuffer.put(buffer);
         }
 
-        if (isDirect) {
+        if (pooled) {
+            DirectBufferPool.releaseSlab(oldSlab); // return the old buffer
+        } else if (isDirect) {
             Utils.clean(buffer); // clean the old buffer
         }
 
@@ -0,0 +1,164 @@
+package vproxybase.util.ringbuffer;
+
+import vfd.FD;
+import vfd.posix.SplicePipe;
+import vproxybase.util.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A ring buffer backed by a kernel pipe, bytes are moved with splice(2) and never enter the jvm.<br>
+ * It can only be used between two posix sockets, e.g. as the shared buffer of the two connections of a plain tcp proxy.
+ * The bytes cannot be retrieved, so it cannot be used by any processor or tls.<br>
+ * <br>
+ * The pipe is organized in pages, it might be full before {@link #used()} reaches the capacity.
+ * In this case the buffer reports no free space until some bytes are written out.
+ */
+public class SpliceRingBuffer extends AbstractRingBuffer {
+    private final SplicePipe pipe;
+    private int used = 0;
+    private boolean pipeFull = false;
+    private boolean cleaned = false;
+
+    private SpliceRingBuffer(SplicePipe pipe) {
+        this.pipe = pipe;
+    }
+
+    /**
+     * @param size size of the pipe, it's only a hint, the capacity is decided by the os
+     */
+    public static SpliceRingBuffer allocate(int size) throws IOException {
+        return new SpliceRingBuffer(SplicePipe.open(size));
+    }
+
+    private static FD fdOf(Object channel) throws IOException {
+        if (!(channel instanceof FD) || !SplicePipe.canSplice((FD) channel)) {
+            throw new IOException("cannot splice " + channel);
+        }
+        return (FD) channel;
+    }
+
+    @Override
+    public int storeBytesFrom(ReadableByteChannel channel) throws IOException {
+        if (cleaned) {
+            throw new IOException("buffer released");
+        }
+        int len = free();
+        if (len == 0) {
+            return 0;
+        }
+        boolean firstOperator = !isOperating();
+        setOperating(true);
+        boolean triggerReadable = false;
+        try {
+            boolean triggerReadablePre = used == 0;
+            int read = pipe.spliceFrom(fdOf(channel), len);
+            if (read < 0) {
+                return -1; // EOF
+            }
+            if (read == 0 && used > 0) {
+                // the socket is readable (otherwise this method will not be called), so the pipe is full
+                pipeFull = true;
+                assert Logger.lowLevelDebug("the splice pipe is full: " + this);
+            }
+            used += read;
+            triggerReadable = triggerReadablePre && read > 0;
+            return read;
+        } finally {
+            if (triggerReadable) {
+                triggerReadable();
+            }
+            if (firstOperator) {
+                setOperating(false);
+            }
+        }
+    }
+
+    @Override
+    public int writeTo(WritableByteChannel channel, int maxBytesToWrite) throws IOException {
+        if (cleaned) {
+            throw new IOException("buffer released");
+        }
+        int len = Math.min(used, maxBytesToWrite);
+        if (len == 0) {
+            return 0;
+        }
+        boolean firstOperator = !isOperating();
+        setOperating(true);
+        boolean triggerWritable = false;
+        try {
+            boolean triggerWritablePre = free() == 0;
+            int write = pipe.spliceTo(fdOf(channel), len);
+            if (write > 0) {
+                used -= write;
+                pipeFull = false;
+            }
+            triggerWritable = triggerWritablePre && write > 0;
+            return write;
+        } finally {
+            if (triggerWritable) {
+                triggerWritable();
+            }
+            if (firstOperator) {
+                setOperating(false);
+            }
+        }
+    }
+
+    @Override
+    public int free() {
+        if (cleaned || pipeFull) {
+            return 0;
+        }
+        return pipe.capacity - used;
+    }
+
+    @Override
+    public int used() {
+        return used;
+    }
+
+    @Override
+    public int capacity() {
+        return pipe.capacity;
+    }
+
+    @Override
+    public void clean() {
+        if (cleaned) {
+            return;
+        }
+        cleaned = true;
+        used = 0;
+        pipe.close();
+    }
+
+    @Override
+    public void clear() {
+        if (cleaned) {
+            return;
+        }
+        try {
+            pipe.discard();
+        } catch (IOException e) {
+            Logger.shouldNotHappen("discarding bytes in " + pipe + " failed", e);
+        }
+        boolean triggerWritable = free() == 0 && used > 0;
+        used = 0;
+        pipeFull = false;
+        if (triggerWritable) {
+            triggerWritable();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpliceRingBuffer{" +
+            "pipe=" + pipe +
+            ", used=" + used +
+            ", pipeFull=" + pipeFull +
+            '}';
+    }
+}
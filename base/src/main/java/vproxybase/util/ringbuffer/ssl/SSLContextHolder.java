@@ -1,8 +1,10 @@
 package vproxybase.util.ringbuffer.ssl;
 
+import vproxybase.Config;
 import vproxybase.util.Logger;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -43,10 +45,54 @@ public class SSLContextHolder {
     protected final Map<String, SSLContext> quickAccess = new ConcurrentHashMap<>();
     // quickAccess stores SNI to the corresponding SSLContext
 
+    // each ssl context keeps its own session cache, so the cache is bounded per cert-key
+    private int sessionCacheSize = Config.sslSessionCacheSize;
+    private int sessionTimeout = Config.sslSessionTimeout;
+    public final SSLSessionStats sessionStats = new SSLSessionStats();
+
     public void add(SSLContext sslContext, X509Certificate[] certs) {
+        configureSessions(sslContext);
         holders.add(new Holder(sslContext, certs));
     }
 
+    protected void configureSessions(SSLContext sslContext) {
+        SSLSessionContext sessions = sslContext.getServerSessionContext();
+        if (sessions == null) { // not supported by the provider
+            return;
+        }
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeout);
+    }
+
+    /**
+     * @param sessionCacheSize max cached sessions of each ssl context, 0 means no limit
+     * @param sessionTimeout   seconds that a session can be resumed
+     */
+    public void setSessionCacheConfig(int sessionCacheSize, int sessionTimeout) {
+        if (sessionCacheSize < 0) {
+            throw new IllegalArgumentException("sessionCacheSize must be >= 0, but got " + sessionCacheSize);
+        }
+        if (sessionTimeout < 0) {
+            throw new IllegalArgumentException("sessionTimeout must be >= 0, but got " + sessionTimeout);
+        }
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeout = sessionTimeout;
+        for (Holder h : holders) {
+            configureSessions(h.sslContext);
+        }
+        for (SSLContext ctx : quickAccess.values()) {
+            configureSessions(ctx);
+        }
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
     public SSLContext choose(String sni) {
         assert Logger.lowLevelDebug("choosing cert with sni " + sni + ", holders.size = " + holders.size());
         if (holders.size() == 1) {
@@ -0,0 +1,180 @@
+package vproxybase.util.ringbuffer.ssl;
+
+import vproxybase.Config;
+import vproxybase.util.LatencyHistogram;
+import vproxybase.util.LogType;
+import vproxybase.util.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the delegated tasks of ssl engines with a bounded number of threads and a bounded queue,
+ * so that a burst of handshakes does not create a thread for each of them.<br>
+ * When the queue is full, the task is either run inline on the calling event loop,
+ * or rejected and the handshake fails, see {@link Config#sslHandshakeOverflow}.
+ */
+public class SSLHandshakeExecutor {
+    public enum Overflow {
+        inline,
+        reject,
+    }
+
+    private static volatile SSLHandshakeExecutor instance;
+
+    public static SSLHandshakeExecutor get() {
+        SSLHandshakeExecutor instance = SSLHandshakeExecutor.instance;
+        if (instance != null) {
+            return instance;
+        }
+        synchronized (SSLHandshakeExecutor.class) {
+            if (SSLHandshakeExecutor.instance == null) {
+                int threads = Config.sslHandshakeThreads;
+                if (threads <= 0) {
+                    threads = Runtime.getRuntime().availableProcessors();
+                }
+                SSLHandshakeExecutor.instance = new SSLHandshakeExecutor(threads, Config.sslHandshakeQueueSize,
+                    overflowOf(Config.sslHandshakeOverflow));
+            }
+            return SSLHandshakeExecutor.instance;
+        }
+    }
+
+    /**
+     * check the config before any handshake happens, so an invalid value fails the startup
+     *
+     * @throws IllegalArgumentException the config is invalid
+     */
+    public static void checkConfig() {
+        if (Config.sslHandshakeThreads < 0) {
+            throw new IllegalArgumentException("invalid -DsslHandshakeThreads=" + Config.sslHandshakeThreads + ", should be >= 0");
+        }
+        if (Config.sslHandshakeQueueSize < 1) {
+            throw new IllegalArgumentException("invalid -DsslHandshakeQueueSize=" + Config.sslHandshakeQueueSize + ", should be >= 1");
+        }
+        overflowOf(Config.sslHandshakeOverflow);
+    }
+
+    private static Overflow overflowOf(String overflow) {
+        try {
+            return Overflow.valueOf(overflow);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid -DsslHandshakeOverflow=" + overflow + ", should be inline or reject");
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Overflow overflow;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder inlined = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram taskLatency = new LatencyHistogram(); // waiting in queue + running
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+
+    public SSLHandshakeExecutor(int threads, int queueSize, Overflow overflow) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1, but got " + threads);
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be >= 1, but got " + queueSize);
+        }
+        this.overflow = overflow;
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            r -> {
+                Thread t = new Thread(r, "ssl-handshake-" + threadIndex.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /**
+     * @return false if the task is rejected, and it will not run
+     */
+    public boolean execute(Runnable task) {
+        long begin = System.nanoTime();
+        Runnable r = () -> {
+            try {
+                task.run();
+            } finally {
+                taskLatency.record(System.nanoTime() - begin);
+            }
+        };
+        try {
+            pool.execute(r);
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (overflow == Overflow.inline) {
+                inlined.increment();
+                assert Logger.lowLevelDebug("ssl handshake queue is full, run the task inline");
+                r.run();
+                return true;
+            }
+            rejected.increment();
+            Logger.warn(LogType.SSL_ERROR, "ssl handshake queue is full, the task is rejected");
+            return false;
+        }
+    }
+
+    public void recordHandshake(long nanos) {
+        handshakeLatency.record(nanos);
+    }
+
+    public int getThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public int getQueued() {
+        return pool.getQueue().size();
+    }
+
+    public int getActive() {
+        return pool.getActiveCount();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getInlined() {
+        return inlined.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public LatencyHistogram getTaskLatency() {
+        return taskLatency;
+    }
+
+    public LatencyHistogram getHandshakeLatency() {
+        return handshakeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "SSLHandshakeExecutor{" +
+            "threads=" + getThreads() +
+            ", overflow=" + overflow +
+            ", queued=" + getQueued() +
+            ", active=" + getActive() +
+            ", submitted=" + getSubmitted() +
+            ", inlined=" + getInlined() +
+            ", rejected=" + getRejected() +
+            ", taskLatency=" + taskLatency +
+            ", handshakeLatency=" + handshakeLatency +
+            '}';
+    }
+}
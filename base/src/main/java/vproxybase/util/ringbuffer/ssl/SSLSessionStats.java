@@ -0,0 +1,49 @@
+package vproxybase.util.ringbuffer.ssl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the finished server side handshakes of one ssl context holder,
+ * and how many of them resumed a previous session.
+ */
+public class SSLSessionStats {
+    private final LongAdder full = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+
+    public void record(boolean isResumed) {
+        if (isResumed) {
+            resumed.increment();
+        } else {
+            full.increment();
+        }
+    }
+
+    public long getFullHandshakes() {
+        return full.sum();
+    }
+
+    public long getResumedHandshakes() {
+        return resumed.sum();
+    }
+
+    /**
+     * @return resumed / total, or 0 if no handshake finished
+     */
+    public double getHitRatio() {
+        long resumed = getResumedHandshakes();
+        long total = resumed + getFullHandshakes();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) resumed / total;
+    }
+
+    @Override
+    public String toString() {
+        return "SSLSessionStats{" +
+            "full=" + getFullHandshakes() +
+            ", resumed=" + getResumedHandshakes() +
+            ", hitRatio=" + String.format("%.4f", getHitRatio()) +
+            '}';
+    }
+}
@@ -14,11 +14,13 @@ import vproxybase.connection.*;
 import vproxybase.processor.Hint;
 import vproxybase.processor.Processor;
 import vproxybase.processor.ProcessorProvider;
+import vproxybase.util.AccessLog;
 import vproxybase.util.LogType;
 import vproxybase.util.Logger;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.ClosedException;
 import vproxybase.util.exception.NotFoundException;
+import vproxybase.util.ringbuffer.ssl.SSLSessionStats;
 import vproxybase.util.ringbuffer.ssl.VSSLContext;
 
 import java.io.IOException;
@@ -78,6 +80,7 @@ public class TcpLB {
     private VSSLContext sslContext;
     private CertKey[] certKeys;
     public SecurityGroup securityGroup;
+    private final AccessLog accessLog; // the sample ratio is modifiable
     // the modifiable fields only have effect when new connection arrives
 
     // true means the lb is stopped, but it can still re-start.
@@ -128,6 +131,7 @@ public class TcpLB {
         this.sslContext = sslContext;
         this.certKeys = certKeys;
         this.securityGroup = securityGroup;
+        this.accessLog = new AccessLog(alias);
 
         // we do not bind or create proxy object here
         // if it's created, it should start to run
@@ -195,7 +199,8 @@ public class TcpLB {
             .setOutBufferSize(outBufferSize)
             .setServer(server)
             .setAcceptLoop(eventLoop)
-            .setSslContext(sslContext);
+            .setSslContext(sslContext)
+            .setAccessLog(accessLog);
     }
 
     public void start() throws IOException {
@@ -334,4 +339,26 @@ public class TcpLB {
     public CertKey[] getCertKeys() {
         return certKeys;
     }
+
+    /**
+     * @param ratio 0 to disable the access log, 1 to record all connections and requests
+     */
+    public void setAccessLogSampleRatio(double ratio) {
+        accessLog.setSampleRatio(ratio);
+    }
+
+    public double getAccessLogSampleRatio() {
+        return accessLog.getSampleRatio();
+    }
+
+    /**
+     * @return null if the lb is not using TLS
+     */
+    public SSLSessionStats getSslSessionStats() {
+        VSSLContext sslContext = this.sslContext;
+        if (sslContext == null) {
+            return null;
+        }
+        return sslContext.sslContextHolder.sessionStats;
+    }
 }
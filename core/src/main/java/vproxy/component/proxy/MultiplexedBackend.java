@@ -0,0 +1,268 @@
+package vproxy.component.proxy;
+
+import vproxybase.Config;
+import vproxybase.component.svrgroup.SvrHandleConnector;
+import vproxybase.connection.*;
+import vproxybase.processor.Processor;
+import vproxybase.selector.TimerEvent;
+import vproxybase.util.AccessLog;
+import vproxybase.util.ByteArray;
+import vproxybase.util.LogType;
+import vproxybase.util.Logger;
+import vproxybase.util.RingBuffer;
+import vproxybase.util.nio.ByteArrayChannel;
+import vproxybase.util.ringbuffer.ProxyOutputRingBuffer;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A backend connection shared by the frontend connections handled by one event loop, see {@link Processor#multiplexed()}.<br>
+ * Data of the frontends is written in the order of calling {@link #write(ProcessorConnectionHandler, ByteArray)},
+ * and the processor matches the responses with the frontends.<br>
+ * The connections belong to the event loop and must only be accessed on the loop thread.
+ * A connection without frontends is closed when it's idle for {@link Config#backendPoolIdleTimeout}.
+ */
+class MultiplexedBackend implements ConnectableConnectionHandler {
+    private static class Registry {
+        final NetEventLoop loop;
+        // processor name => server handle or remote address => connection
+        final Map<String, Map<Object, MultiplexedBackend>> backends = new HashMap<>();
+
+        Registry(NetEventLoop loop) {
+            this.loop = loop;
+        }
+    }
+
+    private static final ThreadLocal<Registry> registries = new ThreadLocal<>();
+
+    private static Registry registry(NetEventLoop loop) {
+        Registry registry = registries.get();
+        if (registry == null || registry.loop != loop) {
+            registry = new Registry(loop);
+            registries.set(registry);
+        }
+        return registry;
+    }
+
+    // connections to the same server handle are interchangeable
+    private static Object serverOf(Connector connector) {
+        if (connector instanceof SvrHandleConnector) {
+            return ((SvrHandleConnector) connector).getServerHandle();
+        }
+        return connector.remote;
+    }
+
+    /**
+     * get the shared connection to the server of the connector, a new connection is made if there's none
+     *
+     * @return the shared connection, or null if failed to make a new connection
+     */
+    static MultiplexedBackend get(NetEventLoop loop, Processor<Processor.Context, Processor.SubContext> processor, Connector connector, ProxyNetConfig config) {
+        Registry registry = registry(loop);
+        Map<Object, MultiplexedBackend> map = registry.backends.computeIfAbsent(processor.name(), k -> new HashMap<>());
+        Object server = serverOf(connector);
+        MultiplexedBackend backend = map.get(server);
+        if (backend != null && !backend.closed) {
+            return backend;
+        }
+
+        ConnectableConnection conn;
+        try {
+            conn = connector.connect(
+                new ConnectionOpts().setTimeout(config.timeout),
+                RingBuffer.allocateDirectPooled(config.inBufferSize), ProxyOutputRingBuffer.allocateDirectPooled(config.outBufferSize));
+        } catch (IOException e) {
+            Logger.fatal(LogType.CONN_ERROR, "make passive connection failed, maybe provided endpoint info is invalid", e);
+            return null;
+        }
+        backend = new MultiplexedBackend(registry, processor, server, conn);
+        try {
+            loop.addConnectableConnection(conn, null, backend);
+        } catch (IOException e) {
+            Logger.fatal(LogType.EVENT_LOOP_ADD_FAIL, "add connectable connection " + conn + " to loop failed");
+            conn.close(true);
+            conn.getInBuffer().clean();
+            conn.getOutBuffer().clean();
+            return null;
+        }
+        map.put(server, backend);
+        assert Logger.lowLevelDebug("new multiplexed backend connection " + conn + " for " + processor.name());
+
+        ByteArray bytes = processor.connected(backend.topCtx, backend.subCtx);
+        if (bytes != null && bytes.length() > 0) {
+            backend.sending.add(bytes.toFullChannel());
+        }
+        return backend;
+    }
+
+    private final Registry registry;
+    private final Processor<Processor.Context, Processor.SubContext> processor;
+    private final Object server;
+    final ConnectableConnection conn;
+    final Processor.Context topCtx;
+    final Processor.SubContext subCtx;
+
+    private boolean isConnected = false;
+    private boolean closed = false;
+    private final LinkedList<ByteArrayChannel> sending = new LinkedList<>();
+    // frontend context => handler of the frontend connection
+    private final Map<Processor.Context, ProcessorConnectionHandler> users = new IdentityHashMap<>();
+    // frontends which stop reading until the data is flushed
+    private final Set<ProcessorConnectionHandler> waiting = new LinkedHashSet<>();
+    private TimerEvent idleTimer;
+
+    private MultiplexedBackend(Registry registry, Processor<Processor.Context, Processor.SubContext> processor, Object server, ConnectableConnection conn) {
+        this.registry = registry;
+        this.processor = processor;
+        this.server = server;
+        this.conn = conn;
+        this.topCtx = processor.init(null);
+        this.subCtx = processor.initSub(topCtx, 1, conn.remote);
+    }
+
+    void attach(Processor.Context frontendCtx, ProcessorConnectionHandler handler) {
+        users.put(frontendCtx, handler);
+        if (idleTimer != null) {
+            idleTimer.cancel();
+            idleTimer = null;
+        }
+    }
+
+    void detach(Processor.Context frontendCtx, ProcessorConnectionHandler handler) {
+        users.remove(frontendCtx);
+        waiting.remove(handler);
+        if (users.isEmpty() && !closed && idleTimer == null) {
+            idleTimer = registry.loop.getSelectorEventLoop().delay(Config.backendPoolIdleTimeout, () -> {
+                assert Logger.lowLevelDebug("multiplexed backend connection " + conn + " idle timeout");
+                idleTimer = null;
+                close(AccessLog.CLOSE_LOCAL);
+            });
+        }
+    }
+
+    /**
+     * @return true if the data is flushed into the output buffer,
+     * otherwise the frontend should stop reading, and its readFrontend() will be called when the data is flushed
+     */
+    boolean write(ProcessorConnectionHandler handler, ByteArray data) {
+        sending.add(data.toFullChannel());
+        flush();
+        if (sending.isEmpty()) {
+            return true;
+        }
+        waiting.add(handler);
+        return false;
+    }
+
+    private void flush() {
+        if (!isConnected) {
+            return;
+        }
+        ByteArrayChannel chnl;
+        while ((chnl = sending.peek()) != null) {
+            ByteArrayChannel c = chnl;
+            conn.runNoQuickWrite(() -> conn.getOutBuffer().storeBytesFrom(c));
+            if (chnl.used() != 0) {
+                return; // the output buffer is full, wait until writable
+            }
+            sending.poll();
+        }
+        if (!waiting.isEmpty()) {
+            List<ProcessorConnectionHandler> ls = new ArrayList<>(waiting);
+            waiting.clear();
+            for (ProcessorConnectionHandler h : ls) {
+                h.readFrontend();
+            }
+        }
+    }
+
+    @Override
+    public void connected(ConnectableConnectionHandlerContext ctx) {
+        isConnected = true;
+        flush();
+    }
+
+    @Override
+    public void readable(ConnectionHandlerContext ctx) {
+        int used = conn.getInBuffer().used();
+        if (used == 0) {
+            return;
+        }
+        ByteArrayChannel chnl = ByteArrayChannel.fromEmpty(used);
+        conn.getInBuffer().writeTo(chnl);
+        try {
+            processor.feed(topCtx, subCtx, chnl.getArray());
+        } catch (Exception e) {
+            Logger.warn(LogType.INVALID_EXTERNAL_DATA, "user code cannot handle data from multiplexed backend " + conn + ".", e);
+            close(AccessLog.CLOSE_BACKEND_ERROR);
+            return;
+        }
+        ByteArray writeBack = processor.produce(topCtx, subCtx);
+        if (writeBack != null && writeBack.length() != 0) {
+            sending.add(writeBack.toFullChannel());
+            flush();
+        }
+        for (Processor.Context frontendCtx : processor.ready(topCtx, subCtx)) {
+            ProcessorConnectionHandler h = users.get(frontendCtx);
+            if (h != null) { // null when the frontend is already closed
+                h.multiplexedReady();
+            }
+        }
+    }
+
+    @Override
+    public void writable(ConnectionHandlerContext ctx) {
+        flush();
+    }
+
+    @Override
+    public void exception(ConnectionHandlerContext ctx, IOException err) {
+        Logger.error(LogType.CONN_ERROR, "got exception when handling multiplexed backend connection " + conn, err);
+        close(isConnected ? AccessLog.CLOSE_BACKEND_ERROR : AccessLog.CLOSE_CONNECT_FAILED);
+    }
+
+    @Override
+    public void remoteClosed(ConnectionHandlerContext ctx) {
+        assert Logger.lowLevelDebug("multiplexed backend connection " + conn + " remoteClosed");
+        close(AccessLog.CLOSE_BACKEND);
+    }
+
+    @Override
+    public void closed(ConnectionHandlerContext ctx) {
+        close(AccessLog.CLOSE_BACKEND);
+    }
+
+    @Override
+    public void removed(ConnectionHandlerContext ctx) {
+        // the connection is not bound to any frontend, it's removed when the event loop is closing
+        assert Logger.lowLevelDebug("multiplexed backend connection " + conn + " removed from event loop");
+        close(AccessLog.CLOSE_LOCAL);
+    }
+
+    // the responses of the frontends will never arrive, so all frontends using the connection are closed as well
+    private void close(String reason) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (idleTimer != null) {
+            idleTimer.cancel();
+            idleTimer = null;
+        }
+        Map<Object, MultiplexedBackend> map = registry.backends.get(processor.name());
+        if (map != null && map.get(server) == this) {
+            map.remove(server);
+        }
+        conn.close();
+        conn.getInBuffer().clean();
+        conn.getOutBuffer().clean();
+
+        List<ProcessorConnectionHandler> ls = new ArrayList<>(users.values());
+        users.clear();
+        waiting.clear();
+        for (ProcessorConnectionHandler h : ls) {
+            h.multiplexedBackendClosed(reason);
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package vproxy.component.proxy;
 
+import vfd.FDProvider;
+import vfd.IPPort;
+import vproxy.pool.BackendConnectionPool;
 import vproxybase.connection.*;
 import vproxybase.processor.Hint;
 import vproxybase.processor.Processor;
+import vproxybase.util.AccessLog;
 import vproxybase.util.ByteArray;
 import vproxybase.util.LogType;
 import vproxybase.util.Logger;
@@ -22,9 +26,18 @@ class ProcessorConnectionHandler implements ConnectionHandler {
     private final Processor.SubContext frontendSubCtx;
     private final NetEventLoop loop;
 
+    // the following fields are only used when the connection is recorded by the access log
+    private final AccessLog accessLog;
+    private final long beginTime;
+    private String closeReason;
+    private IPPort lastBackend; // the backend of the last dispatched data
+
     private final Map<BackendConnectionHandler, Integer> conn2intMap = new HashMap<>();
+    // shared backend connections used by the frontend, only when the processor is multiplexed
+    private final Set<MultiplexedBackend> multiplexedBackends = new HashSet<>();
 
     private int cursor = 0;
+    private long segmentSeq = 0; // the order of segments written to the frontend flows of backends
     private final BackendConnectionHandler[] conns = new BackendConnectionHandler[1024 + 1];
     // [0] will not be used
     // I believe that 1024 connections should be enough
@@ -36,6 +49,20 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         this.frontendConnection = frontendConnection;
         this.frontendSubCtx = frontendSubCtx;
         this.loop = loop;
+        if (config.accessLog != null && config.accessLog.sample()) {
+            this.accessLog = config.accessLog;
+            this.beginTime = FDProvider.get().currentTimeMillis();
+        } else {
+            this.accessLog = null;
+            this.beginTime = 0;
+        }
+    }
+
+    // only the first reason is recorded
+    private void setCloseReason(String reason) {
+        if (closeReason == null) {
+            closeReason = reason;
+        }
     }
 
     void recordBackend(BackendConnectionHandler backend, int connId) {
@@ -141,6 +168,7 @@ class ProcessorConnectionHandler implements ConnectionHandler {
                 boolean calledProxyOnBuffer = false;
                 final ByteArrayChannel chnl;
                 int bytesToProxy;
+                final long seq = ++segmentSeq;
 
                 Segment(ByteArray byteArray) {
                     this.isProxy = false;
@@ -367,6 +395,8 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         @Override
         public void exception(ConnectionHandlerContext ctx, IOException err) {
             Logger.error(LogType.CONN_ERROR, "got exception when handling backend connection " + conn + ", closing frontend " + frontendConnection, err);
+            setCloseReason(isConnected ? AccessLog.CLOSE_BACKEND_ERROR : AccessLog.CLOSE_CONNECT_FAILED);
+            conn.close(true);
             frontendConnection.close(true);
             closeAll();
         }
@@ -374,6 +404,7 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         @Override
         public void remoteClosed(ConnectionHandlerContext ctx) {
             assert Logger.lowLevelDebug("backend connection " + ctx.connection + " remoteClosed, send FIN to frontend");
+            setCloseReason(AccessLog.CLOSE_BACKEND);
             // backend FIN
             // we should send FIN to frontend
             frontendConnection.closeWrite();
@@ -397,6 +428,7 @@ class ProcessorConnectionHandler implements ConnectionHandler {
                 assert Logger.lowLevelDebug("backend connection " + ctx.connection + " closed, corresponding frontend is " + frontendConnection);
             } else {
                 Logger.warn(LogType.CONN_ERROR, "backend connection " + ctx.connection + " closed before frontend connection " + frontendConnection);
+                setCloseReason(AccessLog.CLOSE_BACKEND);
             }
             closeAll();
         }
@@ -544,13 +576,15 @@ class ProcessorConnectionHandler implements ConnectionHandler {
 
         // check for other connections
         // and keep writing if have some data to write in other connections
+        // the connection with the earliest segment is chosen, so data is written in the order it's produced
         if (frontendIsHandlingConnection) {
             BackendConnectionHandler next = null;
             for (BackendConnectionHandler b : conn2intMap.keySet()) {
                 BackendConnectionHandler.ByteFlow flow = b.frontendByteFlow;
                 if (flow.currentSegment != null) {
-                    next = b;
-                    break;
+                    if (next == null || flow.currentSegment.seq < next.frontendByteFlow.currentSegment.seq) {
+                        next = b;
+                    }
                 }
             }
             handlingConnection = next;
@@ -559,11 +593,41 @@ class ProcessorConnectionHandler implements ConnectionHandler {
     }
 
     private ByteArrayChannel chnl = null;
+    private boolean isReadingFrontend = false;
+    private boolean readFrontendAgain = false;
 
     void readFrontend() {
-        if (frontendConnection.getInBuffer().used() == 0) {
+        // the method may be called again when sending data to backends (e.g. when the output is drained),
+        // so the nested calls are turned into a loop here,
+        // otherwise the stack would keep growing when the processor has many frames buffered
+        if (isReadingFrontend) {
+            readFrontendAgain = true;
+            return;
+        }
+        isReadingFrontend = true;
+        try {
+            do {
+                readFrontendAgain = false;
+                if (frontendConnection.isClosed()) {
+                    break;
+                }
+                _readFrontend();
+            } while (readFrontendAgain);
+        } finally {
+            isReadingFrontend = false;
+        }
+    }
+
+    private void _readFrontend() {
+        if (frontendConnection.getInBuffer().used() == 0 && !processor.hasBufferedFrames(topCtx, frontendSubCtx)) {
             return; // do nothing if the in buffer is empty
         }
+        if (processor.multiplexed() && (frontendByteFlow.currentSegment != null || !frontendByteFlow.sendingQueue.isEmpty())) {
+            // the responses cannot be written, stop reading requests from the frontend,
+            // because the shared backend connections cannot stop reading for one frontend
+            assert Logger.lowLevelDebug("the frontend is not writable, stop reading until responses are written");
+            return;
+        }
 
         assert Logger.lowLevelDebug("calling readFrontend()");
 
@@ -572,6 +636,11 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         assert Logger.lowLevelDebug("the current mode is " + mode);
 
         if (mode == Processor.Mode.proxy) {
+            if (processor.multiplexed()) {
+                Logger.error(LogType.IMPROPER_USE, "proxy mode is not supported when backend connections are multiplexed");
+                frontendConnection.close(true);
+                return;
+            }
             int bytesToProxy = processor.len(topCtx, frontendSubCtx);
             int connId = processor.connection(topCtx, frontendSubCtx);
             Hint connHint = processor.connectionHint(topCtx, frontendSubCtx);
@@ -580,8 +649,10 @@ class ProcessorConnectionHandler implements ConnectionHandler {
             if (backend == null) {
                 // for now, we simply close the whole connection when a backend is missing
                 Logger.error(LogType.CONN_ERROR, "failed to retrieve the backend connection for " + frontendConnection + "/" + connId);
+                setCloseReason(AccessLog.CLOSE_NO_BACKEND);
                 frontendConnection.close(true);
             } else {
+                lastBackend = backend.conn.remote;
                 if (bytesToProxy == 0) { // 0 bytes to proxy, so it's already done
                     processor.proxyDone(topCtx, frontendSubCtx);
                     readFrontend(); // recursively call to read more data
@@ -613,7 +684,12 @@ class ProcessorConnectionHandler implements ConnectionHandler {
                     return;
                 }
                 if (len < 0) {
-                    chnl = ByteArrayChannel.fromEmpty(frontendConnection.getInBuffer().used()); // consume all data
+                    int used = frontendConnection.getInBuffer().used();
+                    if (used == 0) { // only the frames buffered in the processor
+                        chnl = ByteArrayChannel.zero();
+                    } else {
+                        chnl = ByteArrayChannel.fromEmpty(used); // consume all data
+                    }
                 } else {
                     chnl = ByteArrayChannel.fromEmpty(len);
                 }
@@ -655,15 +731,28 @@ class ProcessorConnectionHandler implements ConnectionHandler {
                     // ignore and fall through
                 }
             }
+            if (processor.multiplexed()) {
+                writeToMultiplexedBackend(hint, bytesToSend);
+                return;
+            }
             BackendConnectionHandler backend = getConnection(connId, hint);
             if (backend == null) {
                 // for now, we simply close the whole connection when a backend is missing
                 Logger.error(LogType.CONN_ERROR, "failed to retrieve the backend connection for " + frontendConnection + "/" + connId);
+                setCloseReason(AccessLog.CLOSE_NO_BACKEND);
                 frontendConnection.close(true);
             } else {
+                lastBackend = backend.conn.remote;
                 if (bytesToSend == null || bytesToSend.length() == 0) {
                     readFrontend(); // recursively call to handle more data
                 } else {
+                    try {
+                        bytesToSend = processor.beforeSending(topCtx, frontendSubCtx, backend.subCtx, bytesToSend);
+                    } catch (Exception e) {
+                        Logger.warn(LogType.INVALID_EXTERNAL_DATA, "user code cannot handle data from " + frontendConnection + ". err=" + e);
+                        frontendConnection.close(true);
+                        return;
+                    }
                     backend.writeToBackend(bytesToSend);
                 }
             }
@@ -675,6 +764,80 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         readFrontend();
     }
 
+    private void writeToMultiplexedBackend(Hint hint, ByteArray bytesToSend) {
+        Connector connector = config.connGen.genConnector(frontendConnection, hint);
+        MultiplexedBackend backend = null;
+        if (connector == null) {
+            Logger.info(LogType.NO_CLIENT_CONN, "the user code refuse to provide a remote endpoint");
+        } else if (connector.loop() != null) {
+            Logger.error(LogType.IMPROPER_USE, "it's not supported to specify event loop when running processors");
+        } else {
+            backend = MultiplexedBackend.get(loop, processor, connector, config);
+        }
+        if (backend == null) {
+            Logger.error(LogType.CONN_ERROR, "failed to retrieve the multiplexed backend connection for " + frontendConnection);
+            setCloseReason(AccessLog.CLOSE_NO_BACKEND);
+            frontendConnection.close(true);
+            return;
+        }
+        lastBackend = backend.conn.remote;
+        if (multiplexedBackends.add(backend)) {
+            backend.attach(topCtx, this);
+        }
+        processor.chosen(topCtx, frontendSubCtx, backend.subCtx);
+        if (bytesToSend == null || bytesToSend.length() == 0) {
+            readFrontend(); // recursively call to handle more data
+            return;
+        }
+        try {
+            bytesToSend = processor.beforeSending(topCtx, frontendSubCtx, backend.subCtx, bytesToSend);
+        } catch (Exception e) {
+            Logger.warn(LogType.INVALID_EXTERNAL_DATA, "user code cannot handle data from " + frontendConnection + ". err=" + e);
+            frontendConnection.close(true);
+            return;
+        }
+        if (backend.write(this, bytesToSend)) {
+            readFrontend(); // otherwise it's called when the data is flushed
+        }
+    }
+
+    // called by the multiplexed backend when responses of this frontend are received
+    void multiplexedReady() {
+        ByteArray produced = processor.produce(topCtx, frontendSubCtx);
+        if (produced != null && produced.length() != 0) {
+            frontendByteFlow.write(produced);
+        }
+        closeIfMultiplexedDone();
+    }
+
+    // called by the multiplexed backend when it's closed
+    void multiplexedBackendClosed(String reason) {
+        multiplexedBackends.removeIf(b -> b.conn.isClosed());
+        if (processor.expectNewFrame(topCtx, frontendSubCtx)) {
+            // no response is expected from the closed backend, the frontend can still use other connections
+            return;
+        }
+        Logger.warn(LogType.CONN_ERROR, "multiplexed backend connection closed with responses of " + frontendConnection + " not received");
+        setCloseReason(reason);
+        frontendConnection.close(true);
+        closeAll();
+    }
+
+    // the frontend is half closed or the processor asks to close it, close the session after all responses are written
+    private void closeIfMultiplexedDone() {
+        if (!frontendConnection.isClosed()
+            && (frontendConnection.isRemoteClosed() || processor.closeFrontend(topCtx, frontendSubCtx))
+            && chnl == null && frontendConnection.getInBuffer().used() == 0
+            && frontendByteFlow.currentSegment == null && frontendByteFlow.sendingQueue.isEmpty()
+            && frontendConnection.getOutBuffer().used() == 0
+            && processor.expectNewFrame(topCtx, frontendSubCtx)) {
+            assert Logger.lowLevelDebug("all responses are written to the frontend " + frontendConnection + ", close it");
+            setCloseReason(AccessLog.CLOSE_CLIENT);
+            frontendConnection.close();
+            closeAll();
+        }
+    }
+
     private BackendConnectionHandler getConnection(int connId, Hint hint) {
         if (connId > 0 && conns[connId] != null)
             return conns[connId]; // get connection if it already exists
@@ -701,12 +864,18 @@ class ProcessorConnectionHandler implements ConnectionHandler {
             }
         }
 
+        // try to reuse an idle connection released by other frontend connections
+        ConnectableConnection pooled = BackendConnectionPool.get(loop).get(processor.backendProtocol(topCtx), connector);
+        if (pooled != null) {
+            return reuseConnection(pooled, connector);
+        }
+
         // get a new connection
         ConnectableConnection connectableConnection;
         try {
             connectableConnection = connector.connect(
                 new ConnectionOpts().setTimeout(config.timeout),
-                RingBuffer.allocateDirect(config.inBufferSize), ProxyOutputRingBuffer.allocateDirect(config.outBufferSize));
+                RingBuffer.allocateDirectPooled(config.inBufferSize), ProxyOutputRingBuffer.allocateDirectPooled(config.outBufferSize));
         } catch (IOException e) {
             Logger.fatal(LogType.CONN_ERROR, "make passive connection failed, maybe provided endpoint info is invalid", e);
             return null;
@@ -740,24 +909,78 @@ class ProcessorConnectionHandler implements ConnectionHandler {
         return bh;
     }
 
+    private BackendConnectionHandler reuseConnection(ConnectableConnection conn, Connector connector) {
+        int newConnId = ++cursor;
+        BackendConnectionHandler bh =
+            new BackendConnectionHandler(processor.initSub(topCtx, newConnId, connector.remote), conn);
+        bh.isConnected = true;
+        recordBackend(bh, newConnId);
+        try {
+            loop.replaceHandler(conn, bh);
+        } catch (IOException e) {
+            Logger.error(LogType.IMPROPER_USE, "take over the pooled connection " + conn + " failed", e);
+            removeBackend(bh);
+            conn.close(true);
+            conn.getInBuffer().clean();
+            conn.getOutBuffer().clean();
+            return null;
+        }
+        // the processor.connected(...) is not called because the connection is not new
+        processor.chosen(topCtx, frontendSubCtx, bh.subCtx);
+        return bh;
+    }
+
+    // check whether the backend connection can be kept in the idle pool
+    private boolean isReusable(BackendConnectionHandler be) {
+        return be.isConnected
+            && !be.conn.isClosed() && !be.conn.isWriteClosed() && !be.conn.isRemoteClosed()
+            && be.chnl == null
+            && be.backendByteFlow.currentSegment == null && be.backendByteFlow.sendingQueue.isEmpty()
+            && be.frontendByteFlow.currentSegment == null && be.frontendByteFlow.sendingQueue.isEmpty()
+            && be.conn.getInBuffer().used() == 0 && be.conn.getOutBuffer().used() == 0
+            && processor.reusable(topCtx, be.subCtx);
+    }
+
     @Override
     public void writable(ConnectionHandlerContext ctx) {
         doFrontendWrite();
+        if (processor.multiplexed()) {
+            readFrontend(); // reading may be stopped because the responses were not written
+            closeIfMultiplexedDone();
+        }
     }
 
     @Override
     public void exception(ConnectionHandlerContext ctx, IOException err) {
         Logger.error(LogType.CONN_ERROR, "connection got exception", err);
+        setCloseReason(AccessLog.CLOSE_CLIENT_ERROR);
         closeAll();
     }
 
     @Override
     public void remoteClosed(ConnectionHandlerContext ctx) {
         assert Logger.lowLevelDebug("frontend connection " + ctx.connection + " remoteClosed");
+        setCloseReason(AccessLog.CLOSE_CLIENT);
+        if (chnl == null && frontendConnection.getInBuffer().used() == 0 && frontendConnection.getOutBuffer().used() == 0
+            && frontendByteFlow.currentSegment == null && frontendByteFlow.sendingQueue.isEmpty()
+            && processor.expectNewFrame(topCtx, frontendSubCtx)
+            && conn2intMap.keySet().stream().allMatch(this::isReusable)) {
+            // nothing is being transferred, so close the session without sending FIN to backends,
+            // then the backend connections can be reused
+            assert Logger.lowLevelDebug("the session is idle, close it");
+            ctx.connection.close();
+            closed(ctx);
+            return;
+        }
+        if (processor.multiplexed()) {
+            // the shared backend connections cannot be half closed
+            closeIfMultiplexedDone();
+            return;
+        }
         // frontend FIN
         // we should send FIN to current backend
         int connId = processor.connection(topCtx, frontendSubCtx);
-        if (connId == -1) {
+        if (connId <= 0 || conns[connId] == null) {
             assert Logger.lowLevelDebug("" +
                 "no current backend connection, " +
                 "send FIN to all backend");
@@ -823,15 +1046,30 @@ class ProcessorConnectionHandler implements ConnectionHandler {
 
         assert Logger.lowLevelDebug("close all connections of " + frontendConnection);
         List<Integer> ints = new ArrayList<>(conn2intMap.values());
+        BackendConnectionPool pool = BackendConnectionPool.get(loop);
         for (int i : ints) {
             BackendConnectionHandler be = conns[i];
             removeBackend(be);
+            if (isReusable(be) && pool.release(processor.backendProtocol(topCtx), be.conn)) {
+                continue;
+            }
             be.conn.close();
             be.conn.getInBuffer().clean();
             be.conn.getOutBuffer().clean();
         }
+        for (MultiplexedBackend b : multiplexedBackends) {
+            b.detach(topCtx, this);
+        }
+        multiplexedBackends.clear();
         frontendConnection.close();
         frontendConnection.getInBuffer().clean();
         frontendConnection.getOutBuffer().clean();
+
+        if (accessLog != null) {
+            accessLog.connection(frontendConnection.remote, lastBackend,
+                frontendConnection.getFromRemoteBytes(), frontendConnection.getToRemoteBytes(),
+                FDProvider.get().currentTimeMillis() - beginTime,
+                closeReason == null ? AccessLog.CLOSE_LOCAL : closeReason);
+        }
     }
 }
@@ -1,6 +1,8 @@
 package vproxy.component.proxy;
 
 import vfd.SocketFD;
+import vfd.posix.SplicePipe;
+import vproxybase.Config;
 import vproxybase.connection.*;
 import vproxybase.processor.Processor;
 import vproxybase.protocol.ProtocolConnectionHandler;
@@ -10,6 +12,7 @@ import vproxybase.util.*;
 import vproxybase.util.ringbuffer.ByteBufferRingBuffer;
 import vproxybase.util.ringbuffer.ProxyOutputRingBuffer;
 import vproxybase.util.ringbuffer.SSLUtils;
+import vproxybase.util.ringbuffer.SpliceRingBuffer;
 import vproxybase.util.ringbuffer.ssl.SSL;
 import vproxybase.util.ringbuffer.ssl.SSLEngineBuilder;
 
@@ -37,6 +40,7 @@ public class Proxy {
     private static void utilCloseSessionAndReleaseBuffers(Session session) {
         utilCloseConnectionAndReleaseBuffers(session.active);
         utilCloseConnection(session.passive);
+        session.writeAccessLog();
     }
 
     class SessionServerHandler implements ServerHandler {
@@ -105,6 +109,16 @@ public class Proxy {
             }
 
             Session session = new Session(connection, connectableConnection);
+            if (config.accessLog != null && config.accessLog.sample()) {
+                session.recordAccessLog(config.accessLog);
+            }
+            try {
+                checkSpliceBuffers(connection, connectableConnection);
+            } catch (IOException e) {
+                Logger.shouldNotHappen("replacing splice buffers failed", e);
+                utilCloseSessionAndReleaseBuffers(session);
+                return;
+            }
             ConnectableConnectionHandler handler = new SessionConnectableConnectionHandler(session);
 
             // we get a new event loop for handling
@@ -146,6 +160,23 @@ public class Proxy {
             }
         }
 
+        // the splice buffers only work when both sides are posix sockets
+        // use normal buffers if the connector provides another kind of connection
+        private void checkSpliceBuffers(Connection active, ConnectableConnection passive) throws IOException {
+            if (!(active.getInBuffer() instanceof SpliceRingBuffer) || SplicePipe.canSplice(passive.channel)) {
+                return;
+            }
+            assert Logger.lowLevelDebug("cannot splice to " + passive + ", use normal buffers instead");
+            RingBuffer spliceIn = active.getInBuffer();
+            RingBuffer spliceOut = active.getOutBuffer();
+            RingBuffer in = RingBuffer.allocateDirectPooled(config.inBufferSize);
+            RingBuffer out = RingBuffer.allocateDirectPooled(config.outBufferSize);
+            active.UNSAFE_replaceBuffer(in, out);
+            passive.UNSAFE_replaceBuffer(out, in);
+            spliceIn.clean();
+            spliceOut.clean();
+        }
+
         class HandlerCallback extends Callback<Connector, IOException> {
             private final NetEventLoop acceptLoop;
             private final NetEventLoop loop;
@@ -236,6 +267,9 @@ public class Proxy {
         private void handleProcessor(NetEventLoop acceptLoop, Connection frontendConnection) {
             Processor processor = config.connGen.processor();
             Processor.Context topCtx = processor.init(frontendConnection.remote);
+            if (config.accessLog != null && config.accessLog.isEnabled()) {
+                topCtx.accessLog = config.accessLog;
+            }
             Processor.SubContext frontendSubCtx = processor.initSub(topCtx, 0, frontendConnection.remote);
             {
                 ByteArray data = processor.connected(topCtx, frontendSubCtx);
@@ -267,6 +301,18 @@ public class Proxy {
 
         @Override
         public Tuple<RingBuffer, RingBuffer> getIOBuffers(SocketFD channel) {
+            if (Config.tcpSplice
+                && config.sslContext == null
+                && config.connGen.type() == ConnectorGen.Type.direct
+                && SplicePipe.canSplice(channel)
+                && SplicePipe.supported()) {
+                // the bytes are spliced between the two sockets, the buffers are released the same as the normal ones
+                Tuple<RingBuffer, RingBuffer> buffers = getSpliceBuffers();
+                if (buffers != null) {
+                    return buffers;
+                }
+            }
+
             int inBufferSize, outBufferSize;
             if (config.sslContext == null) {
                 inBufferSize = config.inBufferSize;
@@ -277,11 +323,13 @@ public class Proxy {
                 inBufferSize = Math.max(config.inBufferSize, 24576);
                 outBufferSize = Math.max(config.outBufferSize, 24576);
             }
-            ByteBufferRingBuffer inBuffer = RingBuffer.allocateDirect(inBufferSize);
+            // the buffers are released in utilCloseConnectionAndReleaseBuffers or ProcessorConnectionHandler.closeAll
+            // so they can be leased from the buffer pool
+            ByteBufferRingBuffer inBuffer = RingBuffer.allocateDirectPooled(inBufferSize);
             RingBuffer outBuffer =
                 (config.connGen.type() == ConnectorGen.Type.processor && config.sslContext == null)
-                    ? ProxyOutputRingBuffer.allocateDirect(outBufferSize)
-                    : RingBuffer.allocateDirect(outBufferSize);
+                    ? ProxyOutputRingBuffer.allocateDirectPooled(outBufferSize)
+                    : RingBuffer.allocateDirectPooled(outBufferSize);
 
             if (config.sslContext == null) {
                 return new Tuple<>(inBuffer, outBuffer);
@@ -319,6 +367,25 @@ public class Proxy {
             return new Tuple<>(pair.left, pair.right);
         }
 
+        private Tuple<RingBuffer, RingBuffer> getSpliceBuffers() {
+            SpliceRingBuffer in;
+            try {
+                in = SpliceRingBuffer.allocate(Config.tcpSplicePipeSize);
+            } catch (IOException e) {
+                Logger.warn(LogType.SOCKET_ERROR, "opening splice pipe failed, use normal buffers instead: " + e);
+                return null;
+            }
+            SpliceRingBuffer out;
+            try {
+                out = SpliceRingBuffer.allocate(Config.tcpSplicePipeSize);
+            } catch (IOException e) {
+                in.clean();
+                Logger.warn(LogType.SOCKET_ERROR, "opening splice pipe failed, use normal buffers instead: " + e);
+                return null;
+            }
+            return new Tuple<>(in, out);
+        }
+
         @Override
         public void removed(ServerHandlerContext ctx) {
             handler.serverRemoved(ctx.server);
@@ -361,6 +428,7 @@ public class Proxy {
             } else {
                 Logger.error(LogType.CONN_ERROR, "session " + session + " got exception on " + side + " side: " + err);
             }
+            session.setCloseReason(AccessLog.CLOSE_CLIENT_ERROR);
             // close both sides
             utilCloseSessionAndReleaseBuffers(session);
         }
@@ -371,6 +439,7 @@ public class Proxy {
             // now the active connection is closed
             if (session.isClosed()) // do nothing if the session is already closed
                 return;
+            session.setCloseReason(AccessLog.CLOSE_CLIENT);
             // the frontend connection closed
             // we need to shutdownOutput for backend connection
             session.passive.closeWrite();
@@ -454,6 +523,7 @@ public class Proxy {
             } else {
                 Logger.error(LogType.CONN_ERROR, "session " + session + " got exception on " + side + " side: " + err);
             }
+            session.setCloseReason(isConnected ? AccessLog.CLOSE_BACKEND_ERROR : AccessLog.CLOSE_CONNECT_FAILED);
             // close both sides
             utilCloseSessionAndReleaseBuffers(session);
 
@@ -473,6 +543,7 @@ public class Proxy {
             // now the passive connection is closed
             if (session.isClosed()) // do nothing if the session is already closed
                 return;
+            session.setCloseReason(AccessLog.CLOSE_BACKEND);
             // the connection to backend is closed
             // so we close the write direction of the frontend connection
             session.active.closeWrite();
@@ -3,6 +3,7 @@ package vproxy.component.proxy;
 import vproxybase.Config;
 import vproxybase.connection.NetEventLoop;
 import vproxybase.connection.ServerSock;
+import vproxybase.util.AccessLog;
 import vproxybase.util.ringbuffer.ssl.VSSLContext;
 
 import javax.net.ssl.SSLEngine;
@@ -22,6 +23,8 @@ public class ProxyNetConfig {
     VSSLContext sslContext = null;
     BiConsumer<SSLEngine, SSLParameters> sslEngineManipulator = null;
 
+    AccessLog accessLog = null;
+
     public ProxyNetConfig setAcceptLoop(NetEventLoop acceptLoop) {
         this.acceptLoop = acceptLoop;
         return this;
@@ -67,6 +70,11 @@ public class ProxyNetConfig {
         return this;
     }
 
+    public ProxyNetConfig setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+        return this;
+    }
+
     public NetEventLoop getAcceptLoop() {
         return acceptLoop;
     }
@@ -102,4 +110,8 @@ public class ProxyNetConfig {
     public BiConsumer<SSLEngine, SSLParameters> getSslEngineManipulator() {
         return sslEngineManipulator;
     }
+
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
 }
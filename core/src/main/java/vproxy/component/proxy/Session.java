@@ -1,11 +1,18 @@
 package vproxy.component.proxy;
 
+import vfd.FDProvider;
 import vproxybase.connection.Connection;
+import vproxybase.util.AccessLog;
 
 public class Session {
     public final Connection active;
     public final Connection passive;
 
+    // the following fields are only used when the session is recorded by the access log
+    private AccessLog accessLog;
+    private long beginTime;
+    private String closeReason;
+
     public Session(Connection active, Connection passive) {
         this.active = active;
         this.passive = passive;
@@ -24,6 +31,31 @@ public class Session {
         return active.id() + "->" + passive.id();
     }
 
+    void recordAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+        this.beginTime = FDProvider.get().currentTimeMillis();
+    }
+
+    // only the first reason is recorded
+    void setCloseReason(String reason) {
+        if (closeReason == null) {
+            closeReason = reason;
+        }
+    }
+
+    // called when the session is closed, the record is written only once
+    void writeAccessLog() {
+        AccessLog accessLog = this.accessLog;
+        if (accessLog == null) {
+            return;
+        }
+        this.accessLog = null;
+        accessLog.connection(active.remote, passive.remote,
+            active.getFromRemoteBytes(), active.getToRemoteBytes(),
+            FDProvider.get().currentTimeMillis() - beginTime,
+            closeReason == null ? AccessLog.CLOSE_LOCAL : closeReason);
+    }
+
     @Override
     public String toString() {
         return "Session(" + active + ", " + passive + ")";
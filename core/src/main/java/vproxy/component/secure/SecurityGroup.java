@@ -1,26 +1,43 @@
 package vproxy.component.secure;
 
 import vfd.IP;
+import vproxybase.Config;
 import vproxybase.connection.Protocol;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.NotFoundException;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 public class SecurityGroup {
     public static final String defaultName = "(allow-all)";
 
     public final String alias;
     public boolean defaultAllow;
-    private LinkedList<SecurityGroupRule> tcpRules = new LinkedList<>();
-    private LinkedList<SecurityGroupRule> udpRules = new LinkedList<>();
+    // the lists are never modified after assigned, they are replaced when rules change
+    private volatile LinkedList<SecurityGroupRule> tcpRules = new LinkedList<>();
+    private volatile LinkedList<SecurityGroupRule> udpRules = new LinkedList<>();
+    // compiled from the rule lists, replaced together with the lists
+    private volatile SecurityGroupIndex tcpIndex = new SecurityGroupIndex(tcpRules);
+    private volatile SecurityGroupIndex udpIndex = new SecurityGroupIndex(udpRules);
+    // null if disabled
+    private final ThreadLocal<SecurityGroupDecisionCache> decisionCache;
 
     public SecurityGroup(String alias, boolean defaultAllow) {
+        this(alias, defaultAllow, Config.securityGroupCacheSize);
+    }
+
+    /**
+     * @param decisionCacheSize size of the decision cache of each thread, 0 to disable, otherwise must be a power of 2
+     */
+    public SecurityGroup(String alias, boolean defaultAllow, int decisionCacheSize) {
         this.alias = alias;
         this.defaultAllow = defaultAllow;
+        if (decisionCacheSize == 0) {
+            this.decisionCache = null;
+        } else {
+            SecurityGroupDecisionCache.checkSize(decisionCacheSize);
+            this.decisionCache = ThreadLocal.withInitial(() -> new SecurityGroupDecisionCache(decisionCacheSize));
+        }
     }
 
     public static SecurityGroup allowAll() {
@@ -28,19 +45,23 @@ public class SecurityGroup {
     }
 
     public boolean allow(Protocol protocol, IP address, int port) {
-        LinkedList<SecurityGroupRule> rules;
+        SecurityGroupIndex index;
         if (protocol == Protocol.TCP) {
-            rules = tcpRules;
+            index = tcpIndex;
         } else {
             assert protocol == Protocol.UDP;
-            rules = udpRules;
+            index = udpIndex;
         }
-        if (rules.isEmpty())
+        if (index.isEmpty())
             return defaultAllow;
-        for (SecurityGroupRule rule : rules) {
-            if (rule.match(address, port))
-                return rule.allow;
+        SecurityGroupRule rule;
+        if (decisionCache == null) {
+            rule = index.match(address, port);
+        } else {
+            rule = decisionCache.get().match(index, address, port);
         }
+        if (rule != null)
+            return rule.allow;
         return defaultAllow;
     }
 
@@ -53,7 +74,7 @@ public class SecurityGroup {
         return rules;
     }
 
-    public void addRule(SecurityGroupRule rule) throws AlreadyExistException {
+    public synchronized void addRule(SecurityGroupRule rule) throws AlreadyExistException {
         if (getRules().stream().anyMatch(r -> r.alias.equals(rule.alias)))
             throw new AlreadyExistException("security-group-rule in security-group " + this.alias, rule.alias);
 
@@ -73,16 +94,10 @@ public class SecurityGroup {
                 throw new AlreadyExistException("security-group-rule " + r + " already exists in security-group " + this.alias);
         }
         rules.add(rule);
-        if (rule.protocol == Protocol.TCP) {
-            this.tcpRules = rules;
-        } else {
-            //noinspection ConstantConditions
-            assert rule.protocol == Protocol.UDP;
-            this.udpRules = rules;
-        }
+        setRules(rule.protocol, rules);
     }
 
-    public void removeRule(String name) throws NotFoundException {
+    public synchronized void removeRule(String name) throws NotFoundException {
         LinkedList<SecurityGroupRule> tcpRules = this.tcpRules;
         LinkedList<SecurityGroupRule> udpRules = this.udpRules;
 
@@ -92,13 +107,27 @@ public class SecurityGroup {
         Optional<SecurityGroupRule> optRule = oldRules.stream().filter(r -> r.alias.equals(name)).findFirst();
         if (optRule.isEmpty())
             throw new NotFoundException("security-group-rule in security-group " + this.alias, name);
+        LinkedList<SecurityGroupRule> rules;
         if (optRule.get().protocol == Protocol.TCP) {
-            tcpRules.remove(optRule.get());
-            this.tcpRules = tcpRules;
+            rules = new LinkedList<>(tcpRules);
         } else {
             assert optRule.get().protocol == Protocol.UDP;
-            udpRules.remove(optRule.get());
-            this.udpRules = udpRules;
+            rules = new LinkedList<>(udpRules);
+        }
+        rules.remove(optRule.get());
+        setRules(optRule.get().protocol, rules);
+    }
+
+    private void setRules(Protocol protocol, LinkedList<SecurityGroupRule> rules) {
+        // build the index before publishing, so the list and the index are always replaced together
+        SecurityGroupIndex index = new SecurityGroupIndex(rules);
+        if (protocol == Protocol.TCP) {
+            this.tcpRules = rules;
+            this.tcpIndex = index;
+        } else {
+            assert protocol == Protocol.UDP;
+            this.udpRules = rules;
+            this.udpIndex = index;
         }
     }
 
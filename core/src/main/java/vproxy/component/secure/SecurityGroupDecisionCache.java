@@ -0,0 +1,64 @@
+package vproxy.component.secure;
+
+import vfd.IP;
+
+/**
+ * Caches the matched rule of (address, port) for a security group, used by only one thread (event loop).<br>
+ * The cache is 2-way set associative, the least recently used entry of the set is replaced,
+ * so looking up or filling the cache does not allocate.<br>
+ * Every entry records the index it's calculated from, entries of an old index never hit,
+ * so there's no need to clear the cache when rules change.
+ */
+class SecurityGroupDecisionCache {
+    private final int setMask;
+    private final SecurityGroupIndex[] indexes;
+    private final IP[] addresses;
+    private final int[] ports;
+    private final SecurityGroupRule[] rules; // null means no rule matches
+    private final byte[] victims; // the way to be replaced next in each set
+
+    SecurityGroupDecisionCache(int size) {
+        checkSize(size);
+        int sets = size / 2;
+        this.setMask = sets - 1;
+        this.indexes = new SecurityGroupIndex[size];
+        this.addresses = new IP[size];
+        this.ports = new int[size];
+        this.rules = new SecurityGroupRule[size];
+        this.victims = new byte[sets];
+    }
+
+    static void checkSize(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("cache size must be a power of 2 and >= 2, but got " + size);
+        }
+    }
+
+    SecurityGroupRule match(SecurityGroupIndex index, IP address, int port) {
+        int h = address.hashCode() * 31 + port;
+        int set = (h ^ (h >>> 16)) & setMask;
+        int way0 = set << 1;
+        int way1 = way0 | 1;
+        if (hit(way0, index, address, port)) {
+            victims[set] = 1;
+            return rules[way0];
+        }
+        if (hit(way1, index, address, port)) {
+            victims[set] = 0;
+            return rules[way1];
+        }
+        SecurityGroupRule rule = index.match(address, port);
+        int victim = victims[set];
+        int slot = way0 | victim;
+        indexes[slot] = index;
+        addresses[slot] = address;
+        ports[slot] = port;
+        rules[slot] = rule;
+        victims[set] = (byte) (victim ^ 1);
+        return rule;
+    }
+
+    private boolean hit(int slot, SecurityGroupIndex index, IP address, int port) {
+        return indexes[slot] == index && ports[slot] == port && addresses[slot].equals(address);
+    }
+}
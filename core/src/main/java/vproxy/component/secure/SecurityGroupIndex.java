@@ -0,0 +1,153 @@
+package vproxy.component.secure;
+
+import vfd.IP;
+import vproxybase.util.Network;
+import vproxybase.util.NetworkTrie;
+import vproxybase.util.Utils;
+
+import java.util.*;
+
+/**
+ * The rules of one protocol compiled into network tries.<br>
+ * {@link #match(IP, int)} returns the first rule in the list which matches the address and port,
+ * which is the same as checking the rules one by one,
+ * but only the networks containing the address are visited,
+ * and the ports are checked with a binary search on the port ranges of each network.<br>
+ * The index is immutable, a new one is built when rules change.
+ */
+class SecurityGroupIndex {
+    private final int size;
+    private final NetworkTrie<RuleGroup> v4;
+    private final NetworkTrie<RuleGroup> v6;
+    private final SecurityGroupRule[] v6RulesForV4; // ipv6 rules which may match ipv4 addresses, see Network.maskMatch()
+    private final int[] v6RulesForV4Orders;
+
+    SecurityGroupIndex(List<SecurityGroupRule> rules) {
+        this.size = rules.size();
+        Map<Network, List<Integer>> orders = new LinkedHashMap<>();
+        Map<Network, List<SecurityGroupRule>> groups = new LinkedHashMap<>();
+        List<SecurityGroupRule> v6RulesForV4 = new ArrayList<>();
+        List<Integer> v6RulesForV4Orders = new ArrayList<>();
+        int order = 0;
+        for (SecurityGroupRule r : rules) {
+            orders.computeIfAbsent(r.network, k -> new ArrayList<>()).add(order);
+            groups.computeIfAbsent(r.network, k -> new ArrayList<>()).add(r);
+            if (r.network.getRawIpBytes().length == 16 && r.network.getMask() > 32) {
+                v6RulesForV4.add(r);
+                v6RulesForV4Orders.add(order);
+            }
+            ++order;
+        }
+        NetworkTrie.Builder<RuleGroup> v4 = new NetworkTrie.Builder<>(4);
+        NetworkTrie.Builder<RuleGroup> v6 = new NetworkTrie.Builder<>(16);
+        for (Network net : groups.keySet()) {
+            RuleGroup g = new RuleGroup(orders.get(net), groups.get(net));
+            if (net.getRawIpBytes().length == 4) {
+                v4.add(net, g);
+            } else {
+                v6.add(net, g);
+            }
+        }
+        this.v4 = v4.build();
+        this.v6 = v6.build();
+        this.v6RulesForV4 = v6RulesForV4.toArray(new SecurityGroupRule[0]);
+        this.v6RulesForV4Orders = v6RulesForV4Orders.stream().mapToInt(i -> i).toArray();
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the first matched rule, or null if no rule matches
+     */
+    SecurityGroupRule match(IP address, int port) {
+        byte[] addr = address.getRawIpBytes();
+        SecurityGroupRule best = null;
+        int bestOrder = Integer.MAX_VALUE;
+        NetworkTrie.Entry<RuleGroup> e;
+        if (addr.length == 4) {
+            e = v4.match(addr, 0);
+        } else {
+            e = v6.match(addr, 0);
+        }
+        for (; e != null; e = e.next()) {
+            RuleGroup g = e.value;
+            int idx = g.firstMatch(port, bestOrder);
+            if (idx != -1) {
+                best = g.rules[idx];
+                bestOrder = g.orders[idx];
+            }
+        }
+        if (addr.length == 4) {
+            for (int i = 0; i < v6RulesForV4.length && v6RulesForV4Orders[i] < bestOrder; ++i) {
+                SecurityGroupRule r = v6RulesForV4[i];
+                if (r.match(address, port)) {
+                    best = r;
+                    break;
+                }
+            }
+        } else if (Utils.lowBitsV6V4(addr, 11, 10)) {
+            // ipv4-compatible or ipv4-mapped ipv6 address, which can be matched by ipv4 rules
+            for (e = v4.match(addr, 12); e != null; e = e.next()) {
+                RuleGroup g = e.value;
+                int idx = g.firstMatch(port, bestOrder);
+                if (idx != -1) {
+                    best = g.rules[idx];
+                    bestOrder = g.orders[idx];
+                }
+            }
+        }
+        return best;
+    }
+
+    // rules with the same network, in the order of the rule list
+    private static class RuleGroup {
+        final int[] orders;
+        final SecurityGroupRule[] rules;
+        // the port ranges are split into intervals by the min/max ports of all rules
+        // intervalStarts[i] is the first port of interval i, and the interval ends before intervalStarts[i+1]
+        // intervalRules[i] is the index of the first rule covering interval i, or -1
+        final int[] intervalStarts;
+        final int[] intervalRules;
+
+        RuleGroup(List<Integer> orders, List<SecurityGroupRule> rules) {
+            this.orders = orders.stream().mapToInt(i -> i).toArray();
+            this.rules = rules.toArray(new SecurityGroupRule[0]);
+
+            TreeSet<Integer> points = new TreeSet<>();
+            for (SecurityGroupRule r : rules) {
+                points.add(r.minPort);
+                points.add(r.maxPort + 1);
+            }
+            this.intervalStarts = points.stream().mapToInt(i -> i).toArray();
+            this.intervalRules = new int[intervalStarts.length];
+            for (int i = 0; i < intervalStarts.length; ++i) {
+                int port = intervalStarts[i];
+                intervalRules[i] = -1;
+                for (int j = 0; j < this.rules.length; ++j) {
+                    if (this.rules[j].minPort <= port && port <= this.rules[j].maxPort) {
+                        intervalRules[i] = j;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // the index of the first rule matching the port and placed before `beforeOrder`, or -1
+        int firstMatch(int port, int beforeOrder) {
+            int i = Arrays.binarySearch(intervalStarts, port);
+            if (i < 0) {
+                i = -i - 2; // the interval before the insertion point
+                if (i < 0) {
+                    return -1;
+                }
+            }
+            int idx = intervalRules[i];
+            if (idx == -1 || orders[idx] >= beforeOrder) {
+                return -1;
+            }
+            return idx;
+        }
+    }
+}
@@ -51,9 +51,6 @@ public class CertKey {
         String keyStr = keyBuilder.toString();
         byte[] keyBytes = Base64.getDecoder().decode(keyStr);
 
-        PKCS8EncodedKeySpec pkcs8EncodedKeySpec = new PKCS8EncodedKeySpec(keyBytes);
-        PrivateKey key = KeyFactory.getInstance("RSA").generatePrivate(pkcs8EncodedKeySpec);
-
         X509Certificate[] x509certs = new X509Certificate[certs.length];
         for (int i = 0; i < certs.length; i++) {
             String strCert = certs[i];
@@ -65,6 +62,11 @@ public class CertKey {
 
             keystore.setCertificateEntry("cert" + i + ":" + alias, cert);
         }
+        // the key algorithm is the same as the public key in the cert, e.g. RSA or EC
+        String keyAlgorithm = x509certs.length == 0 ? "RSA" : x509certs[0].getPublicKey().getAlgorithm();
+        PKCS8EncodedKeySpec pkcs8EncodedKeySpec = new PKCS8EncodedKeySpec(keyBytes);
+        PrivateKey key = KeyFactory.getInstance(keyAlgorithm).generatePrivate(pkcs8EncodedKeySpec);
+
         keystore.setKeyEntry("key:" + alias, key, "changeit".toCharArray(), x509certs);
 
         return x509certs;
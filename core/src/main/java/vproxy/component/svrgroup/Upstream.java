@@ -2,8 +2,10 @@ package vproxy.component.svrgroup;
 
 import vfd.IPPort;
 import vproxybase.component.svrgroup.ServerGroup;
+import vproxybase.component.svrgroup.ServerListener;
 import vproxybase.connection.Connector;
 import vproxybase.processor.Hint;
+import vproxybase.processor.HintIndex;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.NotFoundException;
 
@@ -42,6 +44,7 @@ public class Upstream {
                 annotations = Collections.emptyMap();
             }
             this.annotations = annotations;
+            recalculateHintIndex();
         }
     }
 
@@ -58,12 +61,43 @@ public class Upstream {
     public final String alias;
     private ArrayList<ServerGroupHandle> serverGroupHandles = new ArrayList<>(0);
     private WRR _wrr;
+    private HintIndex<ServerGroupHandle> _hintIndex = HintIndex.empty();
+    private final ServerListener annotationsListener = new ServerListener() {
+        @Override
+        public void up(ServerGroup.ServerHandle server) {
+        }
+
+        @Override
+        public void down(ServerGroup.ServerHandle server) {
+        }
+
+        @Override
+        public void start(ServerGroup.ServerHandle server) {
+        }
+
+        @Override
+        public void stop(ServerGroup.ServerHandle server) {
+        }
+
+        @Override
+        public void annotationsChanged(ServerGroup group) {
+            recalculateHintIndex();
+        }
+    };
 
     public Upstream(String alias) {
         this.alias = alias;
         recalculateWRR();
     }
 
+    private void recalculateHintIndex() {
+        HintIndex.Builder<ServerGroupHandle> builder = new HintIndex.Builder<>();
+        for (ServerGroupHandle h : serverGroupHandles) {
+            builder.add(h, h.annotations, h.group.getAnnotations());
+        }
+        _hintIndex = builder.build();
+    }
+
     private void recalculateWRR() {
         ArrayList<ServerGroupHandle> groups =
             serverGroupHandles
@@ -152,6 +186,8 @@ public class Upstream {
         newLs.add(h);
         serverGroupHandles = newLs;
         recalculateWRR();
+        recalculateHintIndex();
+        group.addServerListener(annotationsListener);
         return h;
     }
 
@@ -173,6 +209,8 @@ public class Upstream {
         }
         serverGroupHandles = newLs;
         recalculateWRR();
+        recalculateHintIndex();
+        group.removeServerListener(annotationsListener);
     }
 
     public List<ServerGroupHandle> getServerGroupHandles() {
@@ -184,33 +222,23 @@ public class Upstream {
     }
 
     public ServerGroupHandle searchForGroup(Hint hint) {
-        int level = 0;
-        ServerGroupHandle lastMax = null;
-        for (ServerGroupHandle h : serverGroupHandles) {
-            //noinspection unchecked
-            int l = hint.matchLevel(h.annotations, h.group.getAnnotations());
-            if (l > level) {
-                level = l;
-                lastMax = h;
-            }
-        }
-        return lastMax;
+        return _hintIndex.search(hint);
     }
 
     public Connector next(IPPort source, Hint hint) {
         if (hint != null) {
             ServerGroupHandle h = searchForGroup(hint);
             if (h != null) {
-                return h.group.next(source);
+                return h.group.next(source, hint);
             }
             // not found, use normal process
             // fall through
         }
         WRR wrr = _wrr;
-        return next(source, wrr, 0);
+        return next(source, hint, wrr, 0);
     }
 
-    private /*use static to prevent access local variable*/ static Connector next(IPPort source, WRR wrr, int recursion) {
+    private /*use static to prevent access local variable*/ static Connector next(IPPort source, Hint hint, WRR wrr, int recursion) {
         if (recursion > wrr.seq.length)
             return null;
         if (wrr.seq.length == 0)
@@ -222,9 +250,9 @@ public class Upstream {
             idx = idx % wrr.seq.length;
             wrr.cursor.set(idx + 1);
         }
-        Connector connector = wrr.groups.get(wrr.seq[idx]).group.next(source);
+        Connector connector = wrr.groups.get(wrr.seq[idx]).group.next(source, hint);
         if (connector != null)
             return connector;
-        return next(source, wrr, recursion);
+        return next(source, hint, wrr, recursion);
     }
 }
@@ -0,0 +1,296 @@
+package vproxy.dns;
+
+import vproxybase.Config;
+import vproxybase.dns.DNSPacket;
+import vproxybase.dns.DNSQuestion;
+import vproxybase.dns.Formatter;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches responses of recursive lookups in wire format, keyed by (qname, qtype, qclass) of the only question.
+ * Only standard queries are cached, and the qname is case-insensitive.<br>
+ * The entry lives as long as the min ttl of the records. Responses without answers (NXDOMAIN or NODATA) are cached
+ * with the ttl of the SOA in the authority section (rfc2308), or {@link Config#dnsServerNegativeTtl} if there's no SOA.
+ * When a cached response is served, the id, the question name (to the casing of the request) and the ttl of each record
+ * are rewritten in a copy of the bytes.<br>
+ * The cache is shared by all loops of the dns server.
+ */
+public class DNSAnswerCache {
+    private static final int TYPE_SOA = 6;
+    private static final int TYPE_OPT = 41;
+    private static final int RCODE_NO_ERROR = 0;
+    private static final int RCODE_NAME_ERROR = 3;
+    private static final int EVICT_SCAN = 16; // how many entries to check for expiration when the cache is full
+
+    private static class Key {
+        final String qname;
+        final int qtype;
+        final int qclass;
+
+        Key(DNSQuestion q) {
+            this.qname = q.qname.toLowerCase();
+            this.qtype = q.qtype.code;
+            this.qclass = q.qclass.code;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return qtype == key.qtype &&
+                qclass == key.qclass &&
+                Objects.equals(qname, key.qname);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(qname, qtype, qclass);
+        }
+    }
+
+    private static class Entry {
+        final byte[] bytes; // the response packet
+        final int[] ttlOffsets;
+        final long storedAt;
+        final long expireAt;
+
+        Entry(byte[] bytes, int[] ttlOffsets, long storedAt, long expireAt) {
+            this.bytes = bytes;
+            this.ttlOffsets = ttlOffsets;
+            this.storedAt = storedAt;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hit = new LongAdder();
+    private final LongAdder miss = new LongAdder();
+
+    public DNSAnswerCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private static Key keyOf(DNSPacket request) {
+        if (request.opcode != DNSPacket.Opcode.QUERY || request.questions.size() != 1) {
+            return null;
+        }
+        DNSQuestion q = request.questions.get(0);
+        if (q.qtype == null || q.qclass == null) {
+            return null;
+        }
+        return new Key(q);
+    }
+
+    /**
+     * @return the response with the id of the request and decreased ttl, or null if not cached
+     */
+    public byte[] get(DNSPacket request) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        Key key = keyOf(request);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        long now = Config.currentTimestamp;
+        if (entry == null || entry.expireAt <= now) {
+            if (entry != null) {
+                entries.remove(key, entry);
+            }
+            miss.increment();
+            return null;
+        }
+        hit.increment();
+
+        byte[] bytes = entry.bytes.clone();
+        bytes[0] = (byte) (request.id >> 8);
+        bytes[1] = (byte) request.id;
+        writeQName(bytes, request.questions.get(0).qname);
+        int elapsed = (int) ((now - entry.storedAt) / 1000);
+        if (elapsed > 0) {
+            for (int off : entry.ttlOffsets) {
+                int ttl = Math.max(int32(bytes, off) - elapsed, 0);
+                bytes[off] = (byte) (ttl >> 24);
+                bytes[off + 1] = (byte) (ttl >> 16);
+                bytes[off + 2] = (byte) (ttl >> 8);
+                bytes[off + 3] = (byte) ttl;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param request  the request
+     * @param response the serialized response of the request
+     */
+    public void put(DNSPacket request, byte[] response) {
+        if (maxSize <= 0) {
+            return;
+        }
+        Key key = keyOf(request);
+        if (key == null) {
+            return;
+        }
+        Entry entry = parse(response);
+        if (entry == null) {
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        entries.put(key, entry);
+    }
+
+    private void evict() {
+        long now = Config.currentTimestamp;
+        Iterator<Map.Entry<Key, Entry>> ite = entries.entrySet().iterator();
+        Key first = null;
+        boolean removed = false;
+        for (int i = 0; i < EVICT_SCAN && ite.hasNext(); ++i) {
+            Map.Entry<Key, Entry> e = ite.next();
+            if (first == null) {
+                first = e.getKey();
+            }
+            if (e.getValue().expireAt <= now) {
+                ite.remove();
+                removed = true;
+            }
+        }
+        if (!removed && first != null) {
+            entries.remove(first);
+        }
+    }
+
+    // retrieve the ttl and ttl offsets from the wire format
+    // return null if the response should not be cached
+    private static Entry parse(byte[] bytes) {
+        if (bytes.length < 12) {
+            return null;
+        }
+        boolean tc = (bytes[2] & 0b00000010) != 0;
+        int rcode = bytes[3] & 0x0f;
+        if (tc || (rcode != RCODE_NO_ERROR && rcode != RCODE_NAME_ERROR)) {
+            return null;
+        }
+        int qdcount = uint16(bytes, 4);
+        int ancount = uint16(bytes, 6);
+        int nscount = uint16(bytes, 8);
+        int arcount = uint16(bytes, 10);
+        if (qdcount != 1) {
+            return null;
+        }
+
+        int[] ttlOffsets = new int[ancount + nscount + arcount];
+        int ttlOffsetsLen = 0;
+        long minAnswerTtl = Long.MAX_VALUE;
+        long soaTtl = -1;
+        int off = 12;
+        try {
+            off = skipName(bytes, off) + 4; // qtype and qclass
+            for (int i = 0; i < ancount + nscount + arcount; ++i) {
+                off = skipName(bytes, off);
+                int type = uint16(bytes, off);
+                int ttlOff = off + 4;
+                int rdlen = uint16(bytes, off + 8);
+                off += 10 + rdlen;
+                if (off > bytes.length) {
+                    return null;
+                }
+                if (type == TYPE_OPT) {
+                    continue; // the ttl field of OPT holds flags
+                }
+                ttlOffsets[ttlOffsetsLen++] = ttlOff;
+                long ttl = int32(bytes, ttlOff) & 0xffffffffL;
+                if (i < ancount) {
+                    minAnswerTtl = Math.min(minAnswerTtl, ttl);
+                } else if (i < ancount + nscount && type == TYPE_SOA && rdlen >= 20) {
+                    long minimum = int32(bytes, off - 4) & 0xffffffffL;
+                    soaTtl = Math.min(ttl, minimum);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+
+        long ttl;
+        if (rcode == RCODE_NO_ERROR && ancount > 0) {
+            ttl = minAnswerTtl;
+        } else if (soaTtl >= 0) {
+            ttl = Math.min(soaTtl, Config.dnsServerNegativeTtl);
+        } else {
+            ttl = Config.dnsServerNegativeTtl;
+        }
+        if (ttl <= 0) {
+            return null;
+        }
+        ttl = Math.min(ttl, Config.dnsServerCacheMaxTtl);
+
+        int[] offsets = new int[ttlOffsetsLen];
+        System.arraycopy(ttlOffsets, 0, offsets, 0, ttlOffsetsLen);
+        long now = Config.currentTimestamp;
+        return new Entry(bytes, offsets, now, now + ttl * 1000);
+    }
+
+    // the question name is never compressed and always starts right after the header,
+    // the names of the records usually point to it, so they follow the casing as well
+    private static void writeQName(byte[] bytes, String qname) {
+        byte[] name = Formatter.formatDomainName(qname).toJavaArray();
+        if (bytes.length < 12 + name.length) {
+            return;
+        }
+        for (int i = 0; i < name.length; ++i) {
+            int a = bytes[12 + i] & 0xff;
+            int b = name[i] & 0xff;
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return; // not the same name, should not happen
+            }
+        }
+        System.arraycopy(name, 0, bytes, 12, name.length);
+    }
+
+    private static int skipName(byte[] bytes, int off) {
+        while (true) {
+            int len = bytes[off] & 0xff;
+            if (len == 0) {
+                return off + 1;
+            }
+            if ((len & 0b11000000) == 0b11000000) { // compression pointer, ends the name
+                return off + 2;
+            }
+            off += 1 + len;
+        }
+    }
+
+    private static int uint16(byte[] bytes, int off) {
+        return ((bytes[off] & 0xff) << 8) | (bytes[off + 1] & 0xff);
+    }
+
+    private static int int32(byte[] bytes, int off) {
+        return ((bytes[off] & 0xff) << 24) | ((bytes[off + 1] & 0xff) << 16) | ((bytes[off + 2] & 0xff) << 8) | (bytes[off + 3] & 0xff);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHit() {
+        return hit.longValue();
+    }
+
+    public long getMiss() {
+        return miss.longValue();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -20,6 +20,8 @@ import vproxybase.dns.rdata.SRV;
 import vproxybase.processor.Hint;
 import vproxybase.selector.Handler;
 import vproxybase.selector.HandlerContext;
+import vproxybase.selector.PeriodicEvent;
+import vproxybase.selector.SelectorEventLoop;
 import vproxybase.util.*;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.ClosedException;
@@ -32,6 +34,7 @@ import java.net.SocketException;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DNSServer {
     public final String alias;
@@ -40,12 +43,14 @@ public class DNSServer {
     public final Upstream rrsets;
     public final DNSClient client;
     private Map<String, IP> hosts;
-    private final ByteBuffer buffer = ByteBuffer.allocate(Config.udpMtu);
     private final ConcurrentHashSet<ResolvingInfoRecorder> resolvingInfoRecorders = new ConcurrentHashSet<>();
+    public final DNSAnswerCache answerCache = new DNSAnswerCache(Config.dnsServerCacheSize);
+    private final ConcurrentHashMap<RRsetKey, byte[]> rrsetResponses = new ConcurrentHashMap<>();
 
     private final Attach attach = new Attach();
-    protected NetEventLoop loop = null;
-    private DatagramFD sock = null;
+    protected NetEventLoop loop = null; // the first loop which the server starts on
+    private final ConcurrentHashMap<SelectorEventLoop, SockHandler> socks = new ConcurrentHashMap<>(); // one sock for each loop
+    private PeriodicEvent reloadHostsEvent = null;
     private boolean needToStart = false;
     public int ttl;
     public SecurityGroup securityGroup;
@@ -84,6 +89,41 @@ public class DNSServer {
         }
     }
 
+    // the pre-serialized response of an rrset answer
+    // the id, aa and rd of the response need to be rewritten for each request
+    private static class RRsetKey {
+        final String qname;
+        final int qtype;
+        final int qclass;
+        final IP target;
+        final int ttl;
+
+        RRsetKey(DNSQuestion q, IP target, int ttl) {
+            this.qname = q.qname;
+            this.qtype = q.qtype.code;
+            this.qclass = q.qclass.code;
+            this.target = target;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RRsetKey that = (RRsetKey) o;
+            return qtype == that.qtype &&
+                qclass == that.qclass &&
+                ttl == that.ttl &&
+                Objects.equals(qname, that.qname) &&
+                Objects.equals(target, that.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(qname, qtype, qclass, target, ttl);
+        }
+    }
+
     public void addResolvingInfoRecorder(ResolvingInfoRecorder r) {
         resolvingInfoRecorders.add(r);
     }
@@ -112,7 +152,8 @@ public class DNSServer {
                     if (domain.endsWith(".")) { // remove tailing dot by convention
                         domain = domain.substring(0, domain.length() - 1);
                     }
-                    Upstream.ServerGroupHandle gh = rrsets.searchForGroup(new Hint(domain));
+                    Hint hint = new Hint(domain);
+                    Upstream.ServerGroupHandle gh = rrsets.searchForGroup(hint);
                     if (gh == null) {
                         // not found in user defined rrsets
                         // try some internal queries
@@ -154,11 +195,11 @@ public class DNSServer {
                     } else {
                         Connector connector;
                         if (q.qtype == DNSType.A) {
-                            connector = gh.group.nextIPv4(remote);
+                            connector = gh.group.nextIPv4(remote, hint);
                         } else if (q.qtype == DNSType.AAAA) {
-                            connector = gh.group.nextIPv6(remote);
+                            connector = gh.group.nextIPv6(remote, hint);
                         } else {
-                            connector = gh.group.next(remote);
+                            connector = gh.group.next(remote, hint);
                         }
                         if (connector == null) {
                             assert Logger.lowLevelDebug("no active server for " + domain);
@@ -174,8 +215,49 @@ public class DNSServer {
         }
         // it means we can directly respond when reaches here
 
+        // most requests ask for one A or AAAA record, use the pre-serialized response
+        if (p.questions.size() == 1 && addresses.size() == 1) {
+            Map<DNSType, List<Record>> map = addresses.values().iterator().next();
+            DNSQuestion q = p.questions.get(0);
+            List<Record> records = map.get(q.qtype);
+            if (map.size() == 1 && records != null && records.size() == 1 && q.qtype != DNSType.SRV) {
+                sendRRsetResponse(p, remote, records.get(0).target, addresses);
+                return;
+            }
+        }
+        sendPacket(p.id, remote, buildResponse(p, addresses));
+    }
+
+    private void sendRRsetResponse(DNSPacket p, IPPort remote, IP target, Map<String, Map<DNSType, List<Record>>> addresses) {
+        int ttl = Math.max(this.ttl, 0);
+        RRsetKey key = new RRsetKey(p.questions.get(0), target, ttl);
+        byte[] tmpl = rrsetResponses.get(key);
+        if (tmpl == null) {
+            DNSPacket resp = buildResponse(p, addresses);
+            resp.id = 0;
+            resp.aa = false;
+            resp.rd = false;
+            tmpl = resp.toByteArray().toJavaArray();
+            if (Config.dnsServerCacheSize > 0) {
+                if (rrsetResponses.size() >= Config.dnsServerCacheSize) {
+                    // the rrsets are usually small, reaching the limit means the qnames vary, e.g. case randomized
+                    rrsetResponses.clear();
+                }
+                rrsetResponses.put(key, tmpl);
+            }
+        }
+        byte[] bytes = tmpl.clone();
+        bytes[0] = (byte) (p.id >> 8);
+        bytes[1] = (byte) p.id;
+        if (p.aa) bytes[2] |= 0b00000100;
+        if (p.rd) bytes[2] |= 0b00000001;
+        sendBytes(remote, bytes);
+    }
+
+    private DNSPacket buildResponse(DNSPacket p, Map<String, Map<DNSType, List<Record>>> addresses) {
         // a map of additional A/AAAA records for srv records
         Map<String, List<IP>> additional = new LinkedHashMap<>();
+        int ttl = Math.max(this.ttl, 0);
 
         DNSPacket resp = new DNSPacket();
         resp.id = p.id;
@@ -195,9 +277,6 @@ public class DNSServer {
                     DNSResource r = new DNSResource();
                     r.name = entry.getKey();
                     r.clazz = DNSClass.IN;
-                    if (ttl < 0) {
-                        ttl = 0;
-                    }
                     r.ttl = ttl;
 
                     RData rdata;
@@ -237,9 +316,6 @@ public class DNSServer {
                 DNSResource r = new DNSResource();
                 r.name = entry.getKey();
                 r.clazz = DNSClass.IN;
-                if (ttl < 0) {
-                    ttl = 0;
-                }
                 r.ttl = ttl;
 
                 DNSType type;
@@ -263,7 +339,7 @@ public class DNSServer {
                 resp.additionalResources.add(r);
             }
         }
-        sendPacket(p.id, remote, resp);
+        return resp;
     }
 
     protected IP getLocalAddressFor(IPPort remote) {
@@ -328,10 +404,19 @@ public class DNSServer {
     }
 
     protected void runRecursive(DNSPacket p, IPPort remote) {
+        byte[] cached = answerCache.get(p);
+        if (cached != null) {
+            assert Logger.lowLevelDebug("use cached response for " + p.questions);
+            sendBytes(remote, cached);
+            return;
+        }
         client.request(p, new Callback<>() {
             @Override
             protected void onSucceeded(DNSPacket value) {
-                sendPacket(p.id, remote, value);
+                value.id = p.id;
+                byte[] bytes = value.toByteArray().toJavaArray();
+                answerCache.put(p, bytes);
+                sendBytes(remote, bytes);
             }
 
             @Override
@@ -343,19 +428,34 @@ public class DNSServer {
 
     protected void sendPacket(int id, IPPort remote, DNSPacket p) {
         p.id = id;
-        ByteBuffer buf = ByteBuffer.wrap(p.toByteArray().toJavaArray());
-        int len = buf.limit();
-        int sent;
-        try {
-            sent = sock.send(buf, remote);
-        } catch (IOException e) {
-            Logger.error(LogType.CONN_ERROR, "sending dns response packet to " + remote + " failed", e);
-            return;
+        sendBytes(remote, p.toByteArray().toJavaArray());
+    }
+
+    // use the sock of current loop, or any sock if not called on a loop of the server (e.g. callback of dns client)
+    private SockHandler handlerToSend() {
+        SelectorEventLoop current = SelectorEventLoop.current();
+        if (current != null) {
+            SockHandler h = socks.get(current);
+            if (h != null) {
+                return h;
+            }
         }
-        if (len != sent) {
-            Logger.error(LogType.CONN_ERROR, "sending dns response packet to " + remote + " failed, sent len = " + sent);
+        for (SockHandler h : socks.values()) {
+            return h;
+        }
+        return null;
+    }
+
+    private void sendBytes(IPPort remote, byte[] bytes) {
+        SockHandler h = handlerToSend();
+        if (h == null) {
+            assert Logger.lowLevelDebug("the dns server " + alias + " is stopped, drop the response to " + remote);
             return;
         }
+        h.send(remote, bytes);
+    }
+
+    private void sentSuccessfully() {
         for (var r : resolvingInfoRecorders) {
             r.incSuccessfulResolvingCount();
         }
@@ -375,8 +475,192 @@ public class DNSServer {
         sendPacket(p.id, remote, p);
     }
 
-    public void start() throws IOException {
-        if (sock == null) { // udp sock not created yet
+    class SockHandler implements Handler<DatagramFD> {
+        private static final int BATCH = 16; // max packets to receive or send with one call
+        private static final int MAX_REQUEST_SIZE = 4096; // dns requests are small, 4096 is the largest edns payload size in practice
+
+        private final EventLoopWrapper w;
+        private final DatagramFD sock;
+        // each loop uses its own buffers
+        private final ByteBuffer[] rcvBufs = new ByteBuffer[BATCH];
+        private final IPPort[] rcvRemotes = new IPPort[BATCH];
+        // the responses generated when handling a batch of requests are sent together
+        private final ByteBuffer[] sndBufs = new ByteBuffer[BATCH];
+        private final IPPort[] sndRemotes = new IPPort[BATCH];
+        private int sndCount = 0;
+        private boolean handlingBatch = false;
+
+        SockHandler(EventLoopWrapper w, DatagramFD sock) {
+            this.w = w;
+            this.sock = sock;
+            for (int i = 0; i < BATCH; ++i) {
+                rcvBufs[i] = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+            }
+        }
+
+        void send(IPPort remote, byte[] bytes) {
+            if (handlingBatch && SelectorEventLoop.current() == w.getSelectorEventLoop()) {
+                sndBufs[sndCount] = ByteBuffer.wrap(bytes);
+                sndRemotes[sndCount] = remote;
+                ++sndCount;
+                if (sndCount == BATCH) {
+                    flush();
+                }
+                return;
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            int len = buf.limit();
+            int sent;
+            try {
+                sent = sock.send(buf, remote);
+            } catch (IOException e) {
+                Logger.error(LogType.CONN_ERROR, "sending dns response packet to " + remote + " failed", e);
+                return;
+            }
+            if (len != sent) {
+                Logger.error(LogType.CONN_ERROR, "sending dns response packet to " + remote + " failed, sent len = " + sent);
+                return;
+            }
+            sentSuccessfully();
+        }
+
+        private void flush() {
+            int count = sndCount;
+            sndCount = 0;
+            if (count == 0) {
+                return;
+            }
+            int n = 0;
+            try {
+                n = sock.sendBatch(sndBufs, sndRemotes, count);
+            } catch (IOException e) {
+                Logger.error(LogType.CONN_ERROR, "sending " + count + " dns response packets failed", e);
+            }
+            for (int i = 0; i < count; ++i) {
+                if (i < n) {
+                    sentSuccessfully();
+                } else if (n > 0) { // the error is already logged if nothing sent
+                    Logger.error(LogType.CONN_ERROR, "sending dns response packet to " + sndRemotes[i] + " failed, the sending buffer is full");
+                }
+                sndBufs[i] = null;
+                sndRemotes[i] = null;
+            }
+        }
+
+        @Override
+        public void accept(HandlerContext<DatagramFD> ctx) {
+            // will not fire
+        }
+
+        @Override
+        public void connected(HandlerContext<DatagramFD> ctx) {
+            // will not fire
+        }
+
+        @Override
+        public void readable(HandlerContext<DatagramFD> ctx) {
+            handlingBatch = true;
+            try {
+                while (true) { // read until no packet available
+                    for (ByteBuffer b : rcvBufs) {
+                        b.limit(b.capacity()).position(0);
+                    }
+                    int n;
+                    try {
+                        n = sock.receiveBatch(rcvBufs, rcvRemotes);
+                    } catch (IOException e) {
+                        Logger.error(LogType.CONN_ERROR, "reading data from dns sock " + sock + " failed", e);
+                        return;
+                    }
+                    for (int i = 0; i < n; ++i) {
+                        IPPort remote = rcvRemotes[i];
+                        rcvRemotes[i] = null;
+                        handlePacket(remote, rcvBufs[i]);
+                    }
+                    flush();
+                    if (n < BATCH) {
+                        return; // no more packets for now
+                    }
+                }
+            } finally {
+                handlingBatch = false;
+                flush();
+            }
+        }
+
+        private void handlePacket(IPPort remote, ByteBuffer buffer) {
+            if (!securityGroup.allow(Protocol.UDP, remote.getAddress(), remote.getPort())) {
+                assert Logger.lowLevelDebug("remote " + remote + " rejected by security-group " + securityGroup.alias);
+                return;
+            }
+            int read = buffer.position();
+            if (read == 0) {
+                return;
+            }
+            buffer.flip();
+            byte[] bytes = new byte[read];
+            buffer.get(bytes);
+            ByteArray array = ByteArray.from(bytes);
+
+            List<DNSPacket> packets;
+            try {
+                packets = Formatter.parsePackets(array);
+            } catch (InvalidDNSPacketException e) {
+                Logger.error(LogType.INVALID_EXTERNAL_DATA, "got malformed dns packet", e);
+                return;
+            }
+            assert Logger.lowLevelDebug("received dns packets: " + packets);
+            for (DNSPacket p : packets) {
+                if (p.isResponse) {
+                    Logger.error(LogType.INVALID_EXTERNAL_DATA, "received dns packet response from " + remote);
+                    continue;
+                }
+                if (p.opcode != DNSPacket.Opcode.QUERY) {
+                    runRecursive(p, remote);
+                    continue;
+                }
+                handleRequest(p, remote);
+            }
+        }
+
+        @Override
+        public void writable(HandlerContext<DatagramFD> ctx) {
+            // will not fire
+        }
+
+        @Override
+        public void removed(HandlerContext<DatagramFD> ctx) {
+            DatagramFD sock = ctx.getChannel();
+            synchronized (DNSServer.this) {
+                if (!socks.remove(w.getSelectorEventLoop(), this)) {
+                    return; // removed by stop()
+                }
+                try {
+                    sock.close();
+                } catch (IOException ignore) {
+                }
+                if (loop == w) {
+                    loop = null;
+                    if (reloadHostsEvent != null) {
+                        reloadHostsEvent.cancel();
+                        reloadHostsEvent = null;
+                    }
+                }
+            }
+            Logger.alert("the dns server (" + alias + ") is removed from event loop " + w.alias);
+            if (needToStart) {
+                try {
+                    start();
+                } catch (IOException e) {
+                    Logger.error(LogType.IMPROPER_USE, "starting dns-server (" + alias + ") failed");
+                }
+            }
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (socks.isEmpty()) { // udp sock not created yet
             // need to check whether it's bond
             if (Config.checkBind) {
                 ServerSock.checkBind(bindAddress);
@@ -394,104 +678,66 @@ public class DNSServer {
         }
 
         needToStart = true;
-        loop = eventLoopGroup.next();
-        if (loop == null) {
+        List<EventLoopWrapper> eventLoops = eventLoopGroup.list();
+        if (eventLoops.isEmpty()) {
             assert Logger.lowLevelDebug("no event loop in the group for now, will start later when loop available");
             return;
         }
-        if (sock != null) { // already started
-            return;
-        }
-        Logger.alert("dns server " + alias + " " + bindAddress + " starts on loop " + ((EventLoopWrapper) loop).alias);
 
-        sock = FDProvider.get().openDatagramFD();
-        sock.configureBlocking(false);
-        if (ServerSock.supportReusePort()) {
-            sock.setOption(StandardSocketOptions.SO_REUSEPORT, true);
-        }
-        sock.bind(bindAddress);
-        loop.getSelectorEventLoop().add(sock, EventSet.read(), null, new Handler<>() {
-            @Override
-            public void accept(HandlerContext<DatagramFD> ctx) {
-                // will not fire
+        // start one sock for each loop, the kernel spreads the packets among the socks
+        // only one sock can be bond if reuseport is not supported
+        boolean reusePort = ServerSock.supportReusePort();
+        List<EventLoopWrapper> started = new ArrayList<>();
+        for (EventLoopWrapper w : eventLoops) {
+            if (!reusePort && !socks.isEmpty()) {
+                break;
             }
-
-            @Override
-            public void connected(HandlerContext<DatagramFD> ctx) {
-                // will not fire
+            if (socks.containsKey(w.getSelectorEventLoop())) {
+                continue; // ignore already bond loops
             }
-
-            @Override
-            public void readable(HandlerContext<DatagramFD> ctx) {
-                while (true) { // read until no packet available
-                    buffer.limit(buffer.capacity()).position(0);
-                    IPPort remote;
+            DatagramFD sock = FDProvider.get().openDatagramFD();
+            SockHandler h = new SockHandler(w, sock);
+            try {
+                sock.configureBlocking(false);
+                if (reusePort) {
+                    sock.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                sock.bind(bindAddress);
+                w.getSelectorEventLoop().add(sock, EventSet.read(), null, h);
+            } catch (IOException e) {
+                sock.close();
+                // do not leave the server half started
+                for (EventLoopWrapper s : started) {
+                    SockHandler sh = socks.remove(s.getSelectorEventLoop());
                     try {
-                        remote = ctx.getChannel().receive(buffer);
-                    } catch (IOException e) {
-                        Logger.error(LogType.CONN_ERROR, "reading data from dns sock " + ctx.getChannel() + " failed", e);
-                        return;
-                    }
-                    if (remote == null) {
-                        return; // nothing received
+                        s.getSelectorEventLoop().remove(sh.sock);
+                    } catch (Throwable ignore) {
                     }
-                    if (!securityGroup.allow(Protocol.UDP, remote.getAddress(), remote.getPort())) {
-                        assert Logger.lowLevelDebug("remote " + remote + " rejected by security-group " + securityGroup.alias);
-                        continue;
-                    }
-                    int read = buffer.position();
-                    if (read == 0) {
-                        return;
-                    }
-                    buffer.flip();
-                    byte[] bytes = new byte[read];
-                    buffer.get(bytes);
-                    ByteArray array = ByteArray.from(bytes);
-
-                    List<DNSPacket> packets;
                     try {
-                        packets = Formatter.parsePackets(array);
-                    } catch (InvalidDNSPacketException e) {
-                        Logger.error(LogType.INVALID_EXTERNAL_DATA, "got malformed dns packet", e);
-                        return;
-                    }
-                    assert Logger.lowLevelDebug("received dns packets: " + packets);
-                    for (DNSPacket p : packets) {
-                        if (p.isResponse) {
-                            Logger.error(LogType.INVALID_EXTERNAL_DATA, "received dns packet response from " + remote);
-                            continue;
-                        }
-                        if (p.opcode != DNSPacket.Opcode.QUERY) {
-                            runRecursive(p, remote);
-                            continue;
-                        }
-                        handleRequest(p, remote);
+                        sh.sock.close();
+                    } catch (IOException ignore) {
                     }
                 }
+                throw e;
             }
+            socks.put(w.getSelectorEventLoop(), h);
+            started.add(w);
+            Logger.alert("dns server " + alias + " " + bindAddress + " starts on loop " + w.alias);
+        }
 
-            @Override
-            public void writable(HandlerContext<DatagramFD> ctx) {
-                // will not fire
-            }
-
-            @Override
-            public void removed(HandlerContext<DatagramFD> ctx) {
-                Logger.alert("the current dns server (" + alias + ") is removed from event loop");
-                stop();
-                try {
-                    start();
-                } catch (IOException e) {
-                    Logger.error(LogType.IMPROPER_USE, "starting dns-server (" + alias + ") failed");
+        if (loop == null) {
+            for (EventLoopWrapper w : eventLoops) {
+                if (socks.containsKey(w.getSelectorEventLoop())) {
+                    loop = w;
+                    // start reloading hosts
+                    reloadHostsEvent = w.getSelectorEventLoop().period(30_000, () -> hosts = Resolver.getHosts());
+                    break;
                 }
             }
-        });
-
-        // start reloading hosts
-        loop.getSelectorEventLoop().period(30_000, () -> hosts = Resolver.getHosts());
+        }
     }
 
-    public void stop() {
+    public synchronized void stop() {
         if (!needToStart) {
             return;
         }
@@ -502,20 +748,25 @@ public class DNSServer {
         } catch (NotFoundException ignore) {
         }
 
-        if (sock != null) {
-            if (loop != null) {
-                try {
-                    loop.getSelectorEventLoop().remove(sock);
-                } catch (Throwable ignore) {
-                }
+        var entries = new ArrayList<>(socks.entrySet());
+        socks.clear();
+        for (var entry : entries) {
+            try {
+                entry.getKey().remove(entry.getValue().sock);
+            } catch (Throwable ignore) {
             }
             try {
-                sock.close();
+                entry.getValue().sock.close();
             } catch (IOException ignore) {
             }
         }
+        if (reloadHostsEvent != null) {
+            reloadHostsEvent.cancel();
+            reloadHostsEvent = null;
+        }
         loop = null;
-        sock = null;
+        rrsetResponses.clear();
+        answerCache.clear();
         assert Logger.lowLevelDebug("dns server " + alias + " stopped");
     }
 }
@@ -0,0 +1,286 @@
+package vproxy.pool;
+
+import vproxybase.Config;
+import vproxybase.component.svrgroup.SvrHandleConnector;
+import vproxybase.connection.*;
+import vproxybase.selector.TimerEvent;
+import vproxybase.util.LogType;
+import vproxybase.util.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Idle backend connections released by frontend connections,
+ * grouped by the protocol spoken on the connections and the server they connect to.<br>
+ * The pool belongs to one event loop and must only be accessed on the loop thread,
+ * so the connections never move between event loops.<br>
+ * A pooled connection is evicted when it's idle for too long, when it receives any data or FIN,
+ * or when the server is no longer healthy.
+ */
+public class BackendConnectionPool {
+    private static final ThreadLocal<BackendConnectionPool> pools = new ThreadLocal<>();
+
+    /**
+     * @param loop the current event loop, the method must be called on its thread
+     * @return the pool of the event loop
+     */
+    public static BackendConnectionPool get(NetEventLoop loop) {
+        BackendConnectionPool pool = pools.get();
+        if (pool == null || pool.loop != loop) {
+            pool = new BackendConnectionPool(loop, Config.backendPoolMaxIdle, Config.backendPoolIdleTimeout);
+            pools.set(pool);
+        }
+        return pool;
+    }
+
+    private static class Key {
+        final String protocol;
+        final Object server;
+
+        Key(String protocol, Object server) {
+            this.protocol = protocol;
+            this.server = server;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return protocol.equals(key.protocol) && server.equals(key.server);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * protocol.hashCode() + server.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return protocol + "/" + server;
+        }
+    }
+
+    private class Idle implements ConnectableConnectionHandler {
+        final Key key;
+        final ConnectableConnection conn;
+        TimerEvent timer;
+        boolean inPool = true;
+
+        Idle(Key key, ConnectableConnection conn) {
+            this.key = key;
+            this.conn = conn;
+        }
+
+        @Override
+        public void connected(ConnectableConnectionHandlerContext ctx) {
+            // will not fire, the connection is already connected
+        }
+
+        @Override
+        public void readable(ConnectionHandlerContext ctx) {
+            // nothing is expected when the connection is idle
+            Logger.warn(LogType.CONN_ERROR, "pooled connection " + conn + " received unexpected data");
+            evict(this);
+        }
+
+        @Override
+        public void writable(ConnectionHandlerContext ctx) {
+            // ignore the event
+        }
+
+        @Override
+        public void exception(ConnectionHandlerContext ctx, IOException err) {
+            assert Logger.lowLevelDebug("pooled connection " + conn + " got exception: " + err);
+            evict(this);
+        }
+
+        @Override
+        public void remoteClosed(ConnectionHandlerContext ctx) {
+            assert Logger.lowLevelDebug("pooled connection " + conn + " closed by remote");
+            evict(this);
+        }
+
+        @Override
+        public void closed(ConnectionHandlerContext ctx) {
+            evict(this);
+        }
+
+        @Override
+        public void removed(ConnectionHandlerContext ctx) {
+            if (inPool) {
+                evict(this);
+            }
+        }
+    }
+
+    private final NetEventLoop loop;
+    private final int maxIdle;
+    private final int idleTimeout;
+    private final Map<Key, ArrayDeque<Idle>> idles = new HashMap<>();
+
+    private long released = 0;
+    private long reused = 0;
+    private long evicted = 0;
+
+    public BackendConnectionPool(NetEventLoop loop, int maxIdle, int idleTimeout) {
+        this.loop = loop;
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+    }
+
+    // connections to the same server handle are interchangeable if they speak the same protocol
+    private static Key keyOf(String protocol, Connector connector) {
+        if (connector instanceof SvrHandleConnector) {
+            return new Key(protocol, ((SvrHandleConnector) connector).getServerHandle());
+        }
+        return new Key(protocol, connector.remote);
+    }
+
+    private static boolean isHealthy(Connector connector) {
+        if (!connector.isValid()) {
+            return false;
+        }
+        if (connector instanceof SvrHandleConnector) {
+            return ((SvrHandleConnector) connector).getServerHandle().healthy;
+        }
+        return true;
+    }
+
+    /**
+     * Keep the connection in the pool. The caller must make sure that no data is pending on the connection,
+     * and must not use or close the connection after it's released.<br>
+     * The connection stays in the event loop, and its events are handled by the pool from now on.
+     *
+     * @param protocol the protocol spoken on the connection, e.g. name of the processor
+     * @param conn     the connection
+     * @return false if the pool does not take the connection, then the caller should close it
+     */
+    public boolean release(String protocol, ConnectableConnection conn) {
+        if (maxIdle <= 0 || loop.getSelectorEventLoop().isClosed()) {
+            return false;
+        }
+        Connector connector = conn.getConnector();
+        if (connector == null || conn.isClosed() || conn.isWriteClosed() || conn.isRemoteClosed() || !isHealthy(connector)) {
+            return false;
+        }
+        Key key = keyOf(protocol, connector);
+        ArrayDeque<Idle> q = idles.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (q.size() >= maxIdle) {
+            assert Logger.lowLevelDebug("the pool for " + key + " is full");
+            return false;
+        }
+
+        Idle idle = new Idle(key, conn);
+        try {
+            loop.replaceHandler(conn, idle);
+        } catch (IOException e) {
+            Logger.error(LogType.IMPROPER_USE, "cannot pool the connection " + conn, e);
+            return false;
+        }
+        idle.timer = loop.getSelectorEventLoop().delay(idleTimeout, () -> {
+            assert Logger.lowLevelDebug("pooled connection " + conn + " idle timeout");
+            evict(idle);
+        });
+        q.addFirst(idle); // the most recently used connection is reused first, and the others time out
+        ++released;
+        assert Logger.lowLevelDebug("connection " + conn + " is released to the pool of " + key);
+        return true;
+    }
+
+    /**
+     * Retrieve an idle connection to the same server as the connector.
+     * The returned connection is connected and still registered in the event loop,
+     * the caller should take it over with {@link NetEventLoop#replaceHandler(ConnectableConnection, ConnectableConnectionHandler)}.
+     *
+     * @param protocol  the protocol to speak on the connection
+     * @param connector the connector which would be used to make a new connection
+     * @return the idle connection, or null if none
+     */
+    public ConnectableConnection get(String protocol, Connector connector) {
+        if (idles.isEmpty()) {
+            return null;
+        }
+        Key key = keyOf(protocol, connector);
+        ArrayDeque<Idle> q = idles.get(key);
+        if (q == null) {
+            return null;
+        }
+        Idle idle;
+        while ((idle = q.pollFirst()) != null) {
+            idle.inPool = false;
+            idle.timer.cancel();
+            ConnectableConnection conn = idle.conn;
+            if (conn.isClosed() || conn.isRemoteClosed() || !isHealthy(conn.getConnector())) {
+                ++evicted;
+                closeConnection(conn);
+                continue;
+            }
+            ++reused;
+            assert Logger.lowLevelDebug("reuse pooled connection " + conn);
+            break;
+        }
+        if (q.isEmpty()) {
+            idles.remove(key);
+        }
+        return idle == null ? null : idle.conn;
+    }
+
+    private void evict(Idle idle) {
+        if (!idle.inPool) {
+            return;
+        }
+        idle.inPool = false;
+        if (idle.timer != null) {
+            idle.timer.cancel();
+        }
+        ArrayDeque<Idle> q = idles.get(idle.key);
+        if (q != null) {
+            q.remove(idle);
+            if (q.isEmpty()) {
+                idles.remove(idle.key);
+            }
+        }
+        ++evicted;
+        closeConnection(idle.conn);
+    }
+
+    private static void closeConnection(ConnectableConnection conn) {
+        conn.close();
+        conn.getInBuffer().clean();
+        conn.getOutBuffer().clean();
+    }
+
+    public int size() {
+        int n = 0;
+        for (ArrayDeque<Idle> q : idles.values()) {
+            n += q.size();
+        }
+        return n;
+    }
+
+    public long getReleased() {
+        return released;
+    }
+
+    public long getReused() {
+        return reused;
+    }
+
+    public long getEvicted() {
+        return evicted;
+    }
+
+    @Override
+    public String toString() {
+        return "BackendConnectionPool{" +
+            "size=" + size() +
+            ", released=" + released +
+            ", reused=" + reused +
+            ", evicted=" + evicted +
+            '}';
+    }
+}
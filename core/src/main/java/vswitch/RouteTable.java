@@ -4,6 +4,7 @@ import vfd.IP;
 import vfd.IPv4;
 import vfd.IPv6;
 import vproxybase.util.Network;
+import vproxybase.util.NetworkTrie;
 import vproxybase.util.exception.AlreadyExistException;
 import vproxybase.util.exception.NotFoundException;
 import vproxybase.util.exception.XException;
@@ -21,10 +22,14 @@ public class RouteTable {
 
     private final List<RouteRule> rulesV4 = new ArrayList<>();
     private final List<RouteRule> rulesV6 = new ArrayList<>();
+    // rebuilt when rules change, lookup only reads these fields
+    private volatile NetworkTrie<RouteRule> indexV4;
+    private volatile NetworkTrie<RouteRule> indexV6;
 
     public RouteTable() {
         this.defaultV4Rule = null;
         this.defaultV6Rule = null;
+        rebuildIndex();
     }
 
     public RouteTable(Table t) {
@@ -39,23 +44,31 @@ public class RouteTable {
         if (defaultV6Rule != null) {
             rulesV6.add(defaultV6Rule);
         }
+        rebuildIndex();
     }
 
+    private void rebuildIndex() {
+        var v4 = new NetworkTrie.Builder<RouteRule>(4);
+        for (RouteRule r : rulesV4) {
+            v4.add(r.rule, r);
+        }
+        var v6 = new NetworkTrie.Builder<RouteRule>(16);
+        for (RouteRule r : rulesV6) {
+            v6.add(r.rule, r);
+        }
+        indexV4 = v4.build();
+        indexV6 = v6.build();
+    }
+
+    /**
+     * @return the rule with the longest matched network
+     */
     public RouteRule lookup(IP ip) {
         if (ip instanceof IPv4) {
-            for (RouteRule r : rulesV4) {
-                if (r.rule.contains(ip)) {
-                    return r;
-                }
-            }
+            return indexV4.lookup(ip);
         } else {
-            for (RouteRule r : rulesV6) {
-                if (r.rule.contains(ip)) {
-                    return r;
-                }
-            }
+            return indexV6.lookup(ip);
         }
-        return null;
     }
 
     public List<RouteRule> getRules() {
@@ -105,6 +118,7 @@ public class RouteTable {
         } else {
             addRule(r, rulesV6);
         }
+        rebuildIndex();
     }
 
     private void addRule(RouteRule r, List<RouteRule> rules) {
@@ -158,6 +172,7 @@ public class RouteTable {
             var ri = rulesV4.get(i);
             if (ri.alias.equals(alias)) {
                 rulesV4.remove(i);
+                rebuildIndex();
                 return;
             }
         }
@@ -165,6 +180,7 @@ public class RouteTable {
             var ri = rulesV6.get(i);
             if (ri.alias.equals(alias)) {
                 rulesV6.remove(i);
+                rebuildIndex();
                 return;
             }
         }
@@ -196,10 +196,10 @@ public class Switch {
     }
 
     private void refreshArpCache(Table t, IP ip, MacAddress mac) {
-        String handlingUUID = netStack.newHandlingUUID();
-        assert Logger.lowLevelDebug(handlingUUID + " trigger arp cache refresh for " + ip.formatToIPString() + " " + mac);
+        long traceId = netStack.newTraceId();
+        assert Logger.lowLevelDebug(traceId + " trigger arp cache refresh for " + ip.formatToIPString() + " " + mac);
 
-        netStack.L2.L3.resolve(handlingUUID, t, ip, mac);
+        netStack.L2.L3.resolve(traceId, t, ip, mac);
     }
 
     public int getMacTableTimeout() {
@@ -258,7 +258,7 @@ public class Switch {
         return new ArrayList<>(ifaces.keySet());
     }
 
-    public void addUser(String user, String password, int vni) throws AlreadyExistException, XException {
+    public void addUser(String user, String password, int vni, String cipher) throws AlreadyExistException, XException {
         char[] chars = user.toCharArray();
         if (chars.length < 3 || chars.length > 8) {
             throw new XException("invalid user, should be at least 3 chars and at most 8 chars");
@@ -272,13 +272,21 @@ public class Switch {
             user += Consts.USER_PADDING.repeat(8 - user.length());
         }
 
-        Aes256Key key = new Aes256Key(password);
+        Aes256Key key = createKey(cipher, password);
         UserInfo old = users.putIfAbsent(user, new UserInfo(user, key, password, vni));
         if (old != null) {
             throw new AlreadyExistException("the user " + user + " already exists in switch " + alias);
         }
     }
 
+    private static Aes256Key createKey(String cipher, String password) throws XException {
+        Aes256Key key = Aes256Key.create(cipher, password);
+        if (key == null) {
+            throw new XException("unsupported cipher: " + cipher);
+        }
+        return key;
+    }
+
     public void delUser(String user) throws NotFoundException {
         if (user.length() < 8) {
             user += Consts.USER_PADDING.repeat(8 - user.length());
@@ -407,7 +415,7 @@ public class Switch {
         }
     }
 
-    public void addUserClient(String user, String password, int vni, IPPort remoteAddr) throws AlreadyExistException, IOException, XException {
+    public void addUserClient(String user, String password, int vni, String cipher, IPPort remoteAddr) throws AlreadyExistException, IOException, XException {
         char[] chars = user.toCharArray();
         if (chars.length < 3 || chars.length > 8) {
             throw new XException("invalid user, should be at least 3 chars and at most 8 chars");
@@ -436,7 +444,7 @@ public class Switch {
             loop = currentEventLoop.getSelectorEventLoop();
         }
 
-        Aes256Key key = new Aes256Key(password);
+        Aes256Key key = createKey(cipher, password);
         UserInfo info = new UserInfo(user, key, password, vni);
 
         DatagramFD cliSock = FDProvider.get().openDatagramFD();
@@ -567,26 +575,27 @@ public class Switch {
     }
 
     public class NetworkStack {
-        public final L2 L2 = new L2(new SwitchContext(
+        public final SwitchContext swCtx = new SwitchContext(
             this::sendPacket,
             Switch.this::getIfaces,
             tables::get,
             () -> currentEventLoop.getSelectorEventLoop()
-        ));
+        );
+        public final L2 L2 = new L2(swCtx);
         private final ByteBuffer sndBuf = ByteBuffer.allocate(2048);
 
         protected NetworkStack() {
         }
 
-        protected String newHandlingUUID() {
-            return UUID.randomUUID().toString();
+        protected long newTraceId() {
+            return swCtx.newTraceId();
         }
 
-        protected void inputVXLan(String handlingUUID, VXLanPacket vxlan, Iface iface) {
+        protected void inputVXLan(long traceId, VXLanPacket vxlan, Iface iface) {
             int vni = vxlan.getVni();
             Table table = tables.get(vni);
             if (table == null) {
-                assert Logger.lowLevelDebug(handlingUUID + " vni not defined: " + vni);
+                assert Logger.lowLevelDebug(traceId + " vni not defined: " + vni);
                 return;
             }
 
@@ -621,7 +630,7 @@ public class Switch {
                 vxlan.setReserved2(r2 + 1);
             }
 
-            L2.input(new InputPacketL2Context(handlingUUID, iface, table, vxlan));
+            L2.input(new InputPacketL2Context(traceId, iface, table, vxlan));
         }
 
         private void sendPacket(VXLanPacket vxlan, Iface iface) {
@@ -639,8 +648,8 @@ public class Switch {
             }
         }
 
-        protected final void sendVProxyPacketTo(String handlingUUID, IfaceCanSendVProxyPacket iface, VProxyEncryptedPacket p) {
-            assert Logger.lowLevelDebug("sendVProxyPacketTo(" + handlingUUID + "," + iface + "," + p + ")");
+        protected final void sendVProxyPacketTo(long traceId, IfaceCanSendVProxyPacket iface, VProxyEncryptedPacket p) {
+            assert Logger.lowLevelDebug("sendVProxyPacketTo(" + traceId + "," + iface + "," + p + ")");
 
             sndBuf.limit(sndBuf.capacity()).position(0);
             try {
@@ -653,7 +662,15 @@ public class Switch {
 
     private class PacketHandler implements Handler<DatagramFD> {
         private static final int IFACE_TIMEOUT = 60 * 1000;
-        private final ByteBuffer rcvBuf = ByteBuffer.allocate(2048);
+        private static final int RCV_BATCH = 32; // max packets to receive with one call
+        private final ByteBuffer[] rcvBufs = new ByteBuffer[RCV_BATCH];
+        private final IPPort[] rcvRemotes = new IPPort[RCV_BATCH];
+
+        PacketHandler() {
+            for (int i = 0; i < RCV_BATCH; ++i) {
+                rcvBufs[i] = ByteBuffer.allocate(2048);
+            }
+        }
 
         @Override
         public void accept(HandlerContext<DatagramFD> ctx) {
@@ -665,13 +682,13 @@ public class Switch {
             // will not fire
         }
 
-        private Tuple<VXLanPacket, Iface> handleNetworkAndGetVXLanPacket(String handlingUUID, SelectorEventLoop loop, IPPort remote, ByteArray data) {
+        private Tuple<VXLanPacket, Iface> handleNetworkAndGetVXLanPacket(long traceId, SelectorEventLoop loop, IPPort remote, ByteArray data) {
             VProxyEncryptedPacket packet = new VProxyEncryptedPacket(Switch.this::getKey);
             VXLanPacket vxLanPacket;
             Iface iface;
 
             String err = packet.from(data);
-            assert Logger.lowLevelDebug(handlingUUID + " packet.from(data) = " + err);
+            assert Logger.lowLevelDebug(traceId + " packet.from(data) = " + err);
             if (err == null) {
                 String user = packet.getUser();
                 UserIface uiface = new UserIface(remote, user, users);
@@ -683,31 +700,31 @@ public class Switch {
                 }
                 uiface.setLocalSideVni(info.vni);
 
-                assert Logger.lowLevelDebug(handlingUUID + " got packet " + packet + " from " + iface);
+                assert Logger.lowLevelDebug(traceId + " got packet " + packet + " from " + iface);
 
                 vxLanPacket = packet.getVxlan();
                 if (vxLanPacket != null) {
                     int packetVni = vxLanPacket.getVni();
                     uiface.setRemoteSideVni(packetVni); // set vni to the iface
-                    assert Logger.lowLevelDebug(handlingUUID + " setting vni for " + user + " to " + info.vni);
+                    assert Logger.lowLevelDebug(traceId + " setting vni for " + user + " to " + info.vni);
                     if (packetVni != info.vni) {
                         vxLanPacket.setVni(info.vni);
                     }
                 }
 
                 if (packet.getType() == Consts.VPROXY_SWITCH_TYPE_PING) {
-                    assert Logger.lowLevelDebug(handlingUUID + " is vproxy ping message, do reply");
-                    sendPingTo(handlingUUID, uiface);
+                    assert Logger.lowLevelDebug(traceId + " is vproxy ping message, do reply");
+                    sendPingTo(traceId, uiface);
                 }
                 // fall through
             } else {
                 if (bareVXLanAccess.allow(Protocol.UDP, remote.getAddress(), vxlanBindingAddress.getPort())) {
-                    assert Logger.lowLevelDebug(handlingUUID + " is bare vxlan");
+                    assert Logger.lowLevelDebug(traceId + " is bare vxlan");
                     // try to parse into vxlan directly
                     vxLanPacket = new VXLanPacket();
                     err = vxLanPacket.from(data);
                     if (err != null) {
-                        assert Logger.lowLevelDebug(handlingUUID + " invalid packet for vxlan: " + err + ", drop it");
+                        assert Logger.lowLevelDebug(traceId + " invalid packet for vxlan: " + err + ", drop it");
                         return null;
                     }
                     // check whether it's coming from remote switch
@@ -740,10 +757,10 @@ public class Switch {
                     } else { // is from a remote switch
                         iface = remoteSwitch;
                     }
-                    assert Logger.lowLevelDebug(handlingUUID + " got vxlan packet " + vxLanPacket + " from " + iface);
+                    assert Logger.lowLevelDebug(traceId + " got vxlan packet " + vxLanPacket + " from " + iface);
                     // fall through
                 } else {
-                    assert Logger.lowLevelDebug(handlingUUID + " not in allowed security-group or invalid packet: " + err + ", drop it");
+                    assert Logger.lowLevelDebug(traceId + " not in allowed security-group or invalid packet: " + err + ", drop it");
                     return null;
                 }
             }
@@ -751,7 +768,7 @@ public class Switch {
             // check whether the packet's src and dst mac are the same
             if (vxLanPacket != null) {
                 if (vxLanPacket.getPacket().getSrc().equals(vxLanPacket.getPacket().getDst())) {
-                    assert Logger.lowLevelDebug(handlingUUID + " got packet with same src and dst: " + vxLanPacket);
+                    assert Logger.lowLevelDebug(traceId + " got packet with same src and dst: " + vxLanPacket);
                     return null;
                 }
             }
@@ -769,43 +786,58 @@ public class Switch {
         public void readable(HandlerContext<DatagramFD> ctx) {
             DatagramFD sock = ctx.getChannel();
             while (true) {
-                rcvBuf.limit(rcvBuf.capacity()).position(0);
-                IPPort remote;
+                for (ByteBuffer b : rcvBufs) {
+                    b.limit(b.capacity()).position(0);
+                }
+                int n;
                 try {
-                    remote = sock.receive(rcvBuf);
+                    n = sock.receiveBatch(rcvBufs, rcvRemotes);
                 } catch (IOException e) {
                     Logger.error(LogType.CONN_ERROR, "udp sock " + ctx.getChannel() + " got error when reading", e);
                     return;
                 }
-                if (rcvBuf.position() == 0) {
+                if (n == 0) {
                     break; // nothing read, quit loop
                 }
-                byte[] bytes = rcvBuf.array();
-                ByteArray data = ByteArray.from(bytes).sub(0, rcvBuf.position());
-
-                String handlingUUID = netStack.newHandlingUUID();
-
-                var tuple = handleNetworkAndGetVXLanPacket(handlingUUID, ctx.getEventLoop(), remote, data);
-                if (tuple == null) {
-                    continue;
+                for (int i = 0; i < n; ++i) {
+                    handlePacket(ctx, rcvRemotes[i], rcvBufs[i]);
+                    rcvRemotes[i] = null;
                 }
-                var vxlan = tuple.left;
-                var iface = tuple.right;
-                if (vxlan == null) {
-                    assert Logger.lowLevelDebug(handlingUUID + "no vxlan packet found, ignore");
-                    continue;
+                if (n < rcvBufs.length) {
+                    break; // no more packets for now
                 }
+            }
+        }
+
+        private void handlePacket(HandlerContext<DatagramFD> ctx, IPPort remote, ByteBuffer rcvBuf) {
+            if (rcvBuf.position() == 0) {
+                return; // empty packet
+            }
+            byte[] bytes = rcvBuf.array();
+            ByteArray data = ByteArray.from(bytes).sub(0, rcvBuf.position());
+
+            long traceId = netStack.newTraceId();
 
-                netStack.inputVXLan(handlingUUID, vxlan, iface);
+            var tuple = handleNetworkAndGetVXLanPacket(traceId, ctx.getEventLoop(), remote, data);
+            if (tuple == null) {
+                return;
             }
+            var vxlan = tuple.left;
+            var iface = tuple.right;
+            if (vxlan == null) {
+                assert Logger.lowLevelDebug(traceId + "no vxlan packet found, ignore");
+                return;
+            }
+
+            netStack.inputVXLan(traceId, vxlan, iface);
         }
 
-        private void sendPingTo(String handlingUUID, UserIface iface) {
-            assert Logger.lowLevelDebug("sendPingTo(" + handlingUUID + "," + iface + ")");
+        private void sendPingTo(long traceId, UserIface iface) {
+            assert Logger.lowLevelDebug("sendPingTo(" + traceId + "," + iface + ")");
             VProxyEncryptedPacket p = new VProxyEncryptedPacket(Switch.this::getKey);
             p.setMagic(Consts.VPROXY_SWITCH_MAGIC);
             p.setType(Consts.VPROXY_SWITCH_TYPE_PING);
-            netStack.sendVProxyPacketTo(handlingUUID, iface, p);
+            netStack.sendVProxyPacketTo(traceId, iface, p);
         }
 
         @Override
@@ -899,12 +931,12 @@ public class Switch {
                 byte[] bytes = rcvBuf.array();
                 ByteArray data = ByteArray.from(bytes).sub(0, rcvBuf.position());
 
-                String handlingUUID = newHandlingUUID();
+                long traceId = newTraceId();
 
                 EthernetPacket ether = new EthernetPacket();
                 String err = ether.from(data);
                 if (err != null) {
-                    assert Logger.lowLevelDebug(handlingUUID + " got invalid packet: " + err);
+                    assert Logger.lowLevelDebug(traceId + " got invalid packet: " + err);
                     continue;
                 }
                 VXLanPacket vxlan = new VXLanPacket();
@@ -918,7 +950,7 @@ public class Switch {
                     return;
                 }
 
-                L2.input(new InputPacketL2Context(handlingUUID, iface, table, ether));
+                L2.input(new InputPacketL2Context(traceId, iface, table, ether));
             }
         }
 
@@ -972,7 +1004,7 @@ public class Switch {
             VProxyEncryptedPacket p = new VProxyEncryptedPacket(x -> iface.user.key);
             p.setMagic(Consts.VPROXY_SWITCH_MAGIC);
             p.setType(Consts.VPROXY_SWITCH_TYPE_PING);
-            sendVProxyPacketTo(newHandlingUUID(), iface, p);
+            sendVProxyPacketTo(newTraceId(), iface, p);
         }
 
         @Override
@@ -1000,17 +1032,17 @@ public class Switch {
                     break; // nothing read, quit loop
                 }
 
-                String handlingUUID = newHandlingUUID();
+                long traceId = newTraceId();
 
                 VProxyEncryptedPacket p = new VProxyEncryptedPacket(x -> iface.user.key);
                 ByteArray arr = ByteArray.from(rcvBuf.array()).sub(0, rcvBuf.position());
                 String err = p.from(arr);
                 if (err != null) {
-                    Logger.warn(LogType.INVALID_EXTERNAL_DATA, handlingUUID + " received invalid packet from " + iface + ": " + arr);
+                    Logger.warn(LogType.INVALID_EXTERNAL_DATA, traceId + " received invalid packet from " + iface + ": " + arr);
                     continue;
                 }
                 if (!p.getUser().equals(iface.user.user)) {
-                    Logger.warn(LogType.INVALID_EXTERNAL_DATA, handlingUUID + " user in received packet from " + iface + " mismatches, got " + p.getUser());
+                    Logger.warn(LogType.INVALID_EXTERNAL_DATA, traceId + " user in received packet from " + iface + " mismatches, got " + p.getUser());
                     continue;
                 }
                 if (connectedToSwitchTimer == null) {
@@ -1024,7 +1056,7 @@ public class Switch {
                 if (p.getVxlan().getVni() != iface.user.vni) {
                     p.getVxlan().setVni(iface.user.vni);
                 }
-                inputVXLan(handlingUUID, p.getVxlan(), iface);
+                inputVXLan(traceId, p.getVxlan(), iface);
             }
         }
 
@@ -36,9 +36,9 @@ public class BareVXLanIface implements Iface, LocalSideVniGetterSetter {
 
     @Override
     public void sendPacket(DatagramFD serverUDPSock, VXLanPacket vxlan, ByteBuffer writeBuf) throws IOException {
-        byte[] bytes = vxlan.getRawPacket().toJavaArray();
+        var bytes = vxlan.getRawPacket();
 
-        writeBuf.put(bytes);
+        bytes.byteBufferPut(writeBuf, 0, bytes.length());
         writeBuf.flip();
 
         // keep reserved fields empty
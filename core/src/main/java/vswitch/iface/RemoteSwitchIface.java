@@ -41,11 +41,11 @@ public class RemoteSwitchIface implements Iface {
 
     @Override
     public void sendPacket(DatagramFD serverUDPSock, VXLanPacket vxlan, ByteBuffer writeBuf) throws IOException {
-        byte[] bytes = vxlan.getRawPacket().toJavaArray();
-        writeBuf.put(bytes);
+        var bytes = vxlan.getRawPacket();
+        bytes.byteBufferPut(writeBuf, 0, bytes.length());
         writeBuf.flip();
         if (addSwitchFlag) {
-            writeBuf.put(1, (byte) (bytes[1] | ((Consts.I_AM_FROM_SWITCH >> 16) & 0xff)));
+            writeBuf.put(1, (byte) (bytes.get(1) | ((Consts.I_AM_FROM_SWITCH >> 16) & 0xff)));
         } else {
             // remove all possible flags or counters
             writeBuf.put(1, (byte) 0);
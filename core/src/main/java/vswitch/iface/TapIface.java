@@ -55,8 +55,8 @@ public class TapIface implements Iface {
 
     @Override
     public void sendPacket(DatagramFD serverUDPSock, VXLanPacket vxlan, ByteBuffer writeBuf) throws IOException {
-        var bytes = vxlan.getPacket().getRawPacket().toJavaArray();
-        writeBuf.put(bytes);
+        var bytes = vxlan.getPacket().getRawPacket();
+        bytes.byteBufferPut(writeBuf, 0, bytes.length());
         writeBuf.flip();
         operateTap.write(writeBuf);
     }
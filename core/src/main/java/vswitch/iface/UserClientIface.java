@@ -104,8 +104,7 @@ public class UserClientIface implements Iface, IfaceCanSendVProxyPacket {
 
         p.setUser(user.user);
 
-        byte[] bytes = p.getRawPacket().toJavaArray();
-        writeBuf.put(bytes);
+        p.writeTo(writeBuf);
         writeBuf.flip();
         sock.write(writeBuf);
     }
@@ -73,8 +73,7 @@ public class UserIface implements Iface, RemoteSideVniGetterSetter, LocalSideVni
     public void sendVProxyPacket(DatagramFD serverUDPSock, VProxyEncryptedPacket p, ByteBuffer writeBuf) throws IOException {
         p.setUser(user);
 
-        byte[] bytes = p.getRawPacket().toJavaArray();
-        writeBuf.put(bytes);
+        p.writeTo(writeBuf);
         writeBuf.flip();
         serverUDPSock.send(writeBuf, udpSockAddress);
     }
@@ -6,38 +6,38 @@ import vswitch.Table;
 import vswitch.iface.Iface;
 
 public class InputPacketL2Context {
-    public final String handlingUUID;
+    public final long traceId;
     public final Iface inputIface;
     public final Table table;
     public final VXLanPacket inputVXLan;
     public final AbstractEthernetPacket inputPacket;
 
-    public InputPacketL2Context(String handlingUUID,
+    public InputPacketL2Context(long traceId,
                                 Table table,
                                 AbstractEthernetPacket inputPacket) {
-        this(handlingUUID, null, table, null, inputPacket);
+        this(traceId, null, table, null, inputPacket);
     }
 
-    public InputPacketL2Context(String handlingUUID,
+    public InputPacketL2Context(long traceId,
                                 Iface iface,
                                 Table table,
                                 AbstractEthernetPacket inputPacket) {
-        this(handlingUUID, iface, table, null, inputPacket);
+        this(traceId, iface, table, null, inputPacket);
     }
 
-    public InputPacketL2Context(String handlingUUID,
+    public InputPacketL2Context(long traceId,
                                 Iface inputIface,
                                 Table table,
                                 VXLanPacket inputPacket) {
-        this(handlingUUID, inputIface, table, inputPacket, inputPacket.getPacket());
+        this(traceId, inputIface, table, inputPacket, inputPacket.getPacket());
     }
 
-    public InputPacketL2Context(String handlingUUID,
+    public InputPacketL2Context(long traceId,
                                 Iface inputIface,
                                 Table table,
                                 VXLanPacket inputVXLan,
                                 AbstractEthernetPacket inputPacket) {
-        this.handlingUUID = handlingUUID;
+        this.traceId = traceId;
         this.inputIface = inputIface;
         this.table = table;
         this.inputVXLan = inputVXLan;
@@ -45,7 +45,7 @@ public class InputPacketL2Context {
     }
 
     public InputPacketL2Context(InputPacketL2Context ctx) {
-        this(ctx.handlingUUID, ctx.inputIface, ctx.table, ctx.inputVXLan, ctx.inputPacket);
+        this(ctx.traceId, ctx.inputIface, ctx.table, ctx.inputVXLan, ctx.inputPacket);
     }
 
     public void clearVXLanRawPacket() {
@@ -57,7 +57,7 @@ public class InputPacketL2Context {
     @Override
     public String toString() {
         return "InputPacketL2Context{" +
-            "handlingUUID='" + handlingUUID + '\'' +
+            "traceId=" + traceId +
             ", inputIface=" + inputIface +
             ", table=" + table.vni +
             ", inputVXLan=" + inputVXLan +
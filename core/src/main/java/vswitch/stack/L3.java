@@ -33,36 +33,36 @@ public class L3 {
         }
     }
 
-    public void resolve(String handlingUUID, Table table, IP ip, MacAddress knownMac) {
-        assert Logger.lowLevelDebug("lookupAddress(" + handlingUUID + "," + table + "," + ip + "," + knownMac + ")");
+    public void resolve(long traceId, Table table, IP ip, MacAddress knownMac) {
+        assert Logger.lowLevelDebug("lookupAddress(" + traceId + "," + table + "," + ip + "," + knownMac + ")");
         if (ip instanceof IPv4) {
-            arpResolve(handlingUUID, table, ip, knownMac);
+            arpResolve(traceId, table, ip, knownMac);
         } else {
-            ndpResolve(handlingUUID, table, ip, knownMac);
+            ndpResolve(traceId, table, ip, knownMac);
         }
     }
 
-    private void arpResolve(String handlingUUID, Table table, IP ip, MacAddress knownMac) {
-        assert Logger.lowLevelDebug("lookupAddress(" + handlingUUID + "," + table + "," + ip + "," + knownMac + ")");
+    private void arpResolve(long traceId, Table table, IP ip, MacAddress knownMac) {
+        assert Logger.lowLevelDebug("lookupAddress(" + traceId + "," + table + "," + ip + "," + knownMac + ")");
         var iface = knownMac == null ? null : table.macTable.lookup(knownMac);
         if (iface == null) {
-            assert Logger.lowLevelDebug(handlingUUID + " cannot find iface of the mac, try broadcast");
-            broadcastArp(handlingUUID, table, ip);
+            assert Logger.lowLevelDebug(traceId + " cannot find iface of the mac, try broadcast");
+            broadcastArp(traceId, table, ip);
         } else {
-            assert Logger.lowLevelDebug(handlingUUID + " run unicast");
-            unicastArp(handlingUUID, table, ip, knownMac);
+            assert Logger.lowLevelDebug(traceId + " run unicast");
+            unicastArp(traceId, table, ip, knownMac);
         }
     }
 
-    private void ndpResolve(String handlingUUID, Table table, IP ip, MacAddress knownMac) {
-        assert Logger.lowLevelDebug("lookupAddress(" + handlingUUID + "," + table + "," + ip + "," + knownMac + ")");
+    private void ndpResolve(long traceId, Table table, IP ip, MacAddress knownMac) {
+        assert Logger.lowLevelDebug("lookupAddress(" + traceId + "," + table + "," + ip + "," + knownMac + ")");
         var iface = table.macTable.lookup(knownMac);
         if (iface == null) {
-            assert Logger.lowLevelDebug(handlingUUID + " cannot find iface of the mac, try broadcast");
-            broadcastNdp(handlingUUID, table, ip);
+            assert Logger.lowLevelDebug(traceId + " cannot find iface of the mac, try broadcast");
+            broadcastNdp(traceId, table, ip);
         } else {
-            assert Logger.lowLevelDebug(handlingUUID + " run unicast");
-            unicastNdp(handlingUUID, table, ip, knownMac);
+            assert Logger.lowLevelDebug(traceId + " run unicast");
+            unicastNdp(traceId, table, ip, knownMac);
         }
     }
 
@@ -77,7 +77,7 @@ public class L3 {
             handleUnicastIP(ctx);
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot process the packet");
+        assert Logger.lowLevelDebug(ctx.traceId + " cannot process the packet");
     }
 
     private void handleInputBroadcast(InputPacketL3Context ctx) {
@@ -88,32 +88,32 @@ public class L3 {
             handleArp(ctx);
             return;
         } else if (packet instanceof AbstractIpPacket) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " is ip packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " is ip packet");
             // we only handle icmpv6 packets when it's broadcasted
 
             var ipPkt = (AbstractIpPacket) packet;
 
             if (!(ipPkt instanceof Ipv6Packet)) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " is not ipv6. the packet protocol is " + ipPkt.getProtocol());
+                assert Logger.lowLevelDebug(ctx.traceId + " is not ipv6. the packet protocol is " + ipPkt.getProtocol());
                 return;
             }
             if (!(ipPkt.getPacket() instanceof IcmpPacket)) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " is not icmp");
+                assert Logger.lowLevelDebug(ctx.traceId + " is not icmp");
                 return;
             }
             var icmpPkt = (IcmpPacket) ipPkt.getPacket();
             if (!icmpPkt.isIpv6()) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " is not icmpv6");
+                assert Logger.lowLevelDebug(ctx.traceId + " is not icmpv6");
                 return;
             }
             if (icmpPkt.getType() != Consts.ICMPv6_PROTOCOL_TYPE_Neighbor_Solicitation) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " is not neighbor solicitation");
+                assert Logger.lowLevelDebug(ctx.traceId + " is not neighbor solicitation");
                 return;
             }
             handleNeighborSolicitation(ctx);
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot process the packet");
+        assert Logger.lowLevelDebug(ctx.traceId + " cannot process the packet");
     }
 
     private void handleArp(InputPacketL3Context ctx) {
@@ -121,35 +121,35 @@ public class L3 {
 
         ArpPacket arp = (ArpPacket) ctx.inputPacket.getPacket();
         if (arp.getProtocolType() != Consts.ARP_PROTOCOL_TYPE_IP) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " type of arp packet is not ip");
+            assert Logger.lowLevelDebug(ctx.traceId + " type of arp packet is not ip");
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " arp protocol is ip");
+        assert Logger.lowLevelDebug(ctx.traceId + " arp protocol is ip");
         if (arp.getOpcode() != Consts.ARP_PROTOCOL_OPCODE_REQ) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot handle this type arp message");
+            assert Logger.lowLevelDebug(ctx.traceId + " cannot handle this type arp message");
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " arp is req");
+        assert Logger.lowLevelDebug(ctx.traceId + " arp is req");
 
         // only handle ipv4 in arp, v6 should be handled with ndp
         ByteArray targetIp = arp.getTargetIp();
         if (targetIp.length() != 4) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " target ip length is not 4");
+            assert Logger.lowLevelDebug(ctx.traceId + " target ip length is not 4");
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " arp target is ipv4");
+        assert Logger.lowLevelDebug(ctx.traceId + " arp target is ipv4");
         IP ip = IP.from(targetIp.toJavaArray());
 
         // check whether we can handle the packet
         if (!ctx.matchedIps.contains(ip)) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " no matched ip found for the arp packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " no matched ip found for the arp packet");
             return;
         }
 
         // handle
         MacAddress mac = ctx.table.ips.lookup(ip);
 
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " respond arp");
+        assert Logger.lowLevelDebug(ctx.traceId + " respond arp");
         ArpPacket resp = new ArpPacket();
         resp.setHardwareType(arp.getHardwareType());
         resp.setProtocolType(arp.getProtocolType());
@@ -167,7 +167,7 @@ public class L3 {
         ether.setType(Consts.ETHER_TYPE_ARP);
         ether.setPacket(resp);
 
-        directOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ether));
+        directOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ether));
     }
 
     private void handleUnicastIP(InputPacketL3Context ctx) {
@@ -182,27 +182,27 @@ public class L3 {
             route(ctx);
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " no need to route the packet");
+        assert Logger.lowLevelDebug(ctx.traceId + " no need to route the packet");
 
         if (ipPkt.getPacket() instanceof IcmpPacket) {
             // validate the icmp part
             var icmpPkt = (IcmpPacket) ipPkt.getPacket();
             if (ipPkt instanceof Ipv4Packet && icmpPkt.isIpv6()) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " drop the packet because it's icmpv6 inside ipv4");
+                assert Logger.lowLevelDebug(ctx.traceId + " drop the packet because it's icmpv6 inside ipv4");
                 return;
             } else if (ipPkt instanceof Ipv6Packet && !icmpPkt.isIpv6()) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " drop the packet because it's icmpv4 inside ipv6");
+                assert Logger.lowLevelDebug(ctx.traceId + " drop the packet because it's icmpv4 inside ipv6");
                 return;
             }
 
             if (icmpPkt.isIpv6()) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " is icmpv6");
+                assert Logger.lowLevelDebug(ctx.traceId + " is icmpv6");
                 if (icmpPkt.getType() == Consts.ICMPv6_PROTOCOL_TYPE_Neighbor_Solicitation ||
                     icmpPkt.getType() == Consts.ICMPv6_PROTOCOL_TYPE_Neighbor_Advertisement) {
                     handleNDP(ctx);
                     return;
                 }
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " is not NDP");
+                assert Logger.lowLevelDebug(ctx.traceId + " is not NDP");
 
                 handleIcmpv6NotNDP(ctx);
                 return;
@@ -218,7 +218,7 @@ public class L3 {
             respondIcmpPortUnreachable(ctx);
             return;
         } // else other packet types may be supported in the future
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " nothing to be done for the packet");
+        assert Logger.lowLevelDebug(ctx.traceId + " nothing to be done for the packet");
     }
 
     private void handleIcmpv4(InputPacketL3Context ctx) {
@@ -228,7 +228,7 @@ public class L3 {
         var icmp = (IcmpPacket) ipPkt.getPacket();
 
         if (icmp.getType() != Consts.ICMP_PROTOCOL_TYPE_ECHO_REQ) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot handle this type icmp packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " cannot handle this type icmp packet");
             return;
         }
 
@@ -242,7 +242,7 @@ public class L3 {
         var icmp = (IcmpPacket) ipPkt.getPacket();
 
         if (icmp.getType() != Consts.ICMPv6_PROTOCOL_TYPE_ECHO_REQ) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot handle this type icmp packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " cannot handle this type icmp packet");
             return;
         }
 
@@ -256,7 +256,7 @@ public class L3 {
             handleNeighborSolicitation(ctx);
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot handle the ndp packet");
+        assert Logger.lowLevelDebug(ctx.traceId + " cannot handle the ndp packet");
     }
 
     private void handleNeighborSolicitation(InputPacketL3Context ctx) {
@@ -267,22 +267,22 @@ public class L3 {
 
         ByteArray other = inIcmp.getOther();
         if (other.length() < 20) { // 4 reserved and 16 target address
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " invalid packet for neighbor solicitation: too short");
+            assert Logger.lowLevelDebug(ctx.traceId + " invalid packet for neighbor solicitation: too short");
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " is a valid neighbor solicitation");
+        assert Logger.lowLevelDebug(ctx.traceId + " is a valid neighbor solicitation");
 
         byte[] targetAddr = other.sub(4, 16).toJavaArray();
         IPv6 ndpNeighborSolicitation = IP.fromIPv6(targetAddr);
 
         if (!ctx.matchedIps.contains(ndpNeighborSolicitation)) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " this ndp ns does not request for matched synthetic ip");
+            assert Logger.lowLevelDebug(ctx.traceId + " this ndp ns does not request for matched synthetic ip");
             return;
         }
 
         MacAddress correspondingMac = ctx.table.ips.lookup(ndpNeighborSolicitation);
         if (correspondingMac == null) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " requested ip is not synthetic ip");
+            assert Logger.lowLevelDebug(ctx.traceId + " requested ip is not synthetic ip");
             return;
         }
 
@@ -322,7 +322,7 @@ public class L3 {
         ether.setType(Consts.ETHER_TYPE_IPv6);
         ether.setPacket(ipv6);
 
-        directOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ether));
+        directOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ether));
     }
 
     private void respondIcmpPong(InputPacketL3Context ctx) {
@@ -334,7 +334,7 @@ public class L3 {
         var srcIp = inIpPkt.getDst();
         var srcMac = ctx.table.ips.lookup(srcIp);
         if (srcMac == null) {
-            Logger.shouldNotHappen(ctx.handlingUUID + " cannot find src mac for sending the icmp echo resp packet");
+            Logger.shouldNotHappen(ctx.traceId + " cannot find src mac for sending the icmp echo resp packet");
             return;
         }
 
@@ -343,9 +343,9 @@ public class L3 {
         icmp.setCode(0);
         icmp.setOther(inIcmp.getOther());
 
-        EthernetPacket ether = buildEtherIpIcmpPacket(ctx.handlingUUID, ctx.inputPacket.getSrc(), srcMac, srcIp, inIpPkt.getSrc(), icmp);
+        EthernetPacket ether = buildEtherIpIcmpPacket(ctx.traceId, ctx.inputPacket.getSrc(), srcMac, srcIp, inIpPkt.getSrc(), icmp);
 
-        routeOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ether));
+        routeOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ether));
     }
 
     private void respondIcmpPortUnreachable(InputPacketL3Context ctx) {
@@ -357,7 +357,7 @@ public class L3 {
         var srcIp = inIpPkt.getDst();
         var srcMac = ctx.table.ips.lookup(srcIp);
         if (srcMac == null) {
-            Logger.shouldNotHappen(ctx.handlingUUID + " cannot find src mac for sending the icmp time exceeded packet");
+            Logger.shouldNotHappen(ctx.traceId + " cannot find src mac for sending the icmp time exceeded packet");
             return;
         }
         // build the icmp time exceeded packet content
@@ -380,9 +380,9 @@ public class L3 {
                 .concat(toSet)
         );
 
-        EthernetPacket ether = buildEtherIpIcmpPacket(ctx.handlingUUID, ctx.inputPacket.getSrc(), srcMac, srcIp, inIpPkt.getSrc(), icmp);
+        EthernetPacket ether = buildEtherIpIcmpPacket(ctx.traceId, ctx.inputPacket.getSrc(), srcMac, srcIp, inIpPkt.getSrc(), icmp);
 
-        routeOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ether));
+        routeOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ether));
     }
 
     private void respondIcmpTimeExceeded(InputPacketL3Context ctx) {
@@ -390,9 +390,9 @@ public class L3 {
 
         var inIpPkt = (AbstractIpPacket) ctx.inputPacket.getPacket();
         boolean isIpv6 = inIpPkt instanceof Ipv6Packet;
-        var srcIpAndMac = getRoutedSrcIpAndMac(ctx.handlingUUID, ctx.table, inIpPkt.getSrc());
+        var srcIpAndMac = getRoutedSrcIpAndMac(ctx.traceId, ctx.table, inIpPkt.getSrc());
         if (srcIpAndMac == null) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot find src ip for sending the icmp time exceeded packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " cannot find src ip for sending the icmp time exceeded packet");
             return;
         }
         // build the icmp time exceeded packet content
@@ -415,9 +415,9 @@ public class L3 {
                 .concat(toSet)
         );
 
-        EthernetPacket ether = buildEtherIpIcmpPacket(ctx.handlingUUID, ctx.inputPacket.getSrc(), srcIpAndMac.mac, srcIpAndMac.ip, inIpPkt.getSrc(), icmp);
+        EthernetPacket ether = buildEtherIpIcmpPacket(ctx.traceId, ctx.inputPacket.getSrc(), srcIpAndMac.mac, srcIpAndMac.ip, inIpPkt.getSrc(), icmp);
 
-        routeOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ether));
+        routeOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ether));
     }
 
     private void route(InputPacketL3Context ctx) {
@@ -430,60 +430,63 @@ public class L3 {
         {
             int hop = ippkt.getHopLimit();
             if (hop <= 1) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " hop too low, drop");
+                assert Logger.lowLevelDebug(ctx.traceId + " hop too low, drop");
                 respondIcmpTimeExceeded(ctx);
                 return;
             }
             hop -= 1;
             ippkt.setHopLimit(hop);
-            ctx.inputPacket.clearRawPacket();
-            ctx.clearVXLanRawPacket();
+            if (!ippkt.isRawPacketPresent()) {
+                // not modified in place, the outer packets must be rebuilt
+                ctx.inputPacket.clearRawPacket();
+                ctx.clearVXLanRawPacket();
+            }
         }
 
         // find ruling rule for the dst
         var rule = ctx.table.routeTable.lookup(dst);
         if (rule == null) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " no route rule found");
+            assert Logger.lowLevelDebug(ctx.traceId + " no route rule found");
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " route rule found");
+        assert Logger.lowLevelDebug(ctx.traceId + " route rule found");
 
         int vni = rule.toVni;
         if (vni == ctx.table.vni) {
             // direct route
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " in the same vpc");
+            assert Logger.lowLevelDebug(ctx.traceId + " in the same vpc");
 
             MacAddress dstMac = ctx.table.lookup(dst);
             if (dstMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot find correct mac");
-                broadcastArpOrNdp(ctx.handlingUUID, ctx.table, dst);
+                assert Logger.lowLevelDebug(ctx.traceId + " cannot find correct mac");
+                broadcastArpOrNdp(ctx.traceId, ctx.table, dst);
                 return;
             }
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " found the correct mac");
+            assert Logger.lowLevelDebug(ctx.traceId + " found the correct mac");
 
-            var srcMac = getRoutedSrcMac(ctx.handlingUUID, ctx.table, dst);
+            var srcMac = getRoutedSrcMac(ctx.traceId, ctx.table, dst);
             if (srcMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot route because src mac is not found");
+                assert Logger.lowLevelDebug(ctx.traceId + " cannot route because src mac is not found");
                 return;
             }
 
             ctx.inputPacket.setSrc(srcMac);
             ctx.inputPacket.setDst(dstMac);
-            directOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ctx.inputPacket));
+            directOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ctx.inputPacket));
         } else if (vni != 0) {
             // route to another network
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " routing to another vpc: " + vni);
+            assert Logger.lowLevelDebug(ctx.traceId + " routing to another vpc: " + vni);
             Table t = swCtx.getTable(vni);
             if (t == null) { // cannot handle if the table does no exist
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " target table " + vni + " is not found");
+                assert Logger.lowLevelDebug(ctx.traceId + " target table " + vni + " is not found");
                 return;
             }
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " target table is found");
+            assert Logger.lowLevelDebug(ctx.traceId + " target table is found");
 
             // get target mac
-            var targetMac = getRoutedSrcMac(ctx.handlingUUID, t, dst);
+            var targetMac = getRoutedSrcMac(ctx.traceId, t, dst);
             if (targetMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot route because target mac is not found");
+                assert Logger.lowLevelDebug(ctx.traceId + " cannot route because target mac is not found");
                 return;
             }
 
@@ -492,86 +495,86 @@ public class L3 {
             if (ctx.inputVXLan != null) {
                 ctx.inputVXLan.setVni(t.vni);
             }
-            L2.input(new InputPacketL2Context(ctx.handlingUUID, null, t, ctx.inputVXLan, ctx.inputPacket));
+            L2.input(new InputPacketL2Context(ctx.traceId, null, t, ctx.inputVXLan, ctx.inputPacket));
         } else {
             // route based on ip
             var targetIp = rule.ip;
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " gateway rule");
+            assert Logger.lowLevelDebug(ctx.traceId + " gateway rule");
             MacAddress dstMac = ctx.table.lookup(targetIp);
             if (dstMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " mac not found in arp table, run a broadcast");
-                broadcastArpOrNdp(ctx.handlingUUID, ctx.table, targetIp);
+                assert Logger.lowLevelDebug(ctx.traceId + " mac not found in arp table, run a broadcast");
+                broadcastArpOrNdp(ctx.traceId, ctx.table, targetIp);
                 return;
             }
 
-            var srcMac = getRoutedSrcMac(ctx.handlingUUID, ctx.table, dst);
+            var srcMac = getRoutedSrcMac(ctx.traceId, ctx.table, dst);
             if (srcMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot route because src mac is not found");
+                assert Logger.lowLevelDebug(ctx.traceId + " cannot route because src mac is not found");
                 return;
             }
 
             ctx.inputPacket.setSrc(srcMac);
             ctx.inputPacket.setDst(dstMac);
-            directOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ctx.inputPacket));
+            directOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ctx.inputPacket));
         }
     }
 
-    private void broadcastArpOrNdp(String handlingUUID, Table table, IP dst) {
-        assert Logger.lowLevelDebug("getRoutedSrcMac(" + handlingUUID + "," + table + "," + dst + ")");
+    private void broadcastArpOrNdp(long traceId, Table table, IP dst) {
+        assert Logger.lowLevelDebug("getRoutedSrcMac(" + traceId + "," + table + "," + dst + ")");
         if (dst instanceof IPv4) {
-            broadcastArp(handlingUUID, table, dst);
+            broadcastArp(traceId, table, dst);
         } else {
-            broadcastNdp(handlingUUID, table, dst);
+            broadcastNdp(traceId, table, dst);
         }
     }
 
-    private void broadcastArp(String handlingUUID, Table table, IP dst) {
-        assert Logger.lowLevelDebug("broadcastArp(" + handlingUUID + "," + table + "," + dst + ")");
+    private void broadcastArp(long traceId, Table table, IP dst) {
+        assert Logger.lowLevelDebug("broadcastArp(" + traceId + "," + table + "," + dst + ")");
 
-        EthernetPacket packet = buildArpReq(handlingUUID, table, dst, new MacAddress("ff:ff:ff:ff:ff:ff"));
+        EthernetPacket packet = buildArpReq(traceId, table, dst, new MacAddress("ff:ff:ff:ff:ff:ff"));
         if (packet == null) {
-            assert Logger.lowLevelDebug(handlingUUID + " failed to build arp packet");
+            assert Logger.lowLevelDebug(traceId + " failed to build arp packet");
             return;
         }
-        directOutput(new OutputPacketL2Context(handlingUUID, table, packet));
+        directOutput(new OutputPacketL2Context(traceId, table, packet));
     }
 
-    private void unicastArp(String handlingUUID, Table table, IP dst, MacAddress dstMac) {
-        assert Logger.lowLevelDebug("unicastArp(" + handlingUUID + "," + table + "," + dst + "," + dstMac + ")");
+    private void unicastArp(long traceId, Table table, IP dst, MacAddress dstMac) {
+        assert Logger.lowLevelDebug("unicastArp(" + traceId + "," + table + "," + dst + "," + dstMac + ")");
 
-        EthernetPacket packet = buildArpReq(handlingUUID, table, dst, dstMac);
+        EthernetPacket packet = buildArpReq(traceId, table, dst, dstMac);
         if (packet == null) {
-            assert Logger.lowLevelDebug(handlingUUID + " failed to build arp packet");
+            assert Logger.lowLevelDebug(traceId + " failed to build arp packet");
             return;
         }
-        directOutput(new OutputPacketL2Context(handlingUUID, table, packet));
+        directOutput(new OutputPacketL2Context(traceId, table, packet));
     }
 
-    private void broadcastNdp(String handlingUUID, Table table, IP dst) {
-        assert Logger.lowLevelDebug("broadcastNdp(" + handlingUUID + "," + table + "," + dst + ")");
+    private void broadcastNdp(long traceId, Table table, IP dst) {
+        assert Logger.lowLevelDebug("broadcastNdp(" + traceId + "," + table + "," + dst + ")");
 
-        EthernetPacket packet = buildNdpNeighborSolicitation(handlingUUID, table, dst, new MacAddress("ff:ff:ff:ff:ff:ff"));
+        EthernetPacket packet = buildNdpNeighborSolicitation(traceId, table, dst, new MacAddress("ff:ff:ff:ff:ff:ff"));
         if (packet == null) {
-            assert Logger.lowLevelDebug(handlingUUID + " failed to build ndp neighbor solicitation packet");
+            assert Logger.lowLevelDebug(traceId + " failed to build ndp neighbor solicitation packet");
             return;
         }
-        directOutput(new OutputPacketL2Context(handlingUUID, table, packet));
+        directOutput(new OutputPacketL2Context(traceId, table, packet));
     }
 
-    private void unicastNdp(String handlingUUID, Table table, IP dst, MacAddress dstMac) {
-        assert Logger.lowLevelDebug("unicastNdp(" + handlingUUID + "," + table + "," + dst + "," + dstMac + ")");
+    private void unicastNdp(long traceId, Table table, IP dst, MacAddress dstMac) {
+        assert Logger.lowLevelDebug("unicastNdp(" + traceId + "," + table + "," + dst + "," + dstMac + ")");
 
-        EthernetPacket packet = buildNdpNeighborSolicitation(handlingUUID, table, dst, dstMac);
+        EthernetPacket packet = buildNdpNeighborSolicitation(traceId, table, dst, dstMac);
         if (packet == null) {
-            assert Logger.lowLevelDebug(handlingUUID + " failed to build ndp neighbor solicitation packet");
+            assert Logger.lowLevelDebug(traceId + " failed to build ndp neighbor solicitation packet");
             return;
         }
 
-        directOutput(new OutputPacketL2Context(handlingUUID, table, packet));
+        directOutput(new OutputPacketL2Context(traceId, table, packet));
     }
 
-    private IPMac getRoutedSrcIpAndMac(String handlingUUID, Table table, IP dstIp) {
-        assert Logger.lowLevelDebug("getRoutedSrcIpAndMac(" + handlingUUID + ", " + table + "," + dstIp + ")");
+    private IPMac getRoutedSrcIpAndMac(long traceId, Table table, IP dstIp) {
+        assert Logger.lowLevelDebug("getRoutedSrcIpAndMac(" + traceId + ", " + table + "," + dstIp + ")");
 
         // find an ip in that table to be used for the src mac address
         var ipsInTable = table.ips.entries();
@@ -590,17 +593,17 @@ public class L3 {
         return src;
     }
 
-    private MacAddress getRoutedSrcMac(String handlingUUID, Table table, IP dstIp) {
-        assert Logger.lowLevelDebug("getRoutedSrcMac(" + handlingUUID + "," + table + "," + dstIp + ")");
-        var entry = getRoutedSrcIpAndMac(handlingUUID, table, dstIp);
+    private MacAddress getRoutedSrcMac(long traceId, Table table, IP dstIp) {
+        assert Logger.lowLevelDebug("getRoutedSrcMac(" + traceId + "," + table + "," + dstIp + ")");
+        var entry = getRoutedSrcIpAndMac(traceId, table, dstIp);
         if (entry == null) {
             return null;
         }
         return entry.mac;
     }
 
-    private EthernetPacket buildEtherIpIcmpPacket(String handlingUUID, MacAddress dstMac, MacAddress srcMac, IP srcIp, IP dstIp, IcmpPacket icmp) {
-        assert Logger.lowLevelDebug("buildIpIcmpPacket(" + handlingUUID + "," + dstMac + "," + srcMac + srcIp + "," + dstIp + icmp + ")");
+    private EthernetPacket buildEtherIpIcmpPacket(long traceId, MacAddress dstMac, MacAddress srcMac, IP srcIp, IP dstIp, IcmpPacket icmp) {
+        assert Logger.lowLevelDebug("buildIpIcmpPacket(" + traceId + "," + dstMac + "," + srcMac + srcIp + "," + dstIp + icmp + ")");
 
         AbstractIpPacket ipPkt;
         if (srcIp instanceof IPv4) {
@@ -642,12 +645,12 @@ public class L3 {
         return ether;
     }
 
-    private EthernetPacket buildArpReq(String handlingUUID, Table table, IP dstIp, MacAddress dstMac) {
-        assert Logger.lowLevelDebug("buildArpReq(" + handlingUUID + "," + table + "," + dstIp + "," + dstMac + ")");
+    private EthernetPacket buildArpReq(long traceId, Table table, IP dstIp, MacAddress dstMac) {
+        assert Logger.lowLevelDebug("buildArpReq(" + traceId + "," + table + "," + dstIp + "," + dstMac + ")");
 
         var optIp = table.ips.entries().stream().filter(x -> x.ip instanceof IPv4).findAny();
         if (optIp.isEmpty()) {
-            assert Logger.lowLevelDebug(handlingUUID + " cannot find synthetic ipv4 in the table");
+            assert Logger.lowLevelDebug(traceId + " cannot find synthetic ipv4 in the table");
             return null;
         }
         IP reqIp = optIp.get().ip;
@@ -673,12 +676,12 @@ public class L3 {
         return ether;
     }
 
-    private EthernetPacket buildNdpNeighborSolicitation(String handlingUUID, Table table, IP dstIp, MacAddress dstMac) {
-        assert Logger.lowLevelDebug("buildNdpNeighborSolicitation(" + handlingUUID + "," + table + "," + dstIp + "," + dstMac + ")");
+    private EthernetPacket buildNdpNeighborSolicitation(long traceId, Table table, IP dstIp, MacAddress dstMac) {
+        assert Logger.lowLevelDebug("buildNdpNeighborSolicitation(" + traceId + "," + table + "," + dstIp + "," + dstMac + ")");
 
         var optIp = table.ips.entries().stream().filter(x -> x.ip instanceof IPv6).findAny();
         if (optIp.isEmpty()) {
-            assert Logger.lowLevelDebug(handlingUUID + " cannot find synthetic ipv4 in the table");
+            assert Logger.lowLevelDebug(traceId + " cannot find synthetic ipv4 in the table");
             return null;
         }
         IP reqIp = optIp.get().ip;
@@ -729,7 +732,7 @@ public class L3 {
         assert Logger.lowLevelDebug("routeOutput(" + ctx + ")");
 
         if (!ctx.outputPacket.getDst().isUnicast()) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " packet is not unicast, no need to route");
+            assert Logger.lowLevelDebug(ctx.traceId + " packet is not unicast, no need to route");
             directOutput(ctx);
             return;
         }
@@ -738,39 +741,39 @@ public class L3 {
         var dst = ipPkt.getDst();
         var routeRule = ctx.table.routeTable.lookup(dst);
         if (routeRule == null) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " no route rule found for the ip dst, no need to route");
+            assert Logger.lowLevelDebug(ctx.traceId + " no route rule found for the ip dst, no need to route");
             directOutput(ctx);
             return;
         }
 
         if (routeRule.toVni == ctx.table.vni) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " direct route, no changes required");
+            assert Logger.lowLevelDebug(ctx.traceId + " direct route, no changes required");
             directOutput(ctx);
         } else if (routeRule.toVni != 0) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " route to another vpc");
+            assert Logger.lowLevelDebug(ctx.traceId + " route to another vpc");
 
             // search for any synthetic ip in the target vpc
             Table targetTable = swCtx.getTable(routeRule.toVni);
             if (targetTable == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " target vpc not found");
+                assert Logger.lowLevelDebug(ctx.traceId + " target vpc not found");
                 return;
             }
-            MacAddress targetMac = getRoutedSrcMac(ctx.handlingUUID, targetTable, dst);
+            MacAddress targetMac = getRoutedSrcMac(ctx.traceId, targetTable, dst);
             if (targetMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot find dst mac for sending this packet to another vpc");
+                assert Logger.lowLevelDebug(ctx.traceId + " cannot find dst mac for sending this packet to another vpc");
                 return;
             }
             ctx.outputPacket.setSrc(targetMac);
             ctx.outputPacket.setDst(targetMac);
-            L2.input(new InputPacketL2Context(ctx.handlingUUID, null, targetTable, ctx.outputPacket));
+            L2.input(new InputPacketL2Context(ctx.traceId, null, targetTable, ctx.outputPacket));
         } else {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " route based on ip");
+            assert Logger.lowLevelDebug(ctx.traceId + " route based on ip");
 
             var targetIp = routeRule.ip;
             MacAddress dstMac = ctx.table.lookup(targetIp);
             if (dstMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " mac not found in arp table, run a broadcast");
-                broadcastArpOrNdp(ctx.handlingUUID, ctx.table, targetIp);
+                assert Logger.lowLevelDebug(ctx.traceId + " mac not found in arp table, run a broadcast");
+                broadcastArpOrNdp(ctx.traceId, ctx.table, targetIp);
                 return;
             }
 
@@ -799,8 +802,8 @@ public class L3 {
             dstMac = ctx.table.lookup(ctx.outputPacket.getDst());
 
             if (dstMac == null) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " cannot find dst mac for sending the packet");
-                broadcastArpOrNdp(ctx.handlingUUID, ctx.table, ctx.outputPacket.getDst());
+                assert Logger.lowLevelDebug(ctx.traceId + " cannot find dst mac for sending the packet");
+                broadcastArpOrNdp(ctx.traceId, ctx.table, ctx.outputPacket.getDst());
                 return;
             }
         } else {
@@ -817,6 +820,6 @@ public class L3 {
         ether.setPacket(ctx.outputPacket);
 
         // route out
-        routeOutput(new OutputPacketL2Context(ctx.handlingUUID, ctx.table, ether));
+        routeOutput(new OutputPacketL2Context(ctx.traceId, ctx.table, ether));
     }
 }
@@ -25,11 +25,11 @@ public class L4 {
     public boolean input(InputPacketL4Context ctx) {
         assert Logger.lowLevelDebug("L4.input(" + ctx + ")");
         if (!wantToHandle(ctx)) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " L4 stack doesn't handle this packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " L4 stack doesn't handle this packet");
             return false;
         }
         if (ctx.needTcpReset) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " reset the packet");
+            assert Logger.lowLevelDebug(ctx.traceId + " reset the packet");
             sendRst(ctx);
             return true;
         }
@@ -38,7 +38,7 @@ public class L4 {
             return true;
         }
         // implement more L4 protocols in the future
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " this packet is not handled by L4");
+        assert Logger.lowLevelDebug(ctx.traceId + " this packet is not handled by L4");
         return true;
     }
 
@@ -61,11 +61,11 @@ public class L4 {
                 // only consider the packets with only SYN on it
                 var listenEntry = ctx.table.conntrack.lookupListen(dst);
                 if (listenEntry != null) {
-                    assert Logger.lowLevelDebug(ctx.handlingUUID + " got new connection");
+                    assert Logger.lowLevelDebug(ctx.traceId + " got new connection");
 
                     // check backlog
                     if (listenEntry.synBacklog.size() >= ListenEntry.MAX_SYN_BACKLOG_SIZE) {
-                        assert Logger.lowLevelDebug(ctx.handlingUUID + " syn-backlog is full");
+                        assert Logger.lowLevelDebug(ctx.traceId + " syn-backlog is full");
                         // here we reset the connection instead of dropping it like linux
                         ctx.needTcpReset = true;
                     } else {
@@ -149,6 +149,12 @@ public class L4 {
                 respondTcp.getOptions().add(optWindowScale);
             }
         }
+        if (ctx.tcp.isSackPermitted()) {
+            var optSackPermitted = new TcpPacket.TcpOption();
+            optSackPermitted.setKind(Consts.TCP_OPTION_SACK_PERMITTED);
+            optSackPermitted.setData(ByteArray.allocate(0));
+            respondTcp.getOptions().add(optSackPermitted);
+        }
         return respondTcp;
     }
 
@@ -200,11 +206,11 @@ public class L4 {
             ipPkt = ipv6;
         }
 
-        L3.output(new OutputPacketL3Context(ctx.handlingUUID, ctx.table, ipPkt));
+        L3.output(new OutputPacketL3Context(ctx.traceId, ctx.table, ipPkt));
     }
 
     private void handleTcpClosed(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpClosed");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpClosed");
 
         var tcpPkt = (TcpPacket) ctx.inputIpPacket.getPacket();
         // only handle syn
@@ -225,6 +231,9 @@ public class L4 {
                     int s = opt.getData().uint8(0);
                     windowScale = 1 << s;
                     break;
+                case Consts.TCP_OPTION_SACK_PERMITTED:
+                    ctx.tcp.setSackPermitted(true);
+                    break;
             }
         }
         ctx.tcp.sendingQueue.init(tcpPkt.getWindow(), mss, windowScale);
@@ -235,7 +244,7 @@ public class L4 {
 
         ctx.tcp.sendingQueue.incAllSeq();
 
-        L3.output(new OutputPacketL3Context(ctx.handlingUUID, ctx.table, respondIp));
+        L3.output(new OutputPacketL3Context(ctx.traceId, ctx.table, respondIp));
     }
 
     private void handleTcpSynSent(@SuppressWarnings("unused") InputPacketL4Context ctx) {
@@ -243,27 +252,27 @@ public class L4 {
     }
 
     private void handleTcpSynReceived(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpSynReceived");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpSynReceived");
         // first check whether the packet has ack, and if so, check the ack number
         var tcpPkt = (TcpPacket) ctx.inputIpPacket.getPacket();
         if (tcpPkt.isSyn()) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " probably a syn retransmission");
+            assert Logger.lowLevelDebug(ctx.traceId + " probably a syn retransmission");
             if (tcpPkt.getSeqNum() == ctx.tcp.receivingQueue.getAckedSeq() - 1) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " seq matches");
+                assert Logger.lowLevelDebug(ctx.traceId + " seq matches");
                 ctx.tcp.sendingQueue.decAllSeq();
                 TcpPacket respondTcp = buildSynAck(ctx);
                 AbstractIpPacket respondIp = TcpUtils.buildIpResponse(ctx.tcp, respondTcp);
                 ctx.tcp.sendingQueue.incAllSeq();
-                L3.output(new OutputPacketL3Context(ctx.handlingUUID, ctx.table, respondIp));
+                L3.output(new OutputPacketL3Context(ctx.traceId, ctx.table, respondIp));
                 return;
             }
         }
         if (!tcpPkt.isAck()) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " no ack flag set");
+            assert Logger.lowLevelDebug(ctx.traceId + " no ack flag set");
             return;
         }
         if (tcpPkt.getAckNum() != ctx.tcp.sendingQueue.getAckSeq()) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " wrong ack number");
+            assert Logger.lowLevelDebug(ctx.traceId + " wrong ack number");
             return;
         }
         connectionEstablishes(ctx);
@@ -273,7 +282,7 @@ public class L4 {
     }
 
     private void connectionEstablishes(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " connectionEstablishes");
+        assert Logger.lowLevelDebug(ctx.traceId + " connectionEstablishes");
         ctx.tcp.setState(TcpState.ESTABLISHED);
         // alert that this connection can be retrieved
         var parent = ctx.tcp.getParent();
@@ -283,7 +292,7 @@ public class L4 {
     }
 
     private boolean handleTcpGeneralReturnFalse(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpGeneral");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpGeneral");
 
         var tcpPkt = (TcpPacket) ctx.inputIpPacket.getPacket();
 
@@ -293,12 +302,14 @@ public class L4 {
         var acked = ctx.tcp.receivingQueue.getAckedSeq();
         if (tcpPkt.isFin()) {
             if (seq != acked) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " data not fully consumed yet but received FIN");
+                assert Logger.lowLevelDebug(ctx.traceId + " data not fully consumed yet but received FIN");
                 return true;
             }
         } else if (seq != expect) {
-            if (!tcpPkt.isPsh() || seq > expect) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " invalid sequence number");
+            // the data might be retransmitted (seq < expect) or out of order (seq > expect)
+            // which are handled when storing
+            if (tcpPkt.getData().length() == 0) {
+                assert Logger.lowLevelDebug(ctx.traceId + " invalid sequence number");
                 return true;
             }
         }
@@ -306,72 +317,76 @@ public class L4 {
         if (tcpPkt.isAck()) {
             long ack = tcpPkt.getAckNum();
             int window = tcpPkt.getWindow();
-            ctx.tcp.sendingQueue.ack(ack, window);
-            // then check whether there's data to send
-            // because the window may forbid it from sending
-            // ack resets the window so it might get chance to send data
-            if (ctx.tcp.retransmissionTimer == null) {
-                tcpStartRetransmission(ctx.handlingUUID, ctx.table, ctx.tcp);
+            long lastAckSeq = ctx.tcp.sendingQueue.getAckSeq();
+            ctx.tcp.sendingQueue.ack(ack, window, TcpUtils.parseSackBlocks(tcpPkt), tcpPkt.getData().length() == 0);
+            if (ctx.tcp.sendingQueue.getAckSeq() != lastAckSeq && ctx.tcp.retransmissionTimer != null) {
+                // new data acked, restart the timer
+                ctx.tcp.retransmissionTimer.cancel();
+                ctx.tcp.retransmissionTimer = null;
             }
+            // then check whether there's data to send
+            // the ack may open the windows, or trigger the fast retransmission
+            transmitTcp(ctx.traceId, ctx.table, ctx.tcp);
         }
         return false;
     }
 
     private void handleTcpEstablished(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpEstablished");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpEstablished");
         if (handleTcpGeneralReturnFalse(ctx)) {
             return;
         }
         var tcpPkt = (TcpPacket) ctx.inputIpPacket.getPacket();
-        if (tcpPkt.isPsh()) {
+        ByteArray data = tcpPkt.getData();
+        if (data.length() > 0) { // PSH is not required, the sender may only set it on the last segment of a burst
             long seq = tcpPkt.getSeqNum();
-            ByteArray data = tcpPkt.getData();
             ctx.tcp.receivingQueue.store(new Segment(seq, data));
+            tcpAck(ctx.traceId, ctx.table, ctx.tcp);
         }
         if (tcpPkt.isFin()) {
             ctx.tcp.setState(TcpState.CLOSE_WAIT);
             ctx.tcp.receivingQueue.incExpectingSeq();
-            tcpAck(ctx.handlingUUID, ctx.table, ctx.tcp);
+            tcpAck(ctx.traceId, ctx.table, ctx.tcp);
         }
     }
 
     private void handleTcpFinWait1(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpFinWait1");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpFinWait1");
         if (handleTcpGeneralReturnFalse(ctx)) {
             return;
         }
         var tcpPkt = (TcpPacket) ctx.inputIpPacket.getPacket();
         if (tcpPkt.isFin()) {
             if (ctx.tcp.sendingQueue.ackOfFinReceived()) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " transform to CLOSING");
+                assert Logger.lowLevelDebug(ctx.traceId + " transform to CLOSING");
                 ctx.tcp.setState(TcpState.CLOSING);
                 sendRst(ctx);
             } else {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " received FIN but the previous sent FIN not acked");
+                assert Logger.lowLevelDebug(ctx.traceId + " received FIN but the previous sent FIN not acked");
             }
         } else {
             if (ctx.tcp.sendingQueue.ackOfFinReceived()) {
-                assert Logger.lowLevelDebug(ctx.handlingUUID + " the sent FIN is acked, transform to FIN_WAIT_2");
+                assert Logger.lowLevelDebug(ctx.traceId + " the sent FIN is acked, transform to FIN_WAIT_2");
                 ctx.tcp.setState(TcpState.FIN_WAIT_2);
             }
         }
     }
 
     private void handleTcpFinWait2(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpFinWait2");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpFinWait2");
         if (handleTcpGeneralReturnFalse(ctx)) {
             return;
         }
         var tcpPkt = (TcpPacket) ctx.inputIpPacket.getPacket();
         if (tcpPkt.isFin()) {
-            assert Logger.lowLevelDebug(ctx.handlingUUID + " transform to CLOSING");
+            assert Logger.lowLevelDebug(ctx.traceId + " transform to CLOSING");
             ctx.tcp.setState(TcpState.CLOSING);
             sendRst(ctx);
         }
     }
 
     private void handleTcpCloseWait(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpCloseWait");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpCloseWait");
         if (handleTcpGeneralReturnFalse(ctx)) {
             return;
         }
@@ -379,17 +394,17 @@ public class L4 {
         if (tcpPkt.isFin()) {
             assert Logger.lowLevelDebug("received FIN again, maybe it's retransmission");
             if (tcpPkt.getSeqNum() == ctx.tcp.receivingQueue.getExpectingSeq() - 1) {
-                tcpAck(ctx.handlingUUID, ctx.table, ctx.tcp);
+                tcpAck(ctx.traceId, ctx.table, ctx.tcp);
             }
         }
     }
 
     private void handleTcpClosing(InputPacketL4Context ctx) {
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " handleTcpClosing");
+        assert Logger.lowLevelDebug(ctx.traceId + " handleTcpClosing");
         if (handleTcpGeneralReturnFalse(ctx)) {
             return;
         }
-        assert Logger.lowLevelDebug(ctx.handlingUUID + " drop any packet when it's in CLOSING state");
+        assert Logger.lowLevelDebug(ctx.traceId + " drop any packet when it's in CLOSING state");
     }
 
     private void handleLastAck(@SuppressWarnings("unused") InputPacketL4Context ctx) {
@@ -405,28 +420,28 @@ public class L4 {
         L3.output(ctx);
     }
 
-    public void tcpAck(String handlingUUID, Table table, TcpEntry tcp) {
-        assert Logger.lowLevelDebug("tcpAck(" + handlingUUID + ", " + table + ", " + tcp + ")");
+    public void tcpAck(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("tcpAck(" + traceId + ", " + table + ", " + tcp + ")");
 
-        if (tcp.receivingQueue.getWindow() == 0) {
-            assert Logger.lowLevelDebug(handlingUUID + " no window, very bad, need to ack immediately");
+        if (tcp.receivingQueue.getWindow() == 0 || tcp.receivingQueue.needImmediateAck()) {
+            assert Logger.lowLevelDebug(traceId + " no window or out-of-order/enough data received, need to ack immediately");
             if (tcp.delayedAckTimer != null) {
-                assert Logger.lowLevelDebug(handlingUUID + " cancel the timer");
+                assert Logger.lowLevelDebug(traceId + " cancel the timer");
                 tcp.delayedAckTimer.cancel();
                 tcp.delayedAckTimer = null;
             }
-            sendAck(handlingUUID, table, tcp);
+            sendAck(traceId, table, tcp);
             return;
         }
         if (tcp.delayedAckTimer != null) {
-            assert Logger.lowLevelDebug(handlingUUID + " delayed ack already scheduled");
+            assert Logger.lowLevelDebug(traceId + " delayed ack already scheduled");
             return;
         }
-        tcp.delayedAckTimer = swCtx.getSelectorEventLoop().delay(TcpEntry.DELAYED_ACK_TIMEOUT, () -> sendAck(handlingUUID, table, tcp));
+        tcp.delayedAckTimer = swCtx.getSelectorEventLoop().delay(TcpEntry.DELAYED_ACK_TIMEOUT, () -> sendAck(traceId, table, tcp));
     }
 
-    private void sendAck(String handlingUUID, Table table, TcpEntry tcp) {
-        assert Logger.lowLevelDebug("sendAck(" + handlingUUID + ", " + table + ", " + tcp + ")");
+    private void sendAck(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("sendAck(" + traceId + ", " + table + ", " + tcp + ")");
 
         if (tcp.delayedAckTimer != null) {
             tcp.delayedAckTimer.cancel();
@@ -435,110 +450,105 @@ public class L4 {
 
         TcpPacket respondTcp = TcpUtils.buildAckResponse(tcp);
         AbstractIpPacket respondIp = TcpUtils.buildIpResponse(tcp, respondTcp);
-        L3.output(new OutputPacketL3Context(handlingUUID, table, respondIp));
+        tcp.receivingQueue.ackSent();
+        L3.output(new OutputPacketL3Context(traceId, table, respondIp));
     }
 
-    public void tcpStartRetransmission(String handlingUUID, Table table, TcpEntry tcp) {
-        assert Logger.lowLevelDebug("tcpStartRetransmission(" + handlingUUID + "," + table + "," + tcp + ")");
-        transmitTcp(handlingUUID, table, tcp, 0, 0);
+    public void tcpStartRetransmission(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("tcpStartRetransmission(" + traceId + "," + table + "," + tcp + ")");
+        transmitTcp(traceId, table, tcp);
     }
 
-    private void transmitTcp(String handlingUUID, Table table, TcpEntry tcp, long lastBeginSeq, int retransmissionCount) {
-        assert Logger.lowLevelDebug("transmitTcp(" + handlingUUID + "," + table + "," + tcp + ")");
+    // send the segments allowed by the windows, and maintain the retransmission timer (rfc 6298)
+    private void transmitTcp(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("transmitTcp(" + traceId + "," + table + "," + tcp + ")");
 
-        if (tcp.retransmissionTimer != null) { // reset timer
-            tcp.retransmissionTimer.cancel();
-            tcp.retransmissionTimer = null;
+        List<Segment> segments = tcp.sendingQueue.fetch();
+        for (var s : segments) {
+            sendTcpPsh(traceId, table, tcp, s);
         }
-
-        // check whether need to reset the connection because of too many retransmits
-        if (tcp.requireClosing() && retransmissionCount > TcpEntry.MAX_RETRANSMISSION_AFTER_CLOSING) {
-            assert Logger.lowLevelDebug(handlingUUID + " conn " + tcp + " is closed due to too many retransmission after closing");
-            resetTcpConnection(handlingUUID, table, tcp);
-            return;
+        if (tcp.sendingQueue.fetchFin()) {
+            assert Logger.lowLevelDebug(traceId + " need to send FIN");
+            sendTcpFin(traceId, table, tcp);
         }
 
-        List<Segment> segments = tcp.sendingQueue.fetch();
-        if (segments.isEmpty()) { // no data to send, check FIN
-            if (tcp.sendingQueue.needToSendFin()) {
-                assert Logger.lowLevelDebug(handlingUUID + " need to send FIN");
-                // fall through
-            } else {
-                // nothing to send
-                assert Logger.lowLevelDebug(handlingUUID + " no need to retransmit after " + retransmissionCount + " time(s)");
-                if (tcp.retransmissionTimer != null) {
-                    tcp.retransmissionTimer.cancel();
-                    tcp.retransmissionTimer = null;
-                }
-                afterTransmission(handlingUUID, table, tcp);
-                return;
+        if (!tcp.sendingQueue.hasMoreData() && !tcp.sendingQueue.needToSendFin()) {
+            // nothing to send
+            assert Logger.lowLevelDebug(traceId + " all data acked, no need to retransmit");
+            if (tcp.retransmissionTimer != null) {
+                tcp.retransmissionTimer.cancel();
+                tcp.retransmissionTimer = null;
             }
+            afterTransmission(traceId, table, tcp);
+            return;
         }
-        long currentBeginSeq = segments.isEmpty() ? tcp.sendingQueue.getFetchSeq() + 1 : segments.get(0).seqBeginInclusive;
-        if (currentBeginSeq != lastBeginSeq) {
-            assert Logger.lowLevelDebug(handlingUUID + " the sequence increased, it's not retransmitting after " + retransmissionCount + " time(s)");
-            retransmissionCount = 0;
+        if (tcp.retransmissionTimer != null) {
+            return; // already running
         }
+        // also works as the persist timer when the remote window is closed
+        int delay = tcp.sendingQueue.getRto();
+        assert Logger.lowLevelDebug(traceId + " will delay " + delay + " ms then retransmit");
+        tcp.retransmissionTimer = swCtx.getSelectorEventLoop().delay(delay, () -> retransmissionTimeout(traceId, table, tcp));
+    }
 
-        // initiate timer
-        int delay = TcpEntry.RTO_MIN << retransmissionCount;
-        if (delay <= 0 || delay > TcpEntry.RTO_MAX) { // overflow or exceeds maximum
-            delay = TcpEntry.RTO_MAX;
-        }
-        assert Logger.lowLevelDebug(handlingUUID + " will delay " + delay + " ms then retransmit");
-        final int finalRetransmissionCount = retransmissionCount;
-        tcp.retransmissionTimer = swCtx.getSelectorEventLoop().delay(delay, () ->
-            transmitTcp(handlingUUID, table, tcp, currentBeginSeq, finalRetransmissionCount + 1)
-        );
+    private void retransmissionTimeout(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("retransmissionTimeout(" + traceId + "," + table + "," + tcp + ")");
+        tcp.retransmissionTimer = null;
 
-        if (segments.isEmpty()) {
-            assert tcp.sendingQueue.needToSendFin();
-            sendTcpFin(handlingUUID, table, tcp);
-        } else {
-            for (var s : segments) {
-                sendTcpPsh(handlingUUID, table, tcp, s);
-            }
+        // check whether need to reset the connection because of too many retransmits
+        if (tcp.requireClosing() && tcp.sendingQueue.getBackoff() >= TcpEntry.MAX_RETRANSMISSION_AFTER_CLOSING) {
+            assert Logger.lowLevelDebug(traceId + " conn " + tcp + " is closed due to too many retransmission after closing");
+            resetTcpConnection(traceId, table, tcp);
+            return;
         }
+        tcp.sendingQueue.timeout();
+        transmitTcp(traceId, table, tcp);
     }
 
-    private void afterTransmission(String handlingUUID, Table table, TcpEntry tcp) {
-        assert Logger.lowLevelDebug("afterTransmission(" + handlingUUID + "," + table + "," + tcp + "," + ")");
+    private void afterTransmission(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("afterTransmission(" + traceId + "," + table + "," + tcp + "," + ")");
 
         if (tcp.requireClosing()) {
-            assert Logger.lowLevelDebug(handlingUUID + " need to be closed");
-            resetTcpConnection(handlingUUID, table, tcp);
+            assert Logger.lowLevelDebug(traceId + " need to be closed");
+            resetTcpConnection(traceId, table, tcp);
         }
     }
 
-    public void resetTcpConnection(String handlingUUID, Table table, TcpEntry tcp) {
-        assert Logger.lowLevelDebug("sendTcpRst(" + handlingUUID + "," + table + "," + tcp + "," + ")");
+    public void resetTcpConnection(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("sendTcpRst(" + traceId + "," + table + "," + tcp + "," + ")");
 
-        output(new OutputPacketL3Context(handlingUUID, table,
+        output(new OutputPacketL3Context(traceId, table,
             TcpUtils.buildIpResponse(tcp, TcpUtils.buildRstResponse(tcp))));
         tcp.setState(TcpState.CLOSED);
         table.conntrack.remove(tcp.source, tcp.destination);
     }
 
-    private void sendTcpPsh(String handlingUUID, Table table, TcpEntry tcp, Segment s) {
-        assert Logger.lowLevelDebug("sendTcpPsh(" + handlingUUID + "," + table + "," + tcp + "," + s + ")");
+    private void sendTcpPsh(long traceId, Table table, TcpEntry tcp, Segment s) {
+        assert Logger.lowLevelDebug("sendTcpPsh(" + traceId + "," + table + "," + tcp + "," + s + ")");
 
         TcpPacket tcpPkt = TcpUtils.buildCommonTcpResponse(tcp);
         tcpPkt.setSeqNum(s.seqBeginInclusive);
         tcpPkt.setFlags(Consts.TCP_FLAGS_PSH | Consts.TCP_FLAGS_ACK);
         tcpPkt.setData(s.data);
         AbstractIpPacket ipPkt = TcpUtils.buildIpResponse(tcp, tcpPkt);
+        // the ack is carried by the data
+        if (tcp.delayedAckTimer != null) {
+            tcp.delayedAckTimer.cancel();
+            tcp.delayedAckTimer = null;
+        }
+        tcp.receivingQueue.ackSent();
 
-        L3.output(new OutputPacketL3Context(handlingUUID, table, ipPkt));
+        L3.output(new OutputPacketL3Context(traceId, table, ipPkt));
     }
 
-    private void sendTcpFin(String handlingUUID, Table table, TcpEntry tcp) {
-        assert Logger.lowLevelDebug("sendTcpFin(" + handlingUUID + "," + table + "," + tcp + ")");
+    private void sendTcpFin(long traceId, Table table, TcpEntry tcp) {
+        assert Logger.lowLevelDebug("sendTcpFin(" + traceId + "," + table + "," + tcp + ")");
 
         TcpPacket tcpPkt = TcpUtils.buildCommonTcpResponse(tcp);
         tcpPkt.setSeqNum(tcp.sendingQueue.getFetchSeq());
         tcpPkt.setFlags(Consts.TCP_FLAGS_FIN | Consts.TCP_FLAGS_ACK);
         AbstractIpPacket ipPkt = TcpUtils.buildIpResponse(tcp, tcpPkt);
 
-        L3.output(new OutputPacketL3Context(handlingUUID, table, ipPkt));
+        L3.output(new OutputPacketL3Context(traceId, table, ipPkt));
     }
 }
@@ -4,14 +4,14 @@ import vpacket.AbstractEthernetPacket;
 import vswitch.Table;
 
 public class OutputPacketL2Context {
-    public final String handlingUUID;
+    public final long traceId;
     public final Table table;
     public final AbstractEthernetPacket outputPacket;
 
-    public OutputPacketL2Context(String handlingUUID,
+    public OutputPacketL2Context(long traceId,
                                  Table table,
                                  AbstractEthernetPacket outputPacket) {
-        this.handlingUUID = handlingUUID;
+        this.traceId = traceId;
         this.table = table;
         this.outputPacket = outputPacket;
     }
@@ -19,7 +19,7 @@ public class OutputPacketL2Context {
     @Override
     public String toString() {
         return "OutputPacketL2Context{" +
-            "handlingUUID='" + handlingUUID + '\'' +
+            "traceId=" + traceId +
             ", table=" + table.vni +
             ", outputPacket=" + outputPacket +
             '}';
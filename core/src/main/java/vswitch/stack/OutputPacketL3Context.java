@@ -4,14 +4,14 @@ import vpacket.AbstractIpPacket;
 import vswitch.Table;
 
 public class OutputPacketL3Context {
-    public final String handlingUUID;
+    public final long traceId;
     public final Table table;
     public final AbstractIpPacket outputPacket;
 
-    public OutputPacketL3Context(String handlingUUID,
+    public OutputPacketL3Context(long traceId,
                                  Table table,
                                  AbstractIpPacket outputPacket) {
-        this.handlingUUID = handlingUUID;
+        this.traceId = traceId;
         this.table = table;
         this.outputPacket = outputPacket;
     }
@@ -19,7 +19,7 @@ public class OutputPacketL3Context {
     @Override
     public String toString() {
         return "OutputPacketL3Context{" +
-            "handlingUUID='" + handlingUUID + '\'' +
+            "traceId=" + traceId +
             ", table=" + table.vni +
             ", outputPacket=" + outputPacket +
             '}';
@@ -58,4 +58,17 @@ public class SwitchContext {
     public SelectorEventLoop getSelectorEventLoop() {
         return getSelectorEventLoopFunc.getSelectorEventLoop();
     }
+
+    private long traceId = 0; // see newTraceId()
+
+    /**
+     * @return an id for tracing the handling of one packet in the debug logs,
+     * it's a plain counter, so it's cheap enough to be generated for every packet.<br>
+     * the counter does not depend on the event loop, so it's still available after the switch is stopped.
+     * it's not synchronized, the switch stack runs on one loop thread,
+     * calling it from other threads only risks generating duplicated ids.
+     */
+    public long newTraceId() {
+        return ++traceId;
+    }
 }
@@ -5,7 +5,6 @@ import vproxybase.selector.wrap.VirtualFD;
 
 import java.io.IOException;
 import java.net.SocketOption;
-import java.util.UUID;
 
 public abstract class VSwitchFD implements FD, VirtualFD {
     protected final VSwitchFDContext ctx;
@@ -21,8 +20,8 @@ public abstract class VSwitchFD implements FD, VirtualFD {
         }
     }
 
-    protected String getUUID() {
-        return UUID.randomUUID().toString();
+    protected long newTraceId() {
+        return ctx.swCtx.newTraceId();
     }
 
     @Override
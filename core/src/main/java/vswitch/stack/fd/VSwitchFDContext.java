@@ -5,8 +5,10 @@ import vswitch.Switch;
 import vswitch.Table;
 import vpacket.conntrack.Conntrack;
 import vswitch.stack.L4;
+import vswitch.stack.SwitchContext;
 
 public class VSwitchFDContext {
+    public final SwitchContext swCtx;
     public final L4 L4;
     public final Table table;
     public final Conntrack conntrack;
@@ -15,6 +17,7 @@ public class VSwitchFDContext {
     public VSwitchFDContext(Switch sw,
                             Table table,
                             WrappedSelector selector) {
+        swCtx = sw.netStack.swCtx;
         L4 = sw.netStack.L2.L3.L4;
         this.table = table;
         this.conntrack = table.conntrack;
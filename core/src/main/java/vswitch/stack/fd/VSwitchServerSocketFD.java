@@ -96,13 +96,13 @@ public class VSwitchServerSocketFD extends VSwitchFD implements ServerSocketFD {
         }
         for (var e : entry.synBacklog) {
             ctx.L4.output(new OutputPacketL3Context(
-                getUUID(), ctx.table,
+                newTraceId(), ctx.table,
                 TcpUtils.buildIpResponse(e, TcpUtils.buildRstResponse(e))
             ));
         }
         for (var e : entry.backlog) {
             ctx.L4.output(new OutputPacketL3Context(
-                getUUID(), ctx.table,
+                newTraceId(), ctx.table,
                 TcpUtils.buildIpResponse(e, TcpUtils.buildRstResponse(e))
             ));
         }
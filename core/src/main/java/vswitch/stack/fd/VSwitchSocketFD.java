@@ -103,7 +103,7 @@ public class VSwitchSocketFD extends VSwitchFD implements SocketFD {
         } else {
             Logger.shouldNotHappen("should not reach here: " + entry.getState());
         }
-        ctx.L4.tcpStartRetransmission(getUUID(), ctx.table, entry);
+        ctx.L4.tcpStartRetransmission(newTraceId(), ctx.table, entry);
     }
 
     @Override
@@ -158,10 +158,10 @@ public class VSwitchSocketFD extends VSwitchFD implements SocketFD {
             }
         }
 
-        // need to send ack
-        ctx.L4.tcpAck(getUUID(), ctx.table, entry);
-        // reset window
+        // reset window, so that the ack carries the updated window
         entry.receivingQueue.resetWindow();
+        // need to send ack
+        ctx.L4.tcpAck(newTraceId(), ctx.table, entry);
 
         return read;
     }
@@ -181,7 +181,7 @@ public class VSwitchSocketFD extends VSwitchFD implements SocketFD {
 
         // start retransmission
         if (wrote > 0) {
-            ctx.L4.tcpStartRetransmission(getUUID(), ctx.table, entry);
+            ctx.L4.tcpStartRetransmission(newTraceId(), ctx.table, entry);
         }
 
         // handle events
@@ -226,10 +226,10 @@ public class VSwitchSocketFD extends VSwitchFD implements SocketFD {
             // wait until all data sent
             assert Logger.lowLevelDebug("fd " + this + " is closed, but more data to send, so do not close the connection for now");
             entry.doClose();
-            ctx.L4.tcpStartRetransmission(getUUID(), ctx.table, entry);
+            ctx.L4.tcpStartRetransmission(newTraceId(), ctx.table, entry);
         } else {
             // send reset
-            ctx.L4.resetTcpConnection(getUUID(), ctx.table, entry);
+            ctx.L4.resetTcpConnection(newTraceId(), ctx.table, entry);
         }
     }
 
@@ -4,13 +4,23 @@ import vproxybase.util.LogType;
 import vproxybase.util.Logger;
 
 import java.util.*;
-import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
- * https://github.com/gfwlist/gfwlist/wiki/Syntax
+ * https://github.com/gfwlist/gfwlist/wiki/Syntax<br>
+ * <br>
+ * The first rule (in the order of adding) which matches the input decides the result.
+ * Rules are compiled when checking for the first time after modified:
+ * the `||` rules into a trie of reversed hosts, the `@@|` rules into a trie of hosts,
+ * the simple rules into an Aho-Corasick automaton, and the `|` rules into a hash map,
+ * so these rules are checked by scanning the input only a few times.
+ * Only the regexp rules are checked one by one.<br>
+ * Recent results are kept in a bounded LRU cache of the compiled rules,
+ * each thread (event loop) has its own cache, so looking up the cache does not lock.
  */
 public class ABP {
+    private static final int CACHE_SIZE = 4096;
+
     private final Set<Character> validSimpleRuleStart = new HashSet<>() {{
         for (int i = 'a'; i <= 'z'; ++i) {
             add((char) i);
@@ -25,7 +35,8 @@ public class ABP {
     }};
     private final String abpSource;
     private final boolean defaultBlock;
-    private final List<Function<String, Boolean>> checkers = new LinkedList<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private volatile Compiled compiled = null; // null means not compiled yet
 
     public ABP(String abpSource, boolean defaultBlock) {
         this.abpSource = abpSource;
@@ -37,24 +48,43 @@ public class ABP {
     }
 
     public boolean block(String input) {
-        for (var func : checkers) {
-            Boolean result = func.apply(input);
-            if (result == null) { // null means don't know
-                continue;
-            }
-            return result;
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = compile();
+        }
+        int idx = compiled.cachedMatch(input);
+        if (idx == -1) {
+            return defaultBlock;
+        }
+        Rule rule = compiled.rules[idx];
+        if (rule.type.block) {
+            Logger.alert(input + " matches ABP " + rule.type.desc + " rule: " + rule.rule);
+        } else if (rule.type == RuleType.WHITELIST_REGEXP) {
+            Logger.alert(input + " matches ABP WHITELIST " + rule.type.desc + " rule: " + rule.rule);
+        } else {
+            assert Logger.lowLevelDebug(input + " matches ABP WHITELIST " + rule.type.desc + " rule: " + rule.rule);
         }
-        return defaultBlock;
+        return rule.type.block;
+    }
+
+    private synchronized Compiled compile() {
+        Compiled compiled = this.compiled;
+        if (compiled == null) {
+            compiled = new Compiled(rules.toArray(new Rule[0]));
+            this.compiled = compiled;
+        }
+        return compiled;
     }
 
     public void addBase64(String base64) {
         addRule(new String(Base64.getDecoder().decode(base64)));
     }
 
-    public void addRule(String rule) {
+    public synchronized void addRule(String rule) {
         for (String line : rule.split("\n")) {
             addRuleOneLine(line);
         }
+        compiled = null;
     }
 
     private void addRuleOneLine(String line) {
@@ -64,155 +94,199 @@ public class ABP {
             return;
         }
         if (line.startsWith("||")) {
-            addMatchingSpecificURI(line.substring("||".length()));
+            addRule(RuleType.MATCHING_SPECIFIC_URI, line, extractHost(line.substring("||".length())));
         } else if (line.startsWith("|")) {
-            addMatchingFromBeginning(line.substring("|".length()));
+            addRule(RuleType.MATCHING_FROM_BEGINNING, line, extractHost(line.substring("|".length())));
         } else if (line.startsWith("/") && line.endsWith("/")) {
-            addMatchingRegexp(line.substring("/".length(), line.length() - "/".length()));
+            addRule(RuleType.MATCHING_REGEXP, line, line.substring("/".length(), line.length() - "/".length()));
         } else if (line.startsWith("@@||")) {
-            addWhitelistRuleMatchingSpecificURI(line.substring("@@||".length()));
+            addRule(RuleType.WHITELIST_MATCHING_SPECIFIC_URI, line, extractHost(line.substring("@@||".length())));
         } else if (line.startsWith("@@|")) {
-            addWhitelistRuleMatchingFromBeginning(line.substring("@@|".length()));
-        } else if (line.startsWith("@@")) {
-            addWhitelistSimpleRule(line.substring("@@".length()));
+            addRule(RuleType.WHITELIST_MATCHING_FROM_BEGINNING, line, extractHost(line.substring("@@|".length())));
         } else if (line.startsWith("@@/") && line.endsWith("/")) {
-            addWhitelistRuleRegexp(line.substring("@@/".length(), line.length() - "/".length()));
+            addRule(RuleType.WHITELIST_REGEXP, line, line.substring("@@/".length(), line.length() - "/".length()));
+        } else if (line.startsWith("@@")) {
+            addRule(RuleType.WHITELIST_SIMPLE, line, extractHost(line.substring("@@".length())));
         } else if (validSimpleRuleStart.contains(line.charAt(0))) {
-            addSimpleRule(line);
+            addRule(RuleType.SIMPLE, line, extractHost(line));
         } else {
             Logger.warn(LogType.INVALID_EXTERNAL_DATA, "Unrecognized ABP rule: " + line);
         }
     }
 
-    private interface MatchingSpecificURI extends Function<String, Boolean> {
+    private void addRule(RuleType type, String line, String value) {
+        Pattern pattern = null;
+        if (type == RuleType.MATCHING_REGEXP || type == RuleType.WHITELIST_REGEXP) {
+            pattern = Pattern.compile(value);
+        }
+        rules.add(new Rule(type, line, value, pattern));
     }
 
-    private void addMatchingSpecificURI(String rule) {
-        var host = extractHost(rule);
-        var addDot = "." + host;
-        checkers.add((MatchingSpecificURI) input -> {
-            if (input.equals(host) || (input.endsWith(addDot) && input.length() > addDot.length())) {
-                Logger.alert(input + " matches ABP matching specific uri rule: " + rule);
-                return true;
-            }
-            return null;
-        });
+    private String extractHost(String uri) {
+        // remove protocol
+        if (uri.contains("://")) {
+            uri = uri.substring(uri.indexOf("://") + "://".length());
+        }
+        // remove url
+        if (uri.contains("/")) {
+            uri = uri.substring(0, uri.indexOf("/"));
+        }
+        return uri;
     }
 
-    private interface MatchingFromBeginning extends Function<String, Boolean> {
-    }
+    private enum RuleType {
+        MATCHING_SPECIFIC_URI(true, "matching specific uri"), // input is the host or a sub domain of the host
+        MATCHING_FROM_BEGINNING(true, "matching from beginning"), // input is the host
+        MATCHING_REGEXP(true, "matching regexp"),
+        WHITELIST_MATCHING_SPECIFIC_URI(false, "matching specific uri"),
+        WHITELIST_MATCHING_FROM_BEGINNING(false, "matching from beginning"), // input starts with the host
+        WHITELIST_SIMPLE(false, "simple"), // input contains the host
+        WHITELIST_REGEXP(false, "regexp"),
+        SIMPLE(true, "simple"),
+        ;
+        final boolean block;
+        final String desc;
 
-    private void addMatchingFromBeginning(String rule) {
-        var host = extractHost(rule);
-        checkers.add((MatchingFromBeginning) input -> {
-            if (input.equals(host)) {
-                Logger.alert(input + " matches ABP matching from beginning rule: " + rule);
-                return true;
-            }
-            return null;
-        });
+        RuleType(boolean block, String desc) {
+            this.block = block;
+            this.desc = desc;
+        }
     }
 
-    private interface MatchingRegexp extends Function<String, Boolean> {
-    }
+    private static class Rule {
+        final RuleType type;
+        final String rule;
+        final String host; // or the regexp
+        final Pattern pattern;
+
+        Rule(RuleType type, String rule, String host, Pattern pattern) {
+            this.type = type;
+            this.rule = rule;
+            this.host = host;
+            this.pattern = pattern;
+        }
 
-    private void addMatchingRegexp(String rule) {
-        Pattern pattern = Pattern.compile(rule);
-        checkers.add((MatchingRegexp) input -> {
+        boolean regexpMatches(String input) {
             String[] protocols = new String[]{"", "http://", "https://"};
             for (String protocol : protocols) {
                 if (pattern.matcher(protocol + input).matches()) {
-                    Logger.alert(input + " matches ABP matching regexp rule: " + rule);
                     return true;
                 }
             }
-            return null;
-        });
-    }
-
-    private interface WhitelistRuleMatchingSpecificURI extends Function<String, Boolean> {
+            return false;
+        }
     }
 
-    private void addWhitelistRuleMatchingSpecificURI(String rule) {
-        var host = extractHost(rule);
-        var addDot = "." + host;
-        checkers.add((WhitelistRuleMatchingSpecificURI) input -> {
-            if (input.equals(host) || (input.endsWith(addDot) || input.length() > addDot.length())) {
-                assert Logger.lowLevelDebug(input + " matches ABP WHITELIST matching specific uri rule: " + rule);
-                return false;
+    private static class Compiled {
+        final Rule[] rules;
+        final CharTrie specificUri = new CharTrie(); // reversed hosts
+        final Map<String, Integer> fromBeginning = new HashMap<>();
+        final CharTrie whitelistFromBeginning = new CharTrie();
+        final CharTrie contains = new CharTrie();
+        final int[] regexps; // indexes of the regexp rules
+        // input -> index of the matched rule, or -1 if no rule matches
+        // the cache of a thread is dropped together with the compiled rules when rules change
+        private final ThreadLocal<Map<String, Integer>> cache = ThreadLocal.withInitial(() -> new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > CACHE_SIZE;
             }
-            return null;
         });
-    }
 
-    private interface WhitelistMatchingFromBeginningRule extends Function<String, Boolean> {
-    }
+        Compiled(Rule[] rules) {
+            this.rules = rules;
+            List<Integer> regexps = new ArrayList<>();
+            for (int i = 0; i < rules.length; ++i) {
+                Rule r = rules[i];
+                switch (r.type) {
+                    case MATCHING_SPECIFIC_URI:
+                    case WHITELIST_MATCHING_SPECIFIC_URI:
+                        specificUri.add(r.host, true, i);
+                        break;
+                    case MATCHING_FROM_BEGINNING:
+                        fromBeginning.putIfAbsent(r.host, i);
+                        break;
+                    case WHITELIST_MATCHING_FROM_BEGINNING:
+                        whitelistFromBeginning.add(r.host, false, i);
+                        break;
+                    case SIMPLE:
+                    case WHITELIST_SIMPLE:
+                        contains.add(r.host, false, i);
+                        break;
+                    default:
+                        regexps.add(i);
+                        break;
+                }
+            }
+            contains.buildFailureLinks();
+            this.regexps = regexps.stream().mapToInt(i -> i).toArray();
+        }
 
-    private void addWhitelistRuleMatchingFromBeginning(String rule) {
-        var host = extractHost(rule);
-        checkers.add((WhitelistMatchingFromBeginningRule) input -> {
-            if (input.startsWith(host)) {
-                assert Logger.lowLevelDebug(input + " matches ABP WHITELIST matching from beginning rule: " + rule);
-                return false;
+        int cachedMatch(String input) {
+            Map<String, Integer> cache = this.cache.get();
+            Integer idx = cache.get(input);
+            if (idx != null) {
+                return idx;
             }
-            return null;
-        });
-    }
+            int ret = match(input);
+            cache.put(input, ret);
+            return ret;
+        }
 
-    private interface WhitelistSimpleRule extends Function<String, Boolean> {
-    }
+        // the index of the first matched rule, or -1
+        int match(String input) {
+            int best = CharTrie.NONE;
 
-    private void addWhitelistSimpleRule(String rule) {
-        var host = extractHost(rule);
-        checkers.add((WhitelistSimpleRule) input -> {
-            if (input.contains(host)) {
-                assert Logger.lowLevelDebug(input + " matches ABP WHITELIST simple rule: " + rule);
-                return false;
+            // input equals the host, or ends with "." + host and has at least one char before the dot
+            CharTrie.Node node = specificUri.root;
+            int pos = input.length(); // the host is input[pos:]
+            while (true) {
+                if (node.order < best) {
+                    int dot = pos - 1;
+                    if (pos == 0 || (dot > 0 && input.charAt(dot) == '.')) {
+                        best = node.order;
+                    }
+                }
+                if (pos == 0) {
+                    break;
+                }
+                node = node.child(input.charAt(--pos));
+                if (node == null) {
+                    break;
+                }
             }
-            return null;
-        });
-    }
 
-    private interface WhitelistRegexpRule extends Function<String, Boolean> {
-    }
+            Integer idx = fromBeginning.get(input);
+            if (idx != null && idx < best) {
+                best = idx;
+            }
 
-    private void addWhitelistRuleRegexp(String rule) {
-        Pattern pattern = Pattern.compile(rule);
-        checkers.add((WhitelistRegexpRule) input -> {
-            String[] protocols = new String[]{"", "http://", "https://"};
-            for (String protocol : protocols) {
-                if (pattern.matcher(protocol + input).matches()) {
-                    Logger.alert(input + " matches ABP WHITELIST regexp rule: " + rule);
-                    return false;
+            node = whitelistFromBeginning.root;
+            for (int i = 0; node != null; ++i) {
+                if (node.order < best) {
+                    best = node.order;
+                }
+                if (i == input.length()) {
+                    break;
                 }
+                node = node.child(input.charAt(i));
             }
-            return null;
-        });
-    }
 
-    private interface SimpleRule extends Function<String, Boolean> {
-    }
-
-    private void addSimpleRule(String rule) {
-        var host = extractHost(rule);
-        checkers.add((SimpleRule) input -> {
-            if (input.contains(host)) {
-                Logger.alert(input + " matches ABP simple rule: " + rule);
-                return true;
+            int order = contains.containsOrder(input);
+            if (order < best) {
+                best = order;
             }
-            return null;
-        });
-    }
 
-    private String extractHost(String uri) {
-        // remove protocol
-        if (uri.contains("://")) {
-            uri = uri.substring(uri.indexOf("://") + "://".length());
-        }
-        // remove url
-        if (uri.contains("/")) {
-            uri = uri.substring(0, uri.indexOf("/"));
+            for (int i : regexps) {
+                if (i >= best) {
+                    break;
+                }
+                if (rules[i].regexpMatches(input)) {
+                    best = i;
+                    break;
+                }
+            }
+            return best == CharTrie.NONE ? -1 : best;
         }
-        return uri;
     }
 }
@@ -0,0 +1,123 @@
+package vproxyx.websocks;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * A char trie of strings, each string is attached with an order, and the min order is kept when added more than once.<br>
+ * The trie can be used for prefix/suffix matching by walking the nodes,
+ * or turned into an Aho-Corasick automaton with {@link #buildFailureLinks()}
+ * to find all strings contained in the input with one scan.
+ */
+class CharTrie {
+    static final int NONE = Integer.MAX_VALUE;
+
+    final Node root = new Node();
+    private boolean automaton = false;
+
+    static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        int order = NONE; // order of the string ending at this node
+        private Node fail;
+        private int containsOrder = NONE; // min order of strings which are suffixes of the path to this node
+
+        Node child(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            if (idx < 0) {
+                return null;
+            }
+            return children[idx];
+        }
+
+        private Node getOrCreateChild(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            idx = -idx - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, idx);
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(keys, idx, newKeys, idx + 1, keys.length - idx);
+            System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+            Node n = new Node();
+            newKeys[idx] = c;
+            newChildren[idx] = n;
+            keys = newKeys;
+            children = newChildren;
+            return n;
+        }
+    }
+
+    /**
+     * @param reversed add the string from the last char to the first, used for suffix matching
+     */
+    void add(String s, boolean reversed, int order) {
+        if (automaton) {
+            throw new IllegalStateException("cannot add strings after the automaton is built");
+        }
+        Node node = root;
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            node = node.getOrCreateChild(s.charAt(reversed ? len - 1 - i : i));
+        }
+        if (order < node.order) {
+            node.order = order;
+        }
+    }
+
+    /**
+     * build the failure links, then {@link #containsOrder(String)} can be used
+     */
+    void buildFailureLinks() {
+        automaton = true;
+        root.fail = null;
+        root.containsOrder = root.order;
+        Deque<Node> queue = new ArrayDeque<>();
+        for (Node c : root.children) {
+            c.fail = root;
+            c.containsOrder = Math.min(c.order, root.containsOrder);
+            queue.add(c);
+        }
+        while (!queue.isEmpty()) {
+            Node n = queue.poll();
+            for (int i = 0; i < n.keys.length; ++i) {
+                char key = n.keys[i];
+                Node c = n.children[i];
+                Node f = n.fail;
+                while (f != null && f.child(key) == null) {
+                    f = f.fail;
+                }
+                c.fail = f == null ? root : f.child(key);
+                c.containsOrder = Math.min(c.order, c.fail.containsOrder);
+                queue.add(c);
+            }
+        }
+    }
+
+    /**
+     * @return the min order of the strings contained in the input, or {@link #NONE}
+     */
+    int containsOrder(String input) {
+        assert automaton;
+        int best = root.containsOrder;
+        Node node = root;
+        for (int i = 0; i < input.length(); ++i) {
+            char c = input.charAt(i);
+            Node next;
+            while ((next = node.child(c)) == null && node != root) {
+                node = node.fail;
+            }
+            if (next != null) {
+                node = next;
+            }
+            if (node.containsOrder < best) {
+                best = node.containsOrder;
+            }
+        }
+        return best;
+    }
+}
@@ -1,14 +1,22 @@
 package vproxyx.websocks;
 
+import java.util.*;
 import java.util.regex.Pattern;
 
 public interface DomainChecker {
     boolean needProxy(String domain, int port);
 
+    /**
+     * @return a checker which returns true if any of the checkers returns true
+     */
+    static DomainChecker compile(List<DomainChecker> checkers) {
+        return new CompiledDomainChecker(checkers);
+    }
+
     class SuffixDomainChecker implements DomainChecker {
         public final String suffix;
 
-        SuffixDomainChecker(String suffix) {
+        public SuffixDomainChecker(String suffix) {
             this.suffix = suffix;
         }
 
@@ -21,7 +29,7 @@ public interface DomainChecker {
     class PatternDomainChecker implements DomainChecker {
         public final Pattern pattern;
 
-        PatternDomainChecker(Pattern pattern) {
+        public PatternDomainChecker(Pattern pattern) {
             this.pattern = pattern;
         }
 
@@ -34,7 +42,7 @@ public interface DomainChecker {
     class ABPDomainChecker implements DomainChecker {
         public final ABP abp;
 
-        ABPDomainChecker(ABP abp) {
+        public ABPDomainChecker(ABP abp) {
             this.abp = abp;
         }
 
@@ -47,7 +55,7 @@ public interface DomainChecker {
     class PortChecker implements DomainChecker {
         public final int port;
 
-        PortChecker(int port) {
+        public PortChecker(int port) {
             this.port = port;
         }
 
@@ -57,4 +65,54 @@ public interface DomainChecker {
         }
     }
 
+    /**
+     * suffixes are compiled into a trie of reversed strings and ports into a set,
+     * so they are checked with one walk and one lookup,
+     * other checkers are checked one by one
+     */
+    class CompiledDomainChecker implements DomainChecker {
+        private final CharTrie suffixes = new CharTrie();
+        private final Set<Integer> ports = new HashSet<>();
+        private final DomainChecker[] others;
+
+        CompiledDomainChecker(List<DomainChecker> checkers) {
+            List<DomainChecker> others = new ArrayList<>();
+            for (DomainChecker chk : checkers) {
+                if (chk instanceof SuffixDomainChecker) {
+                    suffixes.add(((SuffixDomainChecker) chk).suffix, true, 0);
+                } else if (chk instanceof PortChecker) {
+                    ports.add(((PortChecker) chk).port);
+                } else {
+                    others.add(chk);
+                }
+            }
+            this.others = others.toArray(new DomainChecker[0]);
+        }
+
+        @Override
+        public boolean needProxy(String domain, int port) {
+            if (!ports.isEmpty() && ports.contains(port)) {
+                return true;
+            }
+            CharTrie.Node node = suffixes.root;
+            for (int i = domain.length(); ; --i) {
+                if (node.order != CharTrie.NONE) {
+                    return true;
+                }
+                if (i == 0) {
+                    break;
+                }
+                node = node.child(domain.charAt(i - 1));
+                if (node == null) {
+                    break;
+                }
+            }
+            for (DomainChecker chk : others) {
+                if (chk.needProxy(domain, port)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -624,9 +624,10 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
     }
 
     private final boolean strictMode;
-    private final LinkedHashMap<String, List<DomainChecker>> proxyDomains;
-    private final LinkedHashMap<String, List<DomainChecker>> noProxyDomains;
-    private final List<DomainChecker> httpsSniErasureDomains;
+    // the checkers are compiled
+    private final LinkedHashMap<String, DomainChecker> proxyDomains = new LinkedHashMap<>();
+    private final DomainChecker noProxyDomains;
+    private final DomainChecker httpsSniErasureDomains;
     private final Map<String, ServerGroup> servers;
     private final String user;
     private final String pass;
@@ -634,9 +635,15 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
 
     public WebSocksProxyAgentConnectorProvider(ConfigProcessor config) {
         this.strictMode = config.isStrictMode();
-        this.proxyDomains = config.getDomains();
-        this.noProxyDomains = config.getNoProxyDomains();
-        this.httpsSniErasureDomains = config.getHttpsSniErasureDomains();
+        for (Map.Entry<String, List<DomainChecker>> entry : config.getDomains().entrySet()) {
+            this.proxyDomains.put(entry.getKey(), DomainChecker.compile(entry.getValue()));
+        }
+        List<DomainChecker> noProxyDomains = new ArrayList<>();
+        for (List<DomainChecker> ls : config.getNoProxyDomains().values()) {
+            noProxyDomains.addAll(ls);
+        }
+        this.noProxyDomains = DomainChecker.compile(noProxyDomains);
+        this.httpsSniErasureDomains = DomainChecker.compile(config.getHttpsSniErasureDomains());
         this.servers = config.getServers();
         this.user = config.getUser();
         this.pass = config.getPass();
@@ -655,19 +662,13 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
     }
 
     private String getProxy(String address, int port) {
-        for (Map.Entry<String, List<DomainChecker>> entry : noProxyDomains.entrySet()) {
-            for (DomainChecker checker : entry.getValue()) {
-                // HERE, needProxy means "DO NOT need proxy"
-                if (checker.needProxy(address, port)) {
-                    return null;
-                }
-            }
+        // HERE, needProxy means "DO NOT need proxy"
+        if (noProxyDomains.needProxy(address, port)) {
+            return null;
         }
-        for (Map.Entry<String, List<DomainChecker>> entry : proxyDomains.entrySet()) {
-            for (DomainChecker checker : entry.getValue()) {
-                if (checker.needProxy(address, port)) {
-                    return entry.getKey();
-                }
+        for (Map.Entry<String, DomainChecker> entry : proxyDomains.entrySet()) {
+            if (entry.getValue().needProxy(address, port)) {
+                return entry.getKey();
             }
         }
         return null;
@@ -677,12 +678,7 @@ public class WebSocksProxyAgentConnectorProvider implements Socks5ConnectorProvi
         if (port != 443) { // only 443 (https)
             return false;
         }
-        for (DomainChecker checker : httpsSniErasureDomains) {
-            if (checker.needProxy(address, port)) {
-                return true;
-            }
-        }
-        return false;
+        return httpsSniErasureDomains.needProxy(address, port);
     }
 
     @Override
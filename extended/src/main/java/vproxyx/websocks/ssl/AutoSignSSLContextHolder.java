@@ -160,7 +160,9 @@ public class AutoSignSSLContextHolder extends SSLContextHolder {
             return null;
         }
         try {
-            return ck.buildSSLContext();
+            SSLContext ctx = ck.buildSSLContext();
+            configureSessions(ctx);
+            return ctx;
         } catch (Exception e) {
             Logger.error(LogType.SYS_ERROR, "loading cert-key for " + sni + " failed", e);
             return null;
@@ -0,0 +1,194 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vproxyx.websocks.ABP;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * lookups per second of an ABP loaded with a gfwlist file<br>
+ * use -Dgfwlist=/path/to/gfwlist.txt (base64 encoded, as downloaded from the gfwlist repo) to load a real file,
+ * otherwise rules in the same shape are generated<br>
+ * linear: check the rules one by one, which is how ABP.block() worked before<br>
+ * uncached: the compiled rules, every input is different so the decision cache hardly hits<br>
+ * hot: the compiled rules, a few hundreds of domains are repeated<br>
+ * the matching logs are discarded
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GfwlistBenchmark {
+    private ABP abp;
+    private List<String[]> linearRules; // {type, host}
+    private String[] domains;
+    private String[] hotDomains;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int n = 0;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        String file = System.getProperty("gfwlist");
+        String content;
+        if (file == null || file.isBlank()) {
+            content = generate(new Random(1));
+        } else {
+            content = new String(Base64.getMimeDecoder().decode(Files.readAllBytes(Path.of(file))));
+        }
+        abp = new ABP("bench", false);
+        abp.addRule(content);
+
+        linearRules = new ArrayList<>();
+        List<String> hosts = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("!") || line.startsWith("[")) {
+                continue;
+            }
+            String type;
+            String host;
+            if (line.startsWith("/") && line.endsWith("/")) {
+                linearRules.add(new String[]{"/", line.substring(1, line.length() - 1)});
+                continue;
+            } else if (line.startsWith("@@/") && line.endsWith("/")) {
+                linearRules.add(new String[]{"@@/", line.substring(3, line.length() - 1)});
+                continue;
+            } else if (line.startsWith("||")) {
+                type = "||";
+            } else if (line.startsWith("|")) {
+                type = "|";
+            } else if (line.startsWith("@@||")) {
+                type = "@@||";
+            } else if (line.startsWith("@@|")) {
+                type = "@@|";
+            } else if (line.startsWith("@@")) {
+                type = "@@";
+            } else {
+                type = "";
+            }
+            host = line.substring(type.length());
+            if (host.contains("://")) {
+                host = host.substring(host.indexOf("://") + 3);
+            }
+            if (host.contains("/")) {
+                host = host.substring(0, host.indexOf("/"));
+            }
+            linearRules.add(new String[]{type, host});
+            if (!host.isEmpty() && !host.contains("*")) {
+                hosts.add(host.startsWith(".") ? host.substring(1) : host);
+            }
+        }
+
+        Random rand = new Random(2);
+        // half of the domains are sub domains of the hosts in the list, the others are random
+        domains = new String[65536];
+        for (int i = 0; i < domains.length; ++i) {
+            if (i % 2 == 0 && !hosts.isEmpty()) {
+                domains[i] = "w" + i + "." + hosts.get(rand.nextInt(hosts.size()));
+            } else {
+                domains[i] = "s" + i + "." + randomName(rand) + ".example" + rand.nextInt(100) + ".com";
+            }
+        }
+        hotDomains = new String[256];
+        for (int i = 0; i < hotDomains.length; ++i) {
+            hotDomains[i] = domains[rand.nextInt(domains.length)];
+        }
+    }
+
+    private static String randomName(Random rand) {
+        StringBuilder sb = new StringBuilder();
+        int len = 3 + rand.nextInt(8);
+        for (int i = 0; i < len; ++i) {
+            sb.append((char) ('a' + rand.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    // roughly the composition of gfwlist: mostly `||` and `.` rules, some `|`, a few regexps and whitelist rules
+    private static String generate(Random rand) {
+        StringBuilder sb = new StringBuilder("[AutoProxy 0.2.9]\n! generated\n");
+        for (int i = 0; i < 6000; ++i) {
+            String host = randomName(rand) + "." + (rand.nextBoolean() ? "com" : "net");
+            int r = rand.nextInt(100);
+            if (r < 60) {
+                sb.append("||").append(host);
+            } else if (r < 85) {
+                sb.append(".").append(host);
+            } else if (r < 95) {
+                sb.append("|http://").append(host).append("/").append(randomName(rand));
+            } else if (r < 99) {
+                sb.append("@@||").append(host);
+            } else {
+                sb.append("/^https?:\\/\\/[^\\/]+").append(randomName(rand)).append("\\.com/");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private boolean linearBlock(String input) {
+        for (String[] rule : linearRules) {
+            String type = rule[0];
+            String host = rule[1];
+            boolean matches;
+            switch (type) {
+                case "||":
+                case "@@||":
+                    matches = input.equals(host) || (input.endsWith("." + host) && input.length() > host.length() + 1);
+                    break;
+                case "|":
+                    matches = input.equals(host);
+                    break;
+                case "@@|":
+                    matches = input.startsWith(host);
+                    break;
+                case "/":
+                case "@@/":
+                    matches = input.matches(host) || ("http://" + input).matches(host) || ("https://" + input).matches(host);
+                    break;
+                default:
+                    matches = input.contains(host);
+                    break;
+            }
+            if (matches) {
+                return !type.startsWith("@@");
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean linear(Cursor c) {
+        return linearBlock(domains[c.n++ & 65535]);
+    }
+
+    @Benchmark
+    public boolean uncached(Cursor c) {
+        return abp.block(domains[c.n++ & 65535]);
+    }
+
+    @Benchmark
+    public boolean hot(Cursor c) {
+        return abp.block(hotDomains[c.n++ & 255]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(GfwlistBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
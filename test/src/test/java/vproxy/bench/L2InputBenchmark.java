@@ -0,0 +1,159 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.DatagramFD;
+import vfd.IP;
+import vfd.MacAddress;
+import vpacket.*;
+import vproxybase.connection.NetEventLoop;
+import vproxybase.selector.SelectorEventLoop;
+import vproxybase.util.ByteArray;
+import vproxybase.util.Consts;
+import vproxybase.util.Network;
+import vswitch.Table;
+import vswitch.iface.Iface;
+import vswitch.stack.InputPacketL2Context;
+import vswitch.stack.L2;
+import vswitch.stack.SwitchContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * packets per second of the vswitch L2.input path, the input is a synthetic vxlan frame
+ * which is parsed and forwarded from one iface to another (unicast, the dst mac is recorded in the mac table)<br>
+ * traceId: the id is generated by the event loop counter, which is the current implementation<br>
+ * uuid: also generates UUID.randomUUID().toString() for every packet, which is how the handling id was generated before
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class L2InputBenchmark {
+    private static final int VNI = 1314;
+
+    @Param({"64", "1400"})
+    public int payloadSize;
+
+    private SelectorEventLoop loop;
+    private SwitchContext swCtx;
+    private L2 l2;
+    private Table table;
+    private BenchIface input;
+    private byte[] frame;
+
+    private static class BenchIface implements Iface {
+        private final String name;
+
+        BenchIface(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void sendPacket(DatagramFD serverUDPSock, VXLanPacket vxlan, ByteBuffer writeBuf) {
+            // the packet is dropped
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public int getLocalSideVni(int hint) {
+            return VNI;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        loop = SelectorEventLoop.open();
+        input = new BenchIface("input");
+        BenchIface output = new BenchIface("output");
+        List<Iface> ifaces = List.of(input, output);
+        table = new Table(null, VNI, new NetEventLoop(loop),
+            new Network("10.0.0.0/24"), null,
+            300, 4 * 3600, null);
+        swCtx = new SwitchContext(
+            (packet, iface) -> {
+            },
+            () -> ifaces,
+            vni -> vni == VNI ? table : null,
+            () -> loop
+        );
+        l2 = new L2(swCtx);
+
+        MacAddress srcMac = new MacAddress("02:00:00:00:00:01");
+        MacAddress dstMac = new MacAddress("02:00:00:00:00:02");
+        table.macTable.record(dstMac, output);
+
+        PacketBytes payload = new PacketBytes();
+        payload.setBytes(ByteArray.allocate(payloadSize));
+        Ipv4Packet ipv4 = new Ipv4Packet();
+        ipv4.setVersion(4);
+        ipv4.setIhl(5);
+        ipv4.setTotalLength(20 + payloadSize);
+        ipv4.setTtl(64);
+        ipv4.setProtocol(Consts.IP_PROTOCOL_UDP);
+        ipv4.setSrc(IP.fromIPv4(new byte[]{10, 0, 0, 1}));
+        ipv4.setDst(IP.fromIPv4(new byte[]{10, 0, 0, 2}));
+        ipv4.setOptions(ByteArray.allocate(0));
+        ipv4.setPacket(payload);
+        ipv4.setHeaderChecksum(ipv4.calculateChecksum());
+        EthernetPacket ether = new EthernetPacket();
+        ether.setDst(dstMac);
+        ether.setSrc(srcMac);
+        ether.setType(Consts.ETHER_TYPE_IPv4);
+        ether.setPacket(ipv4);
+        VXLanPacket vxlan = new VXLanPacket();
+        vxlan.setFlags(0b00001000);
+        vxlan.setVni(VNI);
+        vxlan.setPacket(ether);
+        frame = vxlan.getRawPacket().toJavaArray();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loop.close();
+    }
+
+    private VXLanPacket parse() {
+        VXLanPacket vxlan = new VXLanPacket();
+        String err = vxlan.from(ByteArray.from(frame));
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return vxlan;
+    }
+
+    @Benchmark
+    public void traceId() {
+        long traceId = swCtx.newTraceId();
+        l2.input(new InputPacketL2Context(traceId, input, table, parse()));
+    }
+
+    @Benchmark
+    public void uuid(Blackhole bh) {
+        bh.consume(UUID.randomUUID().toString());
+        long traceId = swCtx.newTraceId();
+        l2.input(new InputPacketL2Context(traceId, input, table, parse()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(L2InputBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,176 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vproxybase.component.svrgroup.Maglev;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * lookup cost of the maglev table and the modulo based `source` method,
+ * and the main method prints the percentage of keys remapped when one backend goes down or comes back,
+ * and how the keys of the failed backend are spread
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaglevBenchmark {
+    private static final int KEYS = 100_000;
+
+    @Param({"10", "100", "1000"})
+    public int backends;
+
+    private int[] table;
+    private int[] keys;
+    private int cursor = 0;
+
+    @Setup
+    public void setUp() {
+        table = Maglev.build(names(backends), weights(backends), Maglev.tableSize(backends));
+        keys = new int[1024];
+        Random rand = new Random(1);
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = rand.nextInt();
+        }
+    }
+
+    @Benchmark
+    public int maglev() {
+        int key = keys[cursor++ & 1023];
+        return table[Maglev.slot(Maglev.mix(key), table.length)];
+    }
+
+    @Benchmark
+    public int modulo() {
+        int key = keys[cursor++ & 1023];
+        return (key & 0x7fffffff) % backends;
+    }
+
+    private static String[] names(int n) {
+        String[] names = new String[n];
+        for (int i = 0; i < n; ++i) {
+            names[i] = "svr" + i;
+        }
+        return names;
+    }
+
+    private static int[] weights(int n) {
+        int[] weights = new int[n];
+        Arrays.fill(weights, 10);
+        return weights;
+    }
+
+    private static int[] maglevAssign(String[] names, int[] weights, int[] keys) {
+        int[] table = Maglev.build(names, weights, Maglev.tableSize(names.length));
+        int[] ret = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            // map back to the backend name index
+            ret[i] = Integer.parseInt(names[table[Maglev.slot(Maglev.mix(keys[i]), table.length)]].substring(3));
+        }
+        return ret;
+    }
+
+    // the `source` method: hash % n, and use the next one if it's down
+    private static int[] moduloAssign(int n, boolean[] down, int[] keys) {
+        int[] ret = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            int idx = (keys[i] & 0x7fffffff) % n;
+            while (down[idx]) {
+                idx = (idx + 1) % n;
+            }
+            ret[i] = idx;
+        }
+        return ret;
+    }
+
+    private static double disruption(int[] before, int[] after, int[] excluded, int excludedBackend) {
+        int moved = 0;
+        int total = 0;
+        for (int i = 0; i < before.length; ++i) {
+            if (excluded != null && excluded[i] == excludedBackend) {
+                continue; // the keys on the removed backend must move
+            }
+            ++total;
+            if (before[i] != after[i]) {
+                ++moved;
+            }
+        }
+        return moved * 100.0 / total;
+    }
+
+    // the max percentage of the keys moved from the removed backend which are taken by one backend
+    private static double maxTakeover(int[] before, int[] after, int removed, int n) {
+        int[] count = new int[n];
+        int total = 0;
+        for (int i = 0; i < before.length; ++i) {
+            if (before[i] == removed) {
+                ++count[after[i]];
+                ++total;
+            }
+        }
+        int max = 0;
+        for (int c : count) {
+            max = Math.max(max, c);
+        }
+        return max * 100.0 / total;
+    }
+
+    private static void printDisruption(int n) {
+        Random rand = new Random(2);
+        int[] keys = new int[KEYS];
+        for (int i = 0; i < KEYS; ++i) {
+            keys[i] = rand.nextInt();
+        }
+        int removed = n / 2;
+
+        // maglev: remove one backend from the table
+        String[] names = names(n);
+        int[] weights = weights(n);
+        int[] mBefore = maglevAssign(names, weights, keys);
+        String[] namesAfter = new String[n - 1];
+        int[] weightsAfter = new int[n - 1];
+        for (int i = 0, j = 0; i < n; ++i) {
+            if (i != removed) {
+                namesAfter[j] = names[i];
+                weightsAfter[j] = weights[i];
+                ++j;
+            }
+        }
+        int[] mAfter = maglevAssign(namesAfter, weightsAfter, keys);
+
+        // modulo: the `source` method when one server is down, and when it's removed
+        boolean[] down = new boolean[n];
+        int[] sBefore = moduloAssign(n, down, keys);
+        down[removed] = true;
+        int[] sDown = moduloAssign(n, down, keys);
+        int[] sRemoved = moduloAssign(n - 1, new boolean[n - 1], keys);
+        int[] sRemovedMapped = new int[KEYS];
+        for (int i = 0; i < KEYS; ++i) {
+            sRemovedMapped[i] = sRemoved[i] >= removed ? sRemoved[i] + 1 : sRemoved[i];
+        }
+
+        System.out.printf("backends=%d: keys not on the changed backend but remapped:%n", n);
+        System.out.printf("  maglev, one backend down/removed: %.2f%%%n", disruption(mBefore, mAfter, mBefore, removed));
+        System.out.printf("  maglev, the backend comes back:   %.2f%%%n", disruption(mAfter, mBefore, mBefore, removed));
+        System.out.printf("  source, one backend down:         %.2f%%%n", disruption(sBefore, sDown, sBefore, removed));
+        System.out.printf("  source, one backend removed:      %.2f%%%n", disruption(sBefore, sRemovedMapped, sBefore, removed));
+        System.out.printf("max share of the keys on the removed backend taken by one backend:%n");
+        System.out.printf("  maglev: %.2f%%%n", maxTakeover(mBefore, mAfter, removed, n));
+        System.out.printf("  source: %.2f%%%n", maxTakeover(sBefore, sDown, removed, n));
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int n : new int[]{10, 100, 1000}) {
+            printDisruption(n);
+        }
+        new Runner(new OptionsBuilder()
+            .include(MaglevBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
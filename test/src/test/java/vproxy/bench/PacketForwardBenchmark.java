@@ -0,0 +1,137 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.IP;
+import vfd.MacAddress;
+import vpacket.*;
+import vproxybase.util.ByteArray;
+import vproxybase.util.Consts;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure packets per second of forwarding a routed vxlan packet, which is what the switch does in L3.route():
+ * parse the received bytes, decrease the ttl, change the macs, then write the packet into the send buffer<br>
+ * rebuild: clear the raw bytes after modifying, so the packet is regenerated and the checksum is fully calculated,
+ * then copied out with toJavaArray(), which is how the packets were handled before<br>
+ * inPlace: the setters modify the received bytes and update the checksum incrementally,
+ * then the bytes are put into the send buffer directly<br>
+ * <br>
+ * run with <code>-prof gc</code> and check gc.alloc.rate.norm to see the allocation per packet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketForwardBenchmark {
+    @Param({"64", "1400"})
+    public int payloadSize;
+
+    private final MacAddress srcMac = new MacAddress("02:00:00:00:00:01");
+    private final MacAddress dstMac = new MacAddress("02:00:00:00:00:02");
+
+    private byte[] input;
+    private final ByteBuffer rcvBuf = ByteBuffer.allocate(2048);
+    private final ByteBuffer sndBuf = ByteBuffer.allocate(2048);
+
+    @Setup
+    public void setUp() {
+        byte[] payload = new byte[payloadSize];
+        new Random(1).nextBytes(payload);
+
+        TcpPacket tcp = new TcpPacket();
+        tcp.setSrcPort(12345);
+        tcp.setDstPort(80);
+        tcp.setSeqNum(1000);
+        tcp.setAckNum(2000);
+        tcp.setFlags(Consts.TCP_FLAGS_PSH | Consts.TCP_FLAGS_ACK);
+        tcp.setWindow(65535);
+        tcp.setData(ByteArray.from(payload));
+
+        Ipv4Packet ipv4 = new Ipv4Packet();
+        ipv4.setSrc(IP.fromIPv4("10.0.0.1"));
+        ipv4.setDst(IP.fromIPv4("10.0.1.1"));
+        ByteArray tcpBytes = tcp.buildIPv4TcpPacket(ipv4);
+        ipv4.setVersion(4);
+        ipv4.setIhl(5);
+        ipv4.setTotalLength(20 + tcpBytes.length());
+        ipv4.setTtl(64);
+        ipv4.setProtocol(Consts.IP_PROTOCOL_TCP);
+        ipv4.setOptions(ByteArray.allocate(0));
+        ipv4.setPacket(tcp);
+
+        EthernetPacket ether = new EthernetPacket();
+        ether.setSrc(new MacAddress("02:00:00:00:00:03"));
+        ether.setDst(new MacAddress("02:00:00:00:00:04"));
+        ether.setType(Consts.ETHER_TYPE_IPv4);
+        ether.setPacket(ipv4);
+
+        VXLanPacket vxlan = new VXLanPacket();
+        vxlan.setVni(1);
+        vxlan.setPacket(ether);
+
+        input = vxlan.getRawPacket().toJavaArray();
+    }
+
+    private VXLanPacket receive() {
+        // simulate receiving the packet into the buffer
+        rcvBuf.clear();
+        rcvBuf.put(input);
+        ByteArray data = ByteArray.from(rcvBuf.array()).sub(0, rcvBuf.position());
+
+        VXLanPacket vxlan = new VXLanPacket();
+        String err = vxlan.from(data);
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return vxlan;
+    }
+
+    @Benchmark
+    public ByteBuffer rebuild() {
+        VXLanPacket vxlan = receive();
+        EthernetPacket ether = (EthernetPacket) vxlan.getPacket();
+        AbstractIpPacket ip = (AbstractIpPacket) ether.getPacket();
+
+        ip.setHopLimit(ip.getHopLimit() - 1);
+        ip.clearRawPacket();
+        ether.setSrc(srcMac);
+        ether.setDst(dstMac);
+        ether.clearRawPacket();
+        vxlan.clearRawPacket();
+
+        sndBuf.clear();
+        sndBuf.put(vxlan.getRawPacket().toJavaArray());
+        sndBuf.flip();
+        return sndBuf;
+    }
+
+    @Benchmark
+    public ByteBuffer inPlace() {
+        VXLanPacket vxlan = receive();
+        EthernetPacket ether = (EthernetPacket) vxlan.getPacket();
+        AbstractIpPacket ip = (AbstractIpPacket) ether.getPacket();
+
+        ip.setHopLimit(ip.getHopLimit() - 1);
+        ether.setSrc(srcMac);
+        ether.setDst(dstMac);
+
+        sndBuf.clear();
+        ByteArray bytes = vxlan.getRawPacket();
+        bytes.byteBufferPut(sndBuf, 0, bytes.length());
+        sndBuf.flip();
+        return sndBuf;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(PacketForwardBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.IP;
+import vfd.IPPort;
+import vproxy.component.app.TcpLB;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.svrgroup.Upstream;
+import vproxy.test.cases.TestRedisProcessor;
+import vproxybase.component.check.CheckProtocol;
+import vproxybase.component.check.HealthCheckConfig;
+import vproxybase.component.elgroup.EventLoopGroup;
+import vproxybase.component.svrgroup.Method;
+import vproxybase.component.svrgroup.ServerGroup;
+import vproxybase.util.AnnotationKeys;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pipelined redis commands per second, sent by one blocking client on loopback<br>
+ * direct: the client talks to one resp stand-in server<br>
+ * lb: the client talks to a tcp-lb with protocol=redis, which splits the pipeline by slots into two stand-in servers<br>
+ * the score is the number of batches, multiply it with `pipeline` for commands per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisProcessorBenchmark {
+    private static final int LB_PORT = 37890;
+    private static final int PORT1 = 37891;
+    private static final int PORT2 = 37892;
+
+    @Param({"direct", "lb"})
+    public String target;
+    @Param({"1", "100"})
+    public int pipeline;
+
+    private TestRedisProcessor.StandInServer server1;
+    private TestRedisProcessor.StandInServer server2;
+    private EventLoopGroup elg;
+    private TcpLB lb;
+    private Socket sock;
+    private InputStream in;
+    private OutputStream out;
+    private byte[] batch;
+
+    @Setup
+    public void setUp() throws Exception {
+        server1 = new TestRedisProcessor.StandInServer(PORT1, 0);
+        server1.start();
+        server2 = new TestRedisProcessor.StandInServer(PORT2, 0);
+        server2.start();
+
+        int port = PORT1;
+        if (target.equals("lb")) {
+            elg = new EventLoopGroup("elg0");
+            elg.add("el0");
+            ServerGroup sg = new ServerGroup("redis-sg", elg,
+                new HealthCheckConfig(1000, 10000, 1, 3, CheckProtocol.none), Method.wrr);
+            sg.setAnnotations(Map.of(AnnotationKeys.ServerGroup_HashKey, "key"));
+            sg.add("svr1", new IPPort(IP.from("127.0.0.1"), PORT1), 10);
+            sg.add("svr2", new IPPort(IP.from("127.0.0.1"), PORT2), 10);
+            sg.getServerHandles().forEach(h -> h.healthy = true);
+            sg.setMethod(Method.maglev);
+            Upstream ups = new Upstream("ups0");
+            ups.add(sg, 10);
+            lb = new TcpLB("tl0", elg, elg, new IPPort("127.0.0.1", LB_PORT), ups, 10000, 16384, 16384, "redis", null, null, SecurityGroup.allowAll());
+            lb.start();
+            port = LB_PORT;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < pipeline; ++i) {
+            bytes.write(TestRedisProcessor.command("SET", "key" + i, "value-" + i));
+        }
+        batch = bytes.toByteArray();
+
+        sock = new Socket("127.0.0.1", port);
+        sock.setTcpNoDelay(true);
+        in = new BufferedInputStream(sock.getInputStream());
+        out = sock.getOutputStream();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        sock.close();
+        if (lb != null) {
+            lb.destroy();
+        }
+        if (elg != null) {
+            elg.close();
+        }
+        server1.close();
+        server2.close();
+    }
+
+    @Benchmark
+    public String batch() throws Exception {
+        out.write(batch);
+        out.flush();
+        String last = null;
+        for (int i = 0; i < pipeline; ++i) {
+            last = TestRedisProcessor.readBulk(in);
+        }
+        return last;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(RedisProcessorBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,167 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.IPPort;
+import vfd.SocketFD;
+import vproxy.component.ssl.CertKey;
+import vproxy.test.cases.TestSSL;
+import vproxybase.connection.*;
+import vproxybase.selector.SelectorEventLoop;
+import vproxybase.util.RingBuffer;
+import vproxybase.util.Tuple;
+import vproxybase.util.ringbuffer.SSLUtils;
+import vproxybase.util.ringbuffer.ssl.SSL;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
+import vproxybase.util.ringbuffer.ssl.VSSLContext;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * full tls handshakes per second against a server on loopback,
+ * the server uses the ssl ring buffers of an event loop, clients are blocking jdk sockets<br>
+ * resume=false: the session of the client is invalidated after each handshake, so no session is resumed<br>
+ * resume=true: the clients resume the sessions cached by the server<br>
+ * use -jvmArgsAppend -DsslHandshakeThreads=... etc. to try other executor settings
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(8)
+@Fork(1)
+public class SSLHandshakeBenchmark {
+    private static final int PORT = 38443;
+
+    @Param({"rsa", "ecdsa"})
+    public String certType;
+    @Param({"false", "true"})
+    public boolean resume;
+
+    private VSSLContext sslContext;
+    private SelectorEventLoop loop;
+    private SSLSocketFactory clientFactory;
+
+    @Setup
+    public void setUp() throws Exception {
+        CertKey ck;
+        if (certType.equals("rsa")) {
+            ck = new CertKey("rsa", new String[]{TestSSL.TEST_CERT}, TestSSL.TEST_KEY);
+        } else {
+            ck = new CertKey("ecdsa", new String[]{TestSSL.TEST_EC_CERT}, TestSSL.TEST_EC_KEY);
+        }
+        sslContext = new VSSLContext();
+        ck.setInto(sslContext);
+
+        loop = SelectorEventLoop.open();
+        NetEventLoop netLoop = new NetEventLoop(loop);
+        ServerSock server = ServerSock.create(new IPPort("127.0.0.1", PORT));
+        netLoop.addServer(server, null, new ServerHandler() {
+            @Override
+            public void acceptFail(ServerHandlerContext ctx, IOException err) {
+            }
+
+            @Override
+            public void connection(ServerHandlerContext ctx, Connection connection) {
+                try {
+                    netLoop.addConnection(connection, null, new EchoHandler());
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+
+            @Override
+            public Tuple<RingBuffer, RingBuffer> getIOBuffers(SocketFD channel) {
+                SSL ssl = sslContext.createSSL();
+                ssl.sslEngineBuilder.configure(engine -> engine.setUseClientMode(false));
+                SSLUtils.SSLBufferPair pair = SSLUtils.genbufForServer(ssl,
+                    RingBuffer.allocateDirect(24576), RingBuffer.allocateDirect(24576), channel);
+                return new Tuple<>(pair.left, pair.right);
+            }
+
+            @Override
+            public void removed(ServerHandlerContext ctx) {
+            }
+        });
+        loop.loop(r -> new Thread(r, "ssl-handshake-bench-server"));
+
+        SSLContext clientCtx = SSLContext.getInstance("TLS");
+        clientCtx.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        clientFactory = clientCtx.getSocketFactory();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        System.out.println();
+        System.out.println(SSLHandshakeExecutor.get());
+        System.out.println(sslContext.sslContextHolder.sessionStats);
+        loop.close();
+    }
+
+    private static class EchoHandler implements ConnectionHandler {
+        @Override
+        public void readable(ConnectionHandlerContext ctx) {
+            RingBuffer in = ctx.connection.getInBuffer();
+            in.writeTo(ctx.connection.getOutBuffer(), in.used());
+        }
+
+        @Override
+        public void writable(ConnectionHandlerContext ctx) {
+        }
+
+        @Override
+        public void exception(ConnectionHandlerContext ctx, IOException err) {
+            ctx.connection.close();
+        }
+
+        @Override
+        public void remoteClosed(ConnectionHandlerContext ctx) {
+            ctx.connection.close();
+        }
+
+        @Override
+        public void closed(ConnectionHandlerContext ctx) {
+        }
+
+        @Override
+        public void removed(ConnectionHandlerContext ctx) {
+        }
+    }
+
+    @Benchmark
+    public void handshake() throws Exception {
+        try (SSLSocket sock = (SSLSocket) clientFactory.createSocket("127.0.0.1", PORT)) {
+            sock.startHandshake();
+            // one round trip, so that the tls 1.3 session ticket sent after the handshake is received
+            sock.getOutputStream().write(1);
+            sock.getInputStream().read();
+            if (!resume) {
+                sock.getSession().invalidate();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(SSLHandshakeBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
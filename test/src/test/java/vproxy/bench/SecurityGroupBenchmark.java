@@ -0,0 +1,97 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.IP;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.secure.SecurityGroupRule;
+import vproxybase.connection.Protocol;
+import vproxybase.util.Network;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of one SecurityGroup.allow() call with N cidr rules<br>
+ * linear: check the rules one by one, which is how allow() worked before<br>
+ * indexed: the compiled index<br>
+ * cached: the compiled index with the decision cache of the thread enabled,
+ * most of the (address, port) pairs are repeated
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityGroupBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int rules;
+
+    private SecurityGroup sg;
+    private List<SecurityGroupRule> ruleList;
+    private IP[] addresses;
+    private int[] ports;
+    private int cursor = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random rand = new Random(1);
+        sg = new SecurityGroup("bench", false);
+        for (int i = 0; i < rules; ++i) {
+            int mask = 16 + rand.nextInt(17);
+            byte[] ip = new byte[]{10, (byte) rand.nextInt(256), (byte) rand.nextInt(256), (byte) rand.nextInt(256)};
+            byte[] maskBytes = Network.parseMask(mask);
+            Network.eraseToNetwork(ip, maskBytes);
+            int minPort = rand.nextInt(2) == 0 ? 0 : 443;
+            int maxPort = minPort == 0 ? 65535 : 443;
+            try {
+                sg.addRule(new SecurityGroupRule("r" + i, new Network(ip, maskBytes), Protocol.TCP, minPort, maxPort, true));
+            } catch (Exception ignore) {
+                // same network generated
+            }
+        }
+        ruleList = sg.getRules();
+
+        addresses = new IP[1024];
+        ports = new int[1024];
+        for (int i = 0; i < addresses.length; ++i) {
+            addresses[i] = IP.from(new byte[]{10, (byte) rand.nextInt(256), (byte) rand.nextInt(256), (byte) rand.nextInt(256)});
+            ports[i] = rand.nextBoolean() ? 443 : 80;
+        }
+    }
+
+    @Benchmark
+    public boolean linear() {
+        int i = cursor++ & 1023;
+        IP address = addresses[i];
+        int port = ports[i];
+        for (SecurityGroupRule rule : ruleList) {
+            if (rule.match(address, port)) {
+                return rule.allow;
+            }
+        }
+        return sg.defaultAllow;
+    }
+
+    @Benchmark
+    public boolean indexed() {
+        int i = cursor++ & 1023;
+        return sg.allow(Protocol.TCP, addresses[i], ports[i]);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-DsecurityGroupCacheSize=4096")
+    public boolean cached() {
+        int i = cursor++ & 1023;
+        return sg.allow(Protocol.TCP, addresses[i], ports[i]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(SecurityGroupBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
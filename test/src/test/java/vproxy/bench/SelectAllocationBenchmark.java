@@ -0,0 +1,117 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.*;
+import vfd.posix.FDInfo;
+import vfd.posix.Posix;
+import vfd.posix.PosixFDs;
+import vproxybase.selector.wrap.WrappedSelector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure the allocation of one select() with N ready fds when using -Dvfd=posix<br>
+ * fdInfoArray: the FDInfo[] returned by aeApiPoll, converted to SelectedEntry objects,
+ * which is how AESelector and WrappedSelector handled the result before<br>
+ * firedBuffer: the current selector, events are written into a preallocated direct buffer<br>
+ * <br>
+ * requires libvfdposix on java.library.path, run with <code>-prof gc</code> and check gc.alloc.rate.norm, e.g.<br>
+ * <code>java -Djava.library.path=./base/src/main/c -cp ... vproxy.bench.SelectAllocationBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dvfd=posix")
+public class SelectAllocationBenchmark {
+    @Param({"1", "64", "1024"})
+    public int readyFds;
+
+    private Posix posix;
+    private long ae;
+    private int[] rawFds;
+    private FDSelector selector;
+    private List<DatagramFD> fds;
+
+    @Setup
+    public void setUp() throws IOException {
+        FDs provided = FDProvider.get().getProvided();
+        if (!(provided instanceof PosixFDs)) {
+            throw new IllegalStateException("-Dvfd=posix is required");
+        }
+        posix = ((PosixFDs) provided).posix;
+
+        // the old way
+        ae = posix.aeCreateEventLoop(readyFds + 16);
+        rawFds = new int[readyFds];
+        for (int i = 0; i < readyFds; ++i) {
+            // an udp socket is always writable
+            rawFds[i] = posix.createIPv4UdpFD();
+            posix.aeCreateFileEvent(ae, rawFds[i], posix.aeWritable(), new Object());
+        }
+
+        // the current selector
+        selector = new WrappedSelector(provided.openSelector());
+        fds = new ArrayList<>(readyFds);
+        for (int i = 0; i < readyFds; ++i) {
+            DatagramFD fd = provided.openDatagramFD();
+            fd.configureBlocking(false);
+            fd.bind(new IPPort("127.0.0.1", 0));
+            selector.register(fd, EventSet.write(), null);
+            fds.add(fd);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (int fd : rawFds) {
+            posix.aeDeleteFileEvent(ae, fd);
+            posix.close(fd);
+        }
+        posix.aeDeleteEventLoop(ae);
+        for (DatagramFD fd : fds) {
+            selector.remove(fd);
+            fd.close();
+        }
+        selector.close();
+    }
+
+    @Benchmark
+    public void fdInfoArray(Blackhole bh) throws IOException {
+        FDInfo[] res = posix.aeApiPoll(ae, 0);
+        // WrappedSelector.calcVirtual()
+        HashSet<SelectedEntry> virtual = new HashSet<>();
+        bh.consume(virtual);
+        // AESelector.handleSelectResult(FDInfo[])
+        List<SelectedEntry> ret = new ArrayList<>(res.length);
+        for (FDInfo info : res) {
+            EventSet ev = (info.events & posix.aeWritable()) != 0 ? EventSet.write() : EventSet.read();
+            ret.add(new SelectedEntry(null, ev, info.attachment));
+        }
+        for (SelectedEntry e : ret) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void firedBuffer(Blackhole bh) throws IOException {
+        for (SelectedEntry e : selector.selectNow()) {
+            bh.consume(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(SelectAllocationBenchmark.class.getSimpleName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+}
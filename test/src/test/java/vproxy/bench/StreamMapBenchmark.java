@@ -0,0 +1,132 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vproxybase.util.IntIntMap;
+import vproxybase.util.IntObjectMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the stream table pattern of http/2 and the streamed fd multiplexers:
+ * a fixed number of live streams, each op looks up a live stream (as every frame does),
+ * opens a new stream and removes the oldest one<br>
+ * stream ids grow by 2 like client initiated http/2 streams<br>
+ * run with the gc profiler (enabled in main) to see gc.alloc.rate.norm
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamMapBenchmark {
+    private static final int LOOKUPS_PER_OP = 8;
+
+    @Param({"100", "10000"})
+    public int streams;
+
+    private final Object value = new Object();
+    private Map<Integer, Object> hashMap;
+    private Map<Integer, Integer> hashMapInt;
+    private IntObjectMap<Object> intObjectMap;
+    private IntIntMap intIntMap;
+    private int oldest;
+    private int next;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        hashMap = new HashMap<>();
+        hashMapInt = new HashMap<>();
+        intObjectMap = new IntObjectMap<>();
+        intIntMap = new IntIntMap(-1);
+        oldest = 1;
+        next = 1;
+        for (int i = 0; i < streams; ++i) {
+            hashMap.put(next, value);
+            hashMapInt.put(next, next + 1);
+            intObjectMap.put(next, value);
+            intIntMap.put(next, next + 1);
+            next += 2;
+        }
+    }
+
+    private int liveStreamId() {
+        cursor = (cursor + 7919) % streams;
+        return oldest + cursor * 2;
+    }
+
+    @Benchmark
+    public int hashMap() {
+        int n = 0;
+        for (int i = 0; i < LOOKUPS_PER_OP; ++i) {
+            if (hashMap.get(liveStreamId()) != null) {
+                ++n;
+            }
+        }
+        hashMap.put(next, value);
+        hashMap.remove(oldest);
+        next += 2;
+        oldest += 2;
+        return n;
+    }
+
+    @Benchmark
+    public int intObjectMap() {
+        int n = 0;
+        for (int i = 0; i < LOOKUPS_PER_OP; ++i) {
+            if (intObjectMap.get(liveStreamId()) != null) {
+                ++n;
+            }
+        }
+        intObjectMap.put(next, value);
+        intObjectMap.remove(oldest);
+        next += 2;
+        oldest += 2;
+        return n;
+    }
+
+    @Benchmark
+    public int hashMapIntInt() {
+        int n = 0;
+        for (int i = 0; i < LOOKUPS_PER_OP; ++i) {
+            Integer v = hashMapInt.get(liveStreamId());
+            if (v != null) {
+                n += v;
+            }
+        }
+        hashMapInt.put(next, next + 1);
+        hashMapInt.remove(oldest);
+        next += 2;
+        oldest += 2;
+        return n;
+    }
+
+    @Benchmark
+    public int intIntMap() {
+        int n = 0;
+        for (int i = 0; i < LOOKUPS_PER_OP; ++i) {
+            int v = intIntMap.get(liveStreamId());
+            if (v != -1) {
+                n += v;
+            }
+        }
+        intIntMap.put(next, next + 1);
+        intIntMap.remove(oldest);
+        next += 2;
+        oldest += 2;
+        return n;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(StreamMapBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
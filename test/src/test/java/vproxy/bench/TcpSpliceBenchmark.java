@@ -0,0 +1,121 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.IPPort;
+import vproxy.component.app.TcpLB;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.svrgroup.Upstream;
+import vproxybase.Config;
+import vproxybase.component.check.HealthCheckConfig;
+import vproxybase.component.elgroup.EventLoopGroup;
+import vproxybase.component.svrgroup.Method;
+import vproxybase.component.svrgroup.ServerGroup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * iperf-style loopback throughput of a plain tcp-lb when using -Dvfd=posix<br>
+ * the client keeps writing 1MB chunks to the lb, and the backend discards all received bytes<br>
+ * the main method runs the benchmark twice: with -DtcpSplice=false and -DtcpSplice=true<br>
+ * throughput (MB/s) = ops/s<br>
+ * <br>
+ * requires libvfdposix on java.library.path, e.g.<br>
+ * <code>java -Djava.library.path=./base/src/main/c -cp ... vproxy.bench.TcpSpliceBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dvfd=posix")
+public class TcpSpliceBenchmark {
+    private static final int lbPort = 18090;
+    private static final int backendPort = 18091;
+    private static final int CHUNK = 1024 * 1024;
+
+    private EventLoopGroup elg;
+    private TcpLB lb;
+    private ServerSocket backend;
+    private Thread sink;
+    private Socket client;
+    private OutputStream out;
+    private final byte[] chunk = new byte[CHUNK];
+
+    @Setup
+    public void setUp() throws Exception {
+        backend = new ServerSocket();
+        backend.bind(new InetSocketAddress("127.0.0.1", backendPort));
+        sink = new Thread(() -> {
+            // the health check also connects to the backend, so keep accepting
+            while (true) {
+                Socket sock;
+                try {
+                    sock = backend.accept();
+                } catch (IOException e) {
+                    return; // closed
+                }
+                new Thread(() -> discard(sock), "sink-conn").start();
+            }
+        }, "sink");
+        sink.start();
+
+        elg = new EventLoopGroup("elg0");
+        elg.add("el0");
+        ServerGroup sg = new ServerGroup("sg0", elg, new HealthCheckConfig(400, /* disable health check */24 * 60 * 60 * 1000, 2, 3), Method.wrr);
+        sg.add("sink", new IPPort("127.0.0.1", backendPort), 10);
+        for (ServerGroup.ServerHandle h : sg.getServerHandles()) {
+            h.healthy = true;
+        }
+        Upstream ups = new Upstream("ups0");
+        ups.add(sg, 10);
+        lb = new TcpLB("lb0", elg, elg, new IPPort("127.0.0.1", lbPort), ups,
+            Config.tcpTimeout, 65536, 65536, SecurityGroup.allowAll());
+        lb.start();
+
+        client = new Socket();
+        client.connect(new InetSocketAddress("127.0.0.1", lbPort));
+        out = client.getOutputStream();
+    }
+
+    private static void discard(Socket sock) {
+        byte[] buf = new byte[CHUNK];
+        try (sock) {
+            InputStream in = sock.getInputStream();
+            //noinspection StatementWithEmptyBody
+            while (in.read(buf) >= 0) {
+            }
+        } catch (IOException ignore) {
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        backend.close();
+        sink.join(1000);
+        lb.destroy();
+        elg.close();
+    }
+
+    @Benchmark
+    public void transfer() throws IOException {
+        out.write(chunk);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (boolean splice : new boolean[]{false, true}) {
+            new Runner(new OptionsBuilder()
+                .include(TcpSpliceBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dvfd=posix", "-DtcpSplice=" + splice)
+                .build()).run();
+        }
+    }
+}
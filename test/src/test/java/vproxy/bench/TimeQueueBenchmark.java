@@ -0,0 +1,78 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vproxybase.Config;
+import vproxybase.util.PriorityTimeQueue;
+import vproxybase.util.TimeElem;
+import vproxybase.util.TimeQueue;
+import vproxybase.util.TimingWheelTimeQueue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compare the PriorityQueue based time queue and the timing wheel.<br>
+ * rearm: cancel a timer and add a new one, which is what idle timeouts do on every read/write<br>
+ * expire: move the clock forward for 1ms and re-add the expired timers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeQueueBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int timers;
+    @Param({"heap", "wheel"})
+    public String impl;
+
+    private TimeQueue<Integer> queue;
+    private TimeElem<Integer>[] elems;
+    private int[] timeouts;
+    private int cursor = 0;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Config.currentTimestamp = System.currentTimeMillis();
+        queue = impl.equals("heap") ? new PriorityTimeQueue<>() : new TimingWheelTimeQueue<>();
+        elems = new TimeElem[timers];
+        timeouts = new int[timers];
+        Random rand = new Random(1);
+        for (int i = 0; i < timers; ++i) {
+            timeouts[i] = 1_000 + rand.nextInt(60_000);
+            elems[i] = queue.push(timeouts[i], i);
+        }
+    }
+
+    @Benchmark
+    public TimeElem<Integer> rearm() {
+        int idx = cursor;
+        cursor = (cursor + 1) % timers;
+        elems[idx].removeSelf();
+        TimeElem<Integer> e = queue.push(timeouts[idx], idx);
+        elems[idx] = e;
+        return e;
+    }
+
+    @Benchmark
+    public int expire() {
+        Config.currentTimestamp += 1;
+        int n = 0;
+        Integer idx;
+        while ((idx = queue.poll()) != null) {
+            elems[idx] = queue.push(timeouts[idx], idx);
+            ++n;
+        }
+        return n + queue.nextTime();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(TimeQueueBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vfd.*;
+import vfd.posix.PosixFDs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure packets per second over loopback when using -Dvfd=posix<br>
+ * single: one send() and one receive() for each packet, which is one jni call and one syscall each<br>
+ * batched: sendBatch() and receiveBatch(), backed by sendmmsg and recvmmsg<br>
+ * <br>
+ * requires libvfdposix on java.library.path, e.g.<br>
+ * <code>java -Djava.library.path=./base/src/main/c -cp ... vproxy.bench.UDPBatchBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dvfd=posix")
+public class UDPBatchBenchmark {
+    private static final int BATCH = 32;
+
+    @Param({"64", "1400"})
+    public int packetSize;
+
+    private DatagramFD sender;
+    private DatagramFD receiver;
+    private IPPort receiverAddress;
+
+    private final ByteBuffer[] sndBufs = new ByteBuffer[BATCH];
+    private final ByteBuffer[] rcvBufs = new ByteBuffer[BATCH];
+    private final IPPort[] remotes = new IPPort[BATCH];
+    private final IPPort[] rcvRemotes = new IPPort[BATCH];
+
+    @Setup
+    public void setUp() throws IOException {
+        FDs provided = FDProvider.get().getProvided();
+        if (!(provided instanceof PosixFDs)) {
+            throw new IllegalStateException("-Dvfd=posix is required");
+        }
+        receiver = provided.openDatagramFD();
+        receiver.configureBlocking(false);
+        receiver.bind(new IPPort("127.0.0.1", 0));
+        receiverAddress = receiver.getLocalAddress();
+
+        sender = provided.openDatagramFD();
+        sender.configureBlocking(false);
+        sender.bind(new IPPort("127.0.0.1", 0));
+
+        for (int i = 0; i < BATCH; ++i) {
+            sndBufs[i] = ByteBuffer.allocate(packetSize);
+            rcvBufs[i] = ByteBuffer.allocate(2048);
+            remotes[i] = receiverAddress;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int single() throws IOException {
+        for (ByteBuffer b : sndBufs) {
+            b.clear();
+            sender.send(b, receiverAddress);
+        }
+        int received = 0;
+        while (received < BATCH) {
+            ByteBuffer b = rcvBufs[0];
+            b.clear();
+            if (receiver.receive(b) == null) {
+                break; // dropped
+            }
+            ++received;
+        }
+        return received;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int batched() throws IOException {
+        for (ByteBuffer b : sndBufs) {
+            b.clear();
+        }
+        sender.sendBatch(sndBufs, remotes, BATCH);
+        for (ByteBuffer b : rcvBufs) {
+            b.clear();
+        }
+        // loopback packets are delivered when sent, all packets are received in one call unless dropped
+        return receiver.receiveBatch(rcvBufs, rcvRemotes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(UDPBatchBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package vproxy.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vpacket.VProxyEncryptedPacket;
+import vpacket.VXLanPacket;
+import vproxybase.util.ByteArray;
+import vproxybase.util.Consts;
+import vproxybase.util.crypto.Aes256Key;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure packets per second on one core of the encrypted links between switches<br>
+ * encrypt: build a vxlan packet into a vproxy switch packet and write it into the send buffer,
+ * which is what the user and user-client ifaces do<br>
+ * decrypt: parse the received bytes, which is what the switch does when receiving from a user<br>
+ * cipher: aes-256-cfb is the original format, aes-256-gcm encrypts and authenticates in one pass
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VProxyEncryptedPacketBenchmark {
+    @Param({"aes-256-cfb", "aes-256-gcm"})
+    public String cipher;
+    @Param({"64", "1400"})
+    public int payloadSize;
+
+    private Aes256Key key;
+    private VXLanPacket vxlan;
+    private ByteArray encrypted;
+    private final ByteBuffer sndBuf = ByteBuffer.allocate(2048);
+
+    @Setup
+    public void setUp() {
+        key = Aes256Key.create(cipher, "p@sSw0rD");
+
+        byte[] payload = new byte[8 + payloadSize];
+        new Random(1).nextBytes(payload);
+        payload[0] = 0x08;
+        vxlan = new VXLanPacket();
+        String err = vxlan.from(ByteArray.from(payload));
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+
+        encrypted = newPacket().getRawPacket();
+    }
+
+    private VProxyEncryptedPacket newPacket() {
+        VProxyEncryptedPacket p = new VProxyEncryptedPacket(u -> key);
+        p.setUser("abcdefgh");
+        p.setMagic(Consts.VPROXY_SWITCH_MAGIC);
+        p.setType(Consts.VPROXY_SWITCH_TYPE_VXLAN);
+        p.setVxlan(vxlan);
+        return p;
+    }
+
+    @Benchmark
+    public ByteBuffer encrypt() {
+        sndBuf.clear();
+        newPacket().writeTo(sndBuf);
+        sndBuf.flip();
+        return sndBuf;
+    }
+
+    @Benchmark
+    public VXLanPacket decrypt() {
+        VProxyEncryptedPacket p = new VProxyEncryptedPacket(u -> key);
+        String err = p.from(encrypted);
+        if (err != null) {
+            throw new IllegalStateException(err);
+        }
+        return p.getVxlan();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(VProxyEncryptedPacketBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
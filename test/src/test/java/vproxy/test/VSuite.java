@@ -11,16 +11,35 @@ import vproxy.test.cases.*;
     TestTcpLB.class,
     TestNetMask.class,
     TestTimer.class,
+    TestTimeQueue.class,
+    TestLogger.class,
+    TestAccessLog.class,
+    TestBufferPool.class,
+    TestHintIndex.class,
     TestResolver.class,
+    TestDNSServer.class,
+    TestDNSAnswerCache.class,
+    TestUDPBatch.class,
+    TestSpliceRingBuffer.class,
     TestSocks5.class,
     TestConnectClient.class,
     TestSSL.class,
+    TestSSLHandshakeExecutor.class,
     TestProtocols.class,
     TestHttp1Parser.class,
+    TestHttp2HPack.class,
+    TestRedisProcessor.class,
+    TestP2CEwma.class,
+    TestMaglev.class,
     TestHealthCheck.class,
     TestPacket.class,
     TestRouteTable.class,
+    TestNetworkTrie.class,
+    TestSecurityGroup.class,
+    TestPrimitiveMaps.class,
+    TestABP.class,
     TestTCP.class,
+    TestTCPCongestion.class,
     TestHttpServer.class,
 
     AfterAll.class
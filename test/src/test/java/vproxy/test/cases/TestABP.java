@@ -0,0 +1,125 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vproxyx.websocks.ABP;
+import vproxyx.websocks.DomainChecker;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class TestABP {
+    private static ABP abp(String rules) {
+        ABP abp = new ABP("test", false);
+        abp.addRule(rules);
+        return abp;
+    }
+
+    @Test
+    public void specificUri() {
+        ABP abp = abp("||example.com\n||http://a.b.org/path");
+        assertTrue(abp.block("example.com"));
+        assertTrue(abp.block("www.example.com"));
+        assertTrue(abp.block("a.b.org"));
+        assertFalse(abp.block("myexample.com"));
+        assertFalse(abp.block(".example.com"));
+        assertFalse(abp.block("example.com.cn"));
+        assertFalse(abp.block("b.org"));
+    }
+
+    @Test
+    public void fromBeginningAndSimple() {
+        ABP abp = abp("|http://exact.com/x\ngoogle\n.twitter.com");
+        assertTrue(abp.block("exact.com"));
+        assertFalse(abp.block("a.exact.com"));
+        assertTrue(abp.block("www.google.co.jp"));
+        assertTrue(abp.block("api.twitter.com"));
+        assertFalse(abp.block("twitter.com"));
+    }
+
+    @Test
+    public void regexp() {
+        ABP abp = abp("/^https?:\\/\\/[^\\/]+blogspot\\.(.*)/");
+        assertTrue(abp.block("abc.blogspot.com"));
+        assertFalse(abp.block("abc.blogger.com"));
+    }
+
+    @Test
+    public void firstRuleDecides() {
+        ABP abp = abp("@@||cn.example.com\n||example.com\n@@||www.example.com\n@@|direct\n@@/^nope\\..*/\n||nope.com");
+        assertFalse(abp.block("cn.example.com"));
+        assertFalse(abp.block("a.cn.example.com"));
+        assertTrue(abp.block("www.example.com"));
+        assertTrue(abp.block("example.com"));
+        assertFalse(abp.block("direct.example.org"));
+        assertFalse(abp.block("nope.com"));
+        // whitelist of a host does not whitelist other hosts
+        assertFalse(abp("@@||a.com\nb.com").block("b.org"));
+        assertTrue(abp("@@||a.com\nb.com").block("b.com"));
+        // whitelist regexp does not whitelist everything
+        assertTrue(abp("@@/^a\\.com$/\nb.com").block("b.com"));
+        assertFalse(abp("@@/^a\\.com$/\na.com").block("a.com"));
+    }
+
+    @Test
+    public void rulesAddedLater() {
+        ABP abp = abp("||a.com");
+        assertTrue(abp.block("a.com"));
+        assertFalse(abp.block("b.com"));
+        abp.addRule("||b.com");
+        assertTrue(abp.block("b.com"));
+    }
+
+    @Test
+    public void cacheOfEachThread() throws Exception {
+        ABP abp = abp("@@||b.a.com\n||a.com");
+        int threads = 4;
+        boolean[] ok = new boolean[threads];
+        Thread[] ts = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            int n = i;
+            ts[i] = new Thread(() -> {
+                boolean r = true;
+                for (int j = 0; j < 10000; ++j) {
+                    r &= abp.block("x" + (j % 100) + ".a.com");
+                    r &= !abp.block("b.a.com");
+                    r &= !abp.block("c.com");
+                }
+                ok[n] = r;
+            });
+            ts[i].start();
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        for (int i = 0; i < threads; ++i) {
+            assertTrue("thread " + i, ok[i]);
+        }
+
+        // the cached results of this thread are dropped when rules are added in another thread
+        assertFalse(abp.block("c.com"));
+        Thread t = new Thread(() -> abp.addRule("||c.com"));
+        t.start();
+        t.join();
+        assertTrue(abp.block("c.com"));
+    }
+
+    @Test
+    public void compiledDomainChecker() {
+        DomainChecker chk = DomainChecker.compile(Arrays.asList(
+            new DomainChecker.SuffixDomainChecker("example.com"),
+            new DomainChecker.PortChecker(22),
+            new DomainChecker.PatternDomainChecker(Pattern.compile(".*\\.local")),
+            new DomainChecker.ABPDomainChecker(abp("||abp.org"))
+        ));
+        assertTrue(chk.needProxy("example.com", 80));
+        assertTrue(chk.needProxy("myexample.com", 80));
+        assertFalse(chk.needProxy("example.com.cn", 80));
+        assertTrue(chk.needProxy("anything", 22));
+        assertTrue(chk.needProxy("a.local", 80));
+        assertTrue(chk.needProxy("x.abp.org", 80));
+        assertFalse(chk.needProxy("other.org", 80));
+        assertFalse(DomainChecker.compile(Arrays.asList()).needProxy("a.com", 80));
+    }
+}
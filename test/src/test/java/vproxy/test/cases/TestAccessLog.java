@@ -0,0 +1,280 @@
+package vproxy.test.cases;
+
+import com.twitter.hpack.Encoder;
+import org.junit.Test;
+import vfd.IP;
+import vfd.IPPort;
+import vproxybase.processor.Processor;
+import vproxybase.processor.http1.HttpContext;
+import vproxybase.processor.http1.HttpProcessor;
+import vproxybase.processor.http1.HttpSubContext;
+import vproxybase.processor.http2.Http2Context;
+import vproxybase.processor.http2.Http2Processor;
+import vproxybase.processor.http2.Http2SubContext;
+import vproxybase.util.AccessLog;
+import vproxybase.util.AccessLogWriter;
+import vproxybase.util.ByteArray;
+import vproxybase.util.io.ArrayOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Objects;
+
+import static org.junit.Assert.*;
+
+public class TestAccessLog {
+    private static final IPPort client = new IPPort(IP.from(Objects.requireNonNull(IP.parseIpv4String("1.2.3.4"))), 1122);
+    private static final IPPort backend = new IPPort(IP.from(Objects.requireNonNull(IP.parseIpv4String("10.0.0.1"))), 80);
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    private String[] lines() {
+        String s = bytes.toString();
+        if (s.isEmpty()) {
+            return new String[0];
+        }
+        return s.split("\n");
+    }
+
+    @Test
+    public void connectionRecord() {
+        AccessLogWriter writer = new AccessLogWriter(bytes, 16);
+        assertTrue(writer.connection("lb0", client, backend, 10, 20, 30, AccessLog.CLOSE_CLIENT));
+        assertTrue(writer.connection("lb0", client, null, 0, 0, 1, AccessLog.CLOSE_NO_BACKEND));
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"type\":\"conn\",\"time\":"));
+        assertTrue(lines[0], lines[0].endsWith(",\"lb\":\"lb0\",\"client\":\"1.2.3.4:1122\",\"backend\":\"10.0.0.1:80\"," +
+            "\"bytes_in\":10,\"bytes_out\":20,\"duration_ms\":30,\"close\":\"client-closed\"}"));
+        assertTrue(lines[1], lines[1].endsWith(",\"backend\":null,\"bytes_in\":0,\"bytes_out\":0,\"duration_ms\":1,\"close\":\"no-backend\"}"));
+    }
+
+    @Test
+    public void requestRecord() {
+        AccessLogWriter writer = new AccessLogWriter(bytes, 16);
+        assertTrue(writer.request("lb0", client, backend, "GET", "www.example.com", "/a\"b\\c\td", 200, 123));
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"type\":\"http\",\"time\":"));
+        assertTrue(lines[0], lines[0].endsWith(",\"lb\":\"lb0\",\"client\":\"1.2.3.4:1122\",\"backend\":\"10.0.0.1:80\"," +
+            "\"method\":\"GET\",\"host\":\"www.example.com\",\"uri\":\"/a\\\"b\\\\c\\u0009d\",\"status\":200,\"latency_us\":123}"));
+    }
+
+    @Test
+    public void bufferFull() {
+        AccessLogWriter writer = new AccessLogWriter(bytes, 4);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i < 4, writer.connection("lb0", client, backend, i, 0, 0, AccessLog.CLOSE_LOCAL));
+        }
+        writer.flush();
+        assertEquals(4, lines().length);
+
+        // slots are released after flushing
+        bytes.reset();
+        assertTrue(writer.connection("lb0", client, backend, 0, 0, 0, AccessLog.CLOSE_LOCAL));
+        writer.flush();
+        assertEquals(1, lines().length);
+    }
+
+    @Test
+    public void bufferPerThread() throws Exception {
+        AccessLogWriter writer = new AccessLogWriter(bytes, 2);
+        assertTrue(writer.connection("lb0", client, backend, 0, 0, 0, AccessLog.CLOSE_LOCAL));
+        assertTrue(writer.connection("lb0", client, backend, 1, 0, 0, AccessLog.CLOSE_LOCAL));
+        assertFalse(writer.connection("lb0", client, backend, 2, 0, 0, AccessLog.CLOSE_LOCAL));
+
+        // the ring of this thread is full, other threads have their own
+        boolean[] accepted = {false, false, false};
+        Thread t = new Thread(() -> {
+            for (int i = 0; i < 3; ++i) {
+                accepted[i] = writer.connection("lb0", client, backend, 20 + i, 0, 0, AccessLog.CLOSE_LOCAL);
+            }
+        });
+        t.start();
+        t.join();
+        assertTrue(accepted[0]);
+        assertTrue(accepted[1]);
+        assertFalse(accepted[2]);
+
+        writer.flush();
+        String[] lines = lines();
+        assertEquals(4, lines.length);
+        int fromOtherThread = 0;
+        for (String line : lines) {
+            if (line.contains("\"bytes_in\":2")) { // 20 or 21
+                ++fromOtherThread;
+            }
+        }
+        assertEquals(2, fromOtherThread);
+    }
+
+    @Test
+    public void sampleRatio() {
+        AccessLog log = new AccessLog("lb0", new AccessLogWriter(bytes, 16));
+        assertFalse(log.isEnabled());
+        for (int i = 0; i < 100; ++i) {
+            assertFalse(log.sample());
+        }
+        log.setSampleRatio(1);
+        assertTrue(log.isEnabled());
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(log.sample());
+        }
+        log.setSampleRatio(0.5);
+        int n = 0;
+        for (int i = 0; i < 10000; ++i) {
+            if (log.sample()) {
+                ++n;
+            }
+        }
+        assertTrue("sampled " + n, n > 4000 && n < 6000);
+
+        try {
+            log.setSampleRatio(1.5);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        try {
+            log.setSampleRatio(-0.1);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        assertTrue(log.getSampleRatio() == 0.5);
+    }
+
+    @Test
+    public void http1Request() throws Exception {
+        AccessLogWriter writer = new AccessLogWriter(bytes, 16);
+        AccessLog log = new AccessLog("lb0", writer);
+        log.setSampleRatio(1);
+
+        Processor<HttpContext, HttpSubContext> p = new HttpProcessor();
+        HttpContext ctx = p.init(client);
+        ctx.accessLog = log;
+        HttpSubContext front = p.initSub(ctx, 0, client);
+        HttpSubContext back = p.initSub(ctx, 1, backend);
+
+        front.feed(ByteArray.from(("" +
+            "POST /hello HTTP/1.1\r\n" +
+            "Host: www.example.com\r\n" +
+            "Content-Length: 0\r\n" +
+            "\r\n").getBytes()));
+        p.chosen(ctx, front, back);
+
+        back.feed(ByteArray.from(("" +
+            "HTTP/1.1 100 Continue\r\n" +
+            "\r\n" +
+            "HTTP/1.1 404 Not Found\r\n" +
+            "Content-Length: 0\r\n" +
+            "\r\n").getBytes()));
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].contains(",\"client\":\"1.2.3.4:1122\",\"backend\":\"10.0.0.1:80\"," +
+            "\"method\":\"POST\",\"host\":\"www.example.com\",\"uri\":\"/hello\",\"status\":404,\"latency_us\":"));
+    }
+
+    private static ByteArray h2Frame(int type, int flags, int streamId, ByteArray payload) {
+        ByteArray head = ByteArray.allocate(9);
+        head.int24(0, payload.length());
+        head.set(3, (byte) type);
+        head.set(4, (byte) flags);
+        head.int32(5, streamId);
+        return head.concat(payload).arrange();
+    }
+
+    private static ByteArray hpack(String... headers) throws Exception {
+        Encoder encoder = new Encoder(0);
+        ArrayOutputStream out = ArrayOutputStream.to(ByteArray.allocate(1024));
+        for (int i = 0; i < headers.length; i += 2) {
+            encoder.encodeHeader(out, headers[i].getBytes(), headers[i + 1].getBytes(), false);
+        }
+        return out.get().copy();
+    }
+
+    // feed the data like the lib: handle or proxy with the length retrieved from the processor
+    // return the data to send to the other side
+    private static ByteArray feed(Http2Processor p, Http2Context ctx, Http2SubContext sub, ByteArray data) throws Exception {
+        ByteArray ret = ByteArray.allocate(0);
+        int off = 0;
+        while (off < data.length()) {
+            int len = p.len(ctx, sub);
+            ByteArray part = data.sub(off, len).arrange();
+            off += len;
+            if (p.mode(ctx, sub) == Processor.Mode.proxy) {
+                ret = ret.concat(part);
+                p.proxyDone(ctx, sub);
+            } else {
+                ByteArray result = p.feed(ctx, sub, part);
+                if (result != null) {
+                    ret = ret.concat(result);
+                }
+            }
+        }
+        return ret.arrange();
+    }
+
+    // send one request on stream 1 and the response headers frame, return the status recorded
+    private String http2Response(int flags, ByteArray payload) throws Exception {
+        return http2Response(flags, payload, h2Frame(1, flags, 1, payload));
+    }
+
+    private String http2Response(int flags, ByteArray payload, ByteArray expectedForwarded) throws Exception {
+        AccessLogWriter writer = new AccessLogWriter(bytes, 16);
+        AccessLog log = new AccessLog("lb0", writer);
+        log.setSampleRatio(1);
+
+        Http2Processor p = new Http2Processor();
+        Http2Context ctx = p.init(client);
+        ctx.accessLog = log;
+        Http2SubContext front = p.initSub(ctx, 0, client);
+        Http2SubContext back = p.initSub(ctx, 1, backend);
+        // preface and an empty settings frame
+        p.feed(ctx, front, Http2SubContext.SEQ_PREFACE_MAGIC.concat(ByteArray.from(0, 0, 0, 4, 0, 0, 0, 0, 0)).arrange());
+        p.feed(ctx, front, ByteArray.from(new byte[0]));
+
+        ByteArray block = hpack(":method", "GET", ":scheme", "http", ":authority", "www.example.com", ":path", "/hello");
+        feed(p, ctx, front, h2Frame(1, 5 /* end headers and end stream */, 1, block));
+        p.chosen(ctx, front, back);
+
+        assertEquals(expectedForwarded, feed(p, ctx, back, h2Frame(1, flags, 1, payload)));
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].contains(",\"method\":\"GET\",\"host\":\"www.example.com\",\"uri\":\"/hello\",\"status\":"));
+        String status = lines[0].substring(lines[0].indexOf("\"status\":") + "\"status\":".length());
+        return status.substring(0, status.indexOf(','));
+    }
+
+    @Test
+    public void http2Request() throws Exception {
+        assertEquals("404", http2Response(4 /* end headers */, hpack(":status", "404", "content-length", "0")));
+    }
+
+    @Test
+    public void http2RequestPadded() throws Exception {
+        ByteArray block = hpack(":status", "201");
+        ByteArray payload = ByteArray.from(7).concat(block).concat(ByteArray.allocate(7));
+        assertEquals("201", http2Response(4 | 8 /* padded */, payload));
+    }
+
+    @Test
+    public void http2RequestPaddedWithPriority() throws Exception {
+        ByteArray block = hpack(":status", "503");
+        ByteArray payload = ByteArray.from(3).concat(ByteArray.from(0, 0, 0, 3, 15)).concat(block).concat(ByteArray.allocate(3));
+        // the priority is removed from the frame sent to the frontend
+        ByteArray forwarded = h2Frame(1, 4 | 8, 1, ByteArray.from(3).concat(block).concat(ByteArray.allocate(3)));
+        assertEquals("503", http2Response(4 | 8 | 0x20 /* priority */, payload, forwarded));
+    }
+
+    @Test
+    public void http2RequestWithoutStatus() throws Exception {
+        // recorded with the unknown status
+        assertEquals("0", http2Response(4, hpack("content-type", "text/plain")));
+    }
+}
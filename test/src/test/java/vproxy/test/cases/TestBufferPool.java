@@ -0,0 +1,92 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vproxybase.selector.SelectorEventLoop;
+import vproxybase.util.BlockCallback;
+import vproxybase.util.RingBuffer;
+import vproxybase.util.nio.ByteArrayChannel;
+import vproxybase.util.ringbuffer.DirectBufferPool;
+import vproxybase.util.ringbuffer.SimpleRingBuffer;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TestBufferPool {
+    private SelectorEventLoop loop;
+
+    @Before
+    public void setUp() throws Exception {
+        loop = SelectorEventLoop.open();
+        loop.loop(r -> new Thread(r, "EventLoop"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        loop.close();
+    }
+
+    @Test
+    public void leaseAndRelease() {
+        DirectBufferPool pool = new DirectBufferPool(new int[]{1024, 4096}, 8192);
+        ByteBuffer a = pool.lease(1000);
+        assertEquals(1024, a.capacity());
+        ByteBuffer b = pool.lease(2048);
+        assertEquals(4096, b.capacity());
+        ByteBuffer c = pool.lease(4096);
+        ByteBuffer d = pool.lease(10000);
+        assertEquals(10000, d.capacity());
+        assertEquals(4, pool.getMisses());
+
+        assertTrue(pool.release(a));
+        assertTrue(pool.release(b));
+        assertFalse("exceeds capacity", pool.release(c));
+        assertFalse("not a size class", pool.release(d));
+        assertEquals(2, pool.getFree());
+        assertEquals(1024 + 4096, pool.getFreeBytes());
+
+        assertSame(a, pool.lease(512));
+        assertSame(b, pool.lease(4000));
+        assertEquals(4, pool.getMisses());
+        assertEquals(6, pool.getLeased());
+        assertEquals(0, pool.getFree());
+    }
+
+    @Test
+    public void pooledRingBuffer() throws Throwable {
+        BlockCallback<Void, Throwable> cb = new BlockCallback<>();
+        loop.runOnLoop(() -> {
+            try {
+                DirectBufferPool pool = DirectBufferPool.current();
+                assertSame(loop.bufferPool, pool);
+                long leased = pool.getLeased();
+
+                SimpleRingBuffer buf = RingBuffer.allocateDirectPooled(16384);
+                assertEquals("lazily leased", leased, pool.getLeased());
+                assertEquals(16384, buf.capacity());
+
+                byte[] bytes = "hello".getBytes();
+                buf.storeBytesFrom(ByteArrayChannel.fromFull(bytes));
+                assertEquals(leased + 1, pool.getLeased());
+                assertEquals(5, buf.used());
+
+                int free = pool.getFree();
+                ByteArrayChannel out = ByteArrayChannel.fromEmpty(5);
+                buf.writeTo(out);
+                assertEquals("hello", new String(out.getBytes()));
+                assertEquals("returned when drained", free + 1, pool.getFree());
+
+                buf.storeBytesFrom(ByteArrayChannel.fromFull(bytes));
+                assertEquals(free, pool.getFree());
+                buf.clean();
+                assertEquals("returned when cleaned", free + 1, pool.getFree());
+                cb.succeeded(null);
+            } catch (Throwable t) {
+                cb.failed(t);
+            }
+        });
+        cb.block();
+    }
+}
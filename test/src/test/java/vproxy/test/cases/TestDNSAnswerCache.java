@@ -0,0 +1,191 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vfd.IP;
+import vfd.IPv4;
+import vproxy.dns.DNSAnswerCache;
+import vproxybase.Config;
+import vproxybase.dns.*;
+import vproxybase.dns.rdata.A;
+import vproxybase.util.ByteArray;
+
+import static org.junit.Assert.*;
+
+public class TestDNSAnswerCache {
+    private static DNSPacket query(int id, String qname, DNSType qtype) {
+        DNSPacket p = new DNSPacket();
+        p.id = id;
+        p.isResponse = false;
+        p.opcode = DNSPacket.Opcode.QUERY;
+        p.rd = true;
+        p.rcode = DNSPacket.RCode.NoError;
+        DNSQuestion q = new DNSQuestion();
+        q.qname = qname;
+        q.qtype = qtype;
+        q.qclass = DNSClass.IN;
+        p.questions.add(q);
+        return p;
+    }
+
+    private static DNSPacket response(DNSPacket req, DNSPacket.RCode rcode) {
+        DNSPacket resp = new DNSPacket();
+        resp.id = req.id;
+        resp.isResponse = true;
+        resp.opcode = DNSPacket.Opcode.QUERY;
+        resp.rd = true;
+        resp.ra = true;
+        resp.rcode = rcode;
+        resp.questions.addAll(req.questions);
+        return resp;
+    }
+
+    private static DNSResource aRecord(String name, String ip, int ttl) {
+        A a = new A();
+        a.address = (IPv4) IP.from(ip);
+        DNSResource r = new DNSResource();
+        r.name = name;
+        r.type = DNSType.A;
+        r.clazz = DNSClass.IN;
+        r.ttl = ttl;
+        r.rdata = a;
+        return r;
+    }
+
+    // SOA is not modeled, so build the record in wire format
+    private static DNSResource soaRecord(int ttl, int minimum) {
+        ByteArray rdata = ByteArray.from(0, 0) // mname and rname: root
+            .concat(ByteArray.allocate(20).int32(16, minimum));
+        ByteArray head = ByteArray.allocate(11);
+        head.set(0, (byte) 0) // name: root
+            .int16(1, 6) // SOA
+            .int16(3, 1) // IN
+            .int32(5, ttl)
+            .int16(9, rdata.length());
+        DNSResource r = new DNSResource();
+        r.name = "";
+        r.type = DNSType.OTHER;
+        r.clazz = DNSClass.IN;
+        r.ttl = ttl;
+        r.rdataBytes = rdata;
+        r.rawBytes = head.concat(rdata);
+        return r;
+    }
+
+    @Test
+    public void answerCache() throws Exception {
+        long saved = Config.currentTimestamp;
+        try {
+            DNSAnswerCache cache = new DNSAnswerCache(16);
+            DNSPacket req = query(1, "www.example.com.", DNSType.A);
+            assertNull(cache.get(req));
+
+            DNSPacket resp = response(req, DNSPacket.RCode.NoError);
+            resp.answers.add(aRecord("www.example.com.", "1.2.3.4", 100));
+            resp.answers.add(aRecord("www.example.com.", "1.2.3.5", 200));
+            Config.currentTimestamp = 1_000_000;
+            cache.put(req, resp.toByteArray().toJavaArray());
+
+            Config.currentTimestamp = 1_010_000;
+            byte[] bytes = cache.get(query(2, "www.example.com.", DNSType.A));
+            assertNotNull(bytes);
+            DNSPacket cached = Formatter.parsePackets(ByteArray.from(bytes)).get(0);
+            assertEquals(2, cached.id);
+            assertEquals(2, cached.answers.size());
+            assertEquals(90, cached.answers.get(0).ttl);
+            assertEquals(190, cached.answers.get(1).ttl);
+
+            // other type or name
+            assertNull(cache.get(query(3, "www.example.com.", DNSType.AAAA)));
+            assertNull(cache.get(query(3, "example.com.", DNSType.A)));
+
+            // expires with the min ttl
+            Config.currentTimestamp = 1_100_000;
+            assertNull(cache.get(query(4, "www.example.com.", DNSType.A)));
+            assertEquals(0, cache.size());
+        } finally {
+            Config.currentTimestamp = saved;
+        }
+    }
+
+    @Test
+    public void negativeCache() throws Exception {
+        long saved = Config.currentTimestamp;
+        try {
+            DNSAnswerCache cache = new DNSAnswerCache(16);
+            DNSPacket req = query(1, "none.example.com.", DNSType.A);
+            DNSPacket resp = response(req, DNSPacket.RCode.NameError);
+            resp.nameServers.add(soaRecord(3600, 30));
+            Config.currentTimestamp = 1_000_000;
+            cache.put(req, resp.toByteArray().toJavaArray());
+
+            Config.currentTimestamp = 1_020_000;
+            byte[] bytes = cache.get(query(2, "none.example.com.", DNSType.A));
+            assertNotNull(bytes);
+            DNSPacket cached = Formatter.parsePackets(ByteArray.from(bytes)).get(0);
+            assertEquals(DNSPacket.RCode.NameError, cached.rcode);
+            assertEquals(2, cached.id);
+
+            // min(ttl, soa minimum) is used
+            Config.currentTimestamp = 1_030_000;
+            assertNull(cache.get(query(3, "none.example.com.", DNSType.A)));
+
+            // failures are not cached
+            DNSPacket fail = response(req, DNSPacket.RCode.ServerFailure);
+            cache.put(req, fail.toByteArray().toJavaArray());
+            assertNull(cache.get(req));
+        } finally {
+            Config.currentTimestamp = saved;
+        }
+    }
+
+    @Test
+    public void caseInsensitive() throws Exception {
+        DNSAnswerCache cache = new DNSAnswerCache(16);
+        DNSPacket req = query(1, "www.Example.com.", DNSType.A);
+        DNSPacket resp = response(req, DNSPacket.RCode.NoError);
+        resp.answers.add(aRecord("www.Example.com.", "1.2.3.4", 100));
+        cache.put(req, resp.toByteArray().toJavaArray());
+
+        // 0x20 randomized names hit the same entry, and get their own casing back
+        byte[] bytes = cache.get(query(2, "WWW.example.COM.", DNSType.A));
+        assertNotNull(bytes);
+        DNSPacket cached = Formatter.parsePackets(ByteArray.from(bytes)).get(0);
+        assertEquals(2, cached.id);
+        assertEquals("WWW.example.COM.", cached.questions.get(0).qname);
+        assertEquals("1.2.3.4", ((A) cached.answers.get(0).rdata).address.formatToIPString());
+
+        bytes = cache.get(query(3, "www.example.com.", DNSType.A));
+        assertNotNull(bytes);
+        cached = Formatter.parsePackets(ByteArray.from(bytes)).get(0);
+        assertEquals("www.example.com.", cached.questions.get(0).qname);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void onlyStandardQueries() {
+        DNSAnswerCache cache = new DNSAnswerCache(16);
+        DNSPacket req = query(1, "www.example.com.", DNSType.A);
+        req.opcode = DNSPacket.Opcode.STATUS;
+        DNSPacket resp = response(req, DNSPacket.RCode.NoError);
+        resp.answers.add(aRecord("www.example.com.", "1.2.3.4", 100));
+        cache.put(req, resp.toByteArray().toJavaArray());
+        assertEquals(0, cache.size());
+
+        // a standard query is not served with the response of another opcode
+        cache.put(query(1, "www.example.com.", DNSType.A), resp.toByteArray().toJavaArray());
+        assertEquals(1, cache.size());
+        assertNull(cache.get(req));
+    }
+
+    @Test
+    public void bounded() {
+        DNSAnswerCache cache = new DNSAnswerCache(4);
+        for (int i = 0; i < 10; ++i) {
+            DNSPacket req = query(i, "www" + i + ".example.com.", DNSType.A);
+            DNSPacket resp = response(req, DNSPacket.RCode.NoError);
+            resp.answers.add(aRecord("www" + i + ".example.com.", "1.2.3.4", 100));
+            cache.put(req, resp.toByteArray().toJavaArray());
+            assertTrue(cache.size() <= 4);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.IPPort;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.svrgroup.Upstream;
+import vproxy.dns.DNSServer;
+import vproxybase.component.check.CheckProtocol;
+import vproxybase.component.check.HealthCheckConfig;
+import vproxybase.component.elgroup.EventLoopGroup;
+import vproxybase.component.svrgroup.Method;
+import vproxybase.component.svrgroup.ServerGroup;
+import vproxybase.dns.*;
+import vproxybase.dns.rdata.A;
+import vproxybase.util.AnnotationKeys;
+import vproxybase.util.ByteArray;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TestDNSServer {
+    private static final int dnsPort = 18053;
+
+    private EventLoopGroup elg;
+    private DNSServer dnsServer;
+
+    @Before
+    public void setUp() throws Exception {
+        elg = new EventLoopGroup("elg0");
+        elg.add("el0");
+        elg.add("el1");
+
+        ServerGroup sg = new ServerGroup("sg0", elg,
+            new HealthCheckConfig(1000, 10000, 1, 3, CheckProtocol.none), Method.wrr);
+        sg.setAnnotations(Map.of(AnnotationKeys.ServerGroup_HintHost, "example.com"));
+        sg.add("svr1", new IPPort("10.1.2.3", 80), 10);
+        sg.add("svr2", new IPPort("10.1.2.4", 80), 10);
+        sg.getServerHandles().forEach(h -> h.healthy = true);
+
+        Upstream ups = new Upstream("ups0");
+        ups.add(sg, 10);
+        dnsServer = new DNSServer("dns0", new IPPort("127.0.0.1", dnsPort), elg, ups, 60, SecurityGroup.allowAll());
+        dnsServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (dnsServer != null) {
+            dnsServer.stop();
+        }
+        if (elg != null) {
+            elg.close();
+        }
+    }
+
+    private static DNSPacket query(int id, String qname, DNSType qtype) {
+        DNSPacket p = new DNSPacket();
+        p.id = id;
+        p.isResponse = false;
+        p.opcode = DNSPacket.Opcode.QUERY;
+        p.rd = true;
+        p.rcode = DNSPacket.RCode.NoError;
+        DNSQuestion q = new DNSQuestion();
+        q.qname = qname;
+        q.qtype = qtype;
+        q.qclass = DNSClass.IN;
+        p.questions.add(q);
+        return p;
+    }
+
+    private static DNSPacket request(DNSPacket req) throws Exception {
+        try (DatagramSocket sock = new DatagramSocket()) {
+            sock.setSoTimeout(2000);
+            byte[] bytes = req.toByteArray().toJavaArray();
+            sock.send(new DatagramPacket(bytes, bytes.length, new InetSocketAddress("127.0.0.1", dnsPort)));
+            byte[] buf = new byte[2048];
+            DatagramPacket resp = new DatagramPacket(buf, buf.length);
+            sock.receive(resp);
+            List<DNSPacket> packets = Formatter.parsePackets(ByteArray.from(buf).sub(0, resp.getLength()));
+            assertEquals(1, packets.size());
+            return packets.get(0);
+        }
+    }
+
+    @Test
+    public void rrsetResponses() throws Exception {
+        Set<String> expected = Set.of("10.1.2.3", "10.1.2.4");
+        for (int i = 0; i < 20; ++i) {
+            DNSPacket resp = request(query(1000 + i, "example.com.", DNSType.A));
+            assertEquals(1000 + i, resp.id);
+            assertTrue(resp.isResponse);
+            assertTrue(resp.rd);
+            assertEquals(DNSPacket.RCode.NoError, resp.rcode);
+            assertEquals(1, resp.questions.size());
+            assertEquals("example.com.", resp.questions.get(0).qname);
+            assertEquals(1, resp.answers.size());
+            DNSResource r = resp.answers.get(0);
+            assertEquals(60, r.ttl);
+            assertTrue(expected.contains(((A) r.rdata).address.formatToIPString()));
+        }
+
+        // the response of another name is not mixed up with the pre-serialized one
+        DNSPacket resp = request(query(2000, "1.2.3.4", DNSType.A));
+        assertEquals(2000, resp.id);
+        assertEquals("1.2.3.4", ((A) resp.answers.get(0).rdata).address.formatToIPString());
+    }
+
+    @Test
+    public void negativeTtl() throws Exception {
+        dnsServer.ttl = -1;
+        for (int i = 0; i < 2; ++i) {
+            DNSPacket resp = request(query(3000 + i, "example.com.", DNSType.A));
+            assertEquals(0, resp.answers.get(0).ttl);
+        }
+        // the configured value is kept as is
+        assertEquals(-1, dnsServer.ttl);
+    }
+
+    @Test
+    public void startFailed() throws Exception {
+        dnsServer.stop();
+        // the socks are released when the loops deregister them
+        DatagramSocket occupied;
+        long deadline = System.currentTimeMillis() + 2000;
+        while (true) {
+            try {
+                occupied = new DatagramSocket(new InetSocketAddress("127.0.0.1", dnsPort));
+                break;
+            } catch (BindException e) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+        try {
+            dnsServer.start();
+            fail();
+        } catch (IOException ignore) {
+        } finally {
+            occupied.close();
+        }
+        // nothing is left bound, the server can start when the port is released
+        dnsServer.start();
+        DNSPacket resp = request(query(4000, "example.com.", DNSType.A));
+        assertEquals(4000, resp.id);
+        assertEquals(1, resp.answers.size());
+    }
+}
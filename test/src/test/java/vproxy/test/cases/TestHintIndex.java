@@ -0,0 +1,142 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vproxybase.processor.Hint;
+import vproxybase.processor.HintIndex;
+import vproxybase.util.AnnotationKeys;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestHintIndex {
+    private static Map<String, String> anno(String host, String port, String uri) {
+        Map<String, String> map = new HashMap<>();
+        if (host != null) {
+            map.put(AnnotationKeys.ServerGroup_HintHost, host);
+        }
+        if (port != null) {
+            map.put(AnnotationKeys.ServerGroup_HintPort, port);
+        }
+        if (uri != null) {
+            map.put(AnnotationKeys.ServerGroup_HintUri, uri);
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String linearSearch(List<String> values, List<Map<String, String>[]> annos, Hint hint) {
+        int level = 0;
+        String lastMax = null;
+        for (int i = 0; i < values.size(); ++i) {
+            int l = hint.matchLevel(annos.get(i));
+            if (l > level) {
+                level = l;
+                lastMax = values.get(i);
+            }
+        }
+        return lastMax;
+    }
+
+    @Test
+    public void hostAndUri() {
+        HintIndex<String> index = new HintIndex.Builder<String>()
+            .add("wildcard", anno("*", null, null))
+            .add("example", anno("example.com", null, null))
+            .add("api", anno("api.example.com", null, null))
+            .add("api-v1", anno("api.example.com", null, "/v1"))
+            .add("api-v1-users", anno("api.example.com", null, "/v1/users"))
+            .add("static", anno(null, null, "/static"))
+            .add("port", anno("port.com", "8080", null))
+            .build();
+
+        assertEquals("api", index.search(new Hint("api.example.com")));
+        assertEquals("api-v1", index.search(new Hint("api.example.com", "/v1/x")));
+        assertEquals("api-v1-users", index.search(new Hint("api.example.com", "/v1/users/1")));
+        // all suffix matches have the same level, the first one is chosen
+        assertEquals("example", index.search(new Hint("x.api.example.com")));
+        assertEquals("example", index.search(new Hint("example.com")));
+        assertEquals("example", index.search(new Hint("www.example.com:80")));
+        assertEquals("example", index.search(new Hint("abc.example.com")));
+        assertEquals("wildcard", index.search(new Hint("abc.com")));
+        assertEquals("static", index.search(new Hint(null, "/static/a.js")));
+        assertNull(index.search(new Hint(null, "/other")));
+        assertEquals("port", index.search(new Hint("port.com", 8080)));
+        assertEquals("wildcard", index.search(new Hint("port.com", 80)));
+    }
+
+    @Test
+    public void empty() {
+        HintIndex<String> index = HintIndex.empty();
+        assertNull(index.search(new Hint("example.com")));
+        index = new HintIndex.Builder<String>()
+            .add("no-hint", anno(null, "80", null), Collections.emptyMap())
+            .build();
+        assertNull(index.search(new Hint("example.com", 80)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sameAsMatchLevel() {
+        String[] labels = {"a", "b", "com", "www", "*", ""};
+        String[] uris = {null, "/", "/a", "/a/b", "/ab", "*", "", "*a", "/a/"};
+        String[] ports = {null, null, "80", "443"};
+        Random rand = new Random(1);
+
+        for (int round = 0; round < 200; ++round) {
+            List<String> values = new ArrayList<>();
+            List<Map<String, String>[]> annos = new ArrayList<>();
+            HintIndex.Builder<String> builder = new HintIndex.Builder<>();
+            int n = 1 + rand.nextInt(30);
+            for (int i = 0; i < n; ++i) {
+                Map<String, String>[] a = new Map[]{
+                    anno(rand.nextInt(4) == 0 ? null : randomHost(rand, labels), ports[rand.nextInt(ports.length)], uris[rand.nextInt(uris.length)]),
+                    anno(rand.nextBoolean() ? null : randomHost(rand, labels), ports[rand.nextInt(ports.length)], uris[rand.nextInt(uris.length)]),
+                };
+                values.add("v" + i);
+                annos.add(a);
+                builder.add("v" + i, a);
+            }
+            HintIndex<String> index = builder.build();
+
+            for (int q = 0; q < 200; ++q) {
+                String host = rand.nextInt(5) == 0 ? null : randomHost(rand, labels);
+                if (host != null && rand.nextInt(4) == 0) {
+                    host += ":80";
+                }
+                String uri = uris[rand.nextInt(uris.length)];
+                if (uri != null && rand.nextBoolean()) {
+                    uri += "?x=1";
+                }
+                Hint hint;
+                switch (rand.nextInt(4)) {
+                    case 0:
+                        hint = new Hint(host);
+                        break;
+                    case 1:
+                        hint = new Hint(host, rand.nextBoolean() ? 80 : 443);
+                        break;
+                    case 2:
+                        hint = new Hint(host, uri);
+                        break;
+                    default:
+                        hint = new Hint(host, rand.nextBoolean() ? 80 : 443, uri);
+                        break;
+                }
+                assertEquals(hint + " " + values, linearSearch(values, annos, hint), index.search(hint));
+            }
+        }
+    }
+
+    private static String randomHost(Random rand, String[] labels) {
+        int n = 1 + rand.nextInt(3);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            if (i != 0) {
+                sb.append(".");
+            }
+            sb.append(labels[rand.nextInt(labels.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -3,6 +3,7 @@ package vproxy.test.cases;
 import org.junit.Test;
 import vfd.IP;
 import vfd.IPPort;
+import vproxybase.processor.Hint;
 import vproxybase.processor.Processor;
 import vproxybase.processor.http1.HttpContext;
 import vproxybase.processor.http1.HttpProcessor;
@@ -569,4 +570,69 @@ public class TestHttp1Parser {
         assertEquals("B-Trail", resp.trailers.get(1).key);
         assertEquals("value2", resp.trailers.get(1).value);
     }
+
+    @Test
+    public void proxyModeKeepAlive() throws Exception {
+        Processor<HttpContext, HttpSubContext> p = new HttpProcessor();
+        HttpContext ctx = p.init(address);
+        HttpSubContext front = p.initSub(ctx, 0, null);
+
+        String reqs = "" +
+            "POST /a HTTP/1.1\r\n" +
+            "HOST: a.example.com\r\n" +
+            "Content-Length:  3 \r\n" +
+            "X-Forwarded-For: 5.6.7.8\r\n" +
+            "\r\n" +
+            "abc" +
+            "POST /b?x=y HTTP/1.1\r\n" +
+            "Host: b.example.com\r\n" +
+            "transfer-encoding: Chunked\r\n" +
+            "Connection: close\r\n" +
+            "\r\n" +
+            "3;ext\r\n" +
+            "abc\r\n" +
+            "0\r\n" +
+            "Trail: value\r\n" +
+            "\r\n";
+        ByteArray r = front.feed(ByteArray.from(reqs.getBytes()));
+        assertTrue(front.isIdle());
+        assertTrue(front.isConnectionClose());
+        // the first request has x-forwarded-for
+        String expected = reqs
+            .replace("5.6.7.8\r\n\r\n", "5.6.7.8\r\nx-client-port: " + clientPort + "\r\n\r\n")
+            .replace("close\r\n\r\n", "close\r\nx-forwarded-for: " + forwardedFor + "\r\nx-client-port: " + clientPort + "\r\n\r\n");
+        assertEquals(expected, new String(r.toJavaArray()));
+
+        Hint hint = p.connectionHint(ctx, front);
+        assertEquals("b.example.com", hint.getHost());
+        assertEquals("/b", hint.getUri());
+
+        // the content-length of the last request must not be used
+        front.feed(ByteArray.from("GET / HTTP/1.1\r\nHost: b.example.com\r\n\r\n".getBytes()));
+        assertTrue(front.isIdle());
+        assertFalse(front.isConnectionClose());
+        assertEquals("/", p.connectionHint(ctx, front).getUri());
+    }
+
+    @Test
+    public void proxyModeResponse() throws Exception {
+        Processor<HttpContext, HttpSubContext> p = new HttpProcessor();
+        HttpContext ctx = p.init(null);
+        HttpSubContext backend = p.initSub(ctx, 1, null);
+
+        ByteArray a = ByteArray.from(("" +
+            "HTTP/1.1 200 OK\r\n" +
+            "Content-Length: 5\r\n" +
+            "\r\n" +
+            "01234").getBytes());
+        assertEquals(a, backend.feed(a));
+        assertTrue(backend.isIdle());
+
+        try {
+            backend.feed(ByteArray.from("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n".getBytes()));
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("chunk size"));
+        }
+    }
 }
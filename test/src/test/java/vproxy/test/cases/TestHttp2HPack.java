@@ -0,0 +1,120 @@
+package vproxy.test.cases;
+
+import com.twitter.hpack.Decoder;
+import com.twitter.hpack.Encoder;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.IP;
+import vfd.IPPort;
+import vproxybase.processor.http2.Http2Context;
+import vproxybase.processor.http2.Http2Processor;
+import vproxybase.processor.http2.Http2SubContext;
+import vproxybase.util.ByteArray;
+import vproxybase.util.io.ArrayInputStream;
+import vproxybase.util.io.ArrayOutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestHttp2HPack {
+    private Http2Processor p;
+    private Http2Context ctx;
+    private Http2SubContext front;
+    private final Encoder clientEncoder = new Encoder(4096);
+    private final ArrayOutputStream clientOut = ArrayOutputStream.to(ByteArray.from(new byte[65536]));
+    private int streamId = 1;
+
+    @Before
+    public void setUp() throws Exception {
+        p = new Http2Processor();
+        ctx = p.init(new IPPort(IP.from(new byte[]{10, 0, 0, 1}), 1234));
+        front = p.initSub(ctx, 0, null);
+        // preface and an empty settings frame
+        p.feed(ctx, front, Http2SubContext.SEQ_PREFACE_MAGIC.concat(ByteArray.from(0, 0, 0, 4, 0, 0, 0, 0, 0)).arrange());
+        p.feed(ctx, front, ByteArray.from(new byte[0]));
+    }
+
+    // send a request from the client and return the frames to send to the backend
+    private ByteArray request(Http2SubContext backend, String... headers) throws Exception {
+        for (int i = 0; i < headers.length; i += 2) {
+            clientEncoder.encodeHeader(clientOut, headers[i].getBytes(), headers[i + 1].getBytes(), false);
+        }
+        ByteArray block = clientOut.get();
+        ByteArray head = ByteArray.from(0, 0, 0, 1, 5 /* end headers and end stream */, 0, 0, 0, 0);
+        head.int24(0, block.length());
+        head.int32(5, streamId);
+        streamId += 2;
+
+        assertNull(p.feed(ctx, front, head));
+        ByteArray data = p.feed(ctx, front, block);
+        return p.beforeSending(ctx, front, backend, data);
+    }
+
+    // decode the frames, check the frame heads, and return the headers
+    private static List<String> decode(Decoder decoder, ByteArray frames, int expectedStreamId) throws Exception {
+        ByteArray block = null;
+        int off = 0;
+        boolean first = true;
+        while (off < frames.length()) {
+            int len = frames.uint24(off);
+            int type = frames.get(off + 3);
+            int flags = frames.get(off + 4);
+            assertEquals(first ? 1 : 9, type);
+            if (first) {
+                assertEquals(1, flags & 1); // end stream is kept
+            }
+            assertEquals(off + 9 + len == frames.length(), (flags & 4) != 0);
+            assertEquals(expectedStreamId, frames.int32(off + 5));
+            block = block == null ? frames.sub(off + 9, len) : block.concat(frames.sub(off + 9, len));
+            off += 9 + len;
+            first = false;
+        }
+        assertNotNull(block);
+        List<String> ret = new ArrayList<>();
+        decoder.decode(ArrayInputStream.from(block.arrange()), (name, value, sensitive) -> ret.add(new String(name) + "=" + new String(value)));
+        decoder.endHeaderBlock();
+        return ret;
+    }
+
+    @Test
+    public void dynamicTablePerBackend() throws Exception {
+        Http2SubContext b1 = p.initSub(ctx, 1, null);
+        Http2SubContext b2 = p.initSub(ctx, 2, null);
+        Decoder d1 = new Decoder(65536, 4096);
+        Decoder d2 = new Decoder(65536, 4096);
+
+        int firstLen = 0;
+        for (int i = 0; i < 6; ++i) {
+            boolean one = i % 2 == 0;
+            String cookie = "session=" + (i % 3);
+            ByteArray frames = request(one ? b1 : b2, ":path", "/" + i, "cookie", cookie);
+            List<String> headers = decode(one ? d1 : d2, frames, 2 * i + 1);
+            assertEquals(Arrays.asList(":path=/" + i, "cookie=" + cookie, "x-forwarded-for=10.0.0.1", "x-client-port=1234"), headers);
+            if (i == 0) {
+                firstLen = frames.length();
+            } else if (i >= 2) {
+                // x-forwarded-for and x-client-port are indexed in the table of the backend
+                assertTrue(frames.length() < firstLen);
+            }
+        }
+    }
+
+    @Test
+    public void largeHeadersInContinuation() throws Exception {
+        Http2SubContext b = p.initSub(ctx, 1, null);
+        Decoder d = new Decoder(65536, 4096);
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+
+        ByteArray frames = request(b, ":path", "/", "cookie", large);
+        assertEquals(9, frames.get(16384 + 9 + 3)); // the second frame is continuation
+        assertEquals(Arrays.asList(":path=/", "cookie=" + large, "x-forwarded-for=10.0.0.1", "x-client-port=1234"),
+            decode(d, frames, 1));
+        assertEquals(Arrays.asList(":path=/", "cookie=a", "x-forwarded-for=10.0.0.1", "x-client-port=1234"),
+            decode(d, request(b, ":path", "/", "cookie", "a"), 3));
+    }
+}
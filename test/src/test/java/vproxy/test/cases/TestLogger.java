@@ -0,0 +1,166 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vproxybase.util.AsyncLogWriter;
+import vproxybase.util.LogType;
+import vproxybase.util.Logger;
+import vproxybase.util.RotatingFileOutputStream;
+import vproxybase.util.TokenBucket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class TestLogger {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(bytes, true);
+    private final Supplier<StackWalker.StackFrame> noCaller = () -> null;
+
+    private String[] lines() {
+        String s = bytes.toString();
+        if (s.isEmpty()) {
+            return new String[0];
+        }
+        return s.split("\n");
+    }
+
+    @Test
+    public void tokenBucket() {
+        long sec = 1_000_000_000L;
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        // 1 token every 100ms
+        assertFalse(bucket.tryAcquire(sec / 20));
+        assertTrue(bucket.tryAcquire(sec / 10));
+        assertFalse(bucket.tryAcquire(sec / 10));
+        // no more than the burst
+        assertTrue(bucket.tryAcquire(100 * sec));
+        assertTrue(bucket.tryAcquire(100 * sec));
+        assertTrue(bucket.tryAcquire(100 * sec));
+        assertFalse(bucket.tryAcquire(100 * sec));
+    }
+
+    @Test
+    public void rateLimit() {
+        AsyncLogWriter writer = new AsyncLogWriter(() -> out, false, 1024, 5);
+        for (int i = 0; i < 20; ++i) {
+            writer.log(Logger.ERROR_COLOR, LogType.CONN_ERROR, noCaller, "conn error " + i, null);
+        }
+        // limited separately
+        assertTrue(writer.log(Logger.WARN_COLOR, LogType.ALERT, noCaller, "alert", null));
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(7, lines.length);
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(lines[i], lines[i].endsWith("] CONN_ERROR - conn error " + i));
+        }
+        assertTrue(lines[5], lines[5].endsWith("] ALERT - alert"));
+        assertTrue(lines[6], lines[6].contains("CONN_ERROR - 15 log(s) suppressed by the rate limit on thread " + Thread.currentThread().getName()));
+
+        // reported only once
+        bytes.reset();
+        writer.flush();
+        assertEquals(0, lines().length);
+    }
+
+    @Test
+    public void bufferFull() {
+        AsyncLogWriter writer = new AsyncLogWriter(() -> out, false, 4, 0);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i < 4, writer.log(Logger.ERROR_COLOR, LogType.CONN_ERROR, noCaller, "conn error " + i, null));
+        }
+        // debug logs are never dropped
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(writer.log(Logger.DEBUG_COLOR, null, noCaller, "debug " + i, null));
+        }
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(4 + 10 + 1, lines.length);
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(lines[i], lines[i].endsWith("] CONN_ERROR - conn error " + i));
+        }
+        // the buffer is flushed when the debug logs are added
+        assertTrue(lines[4], lines[4].contains("BUFFER_INSUFFICIENT - 6 log(s) dropped because the log buffer is full"));
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(lines[5 + i], lines[5 + i].endsWith("] debug " + i));
+        }
+    }
+
+    @Test
+    public void callerAndStackTrace() {
+        AsyncLogWriter writer = new AsyncLogWriter(() -> out, true, 16, 0);
+        StackWalker.StackFrame frame = StackWalker.getInstance().walk(s -> s.findFirst()).orElseThrow();
+        writer.log(Logger.ERROR_COLOR, LogType.SYS_ERROR, () -> frame, "failed", new Exception("the exception"));
+        writer.flush();
+
+        String[] lines = lines();
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith(Logger.ERROR_COLOR + "["));
+        assertTrue(lines[0], lines[0].endsWith("] " + Thread.currentThread().getName() + " - " +
+            TestLogger.class.getName() + "#callerAndStackTrace(" + frame.getLineNumber() + ") - " + Logger.RESET_COLOR + "SYS_ERROR - failed"));
+        assertEquals("java.lang.Exception: the exception", lines[1]);
+    }
+
+    @Test
+    public void writerThread() throws Exception {
+        AsyncLogWriter writer = new AsyncLogWriter(() -> out, false, 16, 0);
+        writer.start();
+        writer.log(Logger.INFO_COLOR, LogType.ALERT, noCaller, "hello", null);
+        for (int i = 0; i < 100 && lines().length == 0; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, lines().length);
+        assertTrue(lines()[0], lines()[0].endsWith("] ALERT - hello"));
+
+        // log from another thread
+        Thread t = new Thread(() -> writer.log(Logger.INFO_COLOR, LogType.ALERT, noCaller, "world", null));
+        t.start();
+        t.join();
+        for (int i = 0; i < 100 && lines().length == 1; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, lines().length);
+        assertTrue(lines()[1], lines()[1].endsWith("] ALERT - world"));
+    }
+
+    @Test
+    public void rotateFile() throws Exception {
+        File dir = Files.createTempDirectory("vproxy-test-log").toFile();
+        String path = dir.getAbsolutePath() + "/vproxy.log";
+        try {
+            RotatingFileOutputStream file = new RotatingFileOutputStream(path, 100, 2);
+            PrintStream ps = new PrintStream(file);
+            AsyncLogWriter writer = new AsyncLogWriter(() -> ps, false, 16, 0);
+            for (int i = 0; i < 4; ++i) {
+                // each flush writes more than 100 bytes
+                for (int j = 0; j < 3; ++j) {
+                    writer.log(Logger.INFO_COLOR, LogType.ALERT, noCaller, "file " + i + " line " + j, null);
+                }
+                writer.flush();
+            }
+            ps.close();
+
+            // the last flush rotates the file as well
+            assertEquals(0, new File(path).length());
+            assertTrue(Files.readString(new File(path + ".1").toPath()).contains("file 3 line 2"));
+            assertTrue(Files.readString(new File(path + ".2").toPath()).contains("file 2 line 0"));
+            assertFalse(new File(path + ".3").exists());
+        } finally {
+            for (File f : dir.listFiles()) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            dir.delete();
+        }
+    }
+}
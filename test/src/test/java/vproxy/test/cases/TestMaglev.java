@@ -0,0 +1,173 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.IP;
+import vfd.IPPort;
+import vfd.IPv4;
+import vproxybase.component.check.CheckProtocol;
+import vproxybase.component.check.HealthCheckConfig;
+import vproxybase.component.elgroup.EventLoopGroup;
+import vproxybase.component.svrgroup.Maglev;
+import vproxybase.component.svrgroup.Method;
+import vproxybase.component.svrgroup.ServerGroup;
+import vproxybase.component.svrgroup.SvrHandleConnector;
+import vproxybase.processor.Hint;
+import vproxybase.util.AnnotationKeys;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TestMaglev {
+    private EventLoopGroup elg;
+    private ServerGroup sg;
+
+    @Before
+    public void setUp() throws Exception {
+        elg = new EventLoopGroup("elg0");
+        elg.add("el0");
+        sg = new ServerGroup("maglev-sg", elg,
+            new HealthCheckConfig(1000, 10000, 1, 3, CheckProtocol.none), Method.wrr);
+    }
+
+    @After
+    public void tearDown() {
+        if (sg != null) {
+            sg.clear();
+        }
+        if (elg != null) {
+            elg.close();
+        }
+    }
+
+    private static String[] names(int n) {
+        String[] names = new String[n];
+        for (int i = 0; i < n; ++i) {
+            names[i] = "svr" + i;
+        }
+        return names;
+    }
+
+    private static int[] weights(int n, int w) {
+        int[] weights = new int[n];
+        Arrays.fill(weights, w);
+        return weights;
+    }
+
+    private static int[] count(int[] table, int n) {
+        int[] counts = new int[n];
+        for (int idx : table) {
+            ++counts[idx];
+        }
+        return counts;
+    }
+
+    @Test
+    public void tableSize() {
+        assertEquals(251, Maglev.tableSize(1));
+        assertEquals(1021, Maglev.tableSize(10));
+        assertEquals(1048573, Maglev.tableSize(1_000_000));
+        assertEquals(0, Maglev.build(new String[0], new int[0], 251).length);
+    }
+
+    @Test
+    public void consistentTable() {
+        int size = Maglev.tableSize(10);
+        int[] a = Maglev.build(names(10), weights(10, 10), size);
+        int[] b = Maglev.build(names(10), weights(10, 10), size);
+        assertEquals(size, a.length);
+        // the table only depends on the names and weights
+        assertArrayEquals(a, b);
+        // all slots are filled, and the slots are evenly distributed
+        for (int c : count(a, 10)) {
+            assertTrue("" + c, Math.abs(c - size / 10) <= 1);
+        }
+    }
+
+    @Test
+    public void minimalDisruption() {
+        int n = 10;
+        int size = Maglev.tableSize(n);
+        String[] names = names(n);
+        int[] before = Maglev.build(names, weights(n, 10), size);
+
+        // remove svr3
+        String[] removedNames = new String[n - 1];
+        for (int i = 0, j = 0; i < n; ++i) {
+            if (i != 3) {
+                removedNames[j++] = names[i];
+            }
+        }
+        int[] after = Maglev.build(removedNames, weights(n - 1, 10), size);
+
+        int moved = 0;
+        for (int i = 0; i < size; ++i) {
+            String a = names[before[i]];
+            String b = removedNames[after[i]];
+            if (a.equals("svr3")) {
+                continue; // must move
+            }
+            if (!a.equals(b)) {
+                ++moved;
+            }
+        }
+        // only a small portion of slots not belonging to the removed backend are changed
+        assertTrue("moved " + moved, moved < size * 0.05);
+    }
+
+    @Test
+    public void weights() {
+        int size = Maglev.tableSize(3);
+        int[] counts = count(Maglev.build(names(3), new int[]{10, 20, 30}, size), 3);
+        assertEquals(size, counts[0] + counts[1] + counts[2]);
+        for (int i = 0; i < 3; ++i) {
+            double expected = size * (i + 1) / 6d;
+            assertTrue("svr" + i + " " + counts[i], Math.abs(counts[i] - expected) <= 2);
+        }
+    }
+
+    private void addServers(int... weights) throws Exception {
+        for (int i = 0; i < weights.length; ++i) {
+            sg.add("svr" + i, new IPPort(IP.from("127.0.0.1"), 19080 + i), weights[i]);
+        }
+        sg.add("svr-v6", new IPPort(IP.from("::1"), 19080), 10);
+        sg.getServerHandles().forEach(h -> h.healthy = true);
+        sg.setMethod(Method.maglev); // build the tables with healthy servers
+    }
+
+    @Test
+    public void hintKey() throws Exception {
+        addServers(10, 10, 10, 10, 10);
+        sg.setAnnotations(Collections.singletonMap(AnnotationKeys.ServerGroup_HashKey, "host"));
+
+        for (int i = 0; i < 100; ++i) {
+            Hint hint = new Hint("host" + i + ".example.com");
+            // the same key goes to the same server regardless of the source
+            SvrHandleConnector a = sg.nextIPv4(new IPPort("10.0.0.1", 1000), hint);
+            SvrHandleConnector b = sg.nextIPv4(new IPPort("10.0.0.2", 2000), hint);
+            assertNotNull(a);
+            assertSame(a.getServerHandle(), b.getServerHandle());
+            assertTrue(a.remote.getAddress() instanceof IPv4);
+
+            SvrHandleConnector c = sg.nextIPv6(new IPPort("10.0.0.1", 1000), hint);
+            assertNotNull(c);
+            assertEquals("svr-v6", c.getServerHandle().alias);
+        }
+    }
+
+    @Test
+    public void unhealthyServerSkipped() throws Exception {
+        addServers(10, 10, 10);
+        IPPort source = new IPPort("10.0.0.1", 1000);
+        ServerGroup.ServerHandle h = sg.nextIPv4(source).getServerHandle();
+        h.healthy = false; // the tables are not rebuilt
+        for (int i = 0; i < 10; ++i) {
+            SvrHandleConnector c = sg.nextIPv4(source);
+            assertNotNull(c);
+            assertNotSame(h, c.getServerHandle());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vfd.IP;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.secure.SecurityGroupRule;
+import vproxybase.connection.Protocol;
+import vproxybase.util.Network;
+import vproxybase.util.NetworkTrie;
+import vswitch.RouteTable;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestNetworkTrie {
+    private static Network randomNetwork(Random rand, boolean v6) {
+        byte[] ip = new byte[v6 ? 16 : 4];
+        // use a few leading bytes to make the networks overlap
+        ip[0] = (byte) rand.nextInt(3);
+        for (int i = 1; i < ip.length; ++i) {
+            ip[i] = (byte) (rand.nextInt(4) == 0 ? rand.nextInt(256) : rand.nextInt(2));
+        }
+        int mask = rand.nextInt(ip.length * 8 + 1);
+        byte[] maskBytes = Network.parseMask(mask);
+        if (v6 && maskBytes.length == 4) {
+            byte[] tmp = new byte[16];
+            System.arraycopy(maskBytes, 0, tmp, 0, 4);
+            Network.eraseToNetwork(ip, tmp);
+        } else {
+            Network.eraseToNetwork(ip, maskBytes);
+        }
+        return new Network(ip, maskBytes);
+    }
+
+    private static IP randomIp(Random rand, boolean v6) {
+        byte[] ip = new byte[v6 ? 16 : 4];
+        ip[0] = (byte) rand.nextInt(3);
+        for (int i = 1; i < ip.length; ++i) {
+            ip[i] = (byte) (rand.nextInt(4) == 0 ? rand.nextInt(256) : rand.nextInt(2));
+        }
+        return IP.from(ip);
+    }
+
+    @Test
+    public void longestPrefixMatch() {
+        Random rand = new Random(1);
+        for (int round = 0; round < 100; ++round) {
+            boolean v6 = rand.nextBoolean();
+            List<Network> networks = new ArrayList<>();
+            NetworkTrie.Builder<Network> builder = new NetworkTrie.Builder<>(v6 ? 16 : 4);
+            int n = rand.nextInt(50);
+            for (int i = 0; i < n; ++i) {
+                Network net = randomNetwork(rand, v6);
+                if (networks.contains(net)) {
+                    continue;
+                }
+                networks.add(net);
+                builder.add(net, net);
+            }
+            NetworkTrie<Network> trie = builder.build();
+
+            for (int q = 0; q < 500; ++q) {
+                IP ip = randomIp(rand, v6);
+                Network expected = null;
+                List<Network> all = new ArrayList<>();
+                for (Network net : networks) {
+                    if (net.contains(ip)) {
+                        all.add(net);
+                        if (expected == null || net.getMask() > expected.getMask()) {
+                            expected = net;
+                        }
+                    }
+                }
+                assertEquals(ip + " " + networks, expected, trie.lookup(ip));
+
+                Set<Network> matched = new HashSet<>();
+                int lastPrefix = Integer.MAX_VALUE;
+                for (var e = trie.match(ip.getRawIpBytes(), 0); e != null; e = e.next()) {
+                    assertTrue(e.prefix <= lastPrefix);
+                    lastPrefix = e.prefix;
+                    assertTrue(matched.add(e.value));
+                }
+                assertEquals(new HashSet<>(all), matched);
+            }
+        }
+    }
+
+    @Test
+    public void routeTable() throws Exception {
+        RouteTable table = new RouteTable();
+        table.addRule(new RouteTable.RouteRule("a", new Network("192.168.0.0/16"), 1));
+        table.addRule(new RouteTable.RouteRule("b", new Network("192.168.3.0/24"), 2));
+        table.addRule(new RouteTable.RouteRule("c", new Network("0.0.0.0/0"), 3));
+        table.addRule(new RouteTable.RouteRule("d", new Network("fd00::/8"), 4));
+
+        assertEquals("b", table.lookup(IP.from("192.168.3.1")).alias);
+        assertEquals("a", table.lookup(IP.from("192.168.4.1")).alias);
+        assertEquals("c", table.lookup(IP.from("10.0.0.1")).alias);
+        assertEquals("d", table.lookup(IP.from("fd00::1")).alias);
+        assertNull(table.lookup(IP.from("fe80::1")));
+
+        table.delRule("b");
+        assertEquals("a", table.lookup(IP.from("192.168.3.1")).alias);
+        table.delRule("c");
+        assertNull(table.lookup(IP.from("10.0.0.1")));
+    }
+
+    private static boolean linearAllow(SecurityGroup sg, Protocol protocol, IP address, int port) {
+        for (SecurityGroupRule rule : sg.getRules()) {
+            if (rule.protocol == protocol && rule.match(address, port)) {
+                return rule.allow;
+            }
+        }
+        return sg.defaultAllow;
+    }
+
+    @Test
+    public void securityGroup() throws Exception {
+        String[] networks = {
+            "0.0.0.0/0", "10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24", "10.1.2.3/32", "192.168.0.0/16",
+            "::/0", "::/96", "::ffff:0:0/96", "::ffff:10.1.0.0/112", "::10.1.0.0/120", "fd00::/8", "fd00::/16", "::/8",
+        };
+        String[] addresses = {
+            "10.1.2.3", "10.1.2.4", "10.1.3.1", "10.2.0.1", "192.168.1.1", "1.1.1.1",
+            "::ffff:10.1.2.3", "::10.1.2.3", "::ffff:1.1.1.1", "fd00::1", "fd01::1", "::1", "2001::1",
+        };
+        Random rand = new Random(2);
+        for (int round = 0; round < 100; ++round) {
+            SecurityGroup sg = new SecurityGroup("sg", rand.nextBoolean());
+            int n = rand.nextInt(30);
+            for (int i = 0; i < n; ++i) {
+                int minPort = rand.nextInt(100);
+                int maxPort = minPort + rand.nextInt(100);
+                try {
+                    sg.addRule(new SecurityGroupRule("r" + i, new Network(networks[rand.nextInt(networks.length)]),
+                        rand.nextBoolean() ? Protocol.TCP : Protocol.UDP, minPort, maxPort, rand.nextBoolean()));
+                } catch (Exception ignore) {
+                    // same rule
+                }
+            }
+            if (rand.nextBoolean() && n > 0) {
+                try {
+                    sg.removeRule("r" + rand.nextInt(n));
+                } catch (Exception ignore) {
+                    // not found
+                }
+            }
+            for (String addr : addresses) {
+                IP ip = IP.from(addr);
+                for (int port = 0; port < 200; port += 7) {
+                    for (Protocol p : new Protocol[]{Protocol.TCP, Protocol.UDP}) {
+                        assertEquals(addr + ":" + port + " " + p + " " + sg.getRules(),
+                            linearAllow(sg, p, ip, port), sg.allow(p, ip, port));
+                    }
+                }
+            }
+        }
+    }
+}
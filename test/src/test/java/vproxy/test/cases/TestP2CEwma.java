@@ -0,0 +1,141 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.IP;
+import vfd.IPPort;
+import vproxybase.component.check.CheckProtocol;
+import vproxybase.component.check.HealthCheckConfig;
+import vproxybase.component.elgroup.EventLoopGroup;
+import vproxybase.component.svrgroup.Method;
+import vproxybase.component.svrgroup.ServerGroup;
+import vproxybase.component.svrgroup.SvrHandleConnector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestP2CEwma {
+    private static final int ROUNDS = 3000;
+    private static final IPPort source = new IPPort("127.0.0.1", 12345);
+
+    private EventLoopGroup elg;
+    private ServerGroup sg;
+
+    @Before
+    public void setUp() throws Exception {
+        elg = new EventLoopGroup("elg0");
+        elg.add("el0");
+        sg = new ServerGroup("p2c-sg", elg,
+            new HealthCheckConfig(1000, 10000, 1, 3, CheckProtocol.none), Method.wrr);
+    }
+
+    @After
+    public void tearDown() {
+        if (sg != null) {
+            sg.clear();
+        }
+        if (elg != null) {
+            elg.close();
+        }
+    }
+
+    private void addServers(int... weights) throws Exception {
+        for (int i = 0; i < weights.length; ++i) {
+            sg.add("svr" + i, new IPPort(IP.from("127.0.0.1"), 19080 + i), weights[i]);
+        }
+        sg.getServerHandles().forEach(h -> h.healthy = true);
+        sg.setMethod(Method.p2cEwma); // build the array with healthy servers
+    }
+
+    private ServerGroup.ServerHandle handle(String alias) {
+        return sg.getServerHandles().stream().filter(h -> h.alias.equals(alias)).findFirst().orElseThrow();
+    }
+
+    private Map<String, Integer> run() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < ROUNDS; ++i) {
+            SvrHandleConnector connector = sg.next(source);
+            assertNotNull(connector);
+            counts.merge(connector.getServerHandle().alias, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Test
+    public void methodName() {
+        assertEquals("p2c-ewma", Method.p2cEwma.toString());
+        assertEquals(Method.p2cEwma, Method.of("p2c-ewma"));
+        assertEquals(Method.wrr, Method.of("wrr"));
+        try {
+            Method.of("p2cEwma");
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void noServers() {
+        sg.setMethod(Method.p2cEwma);
+        assertNull(sg.next(source));
+    }
+
+    @Test
+    public void spreadWhenIdle() throws Exception {
+        addServers(10, 10, 10);
+        Map<String, Integer> counts = run();
+        assertEquals(3, counts.size());
+        for (int c : counts.values()) {
+            assertTrue("counts " + counts, c > ROUNDS / 6);
+        }
+    }
+
+    @Test
+    public void avoidSlowServer() throws Exception {
+        addServers(10, 10, 10);
+        handle("svr0").firstByteCost(100_000_000);
+        handle("svr1").firstByteCost(1_000_000);
+        handle("svr2").firstByteCost(1_000_000);
+
+        // the slow server is always compared with a faster one
+        Map<String, Integer> counts = run();
+        assertNull("counts " + counts, counts.get("svr0"));
+        assertEquals("counts " + counts, ROUNDS, counts.get("svr1") + counts.get("svr2"));
+        assertTrue(handle("svr0").getEwmaLatency() > handle("svr1").getEwmaLatency());
+    }
+
+    @Test
+    public void slowSampleTakenImmediately() throws Exception {
+        addServers(10, 10);
+        ServerGroup.ServerHandle h = handle("svr0");
+        h.connectCost(1_000_000);
+        h.connectCost(50_000_000);
+        assertTrue("latency " + h.getEwmaLatency(), h.getEwmaLatency() > 49);
+        // a faster sample makes the value decay, not drop
+        h.connectCost(1_000_000);
+        assertTrue("latency " + h.getEwmaLatency(), h.getEwmaLatency() > 25);
+    }
+
+    @Test
+    public void weight() throws Exception {
+        addServers(1, 10);
+        handle("svr0").firstByteCost(1_000_000);
+        handle("svr1").firstByteCost(5_000_000);
+
+        // 1ms / 1 > 5ms / 10
+        Map<String, Integer> counts = run();
+        assertNull("counts " + counts, counts.get("svr0"));
+    }
+
+    @Test
+    public void skipUnhealthy() throws Exception {
+        addServers(10, 10, 10);
+        // the array is not rebuilt when the flag is modified directly
+        handle("svr1").healthy = false;
+        Map<String, Integer> counts = run();
+        assertNull("counts " + counts, counts.get("svr1"));
+        assertEquals(2, counts.size());
+    }
+}
@@ -8,7 +8,13 @@ import vfd.MacAddress;
 import vpacket.*;
 import vproxybase.util.ByteArray;
 import vproxybase.util.Consts;
+import vproxybase.util.Utils;
+import vproxybase.util.crypto.Aes256GcmKey;
+import vproxybase.util.crypto.Aes256Key;
+import vproxybase.util.crypto.StreamingCFBCipher;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Random;
 import java.util.function.Supplier;
@@ -347,4 +353,198 @@ public class TestPacket {
 
         assertEquals(dataPart, tcp.getData());
     }
+
+    private ByteArray tcpIpv4SynBytes() {
+        return ByteArray.from(
+            0xcc, 0x70, 0xed, 0xc4, 0xe4, 0xf9, 0xf8, 0xff, 0xc2, 0x07, 0x89, 0x6e, 0x08, 0x00, 0x45, 0x00,
+            0x00, 0x40, 0x00, 0x00, 0x40, 0x00, 0x40, 0x06, 0x87, 0xe4, 0x0a, 0xf2, 0xc2, 0x70, 0xb4, 0x65,
+            0x31, 0x0c, 0xf5, 0x68, 0x01, 0xbb, 0xea, 0xc8, 0xfc, 0xf5, 0x00, 0x00, 0x00, 0x00, 0xb0, 0x02,
+            0xff, 0xff, 0xf3, 0xff, 0x00, 0x00, 0x02, 0x04, 0x05, 0xb4, 0x01, 0x03, 0x03, 0x06, 0x01, 0x01,
+            0x08, 0x0a, 0x16, 0xac, 0x9a, 0x99, 0x00, 0x00, 0x00, 0x00, 0x04, 0x02, 0x00, 0x00
+        );
+    }
+
+    @Test
+    public void updateChecksum() {
+        Random rand = new Random(1);
+        byte[] arr = new byte[40];
+        for (int i = 0; i < 1000; ++i) {
+            rand.nextBytes(arr);
+            int checksum = Utils.calculateChecksum(ByteArray.from(arr), arr.length);
+            int off = rand.nextInt(arr.length / 2) * 2;
+            int old = ((arr[off] & 0xff) << 8) | (arr[off + 1] & 0xff);
+            int word = rand.nextInt(0x10000);
+            arr[off] = (byte) (word >> 8);
+            arr[off + 1] = (byte) word;
+            assertEquals(Utils.calculateChecksum(ByteArray.from(arr), arr.length), Utils.updateChecksum(checksum, old, word));
+        }
+    }
+
+    @Test
+    public void rewriteIpv4TcpInPlace() {
+        ByteArray bytes = tcpIpv4SynBytes();
+        EthernetPacket ether = new EthernetPacket();
+        assertNull(ether.from(bytes));
+        Ipv4Packet ipv4 = (Ipv4Packet) ether.getPacket();
+        TcpPacket tcp = (TcpPacket) ipv4.getPacket();
+
+        ether.setSrc(new MacAddress("02:00:00:00:00:01"));
+        ether.setDst(new MacAddress("02:00:00:00:00:02"));
+        ipv4.setTtl(63);
+        ipv4.setSrc(IP.fromIPv4("192.168.1.2"));
+        ipv4.setDst(IP.fromIPv4("10.0.0.1"));
+        tcp.setSrcPort(12345);
+        tcp.setDstPort(80);
+        tcp.setSeqNum(0xfedcba98L);
+        tcp.setAckNum(0x01234567L);
+        tcp.setWindow(1024);
+
+        // the input bytes are modified, no packet is rebuilt
+        assertTrue(ether.isRawPacketPresent());
+        assertTrue(ipv4.isRawPacketPresent());
+        assertTrue(tcp.isRawPacketPresent());
+        assertSame(bytes, ether.getRawPacket());
+
+        EthernetPacket ether2 = new EthernetPacket();
+        assertNull(ether2.from(bytes.copy()));
+        assertEquals(ether, ether2);
+        Ipv4Packet ipv4b = (Ipv4Packet) ether2.getPacket();
+        TcpPacket tcp2 = (TcpPacket) ipv4b.getPacket();
+        assertEquals(new MacAddress("02:00:00:00:00:01"), ether2.getSrc());
+        assertEquals(63, ipv4b.getTtl());
+        assertEquals(IP.fromIPv4("10.0.0.1"), ipv4b.getDst());
+        assertEquals(0xfedcba98L, tcp2.getSeqNum());
+
+        // same as the fully calculated checksums
+        assertEquals(ipv4b.calculateChecksum(), ipv4b.getHeaderChecksum());
+        int tcpChecksum = tcp2.getChecksum();
+        tcp2.buildIPv4TcpPacket(ipv4b);
+        assertEquals(tcp2.getChecksum(), tcpChecksum);
+    }
+
+    @Test
+    public void rewriteVXLanInPlace() {
+        ByteArray bytes = ByteArray.from(0x08, 0, 0, 0, 0, 0, 0x01, 0).concat(tcpIpv4SynBytes());
+        VXLanPacket vxlan = new VXLanPacket();
+        assertNull(vxlan.from(bytes));
+
+        vxlan.setVni(0x123456);
+        vxlan.setReserved2(3);
+        ((Ipv4Packet) vxlan.getPacket().getPacket()).setTtl(1);
+        assertSame(bytes, vxlan.getRawPacket());
+
+        VXLanPacket vxlan2 = new VXLanPacket();
+        assertNull(vxlan2.from(bytes.copy()));
+        assertEquals(0x123456, vxlan2.getVni());
+        assertEquals(3, vxlan2.getReserved2());
+        Ipv4Packet ipv4 = (Ipv4Packet) vxlan2.getPacket().getPacket();
+        assertEquals(1, ipv4.getTtl());
+        assertEquals(ipv4.calculateChecksum(), ipv4.getHeaderChecksum());
+    }
+
+    @Test
+    public void rewriteIpv6InPlace() {
+        Ipv6Packet ipv6 = genIpv6();
+        ByteArray bytes = ipv6.getRawPacket().copy();
+        Ipv6Packet parsed = new Ipv6Packet();
+        assertNull(parsed.from(bytes));
+
+        parsed.setHopLimit(7);
+        IPv6 dst = randomIpv6();
+        parsed.setDst(dst);
+        assertSame(bytes, parsed.getRawPacket());
+
+        ipv6.setHopLimit(7);
+        ipv6.setDst(dst);
+        assertEquals(ipv6.getRawPacket(), bytes);
+    }
+
+    VProxyEncryptedPacket encryptedVXLanPacket(Aes256Key key) {
+        VXLanPacket vxlan = new VXLanPacket();
+        assertNull(vxlan.from(ByteArray.from(0x08, 0, 0, 0, 0, 0, 0x01, 0).concat(tcpIpv4SynBytes())));
+        VProxyEncryptedPacket p = new VProxyEncryptedPacket(u -> key);
+        p.setUser("abcdefgh");
+        p.setMagic(Consts.VPROXY_SWITCH_MAGIC);
+        p.setType(Consts.VPROXY_SWITCH_TYPE_VXLAN);
+        p.setVxlan(vxlan);
+        return p;
+    }
+
+    @Test
+    public void vproxyEncryptedPacketCFB() {
+        Aes256Key key = new Aes256Key("p@sSw0rD");
+        VProxyEncryptedPacket p = encryptedVXLanPacket(key);
+        ByteArray vxlanBytes = p.getVxlan().getRawPacket();
+        ByteArray bytes = p.getRawPacket();
+        assertEquals(6 + 16 + 6 + vxlanBytes.length(), bytes.length());
+
+        // the streaming cipher is able to decrypt the packet
+        byte[] arr = bytes.toJavaArray();
+        StreamingCFBCipher cipher = new StreamingCFBCipher(key, false, Arrays.copyOfRange(arr, 6, 22));
+        ByteArray plain = ByteArray.from(cipher.update(arr, 22, arr.length - 22));
+        assertEquals(Consts.VPROXY_SWITCH_MAGIC, plain.int32(0));
+        assertEquals(Consts.VPROXY_SWITCH_TYPE_VXLAN, plain.uint16(4));
+        assertEquals(vxlanBytes, plain.sub(6, plain.length() - 6));
+
+        VProxyEncryptedPacket p2 = new VProxyEncryptedPacket(u -> key);
+        assertNull(p2.from(bytes));
+        assertEquals("abcdefgh", p2.getUser());
+        assertEquals(vxlanBytes, p2.getVxlan().getRawPacket());
+
+        // written into the buffer
+        ByteBuffer buf = ByteBuffer.allocate(2048);
+        encryptedVXLanPacket(key).writeTo(buf);
+        buf.flip();
+        assertEquals(bytes.length(), buf.limit());
+        VProxyEncryptedPacket p3 = new VProxyEncryptedPacket(u -> key);
+        assertNull(p3.from(ByteArray.from(buf.array()).sub(0, buf.limit())));
+        assertEquals(vxlanBytes, p3.getVxlan().getRawPacket());
+    }
+
+    @Test
+    public void vproxyEncryptedPacketGCM() {
+        Aes256GcmKey key = new Aes256GcmKey("p@sSw0rD");
+        VProxyEncryptedPacket p = encryptedVXLanPacket(key);
+        ByteArray vxlanBytes = p.getVxlan().getRawPacket();
+
+        ByteBuffer buf = ByteBuffer.allocate(2048);
+        buf.put((byte) 1); // not starting from 0
+        p.writeTo(buf);
+        buf.flip();
+        assertEquals(1 + 6 + 12 + 6 + vxlanBytes.length() + 16, buf.limit());
+        ByteArray bytes = ByteArray.from(buf.array()).sub(1, buf.limit() - 1);
+
+        VProxyEncryptedPacket p2 = new VProxyEncryptedPacket(u -> key);
+        assertNull(p2.from(bytes));
+        assertEquals("abcdefgh", p2.getUser());
+        assertEquals(Consts.VPROXY_SWITCH_TYPE_VXLAN, p2.getType());
+        assertEquals(vxlanBytes, p2.getVxlan().getRawPacket());
+
+        // ping
+        VProxyEncryptedPacket ping = new VProxyEncryptedPacket(u -> key);
+        ping.setUser("abcdefgh");
+        ping.setMagic(Consts.VPROXY_SWITCH_MAGIC);
+        ping.setType(Consts.VPROXY_SWITCH_TYPE_PING);
+        VProxyEncryptedPacket ping2 = new VProxyEncryptedPacket(u -> key);
+        assertNull(ping2.from(ping.getRawPacket()));
+        assertEquals(Consts.VPROXY_SWITCH_TYPE_PING, ping2.getType());
+        assertNull(ping2.getVxlan());
+
+        // tampered data, user, and tag
+        for (int idx : new int[]{30, 2, bytes.length() - 1}) {
+            ByteArray tampered = bytes.copy();
+            tampered.set(idx, (byte) (tampered.get(idx) ^ 1));
+            assertNotNull(new VProxyEncryptedPacket(u -> key).from(tampered));
+        }
+        // another key
+        assertNotNull(new VProxyEncryptedPacket(u -> new Aes256GcmKey("password")).from(bytes));
+        // truncated
+        assertNotNull(new VProxyEncryptedPacket(u -> key).from(bytes.sub(0, 39)));
+
+        // the nonces of one thread share the prefix and are increased by one
+        ByteBuffer iv1 = ByteBuffer.wrap(key.packetIv());
+        ByteBuffer iv2 = ByteBuffer.wrap(key.packetIv());
+        assertEquals(iv1.getInt(), iv2.getInt());
+        assertEquals(iv1.getLong() + 1, iv2.getLong());
+    }
 }
@@ -0,0 +1,95 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vproxybase.util.IntIntMap;
+import vproxybase.util.IntObjectMap;
+import vproxybase.util.LongObjectMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestPrimitiveMaps {
+    @Test
+    public void intIntMap() {
+        IntIntMap map = new IntIntMap(-1);
+        assertEquals(-1, map.get(0));
+        assertEquals(-1, map.put(0, 10));
+        assertEquals(10, map.get(0));
+        assertTrue(map.containsKey(0));
+        assertEquals(-1, map.put(1, 11));
+        assertEquals(11, map.put(1, 12));
+        assertEquals(2, map.size());
+        assertEquals(10, map.remove(0));
+        assertEquals(-1, map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.get(1));
+    }
+
+    @Test
+    public void intObjectMap() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertNull(map.put(0, "a"));
+        assertNull(map.put(-1, "b"));
+        assertEquals("a", map.put(0, "c"));
+        assertEquals("c", map.get(0));
+        assertEquals("b", map.get(-1));
+        assertEquals(2, map.values().size());
+        try {
+            map.put(1, null);
+            fail();
+        } catch (NullPointerException ignore) {
+        }
+        assertEquals("b", map.remove(-1));
+        assertNull(map.remove(-1));
+        assertEquals(1, map.size());
+    }
+
+    // random operations compared with java.util.HashMap,
+    // keys are in a small range so that probe sequences collide and wrap around,
+    // which covers the backward shift deletion
+    @Test
+    public void randomOperations() {
+        Random rand = new Random(1);
+        IntIntMap ii = new IntIntMap(Integer.MIN_VALUE, 4);
+        IntObjectMap<Integer> io = new IntObjectMap<>(4);
+        LongObjectMap<Integer> lo = new LongObjectMap<>(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int n = 0; n < 200_000; ++n) {
+            int key = rand.nextInt(256) - 16;
+            long lkey = ((long) key << 33) + key;
+            int op = rand.nextInt(3);
+            if (op == 0) {
+                int value = rand.nextInt();
+                Integer old = expected.put(key, value);
+                assertEquals(old == null ? Integer.MIN_VALUE : old, ii.put(key, value));
+                assertEquals(old, io.put(key, value));
+                assertEquals(old, lo.put(lkey, value));
+            } else if (op == 1) {
+                Integer old = expected.remove(key);
+                assertEquals(old == null ? Integer.MIN_VALUE : old, ii.remove(key));
+                assertEquals(old, io.remove(key));
+                assertEquals(old, lo.remove(lkey));
+            } else {
+                Integer v = expected.get(key);
+                assertEquals(v == null ? Integer.MIN_VALUE : v, ii.get(key));
+                assertEquals(v, io.get(key));
+                assertEquals(v, lo.get(lkey));
+            }
+            assertEquals(expected.size(), ii.size());
+            assertEquals(expected.size(), io.size());
+            assertEquals(expected.size(), lo.size());
+        }
+        Map<Integer, Integer> iterated = new HashMap<>();
+        ii.forEach(iterated::put);
+        assertEquals(expected, iterated);
+        iterated.clear();
+        io.forEach(iterated::put);
+        assertEquals(expected, iterated);
+    }
+}
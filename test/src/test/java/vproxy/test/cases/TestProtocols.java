@@ -38,6 +38,9 @@ import vproxybase.component.svrgroup.Method;
 import vproxybase.component.svrgroup.ServerGroup;
 import vproxybase.util.AnnotationKeys;
 
+import java.io.EOFException;
+import java.io.InputStream;
+import java.net.Socket;
 import java.util.Map;
 import java.util.function.Consumer;
 
@@ -649,6 +652,88 @@ public class TestProtocols {
         }
     }
 
+    @Test
+    public void h1BackendPool() throws Throwable {
+        h1BackendPool("http/1.x");
+    }
+
+    @Test
+    public void generalHttpH1BackendPool() throws Throwable {
+        h1BackendPool("http");
+    }
+
+    private void h1BackendPool(String protocol) throws Throwable {
+        Vertx vertx = Vertx.vertx();
+        try {
+            int[] backendConn = {0};
+            Handler<HttpServerRequest> handler = req -> {
+                if (req.uri().equals("/close")) {
+                    req.response().putHeader("Connection", "close");
+                }
+                req.response().end("resp-" + req.localAddress().port());
+            };
+            vertx.createHttpServer().connectionHandler(c -> {
+                synchronized (backendConn) {
+                    ++backendConn[0];
+                }
+            }).requestHandler(handler).listen(port1);
+
+            initLb(protocol);
+            Thread.sleep(200); // wait for the server to start
+
+            // short-lived clients, one request for each connection
+            for (int i = 0; i < 10; ++i) {
+                assertEquals("resp-" + port1, requestOnNewConnection("/"));
+                Thread.sleep(10); // let the lb handle the FIN
+            }
+            synchronized (backendConn) {
+                assertEquals("the backend connection should be reused", 1, backendConn[0]);
+            }
+
+            // the connection is not reused when the response says `Connection: close`
+            assertEquals("resp-" + port1, requestOnNewConnection("/close"));
+            Thread.sleep(10);
+            assertEquals("resp-" + port1, requestOnNewConnection("/"));
+            synchronized (backendConn) {
+                assertEquals(2, backendConn[0]);
+            }
+        } finally {
+            boolean[] closeDone = {false};
+            vertx.close(v -> closeDone[0] = true);
+            while (!closeDone[0]) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static String requestOnNewConnection(String uri) throws Exception {
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            sock.getOutputStream().write(("" +
+                "GET " + uri + " HTTP/1.1\r\n" +
+                "Host: s1.test.com\r\n" +
+                "\r\n").getBytes());
+            InputStream in = sock.getInputStream();
+            StringBuilder head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                int b = in.read();
+                if (b == -1) {
+                    throw new EOFException("unexpected eof, got " + head);
+                }
+                head.append((char) b);
+            }
+            int len = -1;
+            for (String line : head.toString().split("\r\n")) {
+                if (line.toLowerCase().startsWith("content-length:")) {
+                    len = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+            }
+            assertTrue(len >= 0);
+            return new String(in.readNBytes(len));
+        }
+    }
+
     @SuppressWarnings("deprecation")
     @Test
     public void generalHttp() throws Throwable {
@@ -0,0 +1,529 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.IP;
+import vfd.IPPort;
+import vproxy.component.app.TcpLB;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.svrgroup.Upstream;
+import vproxybase.component.check.CheckProtocol;
+import vproxybase.component.check.HealthCheckConfig;
+import vproxybase.component.elgroup.EventLoopGroup;
+import vproxybase.component.svrgroup.Method;
+import vproxybase.component.svrgroup.ServerGroup;
+import vproxybase.processor.redis.RedisSlot;
+import vproxybase.util.AnnotationKeys;
+import vproxybase.util.ByteArray;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestRedisProcessor {
+    private static final int lbPort = 7890;
+    private static final int port1 = 17895;
+    private static final int port2 = 17896;
+
+    /**
+     * a RESP server which replies every command with a bulk string of "${port}:${key}"
+     */
+    public static class StandInServer extends Thread {
+        private final ServerSocket server;
+        private final int delayMillis;
+        public final AtomicInteger accepted = new AtomicInteger();
+        private final List<Socket> socks = Collections.synchronizedList(new ArrayList<>());
+
+        public StandInServer(int port, int delayMillis) throws IOException {
+            this.server = new ServerSocket();
+            this.server.setReuseAddress(true); // the shared backend connections are closed by the server in tests
+            this.server.bind(new InetSocketAddress(port));
+            this.delayMillis = delayMillis;
+            setDaemon(true);
+            setName("resp-stand-in-" + port);
+        }
+
+        @Override
+        public void run() {
+            while (!server.isClosed()) {
+                Socket sock;
+                try {
+                    sock = server.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                accepted.incrementAndGet();
+                socks.add(sock);
+                Thread t = new Thread(() -> serve(sock));
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+
+        private void serve(Socket sock) {
+            String prefix = sock.getLocalPort() + ":";
+            try (sock) {
+                sock.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(sock.getInputStream());
+                OutputStream out = new BufferedOutputStream(sock.getOutputStream());
+                while (true) {
+                    List<String> cmd = readCommand(in);
+                    if (cmd == null) {
+                        return;
+                    }
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    String reply = prefix + (cmd.size() > 1 ? cmd.get(1) : "");
+                    byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+                    out.write(("$" + bytes.length + "\r\n").getBytes());
+                    out.write(bytes);
+                    out.write("\r\n".getBytes());
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+            } catch (Exception ignore) {
+            }
+        }
+
+        public void close() throws IOException {
+            server.close();
+            try {
+                join(1000); // the port is released after the accepting thread exits
+            } catch (InterruptedException ignore) {
+            }
+            // the backend connections are shared and kept by the lb, close them here
+            synchronized (socks) {
+                for (Socket sock : socks) {
+                    sock.close();
+                }
+            }
+        }
+    }
+
+    public static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                return null;
+            }
+            sb.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("expecting \\n");
+        }
+        return sb.toString();
+    }
+
+    public static String readBulk(InputStream in) throws IOException {
+        String reply = readReply(in);
+        if (reply != null && (reply.startsWith("+") || reply.startsWith("-"))) {
+            throw new IOException("expecting bulk string, but got " + reply);
+        }
+        return reply;
+    }
+
+    // simple strings and errors are returned with the type byte, bulk strings are returned without it
+    public static String readReply(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            return null;
+        }
+        if (line.startsWith("+") || line.startsWith("-")) {
+            return line;
+        }
+        if (!line.startsWith("$")) {
+            throw new IOException("unexpected reply " + line);
+        }
+        byte[] bytes = in.readNBytes(Integer.parseInt(line.substring(1)) + 2);
+        return new String(bytes, 0, bytes.length - 2, StandardCharsets.UTF_8);
+    }
+
+    public static List<String> readCommand(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            return null;
+        }
+        if (!line.startsWith("*")) {
+            return Arrays.asList(line.split(" "));
+        }
+        int n = Integer.parseInt(line.substring(1));
+        List<String> ret = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            ret.add(readBulk(in));
+        }
+        return ret;
+    }
+
+    public static byte[] command(String... args) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("*").append(args.length).append("\r\n");
+        for (String a : args) {
+            sb.append("$").append(a.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(a).append("\r\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private EventLoopGroup elg;
+    private TcpLB lb;
+    private StandInServer server1;
+    private StandInServer server2;
+
+    @Before
+    public void setUp() throws Exception {
+        // replies from server1 are slow, so that replies of later commands may arrive earlier
+        server1 = new StandInServer(port1, 1);
+        server1.start();
+        server2 = new StandInServer(port2, 0);
+        server2.start();
+
+        elg = new EventLoopGroup("elg0");
+        elg.add("el0");
+
+        ServerGroup sg = new ServerGroup("redis-sg", elg,
+            new HealthCheckConfig(1000, 10000, 1, 3, CheckProtocol.none), Method.wrr);
+        sg.setAnnotations(Map.of(AnnotationKeys.ServerGroup_HashKey, "key"));
+        sg.add("svr1", new IPPort(IP.from("127.0.0.1"), port1), 10);
+        sg.add("svr2", new IPPort(IP.from("127.0.0.1"), port2), 10);
+        sg.getServerHandles().forEach(h -> h.healthy = true);
+        sg.setMethod(Method.maglev); // build the maglev table with healthy servers
+
+        Upstream ups = new Upstream("ups0");
+        ups.add(sg, 10);
+        lb = new TcpLB("tl0", elg, elg, new IPPort("0.0.0.0", lbPort), ups, 10000, 16384, 16384, "redis", null, null, SecurityGroup.allowAll());
+        lb.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (lb != null) {
+            lb.destroy();
+        }
+        if (elg != null) {
+            elg.close();
+        }
+        if (server1 != null) {
+            server1.close();
+        }
+        if (server2 != null) {
+            server2.close();
+        }
+    }
+
+    @Test
+    public void slot() {
+        assertEquals(0x31C3, RedisSlot.crc16(ByteArray.from("123456789".getBytes()), 0, 9));
+        assertEquals(12182, RedisSlot.slot(ByteArray.from("foo".getBytes())));
+        assertEquals(5061, RedisSlot.slot(ByteArray.from("bar".getBytes())));
+        assertEquals(RedisSlot.slot(ByteArray.from("user1000".getBytes())),
+            RedisSlot.slot(ByteArray.from("{user1000}.following".getBytes())));
+        // empty hash tag, the whole key is hashed
+        assertEquals(RedisSlot.crc16(ByteArray.from("{}a".getBytes()), 0, 3) & 16383,
+            RedisSlot.slot(ByteArray.from("{}a".getBytes())));
+    }
+
+    @Test
+    public void pipeline() throws Exception {
+        int n = 2000;
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            OutputStream out = sock.getOutputStream();
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            for (int i = 0; i < n; ++i) {
+                if (i % 100 == 0) {
+                    pipeline.write(command("PING"));
+                } else if (i % 100 == 1) {
+                    pipeline.write(("GET key" + i + "\r\n").getBytes()); // inline command
+                } else {
+                    pipeline.write(command("SET", "key" + i, "value-" + i));
+                }
+            }
+            byte[] bytes = pipeline.toByteArray();
+            // write in small pieces, so commands are split across reads
+            for (int off = 0; off < bytes.length; off += 777) {
+                out.write(bytes, off, Math.min(777, bytes.length - off));
+                out.flush();
+            }
+
+            Map<Integer, String> slotToPort = new HashMap<>();
+            Set<String> ports = new HashSet<>();
+            for (int i = 0; i < n; ++i) {
+                String reply = readBulk(in);
+                assertNotNull(reply);
+                String port = reply.substring(0, reply.indexOf(':'));
+                String key = reply.substring(reply.indexOf(':') + 1);
+                if (i % 100 == 0) {
+                    assertEquals("", key);
+                    continue;
+                }
+                assertEquals("key" + i, key);
+                ports.add(port);
+                int slot = RedisSlot.slot(ByteArray.from(key.getBytes()));
+                String last = slotToPort.put(slot, port);
+                if (last != null) {
+                    assertEquals("the same slot should go to the same server", last, port);
+                }
+            }
+            assertEquals(Set.of("" + port1, "" + port2), ports);
+        }
+    }
+
+    private static String keyOf(String reply) {
+        return reply.substring(reply.indexOf(':') + 1);
+    }
+
+    @Test
+    public void crossSlot() throws Exception {
+        assertNotEquals(RedisSlot.slot(ByteArray.from("foo".getBytes())), RedisSlot.slot(ByteArray.from("bar".getBytes())));
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            OutputStream out = sock.getOutputStream();
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            pipeline.write(command("SET", "foo", "1"));
+            pipeline.write(command("MGET", "foo", "bar"));
+            pipeline.write(command("MGET", "{user}.a", "{user}.b", "{user}.c"));
+            pipeline.write(command("MSET", "foo", "1", "bar", "2"));
+            pipeline.write(command("MSET", "{user}.a", "1", "{user}.b", "2"));
+            pipeline.write(command("DEL", "bar", "foo"));
+            pipeline.write(command("RENAME", "{user}.a", "{user}.b"));
+            pipeline.write(command("EVAL", "return 1", "2", "foo", "bar"));
+            pipeline.write(command("EVAL", "return 1", "1", "foo", "bar")); // bar is an argument
+            pipeline.write(command("ZUNIONSTORE", "bar", "1", "foo"));
+            pipeline.write("MGET foo bar\r\n".getBytes()); // inline command
+            pipeline.write(command("GET", "bar"));
+            out.write(pipeline.toByteArray());
+            out.flush();
+
+            String crossSlot = "-CROSSSLOT Keys in request don't hash to the same slot";
+            assertEquals("foo", keyOf(readReply(in)));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals("{user}.a", keyOf(readReply(in)));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals("{user}.a", keyOf(readReply(in)));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals("{user}.a", keyOf(readReply(in)));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals("return 1", keyOf(readReply(in)));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals("bar", keyOf(readReply(in)));
+        }
+    }
+
+    @Test
+    public void keylessAndUnsupportedCommands() throws Exception {
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            OutputStream out = sock.getOutputStream();
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            for (String cmd : Arrays.asList("PUBLISH", "INFO", "PING")) {
+                pipeline.write(command(cmd, "{" + cmd + "}")); // the argument is not a key
+            }
+            pipeline.write(command("KEYS", "*"));
+            pipeline.write(command("SCAN", "0"));
+            pipeline.write(command("FLUSHALL"));
+            pipeline.write(command("SELECT", "1"));
+            pipeline.write(command("MULTI"));
+            pipeline.write(command("BLPOP", "foo", "0"));
+            pipeline.write(command("SUBSCRIBE", "ch"));
+            pipeline.write("select 1\r\n".getBytes());
+            pipeline.write(command("GET", "foo"));
+            pipeline.write(command("QUIT"));
+            out.write(pipeline.toByteArray());
+            out.flush();
+
+            for (String cmd : Arrays.asList("PUBLISH", "INFO", "PING")) {
+                String reply = readReply(in);
+                assertNotNull(reply);
+                assertEquals("{" + cmd + "}", keyOf(reply));
+            }
+            assertEquals("-ERR command 'keys' operates on all nodes and is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'scan' operates on all nodes and is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'flushall' operates on all nodes and is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'select' is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'multi' is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'blpop' is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'subscribe' is not supported by the proxy", readReply(in));
+            assertEquals("-ERR command 'select' is not supported by the proxy", readReply(in));
+            assertEquals("foo", keyOf(readReply(in)));
+            assertEquals("+OK", readReply(in));
+        }
+    }
+
+    @Test
+    public void quit() throws Exception {
+        int n = 100;
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            for (int i = 0; i < n; ++i) {
+                pipeline.write(command("GET", "key" + i));
+            }
+            pipeline.write(command("QUIT"));
+            pipeline.write(command("GET", "after-quit"));
+            sock.getOutputStream().write(pipeline.toByteArray());
+            sock.getOutputStream().flush();
+
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+            for (int i = 0; i < n; ++i) {
+                assertEquals("key" + i, keyOf(readBulk(in)));
+            }
+            assertEquals("+OK", readReply(in));
+            // closed after the reply of QUIT is written, the command after QUIT is ignored
+            assertEquals(-1, in.read());
+        }
+        // the backend connections are not closed by QUIT
+        int accepted = server1.accepted.get() + server2.accepted.get();
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            sock.getOutputStream().write(command("GET", "foo"));
+            assertEquals("foo", keyOf(readBulk(new BufferedInputStream(sock.getInputStream()))));
+        }
+        assertEquals(accepted, server1.accepted.get() + server2.accepted.get());
+    }
+
+    @Test
+    public void emptyCommands() throws Exception {
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            OutputStream out = sock.getOutputStream();
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            pipeline.write(command("GET", "a"));
+            pipeline.write("*0\r\n".getBytes());
+            pipeline.write(command("GET", "b"));
+            pipeline.write("*-1\r\n".getBytes());
+            pipeline.write("\r\n".getBytes()); // blank inline command
+            pipeline.write("  \r\n".getBytes());
+            pipeline.write(command("GET", "c"));
+            out.write(pipeline.toByteArray());
+            out.flush();
+
+            // redis does not reply empty commands, so they are not sent to the backends
+            assertEquals("a", keyOf(readBulk(in)));
+            assertEquals("b", keyOf(readBulk(in)));
+            assertEquals("c", keyOf(readBulk(in)));
+            out.write(command("GET", "d"));
+            out.flush();
+            assertEquals("d", keyOf(readBulk(in)));
+        }
+    }
+
+    @Test
+    public void streams() throws Exception {
+        assertNotEquals(RedisSlot.slot(ByteArray.from("foo".getBytes())), RedisSlot.slot(ByteArray.from("bar".getBytes())));
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            OutputStream out = sock.getOutputStream();
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            pipeline.write(command("XREAD", "COUNT", "10", "STREAMS", "{s}.a", "{s}.b", "0", "0"));
+            pipeline.write(command("XREAD", "STREAMS", "foo", "bar", "0", "0"));
+            pipeline.write(command("XREADGROUP", "GROUP", "g", "c", "COUNT", "1", "NOACK", "STREAMS", "foo", ">"));
+            pipeline.write(command("XREADGROUP", "GROUP", "g", "c", "STREAMS", "foo", "bar", ">", ">"));
+            pipeline.write(command("XREAD", "BLOCK", "0", "STREAMS", "foo", "$"));
+            pipeline.write(command("XGROUP", "CREATE", "foo", "g", "$"));
+            pipeline.write(command("OBJECT", "ENCODING", "bar"));
+            pipeline.write(command("MEMORY", "USAGE", "foo"));
+            pipeline.write(command("GET", "foo"));
+            out.write(pipeline.toByteArray());
+            out.flush();
+
+            String crossSlot = "-CROSSSLOT Keys in request don't hash to the same slot";
+            // the stand-in server replies with the first argument, the commands with key foo go to the same server
+            assertEquals("COUNT", keyOf(readReply(in)));
+            assertEquals(crossSlot, readReply(in));
+            String reply = readReply(in);
+            assertEquals("GROUP", keyOf(reply));
+            String fooPort = reply.substring(0, reply.indexOf(':'));
+            assertEquals(crossSlot, readReply(in));
+            assertEquals("-ERR command 'xread' with BLOCK is not supported by the proxy", readReply(in));
+            assertEquals(fooPort + ":CREATE", readReply(in));
+            assertEquals("ENCODING", keyOf(readReply(in)));
+            assertEquals(fooPort + ":USAGE", readReply(in));
+            assertEquals(fooPort + ":foo", readReply(in));
+        }
+    }
+
+    @Test
+    public void multiplexing() throws Exception {
+        int clients = 20;
+        int n = 200;
+        List<Socket> socks = new ArrayList<>();
+        try {
+            for (int c = 0; c < clients; ++c) {
+                Socket sock = new Socket("127.0.0.1", lbPort);
+                sock.setSoTimeout(5000);
+                socks.add(sock);
+            }
+            // all clients send commands before reading replies, so the commands are interleaved on the backend connections
+            for (int c = 0; c < clients; ++c) {
+                ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+                for (int i = 0; i < n; ++i) {
+                    pipeline.write(command("GET", "c" + c + "-key" + i));
+                }
+                socks.get(c).getOutputStream().write(pipeline.toByteArray());
+                socks.get(c).getOutputStream().flush();
+            }
+            for (int c = 0; c < clients; ++c) {
+                InputStream in = new BufferedInputStream(socks.get(c).getInputStream());
+                for (int i = 0; i < n; ++i) {
+                    assertEquals("c" + c + "-key" + i, keyOf(readBulk(in)));
+                }
+            }
+        } finally {
+            for (Socket sock : socks) {
+                sock.close();
+            }
+        }
+        // one event loop, so one connection for each server
+        assertEquals(1, server1.accepted.get());
+        assertEquals(1, server2.accepted.get());
+
+        // the connections are kept for new clients
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            sock.getOutputStream().write(command("GET", "foo"));
+            assertEquals("foo", keyOf(readBulk(new BufferedInputStream(sock.getInputStream()))));
+        }
+        assertEquals(2, server1.accepted.get() + server2.accepted.get());
+    }
+
+    @Test
+    public void halfClose() throws Exception {
+        int n = 100;
+        try (Socket sock = new Socket("127.0.0.1", lbPort)) {
+            sock.setSoTimeout(5000);
+            ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+            for (int i = 0; i < n; ++i) {
+                pipeline.write(command("GET", "key" + i));
+            }
+            sock.getOutputStream().write(pipeline.toByteArray());
+            sock.shutdownOutput();
+
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+            for (int i = 0; i < n; ++i) {
+                assertEquals("key" + i, keyOf(readBulk(in)));
+            }
+            // closed after all replies are written
+            assertEquals(-1, in.read());
+        }
+    }
+}
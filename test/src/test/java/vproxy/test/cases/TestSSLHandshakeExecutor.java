@@ -0,0 +1,127 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vproxybase.util.LatencyHistogram;
+import vproxybase.util.ringbuffer.ssl.SSLHandshakeExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestSSLHandshakeExecutor {
+    // occupy the only thread and the only queue slot, so that the next task overflows
+    private static CountDownLatch fill(SSLHandshakeExecutor executor) throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable block = () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignore) {
+            }
+        };
+        assertTrue(executor.execute(block));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.execute(block));
+        assertEquals(1, executor.getQueued());
+        return release;
+    }
+
+    @Test
+    public void overflowInline() throws Exception {
+        SSLHandshakeExecutor executor = new SSLHandshakeExecutor(1, 1, SSLHandshakeExecutor.Overflow.inline);
+        CountDownLatch release = fill(executor);
+
+        Thread[] ranOn = new Thread[1];
+        assertTrue(executor.execute(() -> ranOn[0] = Thread.currentThread()));
+        assertSame(Thread.currentThread(), ranOn[0]);
+        assertEquals(2, executor.getSubmitted());
+        assertEquals(1, executor.getInlined());
+        assertEquals(0, executor.getRejected());
+
+        release.countDown();
+    }
+
+    @Test
+    public void overflowReject() throws Exception {
+        SSLHandshakeExecutor executor = new SSLHandshakeExecutor(1, 1, SSLHandshakeExecutor.Overflow.reject);
+        CountDownLatch release = fill(executor);
+
+        boolean[] ran = {false};
+        assertFalse(executor.execute(() -> ran[0] = true));
+        assertFalse(ran[0]);
+        assertEquals(2, executor.getSubmitted());
+        assertEquals(0, executor.getInlined());
+        assertEquals(1, executor.getRejected());
+
+        // tasks are accepted again after the queue drains
+        release.countDown();
+        CountDownLatch done = new CountDownLatch(1);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!executor.execute(done::countDown)) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            new SSLHandshakeExecutor(0, 1, SSLHandshakeExecutor.Overflow.inline);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        try {
+            new SSLHandshakeExecutor(1, 0, SSLHandshakeExecutor.Overflow.inline);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void histogramBuckets() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(0);
+        h.record(999); // < 1us
+        h.record(1_000); // 1us
+        h.record(1_999);
+        h.record(2_000); // 2us
+        h.record(1_023_000); // 1023us
+        h.record(1_024_000); // 1024us
+        h.record(Long.MAX_VALUE);
+
+        long[] buckets = h.snapshot();
+        assertEquals(LatencyHistogram.BUCKETS, buckets.length);
+        assertEquals(2, buckets[0]);
+        assertEquals(2, buckets[1]);
+        assertEquals(1, buckets[2]);
+        assertEquals(1, buckets[10]);
+        assertEquals(1, buckets[11]);
+        assertEquals(1, buckets[LatencyHistogram.BUCKETS - 1]);
+        assertEquals(8, h.count());
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentileMicros(0.5));
+
+        for (int i = 0; i < 90; ++i) {
+            h.record(3_000); // bucket 2: [2, 4)us
+        }
+        for (int i = 0; i < 9; ++i) {
+            h.record(100_000); // bucket 7: [64, 128)us
+        }
+        h.record(10_000_000); // bucket 14: [8192, 16384)us
+
+        assertEquals(4, h.percentileMicros(0));
+        assertEquals(4, h.percentileMicros(0.5));
+        assertEquals(4, h.percentileMicros(0.9));
+        assertEquals(128, h.percentileMicros(0.91));
+        assertEquals(128, h.percentileMicros(0.99));
+        assertEquals(16384, h.percentileMicros(0.999));
+        assertEquals(16384, h.percentileMicros(1));
+    }
+}
@@ -0,0 +1,168 @@
+package vproxy.test.cases;
+
+import org.junit.Test;
+import vfd.IP;
+import vproxy.component.secure.SecurityGroup;
+import vproxy.component.secure.SecurityGroupRule;
+import vproxybase.connection.Protocol;
+import vproxybase.util.Network;
+import vproxybase.util.exception.AlreadyExistException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestSecurityGroup {
+    private static final String[] NETWORKS = {
+        "0.0.0.0/0",
+        "10.0.0.0/8",
+        "10.1.0.0/16",
+        "10.1.2.0/24",
+        "10.1.2.3/32",
+        "192.168.0.0/16",
+        "192.168.1.0/24",
+        "::/0",
+        "fd00::/8",
+        "fd00:1::/32",
+    };
+    private static final String[] ADDRESSES = {
+        "10.0.0.1",
+        "10.1.0.1",
+        "10.1.2.1",
+        "10.1.2.3",
+        "10.2.3.4",
+        "192.168.1.1",
+        "192.168.2.1",
+        "172.16.0.1",
+        "fd00::1",
+        "fd00:1::1",
+        "fe80::1",
+    };
+
+    // the first matched rule of the protocol decides, same as the implementation before the index
+    private static boolean linearAllow(SecurityGroup secg, Protocol protocol, IP address, int port) {
+        for (SecurityGroupRule r : secg.getRules()) {
+            if (r.protocol == protocol && r.match(address, port)) {
+                return r.allow;
+            }
+        }
+        return secg.defaultAllow;
+    }
+
+    private static void addRandomRules(SecurityGroup secg, Random rand, int count) throws Exception {
+        for (int i = 0; i < count; ++i) {
+            Network net = new Network(NETWORKS[rand.nextInt(NETWORKS.length)]);
+            Protocol protocol = rand.nextInt(4) == 0 ? Protocol.UDP : Protocol.TCP;
+            int minPort;
+            int maxPort;
+            switch (rand.nextInt(3)) {
+                case 0: // all ports
+                    minPort = 0;
+                    maxPort = 65535;
+                    break;
+                case 1: // one port
+                    minPort = 80 + rand.nextInt(10);
+                    maxPort = minPort;
+                    break;
+                default: // overlapping ranges
+                    minPort = 50 + rand.nextInt(50);
+                    maxPort = minPort + rand.nextInt(100);
+                    break;
+            }
+            try {
+                secg.addRule(new SecurityGroupRule("r" + i, net, protocol, minPort, maxPort, rand.nextBoolean()));
+            } catch (AlreadyExistException ignore) {
+                // same network and ports, skip
+            }
+        }
+    }
+
+    private static void checkSameAsLinear(SecurityGroup secg, Random rand) {
+        for (int i = 0; i < 2000; ++i) {
+            IP address = IP.from(ADDRESSES[rand.nextInt(ADDRESSES.length)]);
+            int port = rand.nextInt(5) == 0 ? rand.nextInt(65536) : 40 + rand.nextInt(200);
+            Protocol protocol = rand.nextInt(4) == 0 ? Protocol.UDP : Protocol.TCP;
+            assertEquals(protocol + " " + address + ":" + port,
+                linearAllow(secg, protocol, address, port), secg.allow(protocol, address, port));
+        }
+    }
+
+    private void sameAsLinear(int cacheSize) throws Exception {
+        Random rand = new Random(42);
+        for (int round = 0; round < 20; ++round) {
+            SecurityGroup secg = new SecurityGroup("secg" + round, round % 2 == 0, cacheSize);
+            // no rules: the default decides
+            checkSameAsLinear(secg, rand);
+            addRandomRules(secg, rand, 5 + rand.nextInt(40));
+            checkSameAsLinear(secg, rand);
+
+            // remove some rules and check again
+            List<SecurityGroupRule> rules = new ArrayList<>(secg.getRules());
+            for (int i = 0; i < rules.size(); i += 3) {
+                secg.removeRule(rules.get(i).alias);
+            }
+            checkSameAsLinear(secg, rand);
+        }
+    }
+
+    @Test
+    public void sameAsLinearScan() throws Exception {
+        sameAsLinear(0);
+    }
+
+    @Test
+    public void sameAsLinearScanWithCache() throws Exception {
+        // a small cache, so that entries are replaced frequently
+        sameAsLinear(8);
+    }
+
+    @Test
+    public void firstRuleWins() throws Exception {
+        SecurityGroup secg = new SecurityGroup("secg0", false, 0);
+        secg.addRule(new SecurityGroupRule("a", new Network("10.1.0.0/16"), Protocol.TCP, 80, 90, false));
+        secg.addRule(new SecurityGroupRule("b", new Network("10.0.0.0/8"), Protocol.TCP, 0, 65535, true));
+        IP ip = IP.from("10.1.2.3");
+        assertFalse(secg.allow(Protocol.TCP, ip, 80));
+        assertFalse(secg.allow(Protocol.TCP, ip, 90));
+        assertTrue(secg.allow(Protocol.TCP, ip, 79));
+        assertTrue(secg.allow(Protocol.TCP, ip, 91));
+        // udp has no rules
+        assertFalse(secg.allow(Protocol.UDP, ip, 80));
+        // not matched by any rule
+        assertFalse(secg.allow(Protocol.TCP, IP.from("11.0.0.1"), 80));
+    }
+
+    @Test
+    public void cacheInvalidatedOnRuleChange() throws Exception {
+        SecurityGroup secg = new SecurityGroup("secg0", true, 16);
+        IP ip = IP.from("10.1.2.3");
+        secg.addRule(new SecurityGroupRule("a", new Network("192.168.0.0/16"), Protocol.TCP, 0, 65535, false));
+        assertTrue(secg.allow(Protocol.TCP, ip, 80));
+        assertTrue(secg.allow(Protocol.TCP, ip, 80)); // cached
+
+        secg.addRule(new SecurityGroupRule("b", new Network("10.0.0.0/8"), Protocol.TCP, 80, 80, false));
+        assertFalse(secg.allow(Protocol.TCP, ip, 80));
+        assertTrue(secg.allow(Protocol.TCP, ip, 81));
+
+        secg.removeRule("b");
+        assertTrue(secg.allow(Protocol.TCP, ip, 80));
+
+        // removing all rules falls back to the default
+        secg.addRule(new SecurityGroupRule("c", new Network("0.0.0.0/0"), Protocol.TCP, 0, 65535, false));
+        assertFalse(secg.allow(Protocol.TCP, ip, 80));
+        secg.removeRule("a");
+        secg.removeRule("c");
+        assertTrue(secg.allow(Protocol.TCP, ip, 80));
+    }
+
+    @Test
+    public void invalidCacheSize() {
+        try {
+            new SecurityGroup("secg0", true, 3);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+}
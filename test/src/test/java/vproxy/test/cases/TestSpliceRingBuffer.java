@@ -0,0 +1,150 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.*;
+import vfd.posix.SplicePipe;
+import vproxybase.util.RingBufferETHandler;
+import vproxybase.util.nio.ByteArrayChannel;
+import vproxybase.util.ringbuffer.SpliceRingBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// requires -Dvfd=posix on linux, skipped otherwise
+public class TestSpliceRingBuffer {
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private SpliceRingBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue("splice not supported", SplicePipe.supported());
+        buffer = SpliceRingBuffer.allocate(65536);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (buffer != null) {
+            buffer.clean();
+        }
+        for (AutoCloseable c : resources) {
+            c.close();
+        }
+    }
+
+    // return {the java socket, the accepted posix socket}
+    private Object[] connectedPair(int port) throws Exception {
+        ServerSocketFD server = FDProvider.get().openServerSocketFD();
+        resources.add(server);
+        server.bind(new IPPort("127.0.0.1", port));
+        Socket sock = new Socket();
+        resources.add(sock);
+        sock.connect(new InetSocketAddress("127.0.0.1", port));
+        SocketFD accepted = null;
+        for (int i = 0; i < 100 && accepted == null; ++i) {
+            accepted = server.accept();
+            if (accepted == null) {
+                Thread.sleep(10);
+            }
+        }
+        assertNotNull(accepted);
+        resources.add(accepted);
+        accepted.configureBlocking(false);
+        return new Object[]{sock, accepted};
+    }
+
+    private int store(SocketFD fd) throws Exception {
+        for (int i = 0; i < 100; ++i) {
+            int n = buffer.storeBytesFrom(fd);
+            if (n != 0) {
+                return n;
+            }
+            Thread.sleep(10);
+        }
+        return 0;
+    }
+
+    private static String readN(Socket sock, int n) throws IOException {
+        InputStream in = sock.getInputStream();
+        byte[] bytes = new byte[n];
+        int off = 0;
+        while (off < n) {
+            int r = in.read(bytes, off, n - off);
+            assertTrue(r > 0);
+            off += r;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void spliceBetweenSockets() throws Exception {
+        Object[] src = connectedPair(19090);
+        Object[] dst = connectedPair(19091);
+        Socket client = (Socket) src[0];
+        SocketFD from = (SocketFD) src[1];
+        SocketFD to = (SocketFD) dst[1];
+        Socket backend = (Socket) dst[0];
+
+        int[] readable = {0};
+        int[] writable = {0};
+        buffer.addHandler(new RingBufferETHandler() {
+            @Override
+            public void readableET() {
+                ++readable[0];
+            }
+
+            @Override
+            public void writableET() {
+                ++writable[0];
+            }
+        });
+
+        assertEquals(0, buffer.used());
+        assertTrue(buffer.capacity() >= 4096);
+        assertEquals(buffer.capacity(), buffer.free());
+
+        client.getOutputStream().write("hello world".getBytes(StandardCharsets.UTF_8));
+        assertEquals(11, store(from));
+        assertEquals(11, buffer.used());
+        assertEquals(buffer.capacity() - 11, buffer.free());
+        assertEquals(1, readable[0]);
+
+        assertEquals(5, buffer.writeTo(to, 5));
+        assertEquals(6, buffer.used());
+        assertEquals(6, buffer.writeTo(to));
+        assertEquals(0, buffer.used());
+        assertEquals(0, buffer.writeTo(to)); // nothing to write
+        assertEquals("hello world", readN(backend, 11));
+
+        // EOF
+        client.shutdownOutput();
+        assertEquals(-1, store(from));
+
+        buffer.clean();
+        assertEquals(0, buffer.free());
+        try {
+            buffer.storeBytesFrom(from);
+            fail();
+        } catch (IOException ignore) {
+        }
+    }
+
+    @Test
+    public void notSpliceable() {
+        try {
+            buffer.storeBytesFrom((ReadableByteChannel) ByteArrayChannel.fromEmpty(16));
+            fail();
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -8,6 +8,7 @@ import vpacket.conntrack.tcp.Segment;
 import vpacket.conntrack.tcp.TcpEntry;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
@@ -49,7 +50,16 @@ public class TestTCP {
         assertEquals(bytes.length(), tcpEntry.sendingQueue.getCurrentSize());
         assertEquals(seq + bytes.length(), tcpEntry.sendingQueue.getLatestSeq());
 
-        var segments = tcpEntry.sendingQueue.fetch();
+        // the congestion window allows only part of the data to be sent each time
+        var segments = new ArrayList<Segment>();
+        while (true) {
+            var fetched = tcpEntry.sendingQueue.fetch();
+            if (fetched.isEmpty()) {
+                break;
+            }
+            segments.addAll(fetched);
+            tcpEntry.sendingQueue.ack(fetched.get(fetched.size() - 1).seqEndExclusive, 65535);
+        }
         int total = 0;
         long lastEndSeq = -1;
         ByteArray result = null;
@@ -96,9 +106,15 @@ public class TestTCP {
         tcpEntry.sendingQueue.ack(s.seqEndExclusive, 65535);
         tcpEntry.sendingQueue.ack(s.seqEndExclusive, 65535); // one ack multiple times
 
-        segments = tcpEntry.sendingQueue.fetch();
-        for (var rr : segments) {
-            result = result.concat(rr.data);
+        while (true) {
+            segments = tcpEntry.sendingQueue.fetch();
+            if (segments.isEmpty()) {
+                break;
+            }
+            for (var rr : segments) {
+                result = result.concat(rr.data);
+            }
+            tcpEntry.sendingQueue.ack(segments.get(segments.size() - 1).seqEndExclusive, 65535);
         }
         assertEquals(bytes, result);
     }
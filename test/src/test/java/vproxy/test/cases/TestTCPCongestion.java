@@ -0,0 +1,394 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.IPPort;
+import vpacket.TcpPacket;
+import vpacket.conntrack.tcp.CongestionControl;
+import vpacket.conntrack.tcp.CubicCongestionControl;
+import vpacket.conntrack.tcp.NewRenoCongestionControl;
+import vpacket.conntrack.tcp.SackBlock;
+import vpacket.conntrack.tcp.Segment;
+import vpacket.conntrack.tcp.TcpEntry;
+import vpacket.conntrack.tcp.TcpState;
+import vpacket.conntrack.tcp.TcpUtils;
+import vproxy.test.tool.TcpSimulator;
+import vproxybase.Config;
+import vproxybase.util.ByteArray;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestTCPCongestion {
+    private static final int MSS = 1000;
+
+    private long savedTimestamp;
+
+    @Before
+    public void setUp() {
+        savedTimestamp = Config.currentTimestamp;
+        Config.currentTimestamp = 1_000_000;
+    }
+
+    @After
+    public void tearDown() {
+        Config.currentTimestamp = savedTimestamp;
+    }
+
+    private ByteArray randomBytes(int len) {
+        byte[] bytes = new byte[len];
+        new Random(len).nextBytes(bytes);
+        return ByteArray.from(bytes);
+    }
+
+    private TcpEntry sender(ByteArray data) {
+        TcpEntry tcp = new TcpEntry(
+            null,
+            new IPPort("12.34.56.78", 1234),
+            new IPPort("98.76.54.32", 5678),
+            12345);
+        tcp.setState(TcpState.ESTABLISHED);
+        tcp.sendingQueue.init(65535, MSS, 1);
+        tcp.sendingQueue.setCongestionControl(new NewRenoCongestionControl());
+        assertEquals(data.length(), tcp.sendingQueue.apiWrite(ByteBuffer.wrap(data.toJavaArray())));
+        return tcp;
+    }
+
+    private TcpEntry receiver(long seq) {
+        TcpEntry tcp = new TcpEntry(
+            null,
+            new IPPort("98.76.54.32", 5678),
+            new IPPort("12.34.56.78", 1234),
+            seq - 1);
+        tcp.setState(TcpState.ESTABLISHED);
+        return tcp;
+    }
+
+    @Test
+    public void slowStartAndNewRenoHalving() {
+        var cc = new NewRenoCongestionControl();
+        cc.init(MSS);
+        assertEquals(10 * MSS, cc.getCwnd());
+
+        // slow start: increase at most 2 * mss for each ack
+        cc.onAck(5 * MSS, 0);
+        assertEquals(12 * MSS, cc.getCwnd());
+        cc.onAck(MSS, 0);
+        assertEquals(13 * MSS, cc.getCwnd());
+
+        cc.onLoss(20 * MSS);
+        assertEquals(10 * MSS, cc.getSsthresh());
+        assertEquals(10 * MSS, cc.getCwnd());
+
+        // congestion avoidance: one mss per window of acked data
+        for (int i = 0; i < 9; ++i) {
+            cc.onAck(MSS, 0);
+        }
+        assertEquals(10 * MSS, cc.getCwnd());
+        cc.onAck(MSS, 0);
+        assertEquals(11 * MSS, cc.getCwnd());
+
+        cc.onTimeout(11 * MSS);
+        assertEquals(MSS, cc.getCwnd());
+        assertEquals(5 * MSS + MSS / 2, cc.getSsthresh());
+    }
+
+    @Test
+    public void cubicReductionAndGrowth() {
+        var cc = new CubicCongestionControl();
+        cc.init(MSS);
+        while (cc.getCwnd() < 100 * MSS) {
+            cc.onAck(2 * MSS, 0);
+        }
+        assertEquals(100 * MSS, cc.getCwnd());
+
+        cc.onLoss(100 * MSS);
+        assertEquals(70 * MSS, cc.getCwnd());
+        assertEquals(70 * MSS, cc.getSsthresh());
+        assertEquals(100 * MSS, (int) cc.getWMax());
+
+        // k = cbrt(30 / 0.4) = 4.2 seconds
+        int rtt = 100;
+        int lastCwnd = cc.getCwnd();
+        int cwndAt2s = 0;
+        for (int i = 0; i < 70; ++i) {
+            Config.currentTimestamp += rtt;
+            cc.onAck(cc.getCwnd(), rtt);
+            assertTrue(cc.getCwnd() >= lastCwnd);
+            lastCwnd = cc.getCwnd();
+            if (i == 19) {
+                cwndAt2s = cc.getCwnd();
+            }
+        }
+        // the window grows fast at first, then stays near the last max window
+        assertTrue("cwnd at 2s: " + cwndAt2s, cwndAt2s > 90 * MSS && cwndAt2s < 100 * MSS);
+        // and probes for more bandwidth after k
+        assertTrue("cwnd at 7s: " + lastCwnd, lastCwnd > 105 * MSS);
+
+        // fast convergence: the window is lower than the last max window
+        int cwnd = cc.getCwnd();
+        cc.onLoss(cwnd);
+        cc.onLoss(cc.getCwnd());
+        assertEquals((int) (cwnd * CubicCongestionControl.BETA * (1 + CubicCongestionControl.BETA) / 2), (int) cc.getWMax());
+    }
+
+    @Test
+    public void sackOptionRoundTrip() {
+        TcpEntry tcp = receiver(100_000);
+        tcp.setSackPermitted(true);
+        var q = tcp.receivingQueue;
+        q.store(new Segment(100_000, randomBytes(MSS)));
+        q.store(new Segment(102_000, randomBytes(MSS)));
+        q.store(new Segment(104_000, randomBytes(MSS)));
+        q.store(new Segment(106_000, randomBytes(MSS)));
+        q.store(new Segment(108_000, randomBytes(MSS)));
+        q.store(new Segment(110_000, randomBytes(MSS)));
+        q.store(new Segment(103_000, randomBytes(MSS)));
+
+        var expected = List.of(
+            new SackBlock(102_000, 105_000), // the most recent one
+            new SackBlock(106_000, 107_000),
+            new SackBlock(108_000, 109_000),
+            new SackBlock(110_000, 111_000));
+        assertEquals(expected, q.getSackBlocks());
+
+        TcpPacket pkt = TcpUtils.buildAckResponse(tcp);
+        TcpUtils.buildIpResponse(tcp, pkt);
+        ByteArray raw = pkt.getRawPacket();
+
+        TcpPacket parsed = new TcpPacket();
+        assertNull(parsed.from(raw));
+        assertEquals(0, parsed.getDataOffset() % 4);
+        assertEquals(20 + 36, parsed.getDataOffset());
+        assertEquals(101_000, parsed.getAckNum());
+        assertEquals(expected, TcpUtils.parseSackBlocks(parsed));
+    }
+
+    @Test
+    public void receiveOutOfOrder() {
+        ByteArray data = randomBytes(5 * MSS);
+        TcpEntry tcp = receiver(1000);
+        var q = tcp.receivingQueue;
+
+        q.store(new Segment(1000, data.sub(0, MSS)));
+        assertFalse(q.needImmediateAck());
+        // overlapping out of order segments
+        q.store(new Segment(1000 + 3 * MSS, data.sub(3 * MSS, 2 * MSS)));
+        assertTrue(q.needImmediateAck());
+        q.ackSent();
+        q.store(new Segment(1000 + 2 * MSS, data.sub(2 * MSS, 2 * MSS)));
+        assertTrue(q.needImmediateAck());
+        q.ackSent();
+        assertEquals(1000 + MSS, q.getExpectingSeq());
+        assertEquals(List.of(new SackBlock(1000 + 2 * MSS, 1000 + 5 * MSS)), q.getSackBlocks());
+
+        // fill the hole
+        q.store(new Segment(1000 + MSS, data.sub(MSS, MSS)));
+        assertTrue(q.needImmediateAck());
+        assertEquals(1000 + 5 * MSS, q.getExpectingSeq());
+        assertTrue(q.getSackBlocks().isEmpty());
+        assertEquals(data, q.apiRead(Integer.MAX_VALUE));
+    }
+
+    private List<Segment> fetchAll(TcpEntry tcp) {
+        return new ArrayList<>(tcp.sendingQueue.fetch());
+    }
+
+    @Test
+    public void fastRetransmitWithoutSack() {
+        ByteArray data = randomBytes(20 * MSS);
+        TcpEntry tcp = sender(data);
+        var q = tcp.sendingQueue;
+        long begin = q.getAckSeq();
+
+        var segments = fetchAll(tcp);
+        assertEquals(10, segments.size());
+
+        // the first segment is lost, each following one triggers a duplicated ack
+        for (int i = 0; i < TcpEntry.DUP_ACK_THRESHOLD; ++i) {
+            q.ack(begin, 65535);
+            if (i < TcpEntry.DUP_ACK_THRESHOLD - 1) {
+                assertFalse(q.isInRecovery());
+            }
+        }
+        assertTrue(q.isInRecovery());
+        assertEquals(5 * MSS, q.getCongestionControl().getCwnd());
+
+        // retransmit the lost one without waiting for the timeout
+        segments = fetchAll(tcp);
+        assertEquals(1, segments.size());
+        assertEquals(begin, segments.get(0).seqBeginInclusive);
+        assertEquals(data.sub(0, MSS), segments.get(0).data);
+
+        // the recovery completes when all data sent before the loss is acked
+        q.ack(begin + 10 * MSS, 65535);
+        assertFalse(q.isInRecovery());
+        assertEquals(0, q.getBackoff());
+        assertEquals(5 * MSS, q.getCongestionControl().getCwnd());
+        segments = fetchAll(tcp);
+        assertEquals(5, segments.size());
+        assertEquals(begin + 10 * MSS, segments.get(0).seqBeginInclusive);
+    }
+
+    @Test
+    public void fastRetransmitWithSack() {
+        ByteArray data = randomBytes(20 * MSS);
+        TcpEntry tcp = sender(data);
+        tcp.setSackPermitted(true);
+        var q = tcp.sendingQueue;
+        long begin = q.getAckSeq();
+
+        fetchAll(tcp);
+        // segment 0 and 2 are lost
+        q.ack(begin, 65535, List.of(new SackBlock(begin + MSS, begin + 2 * MSS)), true);
+        q.ack(begin, 65535, List.of(new SackBlock(begin + 3 * MSS, begin + 4 * MSS), new SackBlock(begin + MSS, begin + 2 * MSS)), true);
+        assertFalse(q.isInRecovery());
+        q.ack(begin, 65535, List.of(new SackBlock(begin + 3 * MSS, begin + 5 * MSS), new SackBlock(begin + MSS, begin + 2 * MSS)), true);
+        assertTrue(q.isInRecovery());
+        assertEquals(3 * MSS, q.getSackedBytes());
+
+        // the first hole is retransmitted immediately
+        var segments = fetchAll(tcp);
+        assertEquals(1, segments.size());
+        assertEquals(begin, segments.get(0).seqBeginInclusive);
+
+        // the next hole is retransmitted when the pipe allows
+        q.ack(begin, 65535, List.of(new SackBlock(begin + 3 * MSS, begin + 7 * MSS), new SackBlock(begin + MSS, begin + 2 * MSS)), true);
+        segments = fetchAll(tcp);
+        assertEquals(1, segments.size());
+        assertEquals(begin + 2 * MSS, segments.get(0).seqBeginInclusive);
+        assertEquals(data.sub(2 * MSS, MSS), segments.get(0).data);
+        // not retransmitted again
+        assertTrue(fetchAll(tcp).isEmpty());
+
+        q.ack(begin + 2 * MSS, 65535, List.of(new SackBlock(begin + 3 * MSS, begin + 7 * MSS)), true);
+        assertTrue(q.isInRecovery());
+        assertEquals(4 * MSS, q.getSackedBytes());
+        q.ack(begin + 10 * MSS, 65535);
+        assertFalse(q.isInRecovery());
+        assertEquals(0, q.getSackedBytes());
+    }
+
+    @Test
+    public void timeoutGoesBackToSlowStart() {
+        ByteArray data = randomBytes(20 * MSS);
+        TcpEntry tcp = sender(data);
+        var q = tcp.sendingQueue;
+        long begin = q.getAckSeq();
+
+        fetchAll(tcp);
+        int rto = q.getRto();
+        q.timeout();
+        assertEquals(1, q.getBackoff());
+        assertEquals(2 * rto, q.getRto());
+        assertEquals(MSS, q.getCongestionControl().getCwnd());
+
+        var segments = fetchAll(tcp);
+        assertEquals(1, segments.size());
+        assertEquals(begin, segments.get(0).seqBeginInclusive);
+
+        q.ack(begin + MSS, 65535);
+        assertEquals(0, q.getBackoff());
+        segments = fetchAll(tcp);
+        assertEquals(2, segments.size());
+        assertEquals(begin + MSS, segments.get(0).seqBeginInclusive);
+    }
+
+    @Test
+    public void zeroWindowProbe() {
+        ByteArray data = randomBytes(5 * MSS);
+        TcpEntry tcp = sender(data);
+        var q = tcp.sendingQueue;
+        long begin = q.getAckSeq();
+
+        fetchAll(tcp);
+        q.ack(begin + 2 * MSS, 0);
+        q.timeout(); // the outstanding data should be sent again, but the window is closed
+        assertEquals(0, fetchAll(tcp).size());
+
+        // nothing is outstanding, the timer sends a probe of one byte
+        q.timeout();
+        var segments = fetchAll(tcp);
+        assertEquals(1, segments.size());
+        assertEquals(begin + 2 * MSS, segments.get(0).seqBeginInclusive);
+        assertEquals(1, segments.get(0).data.length());
+        assertEquals(0, fetchAll(tcp).size());
+
+        // the window opens, sending continues from the probed byte in slow start
+        q.ack(begin + 2 * MSS + 1, 65535);
+        segments = fetchAll(tcp);
+        assertEquals(1, segments.size());
+        assertEquals(begin + 2 * MSS + 1, segments.get(0).seqBeginInclusive);
+        assertEquals(MSS, segments.get(0).data.length());
+    }
+
+    @Test
+    public void congestionControlByName() {
+        assertTrue(CongestionControl.create("cubic") instanceof CubicCongestionControl);
+        assertTrue(CongestionControl.create("newreno") instanceof NewRenoCongestionControl);
+        try {
+            CongestionControl.create("bbr");
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void rttEstimation() {
+        ByteArray data = randomBytes(2 * MSS);
+        TcpEntry tcp = sender(data);
+        var q = tcp.sendingQueue;
+        long begin = q.getAckSeq();
+
+        fetchAll(tcp);
+        Config.currentTimestamp += 300;
+        q.ack(begin + 2 * MSS, 65535);
+        assertEquals(300, q.getSrtt());
+        // srtt + 4 * rttvar
+        assertEquals(300 + 4 * 150, q.getRto());
+    }
+
+    @Test
+    public void simulateSingleLoss() {
+        // a few losses in a long transfer are recovered without timeout
+        var res = new TcpSimulator(NewRenoCongestionControl::new, false, 0.001, 20, 1250, 50_000, 42)
+            .run(randomBytes(2 * 1024 * 1024));
+        assertTrue(res.toString(), res.segmentsLost > 0);
+        assertEquals(res.toString(), 0, res.timeouts);
+        assertTrue(res.toString(), res.recoveries > 0);
+    }
+
+    @Test
+    public void simulateIntegrityUnderLoss() {
+        ByteArray data = randomBytes(512 * 1024);
+        for (var cc : List.of("newreno", "cubic")) {
+            for (boolean sack : new boolean[]{false, true}) {
+                for (double loss : new double[]{0, 0.01, 0.05, 0.1}) {
+                    // the data is checked inside the simulator
+                    var res = new TcpSimulator(cc.equals("cubic") ? CubicCongestionControl::new : NewRenoCongestionControl::new,
+                        sack, loss, 20, 1250, 50_000, 7).run(data);
+                    assertEquals(data.length(), res.bytes);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void simulateGoodput() {
+        ByteArray data = randomBytes(2 * 1024 * 1024);
+        // 10Mbps bottleneck, 40ms rtt
+        var noLoss = new TcpSimulator(CubicCongestionControl::new, true, 0, 20, 1250, 50_000, 1).run(data);
+        assertTrue(noLoss.toString(), noLoss.goodput() > 9);
+
+        for (var loss : new double[]{0.01, 0.05}) {
+            var withoutSack = new TcpSimulator(NewRenoCongestionControl::new, false, loss, 20, 1250, 50_000, 1).run(data);
+            var withSack = new TcpSimulator(NewRenoCongestionControl::new, true, loss, 20, 1250, 50_000, 1).run(data);
+            assertTrue(withSack + " vs " + withoutSack, withSack.goodput() >= withoutSack.goodput());
+        }
+    }
+}
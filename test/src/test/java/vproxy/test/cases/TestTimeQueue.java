@@ -0,0 +1,171 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vproxybase.Config;
+import vproxybase.util.PriorityTimeQueue;
+import vproxybase.util.TimeElem;
+import vproxybase.util.TimeQueue;
+import vproxybase.util.TimingWheelTimeQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestTimeQueue {
+    private long savedTimestamp;
+
+    @Before
+    public void setUp() {
+        savedTimestamp = Config.currentTimestamp;
+    }
+
+    @After
+    public void tearDown() {
+        Config.currentTimestamp = savedTimestamp;
+    }
+
+    private List<Integer> pollAll(TimeQueue<Integer> q) {
+        List<Integer> ls = new ArrayList<>();
+        Integer i;
+        while ((i = q.poll()) != null) {
+            ls.add(i);
+        }
+        return ls;
+    }
+
+    private void expire(TimeQueue<Integer> q) {
+        Config.currentTimestamp = 1_000_000;
+        assertTrue(q.isEmpty());
+        assertEquals(Integer.MAX_VALUE, q.nextTime());
+
+        q.push(10, 1);
+        q.push(300, 2);
+        q.push(20_000, 3);
+        q.push(0, 4);
+        assertFalse(q.isEmpty());
+        assertEquals(0, q.nextTime());
+        assertEquals(Arrays.asList(4), pollAll(q));
+
+        Config.currentTimestamp += 9;
+        assertTrue(q.nextTime() > 0);
+        assertEquals(Arrays.asList(), pollAll(q));
+        Config.currentTimestamp += 1;
+        assertEquals(0, q.nextTime());
+        assertEquals(Arrays.asList(1), pollAll(q));
+
+        Config.currentTimestamp += 290;
+        assertEquals(Arrays.asList(2), pollAll(q));
+
+        Config.currentTimestamp += 19_000;
+        assertEquals(Arrays.asList(), pollAll(q));
+        int next = q.nextTime();
+        assertTrue(next > 0 && next <= 700);
+        Config.currentTimestamp += 700;
+        assertEquals(Arrays.asList(3), pollAll(q));
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void expireHeap() {
+        expire(new PriorityTimeQueue<>());
+    }
+
+    @Test
+    public void expireWheel() {
+        expire(new TimingWheelTimeQueue<>());
+    }
+
+    private void remove(TimeQueue<Integer> q) {
+        Config.currentTimestamp = 2_000_000;
+        TimeElem<Integer> a = q.push(100, 1);
+        TimeElem<Integer> b = q.push(100, 2);
+        TimeElem<Integer> c = q.push(100_000, 3);
+        a.removeSelf();
+        c.removeSelf();
+        assertEquals(Integer.valueOf(2), b.get());
+        Config.currentTimestamp += 200_000;
+        assertEquals(Arrays.asList(2), pollAll(q));
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void removeHeap() {
+        remove(new PriorityTimeQueue<>());
+    }
+
+    @Test
+    public void removeWheel() {
+        remove(new TimingWheelTimeQueue<>());
+    }
+
+    private void modifyWhilePolling(TimeQueue<Integer> q) {
+        Config.currentTimestamp = 4_000_000;
+        q.push(10, 1);
+        TimeElem<Integer> b = q.push(10, 2);
+        q.push(10, 3);
+        Config.currentTimestamp += 10;
+        List<Integer> ls = new ArrayList<>();
+        Integer i;
+        while ((i = q.poll()) != null) {
+            ls.add(i);
+            if (i == 1 || i == 3) {
+                // remove an expired element which is not polled yet (if 1 is polled first)
+                b.removeSelf();
+                // push an element which expires immediately
+                q.push(0, i + 10);
+            }
+        }
+        ls.sort(Integer::compareTo);
+        assertTrue("" + ls, ls.equals(Arrays.asList(1, 3, 11, 13)) || ls.equals(Arrays.asList(1, 2, 3, 11, 13)));
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void modifyWhilePollingHeap() {
+        modifyWhilePolling(new PriorityTimeQueue<>());
+    }
+
+    @Test
+    public void modifyWhilePollingWheel() {
+        modifyWhilePolling(new TimingWheelTimeQueue<>());
+    }
+
+    @Test
+    public void wheelSameAsHeap() {
+        Config.currentTimestamp = 3_000_000;
+        TimeQueue<Integer> heap = new PriorityTimeQueue<>();
+        TimeQueue<Integer> wheel = new TimingWheelTimeQueue<>();
+        Random rand = new Random(42);
+        List<TimeElem<Integer>> heapElems = new ArrayList<>();
+        List<TimeElem<Integer>> wheelElems = new ArrayList<>();
+        int[] timeouts = {0, 1, 255, 256, 257, 16383, 16384, 1 << 20, 1 << 26, Integer.MAX_VALUE};
+        for (int i = 0; i < 5000; ++i) {
+            int timeout = i < timeouts.length ? timeouts[i] : rand.nextInt(rand.nextBoolean() ? 1000 : 10_000_000);
+            heapElems.add(heap.push(timeout, i));
+            wheelElems.add(wheel.push(timeout, i));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            int idx = rand.nextInt(heapElems.size());
+            heapElems.get(idx).removeSelf();
+            wheelElems.get(idx).removeSelf();
+        }
+        long end = Config.currentTimestamp + 20_000_000;
+        while (Config.currentTimestamp < end) {
+            int next = Math.min(wheel.nextTime(), 100_000);
+            assertTrue(next <= heap.nextTime());
+            Config.currentTimestamp += Math.max(1, next - rand.nextInt(3));
+            List<Integer> a = pollAll(heap);
+            List<Integer> b = pollAll(wheel);
+            a.sort(Integer::compareTo);
+            b.sort(Integer::compareTo);
+            assertEquals("at " + Config.currentTimestamp, a, b);
+        }
+        assertFalse(heap.isEmpty()); // the one with Integer.MAX_VALUE timeout
+        assertFalse(wheel.isEmpty());
+    }
+}
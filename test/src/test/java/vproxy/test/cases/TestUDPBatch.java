@@ -0,0 +1,136 @@
+package vproxy.test.cases;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vfd.DatagramFD;
+import vfd.FDProvider;
+import vfd.FDs;
+import vfd.IPPort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+// runs with the fds of -Dvfd, the batch methods are backed by recvmmsg/sendmmsg with -Dvfd=posix
+public class TestUDPBatch {
+    private DatagramFD sender;
+    private DatagramFD receiver;
+    private IPPort receiverAddress;
+
+    @Before
+    public void setUp() throws IOException {
+        FDs fds = FDProvider.get().getProvided();
+        receiver = fds.openDatagramFD();
+        receiver.configureBlocking(false);
+        receiver.bind(new IPPort("127.0.0.1", 0));
+        receiverAddress = receiver.getLocalAddress();
+
+        sender = fds.openDatagramFD();
+        sender.configureBlocking(false);
+        sender.bind(new IPPort("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (sender != null) {
+            sender.close();
+        }
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    private static ByteBuffer packet(int i) {
+        return ByteBuffer.wrap(("packet-" + i).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int receiveAll(ByteBuffer[] bufs, IPPort[] remotes) throws Exception {
+        // wait for the packets
+        for (int i = 0; i < 100; ++i) {
+            int n = receiver.receiveBatch(bufs, remotes);
+            if (n > 0) {
+                return n;
+            }
+            Thread.sleep(10);
+        }
+        return 0;
+    }
+
+    @Test
+    public void nothingToReceive() throws IOException {
+        ByteBuffer[] bufs = {ByteBuffer.allocate(64)};
+        IPPort[] remotes = new IPPort[1];
+        assertEquals(0, receiver.receiveBatch(bufs, remotes));
+        assertNull(remotes[0]);
+        assertEquals(0, bufs[0].position());
+    }
+
+    @Test
+    public void sendAndReceive() throws Exception {
+        int count = 5;
+        ByteBuffer[] sndBufs = new ByteBuffer[8];
+        IPPort[] targets = new IPPort[8];
+        for (int i = 0; i < count; ++i) {
+            sndBufs[i] = packet(i);
+            targets[i] = receiverAddress;
+        }
+        assertEquals(count, sender.sendBatch(sndBufs, targets, count));
+        for (int i = 0; i < count; ++i) {
+            assertEquals(0, sndBufs[i].remaining());
+        }
+
+        // one buffer is direct to cover both paths
+        ByteBuffer[] rcvBufs = new ByteBuffer[8];
+        for (int i = 0; i < rcvBufs.length; ++i) {
+            rcvBufs[i] = i == 1 ? ByteBuffer.allocateDirect(64) : ByteBuffer.allocate(64);
+        }
+        IPPort[] remotes = new IPPort[8];
+        int received = 0;
+        while (received < count) {
+            ByteBuffer[] bufs = new ByteBuffer[rcvBufs.length - received];
+            System.arraycopy(rcvBufs, received, bufs, 0, bufs.length);
+            IPPort[] addrs = new IPPort[bufs.length];
+            int n = receiveAll(bufs, addrs);
+            assertTrue("received " + received, n > 0);
+            System.arraycopy(addrs, 0, remotes, received, n);
+            received += n;
+        }
+        assertEquals(count, received);
+
+        IPPort senderAddress = sender.getLocalAddress();
+        for (int i = 0; i < count; ++i) {
+            ByteBuffer b = rcvBufs[i];
+            b.flip();
+            byte[] bytes = new byte[b.remaining()];
+            b.get(bytes);
+            assertEquals("packet-" + i, new String(bytes, StandardCharsets.UTF_8));
+            assertEquals(senderAddress.getPort(), remotes[i].getPort());
+            assertEquals("127.0.0.1", remotes[i].getAddress().formatToIPString());
+        }
+        // buffers not used are not modified
+        assertEquals(0, rcvBufs[count].position());
+        assertNull(remotes[count]);
+    }
+
+    @Test
+    public void bufferLimitsThePacket() throws Exception {
+        ByteBuffer big = ByteBuffer.wrap("0123456789".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer small = packet(0);
+        assertEquals(2, sender.sendBatch(new ByteBuffer[]{big, small}, new IPPort[]{receiverAddress, receiverAddress}, 2));
+
+        ByteBuffer[] bufs = {ByteBuffer.allocate(4), ByteBuffer.allocate(64)};
+        IPPort[] remotes = new IPPort[2];
+        int n = receiveAll(bufs, remotes);
+        if (n == 1) {
+            n += receiveAll(new ByteBuffer[]{bufs[1]}, new IPPort[1]);
+        }
+        assertEquals(2, n);
+        // the datagram is truncated
+        assertEquals(4, bufs[0].position());
+        assertEquals("0123", new String(bufs[0].array(), 0, 4, StandardCharsets.UTF_8));
+        assertEquals("packet-0", new String(bufs[1].array(), 0, bufs[1].position(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,299 @@
+package vproxy.test.tool;
+
+import vfd.IPPort;
+import vpacket.conntrack.tcp.CongestionControl;
+import vpacket.conntrack.tcp.CubicCongestionControl;
+import vpacket.conntrack.tcp.NewRenoCongestionControl;
+import vpacket.conntrack.tcp.SackBlock;
+import vpacket.conntrack.tcp.Segment;
+import vpacket.conntrack.tcp.TcpEntry;
+import vpacket.conntrack.tcp.TcpState;
+import vproxybase.Config;
+import vproxybase.util.ByteArray;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Deterministic simulation of one tcp transfer between two {@link TcpEntry}s.
+ * The data goes through a bottleneck link with limited bandwidth, a drop-tail buffer and seeded random loss,
+ * the acks go back through a link with only latency.
+ * Time is virtual: {@link Config#currentTimestamp} is set to the time of each event,
+ * so the same arguments always produce the same result.
+ */
+public class TcpSimulator {
+    private static final long START_TIME = 1_000_000;
+    private static final long MAX_DURATION = 30 * 60 * 1000;
+
+    private final Supplier<CongestionControl> congestionControl;
+    private final boolean sack;
+    private final double lossRate;
+    private final int oneWayDelay; // millis
+    private final int bytesPerMillis;
+    private final int bufferBytes;
+    private final Random random;
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now = START_TIME;
+    private long eventIndex = 0;
+
+    private TcpEntry sender;
+    private TcpEntry receiver;
+    private ByteBuffer input;
+    private ByteArray output;
+    private int outputLen = 0;
+    private double linkFreeAt = START_TIME;
+    private Event retransmissionTimer;
+    private Event delayedAckTimer;
+
+    private int segmentsSent = 0;
+    private int segmentsLost = 0;
+    private int timeouts = 0;
+    private int recoveries = 0;
+
+    public TcpSimulator(Supplier<CongestionControl> congestionControl, boolean sack,
+                        double lossRate, int oneWayDelay, int bytesPerMillis, int bufferBytes, long seed) {
+        this.congestionControl = congestionControl;
+        this.sack = sack;
+        this.lossRate = lossRate;
+        this.oneWayDelay = oneWayDelay;
+        this.bytesPerMillis = bytesPerMillis;
+        this.bufferBytes = bufferBytes;
+        this.random = new Random(seed);
+    }
+
+    public Result run(ByteArray data) {
+        long savedTimestamp = Config.currentTimestamp;
+        try {
+            return run0(data);
+        } finally {
+            Config.currentTimestamp = savedTimestamp;
+        }
+    }
+
+    private Result run0(ByteArray data) {
+        Config.currentTimestamp = now;
+
+        sender = new TcpEntry(null, new IPPort("10.0.0.1", 1234), new IPPort("10.0.0.2", 5678), 0);
+        receiver = new TcpEntry(null, new IPPort("10.0.0.2", 5678), new IPPort("10.0.0.1", 1234),
+            sender.sendingQueue.getLatestSeq() - 1);
+        sender.setState(TcpState.ESTABLISHED);
+        receiver.setState(TcpState.ESTABLISHED);
+        sender.setSackPermitted(sack);
+        receiver.setSackPermitted(sack);
+        sender.sendingQueue.init(receiver.receivingQueue.getWindow(), TcpEntry.SND_DEFAULT_MSS, 1);
+        sender.sendingQueue.setCongestionControl(congestionControl.get());
+
+        input = ByteBuffer.wrap(data.toJavaArray());
+        output = ByteArray.allocate(data.length());
+        outputLen = 0;
+
+        write();
+        transmit();
+        while (outputLen < data.length()) {
+            Event e = events.poll();
+            if (e == null) {
+                throw new IllegalStateException("the transfer stalls at " + outputLen + "/" + data.length());
+            }
+            if (e.time - START_TIME > MAX_DURATION) {
+                throw new IllegalStateException("the transfer does not complete in time: " + outputLen + "/" + data.length());
+            }
+            now = e.time;
+            Config.currentTimestamp = now;
+            if (!e.cancelled) {
+                e.action.run();
+            }
+        }
+        if (!output.equals(data)) {
+            throw new IllegalStateException("the received data is different from the sent data");
+        }
+        return new Result(data.length(), now - START_TIME, segmentsSent, segmentsLost, timeouts, recoveries);
+    }
+
+    private Event schedule(long delay, Runnable action) {
+        Event e = new Event(now + delay, eventIndex++, action);
+        events.add(e);
+        return e;
+    }
+
+    private void write() {
+        sender.sendingQueue.apiWrite(input);
+    }
+
+    private void transmit() {
+        List<Segment> segments = sender.sendingQueue.fetch();
+        for (Segment s : segments) {
+            sendData(s);
+        }
+
+        if (!sender.sendingQueue.hasMoreData()) {
+            cancelRetransmissionTimer();
+            return;
+        }
+        if (retransmissionTimer == null) {
+            retransmissionTimer = schedule(sender.sendingQueue.getRto(), () -> {
+                retransmissionTimer = null;
+                ++timeouts;
+                sender.sendingQueue.timeout();
+                transmit();
+            });
+        }
+    }
+
+    private void cancelRetransmissionTimer() {
+        if (retransmissionTimer != null) {
+            retransmissionTimer.cancelled = true;
+            retransmissionTimer = null;
+        }
+    }
+
+    private void sendData(Segment s) {
+        ++segmentsSent;
+        // drop tail
+        double queueing = Math.max(0, linkFreeAt - now);
+        if (queueing * bytesPerMillis + s.data.length() > bufferBytes) {
+            ++segmentsLost;
+            return;
+        }
+        if (random.nextDouble() < lossRate) {
+            ++segmentsLost;
+            return;
+        }
+        double start = Math.max(now, linkFreeAt);
+        linkFreeAt = start + (double) s.data.length() / bytesPerMillis;
+        long arrive = (long) Math.ceil(linkFreeAt) + oneWayDelay;
+        schedule(arrive - now, () -> receiveData(s));
+    }
+
+    private void receiveData(Segment s) {
+        var q = receiver.receivingQueue;
+        q.store(s);
+        // the app reads the data immediately
+        ByteArray bytes = q.apiRead(Integer.MAX_VALUE);
+        if (bytes != null) {
+            for (int i = 0; i < bytes.length(); ++i) {
+                output.set(outputLen + i, bytes.get(i));
+            }
+            outputLen += bytes.length();
+        }
+        q.resetWindow();
+
+        if (q.needImmediateAck()) {
+            sendAck();
+        } else if (delayedAckTimer == null) {
+            delayedAckTimer = schedule(TcpEntry.DELAYED_ACK_TIMEOUT, this::sendAck);
+        }
+    }
+
+    private void sendAck() {
+        if (delayedAckTimer != null) {
+            delayedAckTimer.cancelled = true;
+            delayedAckTimer = null;
+        }
+        var q = receiver.receivingQueue;
+        q.ackSent();
+        long ack = q.getExpectingSeq();
+        int window = q.getWindow();
+        List<SackBlock> blocks = sack ? q.getSackBlocks() : List.of();
+        schedule(oneWayDelay, () -> receiveAck(ack, window, blocks));
+    }
+
+    private void receiveAck(long ack, int window, List<SackBlock> blocks) {
+        long lastAckSeq = sender.sendingQueue.getAckSeq();
+        boolean inRecovery = sender.sendingQueue.isInRecovery();
+        sender.sendingQueue.ack(ack, window, blocks, true);
+        if (!inRecovery && sender.sendingQueue.isInRecovery()) {
+            ++recoveries;
+        }
+        if (sender.sendingQueue.getAckSeq() != lastAckSeq) {
+            // new data acked, restart the timer
+            cancelRetransmissionTimer();
+        }
+        write();
+        transmit();
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final long index;
+        final Runnable action;
+        boolean cancelled = false;
+
+        Event(long time, long index, Runnable action) {
+            this.time = time;
+            this.index = index;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (time != o.time) {
+                return Long.compare(time, o.time);
+            }
+            return Long.compare(index, o.index);
+        }
+    }
+
+    public static class Result {
+        public final int bytes;
+        public final long duration; // millis
+        public final int segmentsSent;
+        public final int segmentsLost;
+        public final int timeouts;
+        public final int recoveries;
+
+        public Result(int bytes, long duration, int segmentsSent, int segmentsLost, int timeouts, int recoveries) {
+            this.bytes = bytes;
+            this.duration = duration;
+            this.segmentsSent = segmentsSent;
+            this.segmentsLost = segmentsLost;
+            this.timeouts = timeouts;
+            this.recoveries = recoveries;
+        }
+
+        // Mbps
+        public double goodput() {
+            return bytes * 8d / duration / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                "bytes=" + bytes +
+                ", duration=" + duration +
+                ", goodput=" + String.format("%.2f", goodput()) + "Mbps" +
+                ", segmentsSent=" + segmentsSent +
+                ", segmentsLost=" + segmentsLost +
+                ", timeouts=" + timeouts +
+                ", recoveries=" + recoveries +
+                '}';
+        }
+    }
+
+    public static void main(String[] args) {
+        int size = 8 * 1024 * 1024;
+        byte[] bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        ByteArray data = ByteArray.from(bytes);
+
+        // 10Mbps, 40ms rtt, 1 bdp buffer
+        int oneWayDelay = 20;
+        int bytesPerMillis = 1250;
+        int bufferBytes = 2 * oneWayDelay * bytesPerMillis;
+
+        System.out.printf("%-8s %-8s %-6s %12s %10s %10s %10s%n", "cc", "sack", "loss", "goodput", "lost", "timeouts", "recoveries");
+        for (double loss : new double[]{0, 0.001, 0.005, 0.01, 0.02, 0.05}) {
+            for (String cc : new String[]{"newreno", "cubic"}) {
+                for (boolean sack : new boolean[]{false, true}) {
+                    Supplier<CongestionControl> supplier = cc.equals("newreno") ? NewRenoCongestionControl::new : CubicCongestionControl::new;
+                    var res = new TcpSimulator(supplier, sack, loss, oneWayDelay, bytesPerMillis, bufferBytes, 42).run(data);
+                    System.out.printf("%-8s %-8s %-6s %8.2fMbps %10d %10d %10d%n",
+                        cc, sack, loss, res.goodput(), res.segmentsLost, res.timeouts, res.recoveries);
+                }
+            }
+        }
+    }
+}